@@ -0,0 +1,71 @@
+package io.breen.socrates.bench;
+
+import io.breen.socrates.file.logicly.LogiclyFile;
+import io.breen.socrates.submission.SubmittedFile;
+import io.breen.socrates.test.logicly.CircuitEvalTest;
+import org.openjdk.jmh.annotations.*;
+
+import javax.swing.text.PlainDocument;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures CircuitEvalTest on a chain of gates, evaluated for one assignment of the switches. The
+ * loadAndEvaluate benchmark uses a new SubmittedFile for each invocation, so it loads, parses and
+ * compiles the compressed Logicly file every time; evaluateCached reuses the compiled circuit, like
+ * the tests after the first on the same file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CircuitEvalBenchmark {
+
+    @Param({"8", "64", "1024"})
+    public int numSwitches;
+
+    private Path dir;
+    private Path path;
+    private LogiclyFile file;
+    private SubmittedFile target;
+    private CircuitEvalTest test;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("circuit-bench");
+        path = Fixtures.logiclyChain(dir, "circuit.logicly", numSwitches);
+
+        file = new LogiclyFile("circuit.logicly", 10, null, new ArrayList<Object>());
+        target = new SubmittedFile(path, Paths.get("circuit.logicly"));
+
+        test = new CircuitEvalTest(1.0, "benchmark");
+        test.input = new HashMap<>();
+        for (int i = 0; i < numSwitches; i++)
+            test.input.put("in" + i, i % 3 != 0);
+
+        test.output = Collections.singletonMap("out", true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Fixtures.delete(dir);
+    }
+
+    @Benchmark
+    public boolean loadAndEvaluate() throws Exception {
+        SubmittedFile fresh = new SubmittedFile(path, Paths.get("circuit.logicly"));
+        return test.shouldPass(
+                file, fresh, null, null, new PlainDocument(), new PlainDocument()
+        );
+    }
+
+    @Benchmark
+    public boolean evaluateCached() throws Exception {
+        return test.shouldPass(
+                file, target, null, null, new PlainDocument(), new PlainDocument()
+        );
+    }
+}
@@ -0,0 +1,56 @@
+package io.breen.socrates.bench;
+
+import io.breen.socrates.model.TestResult;
+import io.breen.socrates.model.wrapper.SubmittedFileWrapperNode;
+import io.breen.socrates.model.wrapper.TestWrapperNode;
+import io.breen.socrates.submission.SubmittedFile;
+import org.openjdk.jmh.annotations.*;
+
+import javax.swing.tree.DefaultMutableTreeNode;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures ConstraintUpdater.objectChanged() on deeply nested test groups, by failing and then
+ * resetting the deepest test of the tree. Each change of result is observed by the file's
+ * ConstraintUpdater, which updates the constraints of the whole tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ConstraintUpdaterBenchmark {
+
+    @Param({"10", "100"})
+    public int depth;
+
+    private Path dir;
+    private TestWrapperNode deepest;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("constraint-bench");
+        Path path = Files.write(dir.resolve("deep.txt"), new byte[] {'x'});
+
+        SubmittedFileWrapperNode sfwn = new SubmittedFileWrapperNode(
+                new SubmittedFile(path, Paths.get("deep.txt")), Fixtures.deepFile("deep.txt", depth)
+        );
+
+        DefaultMutableTreeNode root = (DefaultMutableTreeNode)sfwn.treeModel.getRoot();
+        deepest = (TestWrapperNode)root.getLastLeaf();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Fixtures.delete(dir);
+    }
+
+    @Benchmark
+    public TestResult failAndReset() {
+        deepest.setResult(TestResult.FAILED);
+        deepest.setResult(TestResult.NONE);
+        return deepest.getResult();
+    }
+}
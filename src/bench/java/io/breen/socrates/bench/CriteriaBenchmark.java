@@ -0,0 +1,66 @@
+package io.breen.socrates.bench;
+
+import io.breen.socrates.criteria.Criteria;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures Criteria.loadFromPath() for a criteria file and for a criteria package.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CriteriaBenchmark {
+
+    @Param({"10", "100"})
+    public int numFiles;
+
+    private Path dir;
+    private Path criteriaFile;
+    private Path criteriaPackage;
+
+    /**
+     * The criteria loaded from packages during an iteration, whose temporary directories must be
+     * deleted after the iteration.
+     */
+    private List<Criteria> loaded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("criteria-bench");
+        criteriaFile = Fixtures.criteriaFile(dir, "criteria.yml", numFiles, 10);
+        criteriaPackage = Fixtures.criteriaPackage(dir, "criteria.zip", numFiles, 10, 20, 64 * 1024);
+        loaded = new ArrayList<>();
+    }
+
+    @TearDown(Level.Iteration)
+    public void deletePackages() throws Exception {
+        for (Criteria c : loaded)
+            Fixtures.delete(c.getStaticDir().getParent());
+
+        loaded.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Fixtures.delete(dir);
+    }
+
+    @Benchmark
+    public Criteria loadFile() throws Exception {
+        return Criteria.loadFromPath(criteriaFile);
+    }
+
+    @Benchmark
+    public Criteria loadPackage() throws Exception {
+        Criteria c = Criteria.loadFromPath(criteriaPackage);
+        loaded.add(c);
+        return c;
+    }
+}
@@ -0,0 +1,297 @@
+package io.breen.socrates.bench;
+
+import io.breen.socrates.file.File;
+import io.breen.socrates.file.plain.PlainFile;
+import io.breen.socrates.test.TestGroup;
+import io.breen.socrates.test.any.ReviewTest;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Synthetic inputs for the benchmarks. Each method writes its fixture under a directory given by
+ * the caller, so that a benchmark can create its fixtures in its setup and delete them in its
+ * teardown. The fixtures are generated from fixed seeds, so every run measures the same input.
+ *
+ * The benchmarks in this package use JMH. To run them all from the project directory, run the
+ * "Benchmarks" configuration, or run org.openjdk.jmh.Main with the compiled benchmarks on the
+ * class path. A regular expression may be given to run only some of them, for example:
+ *
+ *     java -cp ... org.openjdk.jmh.Main "CircuitEval.*"
+ */
+public final class Fixtures {
+
+    private Fixtures() {}
+
+    /**
+     * Writes a criteria file with the specified number of plain files, each with a number of
+     * review tests, half of them in a group with a ceiling.
+     */
+    public static Path criteriaFile(Path dir, String name, int numFiles, int testsPerFile)
+            throws IOException
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("assignmentName: Benchmark\n\n");
+        sb.append("files:\n");
+
+        for (int f = 0; f < numFiles; f++) {
+            sb.append("  - !file:plain\n");
+            sb.append("    path: file").append(f).append(".txt\n");
+            sb.append("    pointValue: ").append(testsPerFile * 2).append("\n");
+            sb.append("    dueDates:\n");
+            sb.append("      2015-08-24T22:10:00-04: 0.10\n");
+            sb.append("      2015-08-26T22:10:00-04: 1.00\n");
+            sb.append("    tests:\n");
+
+            int half = testsPerFile / 2;
+
+            for (int t = 0; t < testsPerFile - half; t++)
+                appendReviewTest(sb, "      ", f, t);
+
+            sb.append("      - !group\n");
+            sb.append("        maxNum: 1\n");
+            sb.append("        members:\n");
+
+            for (int t = testsPerFile - half; t < testsPerFile; t++)
+                appendReviewTest(sb, "          ", f, t);
+        }
+
+        Path path = dir.resolve(name);
+        Files.write(path, sb.toString().getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    private static void appendReviewTest(StringBuilder sb, String indent, int f, int t) {
+        sb.append(indent).append("- !test:review\n");
+        sb.append(indent).append("  description: \"file ").append(f).append(", test ").append(t)
+          .append("\"\n");
+        sb.append(indent).append("  deduction: 2\n");
+    }
+
+    /**
+     * Writes a criteria package holding a criteria file like criteriaFile(), and the specified
+     * number of static resources and scripts of the given size.
+     */
+    public static Path criteriaPackage(Path dir, String name, int numFiles, int testsPerFile,
+                                       int numResources, int resourceSize) throws IOException
+    {
+        Path scratch = Files.createTempDirectory(dir, "package");
+        Path criteria = criteriaFile(scratch, "criteria.yml", numFiles, testsPerFile);
+
+        Random random = new Random(1);
+        byte[] contents = new byte[resourceSize];
+
+        Path path = dir.resolve(name);
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(path))) {
+            zip.putNextEntry(new ZipEntry("criteria.yml"));
+            zip.write(Files.readAllBytes(criteria));
+            zip.closeEntry();
+
+            // like the archives made by common ZIP tools, list each directory before its files
+            zip.putNextEntry(new ZipEntry("static/"));
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry("scripts/"));
+            zip.closeEntry();
+
+            for (int i = 0; i < numResources; i++) {
+                random.nextBytes(contents);
+                String folder = i % 2 == 0 ? "static/" : "scripts/";
+                zip.putNextEntry(new ZipEntry(folder + "resource" + i + ".dat"));
+                zip.write(contents);
+                zip.closeEntry();
+            }
+        }
+
+        delete(scratch);
+        return path;
+    }
+
+    /**
+     * Writes a submission directory holding the specified number of files, spread over nested
+     * directories. Every third file has a receipt.
+     */
+    public static Path submission(Path dir, String name, int numFiles, int fileSize)
+            throws IOException
+    {
+        Path root = dir.resolve(name);
+
+        Random random = new Random(2);
+        byte[] contents = new byte[fileSize];
+
+        for (int i = 0; i < numFiles; i++) {
+            Path sub = root.resolve("dir" + (i % 8)).resolve("sub" + (i % 3));
+            Files.createDirectories(sub);
+
+            for (int j = 0; j < contents.length; j++)
+                contents[j] = (byte)('a' + random.nextInt(26));
+
+            Path file = sub.resolve("file" + i + ".txt");
+            Files.write(file, contents);
+
+            if (i % 3 == 0) {
+                Files.write(
+                        sub.resolve("file" + i + ".txt.receipt"),
+                        "2015-08-24T22:00:00-04:00\n".getBytes(StandardCharsets.UTF_8)
+                );
+            }
+        }
+
+        return root;
+    }
+
+    /**
+     * Writes a mostly-ASCII text file of the specified size, with a multi-byte UTF-8 character
+     * every so often and an invalid byte every so often.
+     */
+    public static Path mixedText(Path dir, String name, int size) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        byte[] euro = "€".getBytes(StandardCharsets.UTF_8);
+
+        int i = 0;
+        while (out.size() < size) {
+            if (i % 97 == 0) out.write(euro, 0, euro.length);
+            else if (i % 1009 == 0) out.write(0xff);
+            else if (i % 80 == 0) out.write('\n');
+            else out.write('a' + i % 26);
+
+            i++;
+        }
+
+        Path path = dir.resolve(name);
+        Files.write(path, out.toByteArray());
+        return path;
+    }
+
+    /**
+     * Writes a compressed Logicly file whose circuit is a chain of alternating AND and OR gates
+     * over the specified number of switches, ending in a single light bulb named "out". The
+     * switches are named "in0", "in1", and so on.
+     */
+    public static Path logiclyChain(Path dir, String name, int numSwitches) throws IOException {
+        StringBuilder objects = new StringBuilder();
+        StringBuilder connections = new StringBuilder();
+
+        Random random = new Random(3);
+        List<String> switches = new ArrayList<>(numSwitches);
+
+        for (int i = 0; i < numSwitches; i++) {
+            String uid = new UUID(random.nextLong(), random.nextLong()).toString();
+            switches.add(uid);
+            objects.append("<object type=\"switch\" uid=\"").append(uid)
+                   .append("\" exportName=\"in").append(i).append("\"/>");
+        }
+
+        String previous = switches.get(0);
+
+        for (int i = 1; i < numSwitches; i++) {
+            String uid = new UUID(random.nextLong(), random.nextLong()).toString();
+            String type = i % 2 == 0 ? "and" : "or";
+
+            objects.append("<object type=\"").append(type).append("\" uid=\"").append(uid)
+                   .append("\" inputs=\"2\"/>");
+
+            appendConnection(connections, previous, uid, 0);
+            appendConnection(connections, switches.get(i), uid, 1);
+
+            previous = uid;
+        }
+
+        String bulb = new UUID(random.nextLong(), random.nextLong()).toString();
+        objects.append("<object type=\"light_bulb\" uid=\"").append(bulb)
+               .append("\" exportName=\"out\"/>");
+        appendConnection(connections, previous, bulb, 0);
+
+        String xml = "<logicly>" + objects + connections + "</logicly>";
+        byte[] bytes = xml.getBytes(StandardCharsets.UTF_8);
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(bytes);
+        deflater.finish();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished())
+            out.write(buffer, 0, deflater.deflate(buffer));
+        deflater.end();
+
+        Path path = dir.resolve(name);
+        Files.write(path, out.toByteArray());
+        return path;
+    }
+
+    private static void appendConnection(StringBuilder sb, String from, String to, int index) {
+        sb.append("<connection outputUID=\"").append(from).append("\" outputIndex=\"0\"")
+          .append(" inputUID=\"").append(to).append("\" inputIndex=\"").append(index)
+          .append("\"/>");
+    }
+
+    /**
+     * Writes a Python module with the specified number of small functions, named "f0", "f1", and
+     * so on, each returning twice its argument.
+     */
+    public static Path pythonModule(Path dir, String name, int numFunctions) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("count = 0\n\n");
+
+        for (int i = 0; i < numFunctions; i++) {
+            sb.append("def f").append(i).append("(n):\n");
+            sb.append("    return 2 * n\n\n");
+        }
+
+        Path path = dir.resolve(name);
+        Files.write(path, sb.toString().getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    /**
+     * Returns a plain file whose tests are nested in groups to the specified depth. Each group has
+     * a ceiling of one failed test, and holds two tests and the next group.
+     */
+    public static File deepFile(String path, int depth) {
+        TestGroup group = null;
+
+        for (int d = depth - 1; d >= 0; d--) {
+            List<Object> members = new ArrayList<>();
+            members.add(new ReviewTest(1.0, "depth " + d + ", first"));
+            members.add(new ReviewTest(1.0, "depth " + d + ", second"));
+            if (group != null) members.add(group);
+
+            group = new TestGroup(members, 1, 0);
+        }
+
+        List<Object> tests = new ArrayList<>();
+        tests.add(group);
+        return new PlainFile(path, depth * 2, null, tests);
+    }
+
+    /**
+     * Deletes a file, or a directory and everything in it.
+     */
+    public static void delete(Path path) throws IOException {
+        if (path == null || Files.notExists(path)) return;
+
+        Files.walkFileTree(
+                path, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                            throws IOException
+                    {
+                        Files.delete(file);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult postVisitDirectory(Path dir, IOException x)
+                            throws IOException
+                    {
+                        Files.delete(dir);
+                        return FileVisitResult.CONTINUE;
+                    }
+                }
+        );
+    }
+}
@@ -0,0 +1,83 @@
+package io.breen.socrates.bench;
+
+import io.breen.socrates.TextGradeReportFormatter;
+import io.breen.socrates.criteria.Criteria;
+import io.breen.socrates.file.File;
+import io.breen.socrates.model.TestResult;
+import io.breen.socrates.model.wrapper.*;
+import io.breen.socrates.submission.Submission;
+import io.breen.socrates.submission.SubmittedFile;
+import org.openjdk.jmh.annotations.*;
+
+import javax.swing.tree.DefaultMutableTreeNode;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures TextGradeReportFormatter on a graded submission, in which every other test failed and
+ * every third test has notes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GradeReportBenchmark {
+
+    @Param({"10", "50"})
+    public int numFiles;
+
+    private Path dir;
+    private TextGradeReportFormatter formatter;
+    private SubmissionWrapperNode submission;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("report-bench");
+
+        Criteria criteria = Criteria.loadFromPath(
+                Fixtures.criteriaFile(dir, "criteria.yml", numFiles, 20)
+        );
+        formatter = new TextGradeReportFormatter(criteria);
+
+        Path studentDir = Files.createDirectory(dir.resolve("student"));
+        submission = new SubmissionWrapperNode(new Submission("student", studentDir));
+
+        int n = 0;
+        for (File file : criteria.files) {
+            Path path = Files.write(studentDir.resolve(file.path), new byte[] {'x'});
+            SubmittedFileWrapperNode sfwn = new SubmittedFileWrapperNode(
+                    new SubmittedFile(path, Paths.get(file.path)), file
+            );
+            submission.add(sfwn);
+
+            DefaultMutableTreeNode root = (DefaultMutableTreeNode)sfwn.treeModel.getRoot();
+
+            @SuppressWarnings("unchecked") Enumeration<DefaultMutableTreeNode> nodes = root
+                    .preorderEnumeration();
+
+            while (nodes.hasMoreElements()) {
+                DefaultMutableTreeNode node = nodes.nextElement();
+                if (!(node instanceof TestWrapperNode)) continue;
+
+                TestWrapperNode test = (TestWrapperNode)node;
+                test.setResult(n % 2 == 0 ? TestResult.FAILED : TestResult.PASSED);
+                if (n % 3 == 0) test.notes.insertString(0, "notes for test " + n, null);
+
+                n++;
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Fixtures.delete(dir);
+    }
+
+    @Benchmark
+    public String format() {
+        return formatter.toString(submission);
+    }
+}
@@ -0,0 +1,59 @@
+package io.breen.socrates.bench;
+
+import io.breen.socrates.test.python.PythonInspector;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures round trips to the Python worker processes: a single request for a variable, and a
+ * batch of function evaluations like the one a TestScheduler sends for the tests of one file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PythonInspectorBenchmark {
+
+    @Param({"1", "20"})
+    public int batchSize;
+
+    private Path dir;
+    private PythonInspector inspector;
+    private List<PythonInspector.Evaluation> evaluations;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("python-bench");
+        inspector = new PythonInspector(Fixtures.pythonModule(dir, "module.py", batchSize));
+
+        evaluations = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            evaluations.add(
+                    new PythonInspector.Evaluation(
+                            "f" + i, null, Collections.singletonList((Object)i), null, null, null,
+                            2 * i, null
+                    )
+            );
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Fixtures.delete(dir);
+    }
+
+    @Benchmark
+    public boolean variableExists() throws Exception {
+        return inspector.variableExists("count");
+    }
+
+    @Benchmark
+    public List<PythonInspector.EvalResult> evaluateAll() throws Exception {
+        return inspector.evaluateAll(evaluations);
+    }
+}
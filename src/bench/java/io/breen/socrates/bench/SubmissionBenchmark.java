@@ -0,0 +1,41 @@
+package io.breen.socrates.bench;
+
+import io.breen.socrates.submission.Submission;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures Submission.fromDirectory() on a large submission directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SubmissionBenchmark {
+
+    @Param({"100", "2000"})
+    public int numFiles;
+
+    private Path dir;
+    private Path submissionDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("submission-bench");
+        submissionDir = Fixtures.submission(dir, "student", numFiles, 256);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Fixtures.delete(dir);
+    }
+
+    @Benchmark
+    public Submission fromDirectory() throws Exception {
+        return Submission.fromDirectory(submissionDir);
+    }
+}
@@ -0,0 +1,49 @@
+package io.breen.socrates.bench;
+
+import io.breen.socrates.submission.SubmittedFile;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures SubmittedFile.getContentsMixedUTF8() on a large file that is not entirely valid UTF-8,
+ * and SubmittedFile.getContents() on the same file once its contents are cached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SubmittedFileBenchmark {
+
+    @Param({"65536", "1048576"})
+    public int size;
+
+    private Path dir;
+    private SubmittedFile mixedText;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("submitted-file-bench");
+
+        Path text = Fixtures.mixedText(dir, "mixed.txt", size);
+        mixedText = new SubmittedFile(text, Paths.get("mixed.txt"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Fixtures.delete(dir);
+    }
+
+    @Benchmark
+    public String getContentsMixedUTF8() throws Exception {
+        return mixedText.getContentsMixedUTF8();
+    }
+
+    @Benchmark
+    public String getContentsCached() throws Exception {
+        return mixedText.getContents();
+    }
+}
@@ -29,6 +29,11 @@ public class Globals {
     public static final String DEFAULT_GRADE_FILE_NAME = "grade.txt";
     public static Properties properties;
     public static OS operatingSystem;
+
+    /**
+     * Whether Socrates is grading without a GUI (the --headless option).
+     */
+    public static boolean headless;
     private static Logger logger = Logger.getLogger(Globals.class.getName());
 
     static {
@@ -61,6 +66,37 @@ public class Globals {
         } catch (Throwable ignored) {}
     }
 
+    /**
+     * Returns the value of an integer property from the Socrates properties, or the specified
+     * default if the property is not set or is not an integer.
+     */
+    public static int getIntProperty(String key, int defaultValue) {
+        if (properties == null) return defaultValue;
+
+        String value = properties.getProperty(key);
+        if (value == null) return defaultValue;
+
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException x) {
+            logger.warning("property " + key + " is not an integer: " + value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Returns the value of a boolean property from the Socrates properties, or the specified
+     * default if the property is not set.
+     */
+    public static boolean getBooleanProperty(String key, boolean defaultValue) {
+        if (properties == null) return defaultValue;
+
+        String value = properties.getProperty(key);
+        if (value == null) return defaultValue;
+
+        return Boolean.parseBoolean(value.trim());
+    }
+
     public static String toHex(Color c) {
         String hex = Integer.toHexString(c.getRGB());
         return "#" + hex.substring(2);
@@ -1,10 +1,17 @@
 package io.breen.socrates;
 
+import io.breen.socrates.cache.ResultCache;
+import io.breen.socrates.controller.HeadlessController;
 import io.breen.socrates.controller.MainController;
 import io.breen.socrates.controller.SetupController;
 import io.breen.socrates.criteria.Criteria;
 import io.breen.socrates.criteria.InvalidCriteriaException;
+import io.breen.socrates.java.JavaWorkerPool;
+import io.breen.socrates.python.PythonWorkerPool;
 import io.breen.socrates.submission.*;
+import io.breen.socrates.test.any.ScriptTest;
+import io.breen.socrates.test.java.JavaEvaluator;
+import io.breen.socrates.view.main.FileView;
 import org.apache.commons.cli.*;
 
 import javax.swing.*;
@@ -25,14 +32,6 @@ public class Main {
         System.setProperty("apple.laf.useScreenMenuBar", "true");
         System.setProperty("apple.eawt.quitStrategy", "CLOSE_ALL_WINDOWS");
 
-        try {
-            // improves UI on Windows, especially
-            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
-        } catch (Exception x) {
-            System.err.println("failed setting L&F");
-            System.exit(5);
-        }
-
         /*
          * Set up default Socrates properties. These properties are the ones saved
          * to socrates.properties.
@@ -64,6 +63,20 @@ public class Main {
             System.exit(0);
         }
 
+        if (cmd.hasOption("headless")) {
+            logger.info("got --headless command-line option");
+            Globals.headless = true;
+            System.setProperty("java.awt.headless", "true");
+        } else {
+            try {
+                // improves UI on Windows, especially
+                UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
+            } catch (Exception x) {
+                System.err.println("failed setting L&F");
+                System.exit(5);
+            }
+        }
+
         final Path defaultPropPath = Paths.get(
                 System.getProperty("user.home"), "socrates.properties"
         );
@@ -90,12 +103,10 @@ public class Main {
             System.exit(4);
         }
 
-        /*
-         * Create the MainController. It will wait for the SetupController to send it
-         * a message indicating that the criteria and initial submissions have been
-         * loaded.
-         */
-        MainController main = new MainController();
+        if (cmd.hasOption("compile-criteria")) {
+            compileCriteria(cmd.getOptionValue("criteria"));
+            return;
+        }
 
         Path criteriaPath = null;
         Criteria criteria = null;
@@ -113,30 +124,71 @@ public class Main {
         List<Submission> submissions = null;
         if (cmd.hasOption("submissions")) {
             String[] paths = cmd.getOptionValues("submissions");
-            submissions = new ArrayList<>(paths.length);
+            List<Path> dirs = new ArrayList<>(paths.length);
             for (String str : paths) {
-                Path p = null;
                 try {
-                    p = Paths.get(str);
-                    submissions.add(Submission.fromDirectory(p));
+                    dirs.add(Paths.get(str));
                 } catch (InvalidPathException x) {
                     logger.warning("invalid submission: '" + str + "' is not a valid path");
-                } catch (IllegalArgumentException x) {
-                    logger.warning("invalid submission: '" + p + "' " + x);
-                } catch (IOException x) {
-                    logger.warning("I/O exception occurred adding submission: " + x);
-                } catch (ReceiptFormatException x) {
-                    logger.warning("invalid receipt for submission '" + p + "'");
-                } catch (AlreadyGradedException x) {
-                    logger.warning("skipping submission: already has a grade file: '" + p + "'");
                 }
             }
 
+            final List<Submission> loaded = Collections.synchronizedList(
+                    new ArrayList<Submission>(dirs.size())
+            );
+
+            try {
+                new SubmissionLoader().loadAll(
+                        dirs, new SubmissionLoader.Listener() {
+                            @Override
+                            public void loaded(Path directory, Submission submission) {
+                                loaded.add(submission);
+                            }
+
+                            @Override
+                            public void failed(Path p, Exception x) {
+                                if (x instanceof IllegalArgumentException) {
+                                    logger.warning("invalid submission: '" + p + "' " + x);
+                                } else if (x instanceof ReceiptFormatException) {
+                                    logger.warning("invalid receipt for submission '" + p + "'");
+                                } else if (x instanceof AlreadyGradedException) {
+                                    logger.warning(
+                                            "skipping submission: already has a grade file: '" +
+                                                    p + "'"
+                                    );
+                                } else {
+                                    logger.warning(
+                                            "I/O exception occurred adding submission: " + x
+                                    );
+                                }
+                            }
+                        }
+                );
+            } catch (InterruptedException x) {
+                logger.severe("interrupted while opening submissions");
+                System.exit(7);
+            }
+
+            submissions = new ArrayList<>(loaded);
+            Collections.sort(submissions);
+
             if (submissions.size() == 0) {
                 submissions = null;
             }
         }
 
+        if (Globals.headless) {
+            runHeadless(criteria, submissions);
+            return;
+        }
+
+        /*
+         * Create the MainController. It will wait for the SetupController to send it
+         * a message indicating that the criteria and initial submissions have been
+         * loaded.
+         */
+        MainController main = new MainController();
+
         /*
          * Start the SetupController.
          * If the --criteria command line option was specified and a Criteria object
@@ -148,9 +200,119 @@ public class Main {
         setup.start(criteriaPath, criteria, submissions);
     }
 
+    /**
+     * Grades the submissions without a GUI, then exits. The exit code is zero only if a grade
+     * report could be saved for every submission.
+     */
+    private static void runHeadless(Criteria criteria, List<Submission> submissions) {
+        if (criteria == null || submissions == null) {
+            System.err.println("error: --headless requires a valid criteria and submissions");
+            System.exit(6);
+        }
+
+        /*
+         * Unless the user chose otherwise, let every test runner have its own Python worker.
+         */
+        if (!Globals.properties.containsKey("python.pool.size")) {
+            Globals.properties.setProperty(
+                    "python.pool.size",
+                    Globals.properties.getProperty("scheduler.threads")
+            );
+        }
+
+        int numIncomplete = 0;
+        try {
+            numIncomplete = new HeadlessController(criteria).run(submissions);
+        } catch (InterruptedException x) {
+            System.exit(7);
+        }
+
+        if (numIncomplete > 0)
+            System.err.println(numIncomplete + " submission(s) must be finished in the GUI");
+
+        System.exit(numIncomplete == 0 ? 0 : 8);
+    }
+
+    /**
+     * Compiles the criteria file or package at the specified path, then exits.
+     *
+     * @see Criteria#compile(Path)
+     */
+    private static void compileCriteria(String path) {
+        if (path == null) {
+            System.err.println("error: --compile-criteria requires a criteria");
+            System.exit(6);
+        }
+
+        try {
+            Path compiled = Criteria.compile(Paths.get(path));
+            System.out.println("compiled criteria written to " + compiled);
+        } catch (InvalidPathException | IOException | InvalidCriteriaException x) {
+            System.err.println("error: could not compile criteria: " + x);
+            System.exit(9);
+        }
+
+        System.exit(0);
+    }
+
     private static void setDefaultProperties() {
         Properties defaults = new Properties();
-        // no default properties
+        defaults.setProperty(
+                "python.pool.size",
+                Integer.toString(PythonWorkerPool.DEFAULT_POOL_SIZE)
+        );
+        defaults.setProperty(
+                "python.pool.maxUses",
+                Integer.toString(PythonWorkerPool.DEFAULT_MAX_USES)
+        );
+        defaults.setProperty(
+                "python.timeout.script",
+                Integer.toString(ScriptTest.DEFAULT_TIMEOUT)
+        );
+        defaults.setProperty(
+                "java.pool.size",
+                Integer.toString(JavaWorkerPool.DEFAULT_POOL_SIZE)
+        );
+        defaults.setProperty(
+                "java.pool.maxUses",
+                Integer.toString(JavaWorkerPool.DEFAULT_MAX_USES)
+        );
+        defaults.setProperty(
+                "java.worker.maxHeap",
+                Integer.toString(JavaWorkerPool.DEFAULT_MAX_HEAP)
+        );
+        defaults.setProperty(
+                "java.timeout.wall",
+                Integer.toString(JavaEvaluator.DEFAULT_WALL_TIMEOUT)
+        );
+        defaults.setProperty(
+                "java.timeout.cpu",
+                Integer.toString(JavaEvaluator.DEFAULT_CPU_TIMEOUT)
+        );
+        defaults.setProperty(
+                "scheduler.threads",
+                Integer.toString(Runtime.getRuntime().availableProcessors())
+        );
+        defaults.setProperty("automation.eager", "false");
+        defaults.setProperty("criteria.extractStatic", "true");
+        defaults.setProperty(
+                "contents.mapThreshold",
+                Integer.toString(SubmittedFile.DEFAULT_MAP_THRESHOLD)
+        );
+        defaults.setProperty(
+                "view.largeFileThreshold",
+                Integer.toString(FileView.DEFAULT_LARGE_FILE_THRESHOLD)
+        );
+        defaults.setProperty(
+                "loader.threads",
+                Integer.toString(SubmissionLoader.DEFAULT_NUM_THREADS)
+        );
+        defaults.setProperty("watcher.enabled", "true");
+        defaults.setProperty("cache.enabled", "true");
+        defaults.setProperty(
+                "cache.maxEntries",
+                Integer.toString(ResultCache.DEFAULT_MAX_ENTRIES)
+        );
         Globals.properties = new Properties(defaults);
         logger.config("setting default properties: " + defaults.toString());
     }
@@ -198,6 +360,22 @@ public class Main {
                       .build()
         );
 
+        opts.addOption(
+                Option.builder()
+                      .longOpt("headless")
+                      .desc("grade the submissions without a GUI, saving grade reports for " +
+                                    "those that need no human grading")
+                      .build()
+        );
+
+        opts.addOption(
+                Option.builder()
+                      .longOpt("compile-criteria")
+                      .desc("check the criteria and save a compiled copy next to it, which " +
+                                    "later loads faster, then exit")
+                      .build()
+        );
+
         opts.addOption("h", "help", false, "print this message");
 
         return opts;
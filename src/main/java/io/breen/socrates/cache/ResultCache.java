@@ -0,0 +1,398 @@
+package io.breen.socrates.cache;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.breen.socrates.Globals;
+import io.breen.socrates.submission.Submission;
+import io.breen.socrates.submission.SubmittedFile;
+import io.breen.socrates.util.Digests;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+
+/**
+ * A content-addressed cache of the results of automated tests, stored on disk so that results
+ * survive between sessions. An entry's key is a digest of the criteria, the test's place in the
+ * criteria, and the contents of the submitted file. Two byte-identical submitted files therefore
+ * share their results, as does a submitted file that is graded again.
+ *
+ * Each entry is stored as a small JSON file in the cache directory. Once the cache holds more than
+ * its maximum number of entries, the least recently used entries are deleted. Entries are written
+ * to disk on a background thread.
+ *
+ * The shared cache is configured by the "cache.enabled", "cache.directory" and "cache.maxEntries"
+ * properties.
+ *
+ * @see io.breen.socrates.test.Cacheable
+ */
+public class ResultCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private static final String SUFFIX = ".json";
+
+    private static final TypeReference<Map<String, Object>> ENTRY_TYPE =
+            new TypeReference<Map<String, Object>>() {};
+
+    private static Logger logger = Logger.getLogger(ResultCache.class.getName());
+
+    private static ResultCache shared;
+    private static boolean sharedConfigured;
+
+    private final Path directory;
+    private final int maxEntries;
+    private final ObjectMapper mapper;
+    private final ExecutorService writer;
+
+    /**
+     * The keys of the entries on disk, least recently used first.
+     */
+    private final LinkedHashMap<String, Boolean> index;
+
+    /**
+     * The digests of the contents of submitted files, computed at most once per SubmittedFile.
+     */
+    private final Map<SubmittedFile, String> fileDigests;
+
+    public ResultCache(Path directory, int maxEntries) throws IOException {
+        this.directory = directory;
+        this.maxEntries = Math.max(1, maxEntries);
+
+        mapper = new ObjectMapper();
+        index = new LinkedHashMap<>(16, 0.75f, true);
+        fileDigests = new WeakHashMap<>();
+
+        writer = Executors.newSingleThreadExecutor(
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "result-cache-writer");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                }
+        );
+
+        Files.createDirectories(directory);
+        loadIndex();
+    }
+
+    /**
+     * Returns the cache shared by every TestScheduler, or null if caching is disabled or the cache
+     * directory cannot be used.
+     */
+    public static synchronized ResultCache getShared() {
+        if (sharedConfigured) return shared;
+        sharedConfigured = true;
+
+        if (!Globals.getBooleanProperty("cache.enabled", true)) {
+            logger.info("result cache is disabled");
+            return null;
+        }
+
+        String dir = Globals.properties == null ? null : Globals.properties.getProperty(
+                "cache.directory"
+        );
+        Path path = dir == null ? getDefaultDirectory() : Paths.get(dir);
+
+        try {
+            shared = new ResultCache(
+                    path, Globals.getIntProperty("cache.maxEntries", DEFAULT_MAX_ENTRIES)
+            );
+            logger.info("using result cache in " + path);
+        } catch (IOException | InvalidPathException x) {
+            logger.warning("cannot use result cache in " + path + ": " + x);
+        }
+
+        return shared;
+    }
+
+    public static Path getDefaultDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".socrates", "results");
+    }
+
+    /**
+     * Lists the entries already on disk, oldest first, and evicts any beyond the maximum.
+     */
+    private void loadIndex() throws IOException {
+        List<Path> entries = new ArrayList<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path p : stream)
+                entries.add(p);
+        }
+
+        final Map<Path, FileTime> times = new HashMap<>();
+        for (Path p : entries)
+            times.put(p, Files.getLastModifiedTime(p));
+
+        Collections.sort(
+                entries, new Comparator<Path>() {
+                    @Override
+                    public int compare(Path a, Path b) {
+                        return times.get(a).compareTo(times.get(b));
+                    }
+                }
+        );
+
+        synchronized (this) {
+            for (Path p : entries) {
+                String name = p.getFileName().toString();
+                index.put(name.substring(0, name.length() - SUFFIX.length()), true);
+            }
+
+            evict();
+        }
+    }
+
+    private Path pathFor(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    /**
+     * Returns the key for the result of a test that depends only on a submitted file.
+     *
+     * @param criteriaDigest The digest of the criteria
+     * @param testIdentity A string identifying the test within the criteria
+     * @param target The submitted file
+     *
+     * @throws IOException If the submitted file could not be read
+     */
+    public String keyFor(String criteriaDigest, String testIdentity, SubmittedFile target)
+            throws IOException
+    {
+        return keyFor(criteriaDigest, testIdentity, target, null);
+    }
+
+    /**
+     * Returns the key for the result of a test on a submitted file. Tests that run student code
+     * can depend on the other files of the submission (e.g., a Java class uses a helper class, or
+     * a Python module imports a sibling module), so the key also depends on the path and contents
+     * of every file in the submission.
+     *
+     * @param criteriaDigest The digest of the criteria
+     * @param testIdentity A string identifying the test within the criteria
+     * @param target The submitted file
+     * @param submission The submission containing the target, or null if the test depends only
+     * on the target
+     *
+     * @throws IOException If a submitted file could not be read
+     */
+    public String keyFor(String criteriaDigest, String testIdentity, SubmittedFile target,
+                         Submission submission) throws IOException
+    {
+        List<String> parts = new ArrayList<>();
+        parts.add(criteriaDigest);
+        parts.add(testIdentity);
+        parts.add(digestOf(target));
+
+        if (submission != null) {
+            List<SubmittedFile> files;
+            synchronized (submission.files) {
+                files = new ArrayList<>(submission.files);
+            }
+
+            Collections.sort(
+                    files, new Comparator<SubmittedFile>() {
+                        @Override
+                        public int compare(SubmittedFile a, SubmittedFile b) {
+                            return a.localPath.toString().compareTo(b.localPath.toString());
+                        }
+                    }
+            );
+
+            for (SubmittedFile f : files) {
+                parts.add(f.localPath.toString());
+                parts.add(digestOf(f));
+            }
+        }
+
+        return Digests.of(parts.toArray(new String[parts.size()]));
+    }
+
+    /**
+     * Returns the digest of the contents of a submitted file, computing it if it is not known.
+     */
+    private String digestOf(SubmittedFile file) throws IOException {
+        String digest;
+        synchronized (fileDigests) {
+            digest = fileDigests.get(file);
+        }
+
+        if (digest == null) {
+            digest = Digests.of(file.fullPath);
+            synchronized (fileDigests) {
+                fileDigests.put(file, digest);
+            }
+        }
+
+        return digest;
+    }
+
+    /**
+     * Returns the cached result for the specified key, or null if there is none.
+     */
+    public Entry get(String key) {
+        synchronized (this) {
+            if (index.get(key) == null) return null;
+        }
+
+        final Path path = pathFor(key);
+
+        try {
+            Map<String, Object> map = mapper.readValue(path.toFile(), ENTRY_TYPE);
+
+            Entry entry = new Entry(
+                    (Boolean)map.get("passed"),
+                    (String)map.get("transcript"),
+                    (String)map.get("notes")
+            );
+
+            // remember that this entry was used, in case the cache is reopened
+            writer.execute(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                Files.setLastModifiedTime(
+                                        path, FileTime.fromMillis(System.currentTimeMillis())
+                                );
+                            } catch (IOException ignored) {}
+                        }
+                    }
+            );
+
+            return entry;
+
+        } catch (IOException | RuntimeException x) {
+            logger.warning("discarding unreadable cache entry " + path + ": " + x);
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Stores a result in the cache, replacing any result with the same key.
+     */
+    public void put(final String key, Entry entry) {
+        final Map<String, Object> map = new HashMap<>();
+        map.put("passed", entry.passed);
+        map.put("transcript", entry.transcript);
+        map.put("notes", entry.notes);
+
+        writer.execute(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        Path path = pathFor(key);
+                        try {
+                            // write to a temporary file first, so no reader sees a partial entry
+                            Path temp = Files.createTempFile(directory, null, ".tmp");
+                            Files.write(temp, mapper.writeValueAsBytes(map));
+                            Files.move(
+                                    temp, path, StandardCopyOption.REPLACE_EXISTING,
+                                    StandardCopyOption.ATOMIC_MOVE
+                            );
+                        } catch (IOException x) {
+                            logger.warning("could not write cache entry " + path + ": " + x);
+                            return;
+                        }
+
+                        synchronized (ResultCache.this) {
+                            index.put(key, true);
+                            evict();
+                        }
+                    }
+                }
+        );
+    }
+
+    /**
+     * Removes the result for the specified key, if any.
+     */
+    public void remove(final String key) {
+        synchronized (this) {
+            index.remove(key);
+        }
+
+        writer.execute(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            Files.deleteIfExists(pathFor(key));
+                        } catch (IOException ignored) {}
+                    }
+                }
+        );
+    }
+
+    /**
+     * Forgets the digest of the contents of a submitted file, so that it is computed again the next
+     * time a key is needed for the file. This must be called if the file may have changed.
+     */
+    public void forget(SubmittedFile target) {
+        synchronized (fileDigests) {
+            fileDigests.remove(target);
+        }
+    }
+
+    /**
+     * Blocks until every entry given to put() has been written to disk.
+     */
+    public void flush() throws InterruptedException {
+        Future<?> done = writer.submit(
+                new Runnable() {
+                    @Override
+                    public void run() {}
+                }
+        );
+
+        try {
+            done.get();
+        } catch (ExecutionException ignored) {}
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Deletes the least recently used entries beyond the maximum number. Must be called while
+     * holding this object's lock.
+     */
+    private void evict() {
+        Iterator<String> it = index.keySet().iterator();
+        while (index.size() > maxEntries && it.hasNext()) {
+            String key = it.next();
+            it.remove();
+
+            try {
+                Files.deleteIfExists(pathFor(key));
+            } catch (IOException x) {
+                logger.warning("could not delete cache entry for " + key + ": " + x);
+            }
+        }
+    }
+
+    /**
+     * The cached result of a test: whether it passed, and the text it added to the transcript and
+     * to the notes of its test.
+     */
+    public static class Entry {
+
+        public final boolean passed;
+        public final String transcript;
+        public final String notes;
+
+        public Entry(boolean passed, String transcript, String notes) {
+            this.passed = passed;
+            this.transcript = transcript;
+            this.notes = notes;
+        }
+    }
+}
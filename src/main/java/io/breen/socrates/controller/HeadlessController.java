@@ -0,0 +1,194 @@
+package io.breen.socrates.controller;
+
+import io.breen.socrates.Globals;
+import io.breen.socrates.TextGradeReportFormatter;
+import io.breen.socrates.cache.ResultCache;
+import io.breen.socrates.criteria.Criteria;
+import io.breen.socrates.file.File;
+import io.breen.socrates.model.AutomationStage;
+import io.breen.socrates.model.event.ConstraintChangedEvent;
+import io.breen.socrates.model.event.StageChangedEvent;
+import io.breen.socrates.model.wrapper.*;
+import io.breen.socrates.submission.Submission;
+import io.breen.socrates.submission.SubmittedFile;
+import io.breen.socrates.test.Automatable;
+import io.breen.socrates.test.Test;
+import io.breen.socrates.util.ObservableChangedEvent;
+import io.breen.socrates.util.Observer;
+
+import javax.swing.text.PlainDocument;
+import javax.swing.tree.DefaultMutableTreeNode;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+
+/**
+ * Grades submissions without a GUI. For each submission, the wrapper trees are built as they would
+ * be for the GUI, and every automatable test is run by a TestScheduler. Tests that become
+ * constrained before they start are not run. Each submission whose tests were all decided
+ * automatically has its grade report written to its directory; any other submission is left for a
+ * human grader.
+ *
+ * All changes to the wrapper trees are made on a single thread, in place of the event dispatch
+ * thread, so that the ConstraintUpdater of each file sees one change at a time.
+ */
+public class HeadlessController implements Observer<TestWrapperNode> {
+
+    private static Logger logger = Logger.getLogger(HeadlessController.class.getName());
+
+    private final Criteria criteria;
+
+    /**
+     * The nodes of automatable tests that have neither finished nor become constrained before
+     * they started.
+     */
+    private final Set<TestWrapperNode> remaining;
+
+    public HeadlessController(Criteria criteria) {
+        this.criteria = criteria;
+        remaining = new HashSet<>();
+    }
+
+    /**
+     * Runs the automatable tests of the specified submissions and writes a grade report for each
+     * completed submission. Returns the number of submissions that could not be completed.
+     */
+    public int run(List<Submission> submissions) throws InterruptedException {
+        ExecutorService deliverer = Executors.newSingleThreadExecutor();
+        TestScheduler scheduler = new TestScheduler(criteria, new PlainDocument(), deliverer);
+
+        List<SubmissionWrapperNode> nodes = new ArrayList<>(submissions.size());
+
+        for (Submission s : submissions)
+            nodes.add(buildTree(s, scheduler));
+
+        synchronized (this) {
+            logger.info("running " + remaining.size() + " automated tests for " +
+                                submissions.size() + " submissions");
+
+            while (!remaining.isEmpty())
+                wait();
+        }
+
+        scheduler.shutdown();
+
+        /*
+         * Wait for the delivery of the last results, so that the trees are no longer changing when
+         * the reports are written.
+         */
+        deliverer.shutdown();
+        deliverer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+        // results are written to the cache in the background, and we are about to exit
+        ResultCache cache = ResultCache.getShared();
+        if (cache != null) cache.flush();
+
+        int numIncomplete = 0;
+        TextGradeReportFormatter fmt = new TextGradeReportFormatter(criteria);
+
+        for (SubmissionWrapperNode swn : nodes) {
+            Submission submission = (Submission)swn.getUserObject();
+
+            if (!swn.isComplete()) {
+                logger.info(submission.studentName + ": some tests must be graded by hand");
+                numIncomplete++;
+                continue;
+            }
+
+            Path dest = Paths.get(
+                    submission.submissionDir.toString(), Globals.DEFAULT_GRADE_FILE_NAME
+            );
+
+            try {
+                fmt.toFile(swn, dest);
+                logger.info(submission.studentName + ": saved grade report to " + dest);
+            } catch (IOException x) {
+                logger.warning("could not save grade report: " + x);
+                numIncomplete++;
+            }
+        }
+
+        return numIncomplete;
+    }
+
+    /**
+     * Builds the wrapper tree for a submission, as SubmissionTree does for the GUI, and gives each
+     * of its automatable tests to the scheduler.
+     */
+    private SubmissionWrapperNode buildTree(Submission submission, TestScheduler scheduler) {
+        SubmissionWrapperNode parent = new SubmissionWrapperNode(submission);
+
+        List<SubmittedFileWrapperNode> recognized = new LinkedList<>();
+        List<UnrecognizedFileWrapperNode> unrecognized = new LinkedList<>();
+
+        for (SubmittedFile sf : submission.files) {
+            File matchingFile = criteria.getFileByLocalPath(sf.localPath);
+
+            if (matchingFile == null) unrecognized.add(new UnrecognizedFileWrapperNode(sf));
+            else recognized.add(new SubmittedFileWrapperNode(sf, matchingFile));
+        }
+
+        for (SubmittedFileWrapperNode r : recognized)
+            parent.add(r);
+
+        for (UnrecognizedFileWrapperNode u : unrecognized)
+            parent.add(u);
+
+        for (SubmittedFileWrapperNode sfwn : recognized) {
+            SubmittedFile submittedFile = (SubmittedFile)sfwn.getUserObject();
+            DefaultMutableTreeNode root = (DefaultMutableTreeNode)sfwn.treeModel.getRoot();
+
+            @SuppressWarnings("unchecked") Enumeration<DefaultMutableTreeNode> nodes = root
+                    .preorderEnumeration();
+
+            while (nodes.hasMoreElements()) {
+                DefaultMutableTreeNode n = nodes.nextElement();
+                if (!(n instanceof TestWrapperNode)) continue;
+
+                TestWrapperNode node = (TestWrapperNode)n;
+                Test testObj = (Test)node.getUserObject();
+
+                if (testObj instanceof Automatable) {
+                    synchronized (this) {
+                        remaining.add(node);
+                    }
+
+                    node.addObserver(this);
+                    scheduler.prefetch(
+                            node, testObj, sfwn.matchingFile, submittedFile, submission
+                    );
+                }
+            }
+        }
+
+        return parent;
+    }
+
+    @Override
+    public void objectChanged(ObservableChangedEvent<TestWrapperNode> event) {
+        boolean done = false;
+
+        if (event instanceof StageChangedEvent) {
+            AutomationStage stage = ((StageChangedEvent)event).newStage;
+            done = stage == AutomationStage.FINISHED_NORMAL ||
+                    stage == AutomationStage.FINISHED_ERROR;
+
+        } else if (event instanceof ConstraintChangedEvent) {
+            /*
+             * The scheduler will not start a prefetched test for a constrained node, but a test
+             * that has already started runs to the end, and its node is done when it finishes.
+             */
+            done = ((ConstraintChangedEvent)event).isNowConstrained &&
+                    event.source.getAutomationStage() == AutomationStage.NONE;
+        }
+
+        if (!done) return;
+
+        synchronized (this) {
+            if (remaining.remove(event.source) && remaining.isEmpty()) notifyAll();
+        }
+    }
+}
@@ -2,13 +2,17 @@ package io.breen.socrates.controller;
 
 import io.breen.socrates.Globals;
 import io.breen.socrates.TextGradeReportFormatter;
+import io.breen.socrates.cache.ResultCache;
 import io.breen.socrates.criteria.Criteria;
 import io.breen.socrates.file.File;
 import io.breen.socrates.model.AutomationStage;
+import io.breen.socrates.model.SessionJournal;
 import io.breen.socrates.model.TestResult;
 import io.breen.socrates.model.wrapper.SubmissionWrapperNode;
+import io.breen.socrates.model.wrapper.SubmittedFileWrapperNode;
 import io.breen.socrates.model.wrapper.TestWrapperNode;
 import io.breen.socrates.submission.Submission;
+import io.breen.socrates.submission.SubmissionWatcher;
 import io.breen.socrates.submission.SubmittedFile;
 import io.breen.socrates.test.*;
 import io.breen.socrates.util.Pair;
@@ -21,6 +25,7 @@ import javax.swing.event.TreeSelectionEvent;
 import javax.swing.event.TreeSelectionListener;
 import javax.swing.text.DefaultCaret;
 import javax.swing.text.Document;
+import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.TreePath;
 import java.awt.*;
 import java.awt.event.ActionEvent;
@@ -29,8 +34,6 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.logging.Logger;
 
 public class MainController {
@@ -41,9 +44,11 @@ public class MainController {
     public Action showTranscript;
     private Criteria criteria;
     private List<Submission> submissions;
-    private BlockingQueue<TestTask> tasks;
+    private TestScheduler scheduler;
     private MainView mainView;
     private MenuBarManager menuBar;
+    private SessionJournal journal;
+    private SubmissionWatcher watcher;
 
     public MainController() {
         menuBar = new MenuBarManager();
@@ -85,14 +90,9 @@ public class MainController {
         );
         menuBar.transcriptWindow.setAction(showTranscript);
 
-        final Document transcriptDocument = transcriptTextPane.getDocument();
-
-        tasks = new LinkedBlockingQueue<>();
-
         /*
          * The MainController will listen to the TestTree to see if an automated test
-         * gets selected. If so, this thread will queue the test in the TestRunner's queue for
-         * execution.
+         * gets selected. If so, the test is given to the TestScheduler for execution.
          */
         mainView.testTree.addTreeSelectionListener(
                 new TreeSelectionListener() {
@@ -118,79 +118,65 @@ public class MainController {
                                     .getCurrentSubmissionNode();
                             Submission submission = (Submission)swn.getUserObject();
 
-                            tasks.add(
-                                    new TestTask(
-                                            node, testObj, file, submittedFile, submission
-                                    )
-                            );
-
-                            node.setAutomationStage(AutomationStage.QUEUED);
+                            scheduler.schedule(node, testObj, file, submittedFile, submission);
                         }
                     }
                 }
         );
 
         /*
-         * Schedule a thread that runs TestTasks in the queue whenever they appear.
+         * Tests prefetched in the background are run nearest to the submission being graded.
          */
-        (new Thread() {
-            @Override
-            public void run() {
-                while (true) {
-                    TestTask t;
-
-                    try {
-                        t = tasks.take();
-                    } catch (InterruptedException x) {
-                        return;
-                    }
+        mainView.submissionTree.addTreeSelectionListener(
+                new TreeSelectionListener() {
+                    @Override
+                    public void valueChanged(TreeSelectionEvent e) {
+                        if (scheduler == null) return;
 
-                    t.node.setAutomationStage(AutomationStage.STARTED);
-                    try {
-                        Automatable automatableTest = (Automatable)t.automatableTest;
+                        SubmissionWrapperNode swn = mainView.submissionTree
+                                .getCurrentSubmissionNode();
+                        if (swn != null) scheduler.focus((Submission)swn.getUserObject());
+                    }
+                }
+        );
+    }
 
-                        boolean passed = automatableTest.shouldPass(
-                                t.file,
-                                t.submittedFile,
-                                t.submission,
-                                criteria,
-                                transcriptDocument,
-                                t.node.notes
-                        );
+    public void start(Path criteriaPath, Criteria criteria, List<Submission> submissions) {
+        this.criteria = criteria;
+        this.submissions = new ArrayList<>();
 
-                        if (passed) t.node.setResult(TestResult.PASSED);
-                        else t.node.setResult(TestResult.FAILED);
+        scheduler = new TestScheduler(
+                criteria, transcriptTextPane.getDocument(), TestScheduler.EVENT_DISPATCH_THREAD
+        );
 
-                        t.node.setAutomationStage(
-                                AutomationStage.FINISHED_NORMAL
-                        );
+        if (Globals.operatingSystem == Globals.OS.OSX) {
+            JRootPane root = mainView.getRootPane();
+            root.putClientProperty("Window.documentFile", criteriaPath.toFile());
+            mainView.setTitle(criteria.assignmentName);
+        } else {
+            mainView.setTitle("Socrates — " + criteria.assignmentName);
+        }
 
-                    } catch (CannotBeAutomatedException x) {
-                        logger.warning(t.automatableTest + ": cannot be automated: " + x);
+        journal = new SessionJournal(criteriaPath, criteria.digest);
 
-                        t.node.setAutomationStage(
-                                AutomationStage.FINISHED_ERROR
-                        );
+        if (Globals.getBooleanProperty("watcher.enabled", true)) startWatcher();
 
-                    } catch (AutomationFailureException x) {
-                        logger.severe(t.automatableTest + ": failure automating test: " + x);
+        addSubmissions(submissions);
+        mainView.submissionTree.expandFirstSubmission();
 
-                        t.node.setAutomationStage(
-                                AutomationStage.FINISHED_ERROR
-                        );
-                    }
-                }
-            }
-        }).start();
+        mainView.setVisible(true);
     }
 
-    public void start(Path criteriaPath, Criteria criteria, List<Submission> submissions) {
-        this.criteria = criteria;
-        this.submissions = submissions;
+    /**
+     * Adds submissions to a session that has already started. This must be called on the event
+     * dispatch thread.
+     */
+    public void addSubmissions(List<Submission> added) {
+        submissions.addAll(added);
 
         Map<Submission, List<Pair<SubmittedFile, File>>> map = new TreeMap<>();
 
-        for (Submission s : submissions) {
+        for (Submission s : added) {
             List<Pair<SubmittedFile, File>> list = new ArrayList<>(s.files.size());
             for (SubmittedFile f : s.files) {
                 File matchingFile = criteria.getFileByLocalPath(f.localPath);
@@ -200,18 +186,165 @@ public class MainController {
             map.put(s, list);
         }
 
-        if (Globals.operatingSystem == Globals.OS.OSX) {
-            JRootPane root = mainView.getRootPane();
-            root.putClientProperty("Window.documentFile", criteriaPath.toFile());
-            mainView.setTitle(criteria.assignmentName);
-        } else {
-            mainView.setTitle("Socrates — " + criteria.assignmentName);
+        List<SubmittedFileWrapperNode> nodes = mainView.submissionTree.addUngraded(map);
+
+        if (watcher != null) watcher.watch(added);
+
+        try {
+            journal.restore(nodes);
+        } catch (IOException x) {
+            logger.warning("could not restore grading session: " + x);
         }
 
-        mainView.submissionTree.addUngraded(map);
-        mainView.submissionTree.expandFirstSubmission();
+        if (Globals.getBooleanProperty("automation.eager", false)) prefetchAll(nodes);
+    }
 
-        mainView.setVisible(true);
+    /**
+     * Starts watching the submission directories, so that files added or changed while grading
+     * are shown without loading the submissions again.
+     */
+    private void startWatcher() {
+        SubmissionWatcher.Listener listener = new SubmissionWatcher.Listener() {
+            @Override
+            public void fileAdded(final Submission submission, final SubmittedFile file) {
+                SwingUtilities.invokeLater(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                addFile(submission, file);
+                            }
+                        }
+                );
+            }
+
+            @Override
+            public void fileChanged(Submission submission, final SubmittedFile file) {
+                // before any test can compute a cache key from the old contents
+                ResultCache cache = ResultCache.getShared();
+                if (cache != null) cache.forget(file);
+
+                if (journal != null) journal.forget(file);
+
+                SwingUtilities.invokeLater(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                updateFile(file);
+                            }
+                        }
+                );
+            }
+        };
+
+        try {
+            watcher = new SubmissionWatcher(listener);
+        } catch (IOException x) {
+            logger.warning("cannot watch submission directories: " + x);
+        }
+    }
+
+    /**
+     * Adds a file found in a submission directory after the submission was loaded.
+     */
+    private void addFile(Submission submission, SubmittedFile file) {
+        logger.info("found new file " + file.localPath + " in " + submission.submissionDir);
+
+        // the files are read by test runner threads computing cache keys
+        synchronized (submission.files) {
+            submission.files.add(file);
+        }
+
+        File matchingFile = criteria.getFileByLocalPath(file.localPath);
+        SubmittedFileWrapperNode node = mainView.submissionTree.addFile(
+                submission, file, matchingFile
+        );
+        if (node == null) return;
+
+        List<SubmittedFileWrapperNode> nodes = Collections.singletonList(node);
+
+        try {
+            journal.restore(nodes);
+        } catch (IOException x) {
+            logger.warning("could not restore grading session: " + x);
+        }
+
+        if (Globals.getBooleanProperty("automation.eager", false)) prefetchAll(nodes);
+    }
+
+    /**
+     * Resets the automated tests of a submitted file that changed, and shows the file again if it
+     * is selected.
+     */
+    private void updateFile(SubmittedFile file) {
+        logger.info("file changed: " + file.fullPath);
+
+        DefaultMutableTreeNode node = mainView.submissionTree.getFileNode(file);
+        if (node == null) return;
+
+        File matchingFile = null;
+        if (node instanceof SubmittedFileWrapperNode) {
+            SubmittedFileWrapperNode sfwn = (SubmittedFileWrapperNode)node;
+            matchingFile = sfwn.matchingFile;
+
+            sfwn.resetAutomatedTests();
+
+            if (Globals.getBooleanProperty("automation.eager", false))
+                prefetchAll(Collections.singletonList(sfwn));
+        }
+
+        if (mainView.submissionTree.getSelectedSubmittedFile() == file) {
+            try {
+                mainView.fileView.update(file, matchingFile);
+                mainView.fileInfo.update(file, matchingFile);
+            } catch (IOException x) {
+                logger.warning("encountered I/O exception updating view: " + x);
+            }
+        }
+    }
+
+    /**
+     * Gives every automatable test of the specified submitted files to the TestScheduler to be
+     * run in the background, so that its result is ready when the grader selects it.
+     */
+    private void prefetchAll(List<SubmittedFileWrapperNode> files) {
+        int numTests = 0;
+
+        for (SubmittedFileWrapperNode sfwn : files) {
+            SubmittedFile submittedFile = (SubmittedFile)sfwn.getUserObject();
+            SubmissionWrapperNode swn = (SubmissionWrapperNode)sfwn.getParent();
+            Submission submission = (Submission)swn.getUserObject();
+
+            DefaultMutableTreeNode root = (DefaultMutableTreeNode)sfwn.treeModel.getRoot();
+
+            @SuppressWarnings("unchecked") Enumeration<DefaultMutableTreeNode> nodes = root
+                    .preorderEnumeration();
+
+            while (nodes.hasMoreElements()) {
+                DefaultMutableTreeNode n = nodes.nextElement();
+                if (!(n instanceof TestWrapperNode)) continue;
+
+                TestWrapperNode node = (TestWrapperNode)n;
+                Test testObj = (Test)node.getUserObject();
+
+                if (testObj instanceof Automatable) {
+                    scheduler.prefetch(
+                            node, testObj, sfwn.matchingFile, submittedFile, submission
+                    );
+                    numTests++;
+                }
+            }
+        }
+
+        logger.info("prefetching " + numTests + " automated tests in the background");
+    }
+
+    /**
+     * Stops watching the submission directories, and writes the rest of the session's journal.
+     * This is called when the main window is closed, before Socrates exits.
+     */
+    public void close() {
+        if (watcher != null) watcher.close();
+        if (journal != null) journal.close();
     }
 
     public void saveGradeReport(SubmissionWrapperNode completed, Path dest) {
@@ -225,23 +358,4 @@ public class MainController {
         }
         mainView.setEnabled(true);
     }
-
-    private class TestTask {
-
-        public final TestWrapperNode node;
-        public final Test automatableTest;
-        public final File file;
-        public final SubmittedFile submittedFile;
-        public final Submission submission;
-
-        public TestTask(TestWrapperNode node, Test automatableTest, File file,
-                        SubmittedFile submittedFile, Submission submission)
-        {
-            this.node = node;
-            this.automatableTest = automatableTest;
-            this.file = file;
-            this.submittedFile = submittedFile;
-            this.submission = submission;
-        }
-    }
 }
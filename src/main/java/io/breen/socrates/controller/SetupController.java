@@ -3,6 +3,7 @@ package io.breen.socrates.controller;
 import io.breen.socrates.criteria.Criteria;
 import io.breen.socrates.criteria.InvalidCriteriaException;
 import io.breen.socrates.submission.*;
+import io.breen.socrates.util.Pair;
 import io.breen.socrates.view.DetailOptionPane;
 import io.breen.socrates.view.setup.SetupView;
 
@@ -12,6 +13,7 @@ import java.awt.event.ActionListener;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Logger;
 
 public class SetupController {
@@ -66,59 +68,126 @@ public class SetupController {
                     @Override
                     public void actionPerformed(ActionEvent e) {
                         List<Path> ps = view.chooseSubmissions();
-                        if (ps != null) {
-                            Map<Path, Exception> errors = new HashMap<>();
-                            submissions = new ArrayList<>(ps.size());
-                            for (Path p : ps) {
-                                try {
-                                    submissions.add(Submission.fromDirectory(p));
-                                } catch (IOException x) {
-                                    errors.put(p, x);
-                                    logger.warning("IOE thrown when adding submission: " + x);
-                                } catch (ReceiptFormatException x) {
-                                    errors.put(p, x);
-                                    logger.warning("RFE thrown when adding submission: " + x);
-                                } catch (AlreadyGradedException x) {
-                                    errors.put(p, x);
-                                    logger.info("AGE thrown when adding submission: " + x);
-                                }
-                            }
+                        if (ps != null) loadSubmissions(ps);
+                    }
+                }
+        );
+    }
 
-                            int numErrors = errors.size();
-                            int numAdded = submissions.size();
-                            if (numErrors > 0) {
-                                StringBuilder sb = new StringBuilder();
-                                for (Map.Entry<Path, Exception> x : errors.entrySet())
-                                    sb.append(x.getValue().getMessage() + ": " + x.getKey() + "\n");
-
-                                String msg = "There was a problem opening " + numErrors + "" +
-                                        " submission" + (numErrors == 1 ? "" : "s") + ".";
-                                if (numAdded > 0) {
-                                    msg += " The remaining " + numAdded + " submission" +
-                                            (numAdded == 1 ? " is" : "s are") + " available" +
-                                            " to grade.";
-                                }
-                                String title = (numErrors == 1 ? "Issue" : "Issues") + " " +
-                                        "Opening Submissions";
+    /**
+     * Opens the chosen submissions in the background, showing the progress in the setup view. The
+     * main window is shown as soon as the first submissions are opened, and the remaining
+     * submissions are added to it as they are opened.
+     */
+    private void loadSubmissions(final List<Path> paths) {
+        final int total = paths.size();
+        final Map<Path, Exception> errors = new HashMap<>();
 
-                                DetailOptionPane.showMessageDialog(
-                                        view,
-                                        msg,
-                                        title,
-                                        JOptionPane.INFORMATION_MESSAGE,
-                                        sb.toString()
-                                );
+        view.showProgressCard(total);
+
+        SwingWorker<Void, Object> worker = new SwingWorker<Void, Object>() {
+
+            private int numDone = 0;
+
+            @Override
+            protected Void doInBackground() throws Exception {
+                new SubmissionLoader().loadAll(
+                        paths, new SubmissionLoader.Listener() {
+                            @Override
+                            public void loaded(Path directory, Submission submission) {
+                                publish(submission);
                             }
 
-                            if (numAdded > 0) {
-                                transferToMain();
-                            } else {
-                                logger.warning("no submissions could be added");
+                            @Override
+                            public void failed(Path directory, Exception x) {
+                                publish(new Pair<>(directory, x));
                             }
                         }
+                );
+                return null;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            protected void process(List<Object> chunks) {
+                List<Submission> added = new ArrayList<>(chunks.size());
+
+                for (Object o : chunks) {
+                    if (o instanceof Submission) {
+                        added.add((Submission)o);
+                    } else {
+                        Pair<Path, Exception> error = (Pair<Path, Exception>)o;
+                        errors.put(error.first, error.second);
                     }
                 }
-        );
+
+                numDone += chunks.size();
+                view.setProgress(numDone, total);
+
+                if (added.isEmpty()) return;
+
+                if (submissions == null) {
+                    submissions = new ArrayList<>(added);
+                    main.start(criteriaPath, criteria, added);
+
+                    // keep the progress visible until every submission is open
+                    view.toFront();
+                } else {
+                    submissions.addAll(added);
+                    main.addSubmissions(added);
+                }
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                } catch (InterruptedException | ExecutionException x) {
+                    logger.warning("opening submissions failed: " + x);
+                }
+
+                finishLoading(errors);
+            }
+        };
+
+        worker.execute();
+    }
+
+    private void finishLoading(Map<Path, Exception> errors) {
+        int numErrors = errors.size();
+        int numAdded = submissions == null ? 0 : submissions.size();
+
+        if (numErrors > 0) {
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<Path, Exception> x : errors.entrySet())
+                sb.append(x.getValue().getMessage() + ": " + x.getKey() + "\n");
+
+            String msg = "There was a problem opening " + numErrors + "" +
+                    " submission" + (numErrors == 1 ? "" : "s") + ".";
+            if (numAdded > 0) {
+                msg += " The remaining " + numAdded + " submission" +
+                        (numAdded == 1 ? " is" : "s are") + " available" +
+                        " to grade.";
+            }
+            String title = (numErrors == 1 ? "Issue" : "Issues") + " " +
+                    "Opening Submissions";
+
+            DetailOptionPane.showMessageDialog(
+                    view,
+                    msg,
+                    title,
+                    JOptionPane.INFORMATION_MESSAGE,
+                    sb.toString()
+            );
+        }
+
+        if (numAdded > 0) {
+            view.setVisible(false);
+            view.dispose();
+        } else {
+            logger.warning("no submissions could be added");
+            view.showSubmissionsCard();
+        }
     }
 
     public void start(Path criteriaPath, Criteria criteria, List<Submission> submissions) {
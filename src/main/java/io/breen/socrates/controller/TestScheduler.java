@@ -0,0 +1,713 @@
+package io.breen.socrates.controller;
+
+import io.breen.socrates.Globals;
+import io.breen.socrates.cache.ResultCache;
+import io.breen.socrates.criteria.Criteria;
+import io.breen.socrates.file.File;
+import io.breen.socrates.file.python.PythonFile;
+import io.breen.socrates.model.AutomationStage;
+import io.breen.socrates.model.TestResult;
+import io.breen.socrates.model.event.ConstraintChangedEvent;
+import io.breen.socrates.model.event.StageChangedEvent;
+import io.breen.socrates.model.wrapper.TestWrapperNode;
+import io.breen.socrates.submission.Submission;
+import io.breen.socrates.submission.SubmittedFile;
+import io.breen.socrates.test.*;
+import io.breen.socrates.test.python.*;
+import io.breen.socrates.util.ObservableChangedEvent;
+import io.breen.socrates.util.Observer;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.PlainDocument;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+
+/**
+ * Runs automated tests on a fixed number of worker threads. Each submission has its own queue of
+ * tests, and the workers take tests from the submissions' queues in turn, so that many queued tests
+ * for one submission cannot hold up the tests of another.
+ *
+ * All changes to a TestWrapperNode's automation stage and result are delivered through an Executor
+ * (for the GUI, the event dispatch thread). If a queued node is reset to AutomationStage.NONE, its
+ * test is removed from the queue. If a node is reset while its test is running, the test's result is
+ * ignored.
+ *
+ * Tests may also be prefetched: run in the background, before the grader selects them, so that
+ * their results are ready by the time the grader gets to them. Prefetched tests only run when no
+ * selected tests are waiting, and are taken first from the submission the grader is looking at,
+ * then from the submissions nearest to it. A prefetched node stays at AutomationStage.NONE until its
+ * test starts, and its test is skipped if by then the node has a result or has become constrained.
+ *
+ * When a worker takes a Python evaluation test, it also takes the queued evaluation tests of the
+ * same test group and module, and runs them all with one batch request to a Python worker.
+ *
+ * The results of Cacheable tests are looked up in a ResultCache before the tests are run, and are
+ * stored in it once they finish. Each test writes its transcript and notes to documents of its own,
+ * which are copied to the shared transcript and to the node's notes when its result is delivered.
+ */
+public class TestScheduler implements Observer<TestWrapperNode> {
+
+    /**
+     * Delivers stage and result changes on the Swing event dispatch thread.
+     */
+    public static final Executor EVENT_DISPATCH_THREAD = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            SwingUtilities.invokeLater(command);
+        }
+    };
+
+    private static Logger logger = Logger.getLogger(TestScheduler.class.getName());
+
+    private final Criteria criteria;
+    private final Document transcript;
+    private final Executor deliverer;
+
+    /**
+     * The cache of test results, or null if results are not cached.
+     */
+    private final ResultCache cache;
+
+    /**
+     * For each submission with queued tests, its tests in the order they were scheduled.
+     */
+    private final Map<Submission, LinkedList<TestTask>> queues;
+
+    /**
+     * The submissions with queued tests, in the order the workers will next serve them.
+     */
+    private final LinkedList<Submission> turns;
+
+    /**
+     * The queued (not yet started) task for each node.
+     */
+    private final Map<TestWrapperNode, TestTask> pending;
+
+    /**
+     * For each submission with prefetched tests, its tests in the order they were prefetched.
+     */
+    private final Map<Submission, LinkedList<TestTask>> backgroundQueues;
+
+    /**
+     * The position of each submission in the order in which their tests were first prefetched.
+     */
+    private final Map<Submission, Integer> positions;
+
+    /**
+     * The submission the grader is looking at, or null.
+     */
+    private Submission focus;
+
+    private final Set<TestWrapperNode> observed;
+    private final List<Thread> workers;
+    private boolean shutdown;
+
+    /**
+     * Creates a scheduler whose number of worker threads is given by the "scheduler.threads"
+     * property, or the number of available processors if the property is not set. Results are
+     * cached in the shared ResultCache, if it is enabled.
+     */
+    public TestScheduler(Criteria criteria, Document transcript, Executor deliverer) {
+        this(
+                criteria, transcript, Globals.getIntProperty(
+                        "scheduler.threads", Runtime.getRuntime().availableProcessors()
+                ), deliverer, ResultCache.getShared()
+        );
+    }
+
+    public TestScheduler(Criteria criteria, Document transcript, int numThreads,
+                         Executor deliverer)
+    {
+        this(criteria, transcript, numThreads, deliverer, null);
+    }
+
+    /**
+     * @param cache The cache of test results, or null if results should not be cached
+     */
+    public TestScheduler(Criteria criteria, Document transcript, int numThreads,
+                         Executor deliverer, ResultCache cache)
+    {
+        this.criteria = criteria;
+        this.transcript = transcript;
+        this.deliverer = deliverer;
+        this.cache = cache;
+
+        queues = new HashMap<>();
+        turns = new LinkedList<>();
+        pending = new HashMap<>();
+        backgroundQueues = new HashMap<>();
+        positions = new HashMap<>();
+        observed = new HashSet<>();
+
+        numThreads = Math.max(1, numThreads);
+        logger.info("running automated tests on " + numThreads + " threads");
+
+        workers = new ArrayList<>(numThreads);
+        for (int i = 0; i < numThreads; i++) {
+            Thread t = new Thread("test-runner-" + i) {
+                @Override
+                public void run() {
+                    TestTask task;
+                    while ((task = next()) != null)
+                        runTask(task);
+                }
+            };
+            t.setDaemon(true);
+            workers.add(t);
+            t.start();
+        }
+    }
+
+    /**
+     * Queues an automatable test for execution and sets its node's stage to QUEUED. This must be
+     * called on the thread through which this scheduler delivers stage changes.
+     */
+    public void schedule(TestWrapperNode node, Test automatableTest, File file,
+                         SubmittedFile submittedFile, Submission submission)
+    {
+        if (!(automatableTest instanceof Automatable))
+            throw new IllegalArgumentException("test is not automatable");
+
+        TestTask task = new TestTask(
+                node, automatableTest, file, submittedFile, submission, false
+        );
+
+        if (!observe(node)) return;
+
+        // before the task is visible to the workers, which only start QUEUED nodes
+        node.setAutomationStage(AutomationStage.QUEUED);
+
+        synchronized (this) {
+            TestTask old = pending.put(node, task);
+            if (old != null) removeFromQueue(old);
+
+            LinkedList<TestTask> queue = queues.get(submission);
+            if (queue == null) {
+                queue = new LinkedList<>();
+                queues.put(submission, queue);
+                turns.addLast(submission);
+            }
+
+            queue.addLast(task);
+            notify();
+        }
+    }
+
+    /**
+     * Queues an automatable test to be run in the background, when no scheduled tests are waiting.
+     * The node's stage is not changed until the test starts. If the node already has a queued test,
+     * this method has no effect.
+     */
+    public void prefetch(TestWrapperNode node, Test automatableTest, File file,
+                         SubmittedFile submittedFile, Submission submission)
+    {
+        if (!(automatableTest instanceof Automatable))
+            throw new IllegalArgumentException("test is not automatable");
+
+        TestTask task = new TestTask(
+                node, automatableTest, file, submittedFile, submission, true
+        );
+
+        if (!observe(node)) return;
+
+        synchronized (this) {
+            if (pending.containsKey(node)) return;
+            pending.put(node, task);
+
+            if (!positions.containsKey(submission)) positions.put(submission, positions.size());
+
+            LinkedList<TestTask> queue = backgroundQueues.get(submission);
+            if (queue == null) {
+                queue = new LinkedList<>();
+                backgroundQueues.put(submission, queue);
+            }
+
+            queue.addLast(task);
+            notify();
+        }
+    }
+
+    /**
+     * Sets the submission the grader is looking at. Prefetched tests are taken from this submission
+     * first, and then from the submissions nearest to it.
+     */
+    public synchronized void focus(Submission submission) {
+        focus = submission;
+    }
+
+    /**
+     * Starts observing the specified node, if we are not already. Returns false if the scheduler
+     * was shut down.
+     */
+    private boolean observe(TestWrapperNode node) {
+        boolean firstTime;
+        synchronized (this) {
+            if (shutdown) return false;
+            firstTime = observed.add(node);
+        }
+
+        // not while holding our lock, since the node notifies us while holding its own
+        if (firstTime) node.addObserver(this);
+
+        return true;
+    }
+
+    /**
+     * Removes the queued test for the specified node, if it has not started yet.
+     */
+    public synchronized void cancel(TestWrapperNode node) {
+        TestTask task = pending.remove(node);
+        if (task != null) removeFromQueue(task);
+    }
+
+    /**
+     * Stops the worker threads once their current tests finish. Queued tests are not run.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+
+        for (TestTask task : pending.values())
+            task.cancelled = true;
+
+        pending.clear();
+        queues.clear();
+        backgroundQueues.clear();
+        turns.clear();
+        notifyAll();
+    }
+
+    @Override
+    public void objectChanged(ObservableChangedEvent<TestWrapperNode> event) {
+        if (event instanceof StageChangedEvent) {
+            StageChangedEvent e = (StageChangedEvent)event;
+            if (e.newStage == AutomationStage.NONE) cancel(e.source);
+
+        } else if (event instanceof ConstraintChangedEvent) {
+            ConstraintChangedEvent e = (ConstraintChangedEvent)event;
+            if (e.isNowConstrained) cancelPrefetch(e.source);
+        }
+    }
+
+    private synchronized void cancelPrefetch(TestWrapperNode node) {
+        TestTask task = pending.get(node);
+        if (task != null && task.background) {
+            pending.remove(node);
+            removeFromQueue(task);
+        }
+    }
+
+    /**
+     * Must be called while holding this object's lock.
+     */
+    private void removeFromQueue(TestTask task) {
+        task.cancelled = true;
+
+        Map<Submission, LinkedList<TestTask>> map = task.background ? backgroundQueues : queues;
+
+        LinkedList<TestTask> queue = map.get(task.submission);
+        if (queue == null) return;
+
+        queue.remove(task);
+
+        if (queue.isEmpty()) {
+            map.remove(task.submission);
+            if (!task.background) turns.remove(task.submission);
+        }
+    }
+
+    /**
+     * Waits for a queued task and removes it from its queue, taking a task from the submission
+     * whose turn it is. Prefetched tasks are only taken if no other tasks are queued. Returns null
+     * if the scheduler was shut down.
+     */
+    private synchronized TestTask next() {
+        while (turns.isEmpty() && backgroundQueues.isEmpty() && !shutdown) {
+            try {
+                wait();
+            } catch (InterruptedException x) {
+                return null;
+            }
+        }
+
+        if (shutdown) return null;
+
+        TestTask task;
+        if (!turns.isEmpty()) {
+            Submission submission = turns.removeFirst();
+            LinkedList<TestTask> queue = queues.get(submission);
+            task = queue.removeFirst();
+
+            if (queue.isEmpty()) queues.remove(submission);
+            else turns.addLast(submission);
+
+        } else {
+            Submission submission = nearestToFocus();
+            LinkedList<TestTask> queue = backgroundQueues.get(submission);
+            task = queue.removeFirst();
+
+            if (queue.isEmpty()) backgroundQueues.remove(submission);
+        }
+
+        if (pending.get(task.node) == task) pending.remove(task.node);
+
+        return task;
+    }
+
+    /**
+     * Returns the submission with prefetched tasks that is nearest to the focused submission. Of
+     * two equally near submissions, the later one is chosen, since graders tend to move forward.
+     * Must be called while holding this object's lock.
+     */
+    private Submission nearestToFocus() {
+        Integer focusPosition = focus == null ? null : positions.get(focus);
+        int from = focusPosition == null ? 0 : focusPosition;
+
+        Submission nearest = null;
+        int nearestDistance = Integer.MAX_VALUE;
+        boolean nearestIsLater = false;
+
+        for (Submission s : backgroundQueues.keySet()) {
+            int position = positions.get(s);
+            int distance = Math.abs(position - from);
+            boolean isLater = position >= from;
+
+            if (distance < nearestDistance || (distance == nearestDistance && isLater &&
+                    !nearestIsLater))
+            {
+                nearest = s;
+                nearestDistance = distance;
+                nearestIsLater = isLater;
+            }
+        }
+
+        return nearest;
+    }
+
+    private void runTask(TestTask t) {
+        if (!start(t) || replayCached(t)) return;
+
+        if (t.automatableTest instanceof PythonEvalTest) {
+            List<TestTask> batch = new ArrayList<>();
+            batch.add(t);
+
+            for (TestTask sibling : takeSiblings(t))
+                if (start(sibling) && !replayCached(sibling)) batch.add(sibling);
+
+            runBatch(batch);
+            return;
+        }
+
+        TestResult result = null;
+        AutomationStage stage;
+        try {
+            Automatable automatableTest = (Automatable)t.automatableTest;
+
+            boolean passed = automatableTest.shouldPass(
+                    t.file, t.submittedFile, t.submission, criteria, t.transcript, t.notes
+            );
+
+            result = passed ? TestResult.PASSED : TestResult.FAILED;
+            stage = AutomationStage.FINISHED_NORMAL;
+
+        } catch (CannotBeAutomatedException x) {
+            logger.warning(t.automatableTest + ": cannot be automated: " + x);
+            stage = AutomationStage.FINISHED_ERROR;
+
+        } catch (AutomationFailureException | RuntimeException x) {
+            logger.severe(t.automatableTest + ": failure automating test: " + x);
+            stage = AutomationStage.FINISHED_ERROR;
+        }
+
+        finish(t, result, stage);
+    }
+
+    /**
+     * Removes from the queue of the specified task the other tasks that evaluate the same Python
+     * module, and whose tests are in the same test group. Their tests can be run in one round trip
+     * to a Python worker.
+     */
+    private synchronized List<TestTask> takeSiblings(TestTask t) {
+        List<TestTask> siblings = new LinkedList<>();
+
+        Map<Submission, LinkedList<TestTask>> map = t.background ? backgroundQueues : queues;
+
+        LinkedList<TestTask> queue = map.get(t.submission);
+        if (queue == null) return siblings;
+
+        Iterator<TestTask> it = queue.iterator();
+        while (it.hasNext()) {
+            TestTask s = it.next();
+
+            if (s.submittedFile == t.submittedFile &&
+                    s.automatableTest instanceof PythonEvalTest &&
+                    s.node.getParent() == t.node.getParent())
+            {
+                it.remove();
+                if (pending.get(s.node) == s) pending.remove(s.node);
+                siblings.add(s);
+            }
+        }
+
+        if (queue.isEmpty()) {
+            map.remove(t.submission);
+            if (!t.background) turns.remove(t.submission);
+        }
+
+        return siblings;
+    }
+
+    /**
+     * Runs the tests of started tasks that evaluate the same Python module, using a single batch of
+     * evaluations.
+     */
+    private void runBatch(List<TestTask> batch) {
+        TestTask first = batch.get(0);
+        PythonFile parent = (PythonFile)first.file;
+
+        List<TestTask> evaluated = new ArrayList<>(batch.size());
+        List<PythonInspector.Evaluation> evaluations = new ArrayList<>(batch.size());
+
+        for (TestTask t : batch) {
+            try {
+                evaluations.add(((PythonEvalTest)t.automatableTest).getEvaluation(parent));
+                evaluated.add(t);
+            } catch (RuntimeException x) {
+                logger.severe(t.automatableTest + ": failure automating test: " + x);
+                finish(t, null, AutomationStage.FINISHED_ERROR);
+            }
+        }
+
+        if (evaluated.isEmpty()) return;
+
+        logger.fine("evaluating " + evaluated.size() + " tests of " + first.submittedFile);
+
+        List<PythonInspector.EvalResult> results;
+        try {
+            PythonInspector inspector = new PythonInspector(first.submittedFile.fullPath);
+            results = inspector.evaluateAll(evaluations);
+
+        } catch (PythonError x) {
+            logger.warning(first.submittedFile + ": tests cannot be automated: " + x);
+            for (TestTask t : evaluated)
+                finish(t, null, AutomationStage.FINISHED_ERROR);
+            return;
+
+        } catch (IOException | RuntimeException x) {
+            logger.severe(first.submittedFile + ": failure automating tests: " + x);
+            for (TestTask t : evaluated)
+                finish(t, null, AutomationStage.FINISHED_ERROR);
+            return;
+        }
+
+        for (int i = 0; i < evaluated.size(); i++) {
+            TestTask t = evaluated.get(i);
+            PythonEvalTest test = (PythonEvalTest)t.automatableTest;
+
+            try {
+                boolean passed = test.passes(evaluations.get(i), results.get(i), t.transcript);
+                finish(
+                        t,
+                        passed ? TestResult.PASSED : TestResult.FAILED,
+                        AutomationStage.FINISHED_NORMAL
+                );
+
+            } catch (CannotBeAutomatedException x) {
+                logger.warning(test + ": cannot be automated: " + x);
+                finish(t, null, AutomationStage.FINISHED_ERROR);
+
+            } catch (RuntimeException x) {
+                logger.severe(test + ": failure automating test: " + x);
+                finish(t, null, AutomationStage.FINISHED_ERROR);
+            }
+        }
+    }
+
+    /**
+     * Looks up the result of a started task's test in the cache. If it is found, the result is
+     * delivered as if the test had run, and this method returns true.
+     */
+    private boolean replayCached(TestTask t) {
+        if (cache == null || criteria == null || criteria.digest == null) return false;
+        if (!(t.automatableTest instanceof Cacheable) || t.submittedFile == null) return false;
+
+        try {
+            t.cacheKey = cache.keyFor(
+                    criteria.digest, identify(t), t.submittedFile, t.submission
+            );
+        } catch (IOException x) {
+            logger.warning("cannot compute cache key for " + t.submittedFile + ": " + x);
+            return false;
+        }
+
+        ResultCache.Entry entry = cache.get(t.cacheKey);
+        if (entry == null) return false;
+
+        logger.fine(t.automatableTest + ": using cached result");
+
+        t.cached = true;
+        append(t.transcript, entry.transcript);
+        append(t.notes, entry.notes);
+
+        finish(
+                t,
+                entry.passed ? TestResult.PASSED : TestResult.FAILED,
+                AutomationStage.FINISHED_NORMAL
+        );
+
+        return true;
+    }
+
+    /**
+     * Returns a string identifying the test of a task within the criteria: the path of its file,
+     * the position of its node in the file's tree of tests, and the type of the test.
+     */
+    private static String identify(TestTask t) {
+        return t.file.path + t.node.getPosition() + ":" + t.automatableTest.getClass().getName();
+    }
+
+    private static String textOf(Document doc) {
+        try {
+            return doc.getText(0, doc.getLength());
+        } catch (BadLocationException x) {
+            return "";
+        }
+    }
+
+    private static void append(Document doc, String s) {
+        if (s == null || s.isEmpty()) return;
+
+        try {
+            doc.insertString(doc.getLength(), s, null);
+        } catch (BadLocationException ignored) {}
+    }
+
+    /**
+     * Moves the node of a task that was taken from its queue to AutomationStage.STARTED, if the
+     * node still needs its test to run. Returns whether the task should be run.
+     */
+    private boolean start(final TestTask t) {
+        return deliverAndWait(
+                new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        if (t.cancelled) return false;
+
+                        if (t.background) {
+                            if (t.node.getAutomationStage() != AutomationStage.NONE ||
+                                    t.node.getResult() != TestResult.NONE ||
+                                    t.node.isConstrained())
+                                return false;
+
+                        } else if (t.node.getAutomationStage() != AutomationStage.QUEUED) {
+                            return false;
+                        }
+
+                        t.node.setAutomationStage(AutomationStage.STARTED);
+                        return true;
+                    }
+                }
+        );
+    }
+
+    /**
+     * Delivers the result of a started task, and caches it if the test finished normally. The
+     * result may be null if the test could not be automated.
+     */
+    private void finish(final TestTask t, final TestResult result, final AutomationStage stage) {
+        deliverer.execute(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        /*
+                         * Anything the test wrote to its documents before it finished has been
+                         * written by now, since it was written through the same thread.
+                         */
+                        String transcriptText = textOf(t.transcript);
+                        String notesText = textOf(t.notes);
+
+                        append(transcript, transcriptText);
+
+                        // the node was reset while the test was running
+                        if (t.node.getAutomationStage() != AutomationStage.STARTED) return;
+
+                        if (t.cacheKey != null && !t.cached && result != null &&
+                                stage == AutomationStage.FINISHED_NORMAL)
+                        {
+                            cache.put(
+                                    t.cacheKey, new ResultCache.Entry(
+                                            result == TestResult.PASSED, transcriptText, notesText
+                                    )
+                            );
+                        }
+
+                        append(t.node.notes, notesText);
+
+                        if (result != null) t.node.setResult(result);
+                        t.node.setAutomationStage(stage);
+                    }
+                }
+        );
+    }
+
+    private boolean deliverAndWait(Callable<Boolean> callable) {
+        FutureTask<Boolean> future = new FutureTask<>(callable);
+        deliverer.execute(future);
+
+        try {
+            return future.get();
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException x) {
+            logger.severe("could not start automated test: " + x.getCause());
+            return false;
+        }
+    }
+
+    private static class TestTask {
+
+        public final TestWrapperNode node;
+        public final Test automatableTest;
+        public final File file;
+        public final SubmittedFile submittedFile;
+        public final Submission submission;
+
+        /**
+         * Whether this task was prefetched, rather than scheduled.
+         */
+        public final boolean background;
+
+        public volatile boolean cancelled;
+
+        /**
+         * The documents to which the test writes its transcript and notes.
+         */
+        public final Document transcript = new PlainDocument();
+        public final Document notes = new PlainDocument();
+
+        /**
+         * The key of the test's result in the cache, or null if its result is not cached.
+         */
+        public volatile String cacheKey;
+
+        /**
+         * Whether the result was taken from the cache.
+         */
+        public volatile boolean cached;
+
+        public TestTask(TestWrapperNode node, Test automatableTest, File file,
+                        SubmittedFile submittedFile, Submission submission, boolean background)
+        {
+            this.node = node;
+            this.automatableTest = automatableTest;
+            this.file = file;
+            this.submittedFile = submittedFile;
+            this.submission = submission;
+            this.background = background;
+        }
+    }
+}
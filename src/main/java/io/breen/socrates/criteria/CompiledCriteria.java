@@ -0,0 +1,158 @@
+package io.breen.socrates.criteria;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.CodeSource;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Reads and writes compiled criteria: a criteria's object graph, as it is after its files have
+ * built their test trees, serialized to a compressed file next to the criteria file or package it
+ * was loaded from. Loading a compiled criteria skips parsing the YAML and building the test trees.
+ *
+ * A compiled criteria starts with a header holding the format version, the build of Socrates that
+ * wrote it and the digest of the criteria file or package it was compiled from. It is only used if
+ * it was written by this build, and the digest is that of the current file. The classes of the
+ * criteria declare their serialVersionUIDs, so a compiled criteria is never read by a different
+ * build by accident: a test tree built by other code is not mistaken for the current one.
+ */
+final class CompiledCriteria {
+
+    /**
+     * The extension appended to the name of a criteria file or package to name its compiled
+     * criteria.
+     */
+    static final String EXTENSION = "scc";
+
+    private static final String MAGIC = "socrates compiled criteria";
+    private static final int VERSION = 2;
+
+    /**
+     * Identifies the build of Socrates that is running, or is null if it cannot be identified.
+     */
+    private static final String BUILD = identifyBuild();
+
+    private static Logger logger = Logger.getLogger(CompiledCriteria.class.getName());
+
+    private CompiledCriteria() {}
+
+    /**
+     * Returns the path of the compiled criteria for the specified criteria file or package.
+     */
+    static Path pathFor(Path source) {
+        return source.resolveSibling(source.getFileName() + "." + EXTENSION);
+    }
+
+    /**
+     * Returns the criteria compiled from the criteria file or package with the specified digest,
+     * or null if there is no compiled criteria at the specified path, or it is not fresh or
+     * cannot be read.
+     */
+    static Criteria read(Path path, String digest) {
+        if (!Files.isRegularFile(path)) return null;
+
+        try (ObjectInputStream in = new ObjectInputStream(
+                new GZIPInputStream(new BufferedInputStream(Files.newInputStream(path)))
+        )) {
+            if (!in.readUTF().equals(MAGIC) || in.readInt() != VERSION) {
+                logger.info("ignoring compiled criteria in unknown format: " + path);
+                return null;
+            }
+
+            if (BUILD == null || !in.readUTF().equals(BUILD)) {
+                logger.info("ignoring compiled criteria from another build: " + path);
+                return null;
+            }
+
+            if (!in.readUTF().equals(digest)) {
+                logger.info("ignoring stale compiled criteria: " + path);
+                return null;
+            }
+
+            return (Criteria)in.readObject();
+
+        } catch (IOException | ClassNotFoundException | ClassCastException x) {
+            logger.warning("could not read compiled criteria " + path + ": " + x);
+            return null;
+        }
+    }
+
+    /**
+     * Writes a compiled criteria. The file is written under a temporary name and then renamed, so
+     * that another grader never reads a partly written file.
+     */
+    static void write(Criteria criteria, String digest, Path path) throws IOException {
+        if (BUILD == null) throw new IOException("cannot identify this build of Socrates");
+
+        write(criteria, digest, path, BUILD);
+    }
+
+    /**
+     * Writes a compiled criteria as if it were written by the specified build.
+     */
+    static void write(Criteria criteria, String digest, Path path, String build)
+            throws IOException
+    {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (ObjectOutputStream out = new ObjectOutputStream(
+                new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))
+        )) {
+            out.writeUTF(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(build);
+            out.writeUTF(digest);
+            out.writeObject(criteria);
+        }
+
+        try {
+            Files.move(
+                    temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE
+            );
+        } catch (AtomicMoveNotSupportedException x) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Identifies the running build by the version in its JAR's manifest, if there is one, and by
+     * the time its classes were last built: the modification time of the JAR, or of the newest
+     * class file in the directory Socrates was loaded from.
+     */
+    private static String identifyBuild() {
+        try {
+            CodeSource source = CompiledCriteria.class.getProtectionDomain().getCodeSource();
+            if (source == null) return null;
+
+            Path location = Paths.get(source.getLocation().toURI());
+
+            final long[] newest = {Files.getLastModifiedTime(location).toMillis()};
+
+            if (Files.isDirectory(location)) {
+                Files.walkFileTree(
+                        location, new SimpleFileVisitor<Path>() {
+                            @Override
+                            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                                long modified = attrs.lastModifiedTime().toMillis();
+                                newest[0] = Math.max(newest[0], modified);
+                                return FileVisitResult.CONTINUE;
+                            }
+                        }
+                );
+            }
+
+            String version = CompiledCriteria.class.getPackage().getImplementationVersion();
+            return (version == null ? "" : version) + "@" + newest[0];
+
+        } catch (IOException | URISyntaxException | SecurityException |
+                IllegalArgumentException | FileSystemNotFoundException x)
+        {
+            logger.warning("cannot identify this build, so criteria will not be compiled: " + x);
+            return null;
+        }
+    }
+}
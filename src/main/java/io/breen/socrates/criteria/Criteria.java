@@ -1,5 +1,6 @@
 package io.breen.socrates.criteria;
 
+import io.breen.socrates.Globals;
 import io.breen.socrates.file.*;
 import io.breen.socrates.file.java.JavaFile;
 import io.breen.socrates.file.logicly.LogiclyFile;
@@ -8,6 +9,7 @@ import io.breen.socrates.file.python.PythonFile;
 import io.breen.socrates.test.TestGroup;
 import io.breen.socrates.test.any.ReviewTest;
 import io.breen.socrates.test.any.ScriptTest;
+import io.breen.socrates.util.Digests;
 import org.yaml.snakeyaml.TypeDescription;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.constructor.Constructor;
@@ -15,13 +17,11 @@ import org.yaml.snakeyaml.error.YAMLException;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.io.Serializable;
 import java.nio.charset.Charset;
 import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 import java.util.logging.Logger;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 /**
  * A class representing a criteria file (or package) containing specifications of parts of the
@@ -29,7 +29,9 @@ import java.util.zip.ZipFile;
  * packages may also contain other resources that are needed to execute the tests specified in a
  * criteria file (e.g., hooks, scripts, or static files).
  */
-public class Criteria {
+public class Criteria implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     public static final String[] CRITERIA_FILE_EXTENSIONS = {"scf", "yml"};
     public static final String[] CRITERIA_PACKAGE_EXTENSIONS = {"scp", "zip"};
@@ -49,14 +51,21 @@ public class Criteria {
      */
     public List<File> files;
 
-    public Map<String, Path> staticResources;
-    public Map<String, Path> scripts;
+    public transient Map<String, Path> staticResources;
+    public transient Map<String, Path> scripts;
 
     /**
-     * If this criteria was created from a criteria package, this field stores the file system
-     * location to which the archive was "unzipped".
+     * The SHA-256 digest of the criteria file (or package) from which this criteria was loaded, or
+     * null if it was not loaded from a file. Results of tests are only reused for a criteria with
+     * the same digest.
      */
-    private Path tempDir;
+    public transient String digest;
+
+    /**
+     * If this criteria was created from a criteria package, the package, which knows the file
+     * system location to which the archive was "unzipped".
+     */
+    private transient CriteriaPackage criteriaPackage;
 
     /**
      * This empty constructor is used by SnakeYAML.
@@ -69,73 +78,82 @@ public class Criteria {
     }
 
     public static Criteria loadFromPath(Path path) throws IOException, InvalidCriteriaException {
+        return load(path, true, Globals.getBooleanProperty("criteria.extractStatic", true));
+    }
+
+    /**
+     * Loads the criteria file or package at the specified path, ignoring any compiled criteria,
+     * and writes its compiled criteria next to it. Later calls to loadFromPath() use the compiled
+     * criteria, as long as the criteria file or package does not change.
+     *
+     * @return The path of the compiled criteria
+     */
+    public static Path compile(Path path) throws IOException, InvalidCriteriaException {
+        Criteria c = load(path, false, false);
+
+        Path compiled = CompiledCriteria.pathFor(path);
+        try {
+            CompiledCriteria.write(c, c.digest, compiled);
+        } finally {
+            // the static resources are not needed, so they are never extracted
+            if (c.criteriaPackage != null) c.criteriaPackage.close();
+        }
+
+        return compiled;
+    }
+
+    private static Criteria load(Path path, boolean useCompiled, boolean extractStatic)
+            throws IOException, InvalidCriteriaException
+    {
         String fileName = path.getFileName().toString();
+        String digest = Digests.of(path);
+
+        Criteria compiled = null;
+        if (useCompiled) {
+            compiled = CompiledCriteria.read(CompiledCriteria.pathFor(path), digest);
+            if (compiled != null) logger.info("using compiled criteria for " + path);
+        }
 
         Criteria c;
 
         if (looksLikeCriteriaFile(fileName)) {
-            return loadCriteriaFileFromPath(path);
+            c = compiled != null ? compiled : loadCriteriaFileFromPath(path);
 
         } else if (looksLikeCriteriaPackage(fileName)) {
             Path tempDir = Files.createTempDirectory(null);
 
             logger.info("using temporary directory for criteria package: " + tempDir);
 
-            unzip(path, tempDir);
-
-            // need this array because the variable has to be final...
-            final Path[] criteriaPath = new Path[] {null};
-
-            final Map<String, Path> staticResources = new HashMap<>();
-            final Map<String, Path> scripts = new HashMap<>();
-
-            Files.walkFileTree(
-                    tempDir, new SimpleFileVisitor<Path>() {
-                        @Override
-                        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
-                                throws IOException
-                        {
-                            String fileName = file.toString();
-                            if (looksLikeCriteriaFile(fileName)) {
-                                criteriaPath[0] = file;
-                            } else if (looksLikeStaticResource(fileName)) {
-                                staticResources.put(file.getFileName().toString(), file);
-                            } else if (looksLikeScript(fileName)) {
-                                scripts.put(file.getFileName().toString(), file);
-                            }
-
-                            return FileVisitResult.CONTINUE;
-                        }
-                    }
-            );
-
-            if (criteriaPath[0] == null)
-                throw new InvalidCriteriaException("could not find criteria file in package");
-
-            c = loadCriteriaFileFromPath(criteriaPath[0]);
-            c.staticResources = staticResources;
-            c.scripts = scripts;
-            c.tempDir = tempDir;
+            // the scripts and static resources are needed even if the criteria was compiled
+            CriteriaPackage pkg = CriteriaPackage.extract(path, tempDir, extractStatic);
+
+            try {
+                if (pkg.criteriaFile == null)
+                    throw new InvalidCriteriaException("could not find criteria file in package");
+
+                c = compiled != null ? compiled : loadCriteriaFileFromPath(pkg.criteriaFile);
+
+            } catch (IOException | InvalidCriteriaException x) {
+                pkg.close();
+                throw x;
+            }
+
+            c.staticResources = pkg.staticResources;
+            c.scripts = pkg.scripts;
+            c.criteriaPackage = pkg;
 
         } else {
             logger.warning("unable to determine criteria type from extension");
-            c = loadCriteriaFileFromPath(path);
+            c = compiled != null ? compiled : loadCriteriaFileFromPath(path);
 
         }
 
         checkCriteriaObject(c);
+        c.digest = digest;
         return c;
     }
 
-    private static boolean looksLikeStaticResource(String fileName) {
-        return Paths.get(fileName).getParent().getFileName().toString().equals("static");
-    }
-
-    private static boolean looksLikeScript(String fileName) {
-        return Paths.get(fileName).getParent().getFileName().toString().equals("scripts");
-    }
-
-    private static boolean looksLikeCriteriaFile(String fileName) {
+    static boolean looksLikeCriteriaFile(String fileName) {
         for (String ext : CRITERIA_FILE_EXTENSIONS)
             if (fileName.endsWith("." + ext)) return true;
         return false;
@@ -243,6 +261,11 @@ public class Criteria {
                         io.breen.socrates.test.logicly.CircuitEvalTest.class, "!test:logicly:eval"
                 )
         );
+        cons.addTypeDescription(
+                new TypeDescription(
+                        io.breen.socrates.test.logicly.TruthTableTest.class, "!test:logicly:table"
+                )
+        );
 
          /*
          * JFLAP file type
@@ -265,24 +288,14 @@ public class Criteria {
         return c;
     }
 
-    private static void unzip(Path zipPath, Path destDir) throws IOException {
-        ZipFile file = new ZipFile(zipPath.toFile());
-
-        Enumeration<? extends ZipEntry> entries = file.entries();
-        while (entries.hasMoreElements()) {
-            ZipEntry entry = entries.nextElement();
-            String entryName = entry.getName();
-            Path entryDest = Paths.get(destDir.toString(), entryName);
-
-            if (entry.isDirectory()) Files.createDirectory(entryDest);
-            else Files.copy(file.getInputStream(entry), entryDest);
-        }
-
-        file.close();
-    }
-
-    public Path getStaticDir() {
-        return Paths.get(tempDir.toString(), "static");
+    /**
+     * Returns the directory holding the static resources of the criteria package from which this
+     * criteria was loaded.
+     *
+     * @throws IOException If the static resources had to be extracted, and could not be
+     */
+    public Path getStaticDir() throws IOException {
+        return criteriaPackage.getStaticDir();
     }
 
     public File getFileByLocalPath(Path path) {
@@ -0,0 +1,237 @@
+package io.breen.socrates.criteria;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The contents of a criteria package: a ZIP archive holding a criteria file, a "static" directory
+ * of resources and a "scripts" directory of scripts. The archive is extracted to a temporary
+ * directory in a single pass over its entries, in which each entry is also classified by its name.
+ * Since most of the time is spent writing files, the entries are written on a pool of threads.
+ * Entries whose names would place them outside the temporary directory are rejected.
+ *
+ * The static resources may instead be left in the archive, in which case they are read through a
+ * ZIP file system, and are only extracted when the static directory is first asked for. The ZIP
+ * file system is closed once nothing is left to read from it.
+ */
+final class CriteriaPackage {
+
+    /**
+     * The extracted criteria file, or null if the archive has no criteria file.
+     */
+    Path criteriaFile;
+
+    /**
+     * The static resources, by file name. These paths are in the ZIP file system until the static
+     * resources are extracted.
+     */
+    final Map<String, Path> staticResources = new HashMap<>();
+
+    /**
+     * The extracted scripts, by file name.
+     */
+    final Map<String, Path> scripts = new HashMap<>();
+
+    private final Path destDir;
+
+    /**
+     * If the static resources were not extracted, the ZIP file system they are read from, and for
+     * each of them, the path it would have been extracted to.
+     */
+    private FileSystem archive;
+    private final Map<Path, Path> unextracted = new HashMap<>();
+
+    private CriteriaPackage(Path destDir) {
+        this.destDir = destDir;
+    }
+
+    /**
+     * Extracts a criteria package to the specified directory.
+     *
+     * @param extractStatic Whether the static resources should be extracted too
+     *
+     * @throws InvalidCriteriaException If an entry's name would place it outside the directory
+     */
+    static CriteriaPackage extract(Path zipPath, Path destDir, boolean extractStatic)
+            throws IOException, InvalidCriteriaException
+    {
+        destDir = destDir.toAbsolutePath().normalize();
+        CriteriaPackage pkg = new CriteriaPackage(destDir);
+
+        if (!extractStatic) pkg.archive = FileSystems.newFileSystem(zipPath, null);
+
+        List<ZipEntry> entries = new ArrayList<>();
+        List<Path> destinations = new ArrayList<>();
+
+        try (ZipFile zip = new ZipFile(zipPath.toFile())) {
+            Enumeration<? extends ZipEntry> e = zip.entries();
+            while (e.hasMoreElements()) {
+                ZipEntry entry = e.nextElement();
+                String name = entry.getName();
+
+                Path dest = destDir.resolve(name).normalize();
+                if (!dest.startsWith(destDir) || dest.equals(destDir)) {
+                    throw new InvalidCriteriaException(
+                            "criteria package entry is outside of the package: " + name
+                    );
+                }
+
+                // directories are created as they are needed
+                if (entry.isDirectory()) continue;
+
+                String fileName = dest.getFileName().toString();
+
+                if (Criteria.looksLikeCriteriaFile(name)) {
+                    pkg.criteriaFile = dest;
+
+                } else if (isIn(dest, "static")) {
+                    if (!extractStatic) {
+                        Path inArchive = pkg.archive.getPath(name);
+                        pkg.staticResources.put(fileName, inArchive);
+                        pkg.unextracted.put(inArchive, dest);
+                        continue;
+                    }
+
+                    pkg.staticResources.put(fileName, dest);
+
+                } else if (isIn(dest, "scripts")) {
+                    pkg.scripts.put(fileName, dest);
+                }
+
+                entries.add(entry);
+                destinations.add(dest);
+            }
+
+            extractAll(zip, entries, destinations);
+
+            // the archive has no static resources to read later
+            if (pkg.unextracted.isEmpty()) pkg.close();
+
+        } catch (IOException | InvalidCriteriaException x) {
+            pkg.close();
+            throw x;
+        }
+
+        return pkg;
+    }
+
+    private static boolean isIn(Path path, String dirName) {
+        Path parent = path.getParent();
+        return parent != null && parent.getFileName().toString().equals(dirName);
+    }
+
+    private static void extractAll(final ZipFile zip, List<ZipEntry> entries,
+                                   List<Path> destinations) throws IOException
+    {
+        int numThreads = Math.min(Runtime.getRuntime().availableProcessors(), entries.size());
+
+        if (numThreads <= 1) {
+            for (int i = 0; i < entries.size(); i++)
+                extract(zip, entries.get(i), destinations.get(i));
+
+            return;
+        }
+
+        final AtomicInteger threadNum = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(
+                numThreads, new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "criteria-unzip-" + threadNum.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                }
+        );
+
+        try {
+            List<Future<Void>> futures = new ArrayList<>(entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                final ZipEntry entry = entries.get(i);
+                final Path dest = destinations.get(i);
+
+                futures.add(
+                        pool.submit(
+                                new Callable<Void>() {
+                                    @Override
+                                    public Void call() throws IOException {
+                                        extract(zip, entry, dest);
+                                        return null;
+                                    }
+                                }
+                        )
+                );
+            }
+
+            for (Future<Void> f : futures) {
+                try {
+                    f.get();
+                } catch (ExecutionException x) {
+                    Throwable cause = x.getCause();
+                    if (cause instanceof IOException) throw (IOException)cause;
+                    throw new RuntimeException(cause);
+                }
+            }
+
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted extracting criteria package");
+
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Writes one entry (ZipFile allows its entries to be read by several threads at once).
+     */
+    private static void extract(ZipFile zip, ZipEntry entry, Path dest) throws IOException {
+        Files.createDirectories(dest.getParent());
+
+        try (InputStream in = zip.getInputStream(entry)) {
+            Files.copy(in, dest);
+        }
+    }
+
+    /**
+     * Returns the directory holding the static resources, extracting them first if they were left
+     * in the archive. The static resources then refer to the extracted files, and the archive is
+     * closed.
+     */
+    synchronized Path getStaticDir() throws IOException {
+        if (!unextracted.isEmpty()) {
+            for (Map.Entry<Path, Path> e : unextracted.entrySet()) {
+                Files.createDirectories(e.getValue().getParent());
+                Files.copy(e.getKey(), e.getValue(), StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            for (Map.Entry<String, Path> e : staticResources.entrySet()) {
+                Path dest = unextracted.get(e.getValue());
+                if (dest != null) e.setValue(dest);
+            }
+
+            unextracted.clear();
+            close();
+        }
+
+        return destDir.resolve("static");
+    }
+
+    /**
+     * Closes the ZIP file system, if it is still open. Any static resources left in the archive
+     * can no longer be read.
+     */
+    void close() throws IOException {
+        if (archive != null) {
+            archive.close();
+            archive = null;
+        }
+    }
+}
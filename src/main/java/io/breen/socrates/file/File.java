@@ -5,6 +5,7 @@ import io.breen.socrates.Verifiable;
 import io.breen.socrates.test.TestGroup;
 import io.breen.socrates.test.any.LateSubmissionTest;
 
+import java.io.Serializable;
 import java.util.*;
 
 /**
@@ -13,7 +14,9 @@ import java.util.*;
  *
  * @see io.breen.socrates.criteria.Criteria
  */
-public abstract class File implements Verifiable, PostConstructionAction {
+public abstract class File implements Verifiable, PostConstructionAction, Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     /**
      * The relative path from the root of any student's submission directory specifying where the
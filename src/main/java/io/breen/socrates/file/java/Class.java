@@ -1,12 +1,15 @@
 package io.breen.socrates.file.java;
 
+import java.io.Serializable;
 import java.util.Collections;
 import java.util.List;
 
 /**
  * A class representing a Java class specified in the criteria file.
  */
-public class Class {
+public class Class implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     public String name;
     public double pointValue;
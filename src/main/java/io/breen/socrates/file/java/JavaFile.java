@@ -15,6 +15,8 @@ import java.util.*;
  */
 public final class JavaFile extends File implements PostConstructionAction {
 
+    private static final long serialVersionUID = 1L;
+
     public List<Class> classes = Collections.emptyList();
 
     /**
@@ -58,7 +60,7 @@ public final class JavaFile extends File implements PostConstructionAction {
 
                 methodRoots.add(
                         new TestGroup(
-                                Arrays.asList(
+                                Arrays.<java.lang.Object>asList(
                                         methodExistsTest, new TestGroup(m.tests, 0, 0.0)
                                 ), 1, 0.0
                         )
@@ -73,7 +75,7 @@ public final class JavaFile extends File implements PostConstructionAction {
 
             tests.add(
                     new TestGroup(
-                            Arrays.asList(
+                            Arrays.<java.lang.Object>asList(
                                     classExistsTest, new TestGroup(methodRoots, 0, 0.0)
                             ), 1, 0.0
                     )
@@ -1,11 +1,14 @@
 package io.breen.socrates.file.java;
 
+import java.io.Serializable;
 import java.util.List;
 
 /**
  * A class representing a Java method specified in the criteria file.
  */
-public class Method {
+public class Method implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     public String name;
     public double pointValue;
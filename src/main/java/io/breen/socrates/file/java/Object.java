@@ -1,11 +1,17 @@
 package io.breen.socrates.file.java;
 
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Instances of this class represent an object that should be passed into a Java method. They are
  * created when the criteria file is read in. Each object has an associated Type, and will be
  * converted to an actual Java object of the "real" type before a Java method is actually called.
  */
-public class Object {
+public class Object implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     /**
      * The value of this object, produced by SnakeYAML.
@@ -18,6 +24,12 @@ public class Object {
      */
     public Type type;
 
+    /**
+     * The fields of this object, if it is the object a method is called on (in which case the
+     * value and type are not used). Only the fields given here are set or checked.
+     */
+    public Map<String, Object> fields;
+
     /**
      * This empty constructor is used by SnakeYAML.
      */
@@ -48,4 +60,17 @@ public class Object {
 
         throw new RuntimeException("could not convert to Java object");
     }
+
+    /**
+     * Returns the fields of this object, each converted with toJavaObject().
+     */
+    public Map<String, java.lang.Object> toJavaFields() {
+        Map<String, java.lang.Object> map = new HashMap<>();
+
+        if (fields != null)
+            for (Map.Entry<String, Object> e : fields.entrySet())
+                map.put(e.getKey(), e.getValue().toJavaObject());
+
+        return map;
+    }
 }
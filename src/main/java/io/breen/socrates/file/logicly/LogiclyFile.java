@@ -8,6 +8,8 @@ import java.util.*;
 
 public final class LogiclyFile extends File implements PostConstructionAction {
 
+    private static final long serialVersionUID = 1L;
+
     /**
      * The deduction taken when the Logicly file cannot be parsed (e.g., if the XML is malformed or
      * the file cannot be decompressed).
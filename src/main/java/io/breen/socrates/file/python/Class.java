@@ -1,10 +1,13 @@
 package io.breen.socrates.file.python;
 
 
+import java.io.Serializable;
 import java.util.Collections;
 import java.util.List;
 
-public class Class {
+public class Class implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     public String name;
     public double pointValue;
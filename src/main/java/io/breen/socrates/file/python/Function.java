@@ -1,11 +1,14 @@
 package io.breen.socrates.file.python;
 
+import java.io.Serializable;
 import java.util.List;
 
 /**
  * A class representing a Python function specified in the criteria file.
  */
-public class Function {
+public class Function implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     public String name;
     public List<String> parameters;
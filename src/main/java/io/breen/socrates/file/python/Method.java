@@ -1,9 +1,12 @@
 package io.breen.socrates.file.python;
 
 
+import java.io.Serializable;
 import java.util.List;
 
-public class Method {
+public class Method implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     public String name;
     public double pointValue;
@@ -1,9 +1,12 @@
 package io.breen.socrates.file.python;
 
 
+import java.io.Serializable;
 import java.util.Map;
 
-public class Object {
+public class Object implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     /**
      * The fields of this object (produced by SnakeYAML when it parses this
@@ -16,6 +16,8 @@ import java.util.*;
  */
 public final class PythonFile extends File implements PostConstructionAction {
 
+    private static final long serialVersionUID = 1L;
+
     /**
      * The deduction taken when the Python module cannot be imported due to a serious error (e.g., a
      * syntax error).
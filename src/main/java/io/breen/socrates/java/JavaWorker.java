@@ -0,0 +1,149 @@
+package io.breen.socrates.java;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * A single child JVM running JavaWorkerMain, in which student Java code is run. A worker answers
+ * any number of newline-delimited JSON requests, one at a time. Workers are created and handed out
+ * by the JavaWorkerPool; a worker must only be used by the thread that leased it.
+ *
+ * @see JavaWorkerPool
+ * @see JavaWorkerMain
+ */
+public final class JavaWorker {
+
+    /**
+     * Kills workers that do not respond in time.
+     */
+    private static final ScheduledExecutorService watchdog = Executors.newScheduledThreadPool(
+            1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "java-worker-watchdog");
+                    t.setDaemon(true);
+                    return t;
+                }
+            }
+    );
+
+    private static final TypeReference<Map<String, Object>> RESPONSE_TYPE =
+            new TypeReference<Map<String, Object>>() {};
+
+    private final Process process;
+    private final BufferedWriter toWorker;
+    private final BufferedReader fromWorker;
+    private final ObjectMapper mapper;
+
+    /**
+     * The number of times this worker has been leased and returned to the pool.
+     */
+    int uses;
+
+    /**
+     * The submission directory this worker most recently compiled, or null. The pool prefers to
+     * hand a worker back to requests for the same directory, since the worker can then reuse the
+     * classes it compiled.
+     */
+    String affinity;
+
+    JavaWorker(int maxHeapMegabytes) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+
+        ProcessBuilder builder = new ProcessBuilder(
+                java,
+                "-Xmx" + maxHeapMegabytes + "m",
+                "-Djava.awt.headless=true",
+                "-cp",
+                System.getProperty("java.class.path"),
+                JavaWorkerMain.class.getName()
+        );
+
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+
+        process = builder.start();
+        toWorker = new BufferedWriter(
+                new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8)
+        );
+        fromWorker = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8)
+        );
+        mapper = new ObjectMapper();
+    }
+
+    /**
+     * Sends one request to the worker and waits for its response. If the worker does not respond
+     * within the specified time, it is killed.
+     *
+     * @throws JavaWorkerTimeoutException If the worker did not respond in time
+     * @throws JavaWorkerExitedException If the worker exited without responding
+     * @throws IOException If the worker sends an invalid response
+     */
+    public Map<String, Object> request(Map<String, Object> request, long timeoutMillis)
+            throws IOException
+    {
+        toWorker.write(mapper.writeValueAsString(request));
+        toWorker.write('\n');
+        toWorker.flush();
+
+        final boolean[] killed = new boolean[1];
+
+        ScheduledFuture<?> kill = watchdog.schedule(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (killed) {
+                            killed[0] = true;
+                        }
+                        process.destroy();
+                    }
+                }, timeoutMillis, TimeUnit.MILLISECONDS
+        );
+
+        String line;
+        try {
+            line = fromWorker.readLine();
+        } catch (IOException x) {
+            line = null;
+        } finally {
+            kill.cancel(false);
+        }
+
+        synchronized (killed) {
+            if (killed[0]) {
+                throw new JavaWorkerTimeoutException(
+                        "Java worker did not respond in " + timeoutMillis + " ms"
+                );
+            }
+        }
+
+        if (line == null)
+            throw new JavaWorkerExitedException("Java worker exited without responding");
+
+        return mapper.readValue(line, RESPONSE_TYPE);
+    }
+
+    boolean isAlive() {
+        try {
+            process.exitValue();
+            return false;
+        } catch (IllegalThreadStateException x) {
+            return true;
+        }
+    }
+
+    void kill() {
+        try {
+            // the worker exits normally when its standard in is closed
+            toWorker.close();
+        } catch (IOException ignored) {}
+
+        process.destroy();
+    }
+}
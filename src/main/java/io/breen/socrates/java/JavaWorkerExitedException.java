@@ -0,0 +1,16 @@
+package io.breen.socrates.java;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a Java worker exits without responding to a request, most likely because student
+ * code called System.exit().
+ */
+public class JavaWorkerExitedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public JavaWorkerExitedException(String message) {
+        super(message);
+    }
+}
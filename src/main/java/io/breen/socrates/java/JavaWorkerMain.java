@@ -0,0 +1,530 @@
+package io.breen.socrates.java;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.codehaus.janino.JavaSourceClassLoader;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * The main class of a Java worker: a separate JVM that runs student code on behalf of Socrates, so
+ * that student code that never returns, exhausts the heap or calls System.exit() cannot harm the
+ * grader. The worker reads newline-delimited JSON requests from its standard in and writes one
+ * JSON response per request to its standard out.
+ *
+ * A request names a submission directory, a fingerprint of the Java sources in it, and a list of
+ * calls. Each call names a class, a static method, and arguments and an expected return value,
+ * each encoded as an object with "class" and "value" keys, and may give an "input" string to be
+ * read from System.in. If the method is not static, the object it is called on is created with
+ * the class's constructor that has no parameters. A call may give "before", the values its fields
+ * are set to before the call, and "after", the values some of its fields are expected to have
+ * after the call. The sources are compiled by a class
+ * loader that is kept for later requests on the same directory, as long as the fingerprint is the
+ * same. Each call runs on a thread of its own, and is stopped once it has run for longer than its
+ * wall-clock timeout or used more CPU time than its CPU timeout.
+ *
+ * System.in and System.out are redirected for each call: what a call's threads (and any threads
+ * they start) read and write is the call's own input and output, never another call's, and never
+ * the worker's requests and responses.
+ *
+ * The response holds a result for each call, with a "status" of "returned", "threw", "timeout" or
+ * "invalid". If the worker should not be used again (for example, if student code is still running
+ * after a timeout, or the heap was exhausted), the response has a "retire" key, and the worker
+ * exits after sending it.
+ *
+ * @see JavaWorker
+ */
+public final class JavaWorkerMain {
+
+    /**
+     * The number of submissions whose class loaders are kept.
+     */
+    private static final int MAX_LOADERS = 4;
+
+    /**
+     * The most output of a single call that is kept.
+     */
+    private static final int MAX_OUTPUT = 1 << 20;
+
+    private static final Map<String, Loader> loaders = new LinkedHashMap<String, Loader>(
+            16, 0.75f, true
+    ) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Loader> eldest) {
+            return size() > MAX_LOADERS;
+        }
+    };
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private static final TypeReference<Map<String, Object>> REQUEST_TYPE =
+            new TypeReference<Map<String, Object>>() {};
+
+    /**
+     * The input and output of the call running on the current thread, inherited by the threads
+     * that student code starts. Threads that belong to no call read nothing and write nowhere.
+     */
+    private static final InheritableThreadLocal<InputStream> inputs =
+            new InheritableThreadLocal<>();
+    private static final InheritableThreadLocal<Capture> outputs = new InheritableThreadLocal<>();
+
+    private JavaWorkerMain() {}
+
+    public static void main(String[] args) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+
+        BufferedReader in = new BufferedReader(
+                new InputStreamReader(System.in, StandardCharsets.UTF_8)
+        );
+        Writer out = new BufferedWriter(
+                new OutputStreamWriter(
+                        new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8
+                )
+        );
+
+        // student code must not read our requests or write into our responses
+        System.setIn(
+                new InputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        InputStream in = inputs.get();
+                        return in == null ? -1 : in.read();
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        InputStream in = inputs.get();
+                        return in == null ? -1 : in.read(b, off, len);
+                    }
+
+                    @Override
+                    public int available() throws IOException {
+                        InputStream in = inputs.get();
+                        return in == null ? 0 : in.available();
+                    }
+                }
+        );
+        System.setOut(
+                new PrintStream(
+                        new OutputStream() {
+                            @Override
+                            public void write(int b) {
+                                Capture capture = outputs.get();
+                                if (capture != null) capture.write(b);
+                            }
+
+                            @Override
+                            public void write(byte[] b, int off, int len) {
+                                Capture capture = outputs.get();
+                                if (capture != null) capture.write(b, off, len);
+                            }
+                        }, true, "UTF-8"
+                )
+        );
+
+        if (threads.isThreadCpuTimeSupported()) threads.setThreadCpuTimeEnabled(true);
+
+        String line;
+        while ((line = in.readLine()) != null) {
+            Map<String, Object> request = mapper.readValue(line, REQUEST_TYPE);
+            Map<String, Object> response = respond(request);
+
+            out.write(mapper.writeValueAsString(response));
+            out.write('\n');
+            out.flush();
+
+            if (response.containsKey("retire")) break;
+        }
+
+        // student threads may still be running
+        System.exit(0);
+    }
+
+    private static Map<String, Object> respond(Map<String, Object> request) {
+        String directory = (String)request.get("directory");
+        String fingerprint = (String)request.get("fingerprint");
+        @SuppressWarnings("unchecked") List<Map<String, Object>> calls =
+                (List<Map<String, Object>>)request.get("calls");
+
+        Loader loader = loaders.get(directory);
+        if (loader == null || !loader.fingerprint.equals(fingerprint)) {
+            loader = new Loader(directory, fingerprint);
+            loaders.put(directory, loader);
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        List<Map<String, Object>> results = new ArrayList<>(calls.size());
+        boolean retire = false;
+
+        for (Map<String, Object> call : calls) {
+            Map<String, Object> result = call(loader.classLoader, call);
+            if (result.containsKey("retire")) {
+                result.remove("retire");
+                retire = true;
+            }
+
+            results.add(result);
+        }
+
+        response.put("results", results);
+        if (retire) response.put("retire", true);
+
+        return response;
+    }
+
+    private static Map<String, Object> result(String status, String message) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("status", status);
+        if (message != null) result.put("message", message);
+        return result;
+    }
+
+    /**
+     * Converts an argument or expected value from its JSON encoding.
+     */
+    static Object decode(Object encoded) {
+        if (encoded == null) return null;
+
+        @SuppressWarnings("unchecked") Map<String, Object> map = (Map<String, Object>)encoded;
+        String className = (String)map.get("class");
+        Object value = map.get("value");
+
+        switch (className) {
+        case "java.lang.Integer":
+            return ((Number)value).intValue();
+        case "java.lang.Long":
+            return ((Number)value).longValue();
+        case "java.lang.Short":
+            return ((Number)value).shortValue();
+        case "java.lang.Byte":
+            return ((Number)value).byteValue();
+        case "java.lang.Double":
+            return ((Number)value).doubleValue();
+        case "java.lang.Float":
+            return ((Number)value).floatValue();
+        case "java.lang.Character":
+            return ((String)value).charAt(0);
+        default:
+            // strings, booleans, lists and maps need no conversion
+            return value;
+        }
+    }
+
+    /**
+     * Converts a map from field names to encoded values, or returns null if there is no such map.
+     */
+    private static Map<String, Object> decodeFields(Object encoded) {
+        if (encoded == null) return null;
+
+        @SuppressWarnings("unchecked") Map<String, Object> map = (Map<String, Object>)encoded;
+
+        Map<String, Object> fields = new HashMap<>();
+        for (Map.Entry<String, Object> e : map.entrySet())
+            fields.put(e.getKey(), decode(e.getValue()));
+
+        return fields;
+    }
+
+    /**
+     * Returns the field with the specified name declared by a class or one of its superclasses,
+     * or null if there is no such field.
+     */
+    private static Field findField(Class<?> c, String name) {
+        for (; c != null; c = c.getSuperclass()) {
+            try {
+                Field f = c.getDeclaredField(name);
+                f.setAccessible(true);
+                return f;
+            } catch (NoSuchFieldException ignored) {}
+        }
+
+        return null;
+    }
+
+    /**
+     * Creates the object a method is called on, with the constructor that has no parameters, and
+     * sets its fields.
+     *
+     * @throws InvalidCallException If there is no such constructor, or a field does not exist or
+     * cannot hold its value
+     * @throws InvocationTargetException If the constructor threw an exception
+     */
+    private static Object construct(Class<?> c, Map<String, Object> fields)
+            throws InvalidCallException, InvocationTargetException
+    {
+        Object obj;
+        try {
+            Constructor<?> constructor = c.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            obj = constructor.newInstance();
+
+        } catch (NoSuchMethodException | IllegalAccessException | InstantiationException x) {
+            throw new InvalidCallException("could not create object: " + x);
+        }
+
+        if (fields == null) return obj;
+
+        for (Map.Entry<String, Object> e : fields.entrySet()) {
+            Field f = findField(c, e.getKey());
+            if (f == null) throw new InvalidCallException("could not locate field: " + e.getKey());
+
+            try {
+                f.set(obj, e.getValue());
+            } catch (IllegalArgumentException | IllegalAccessException x) {
+                throw new InvalidCallException("could not set field: " + x);
+            }
+        }
+
+        return obj;
+    }
+
+    /**
+     * Runs one call, returning its result.
+     */
+    private static Map<String, Object> call(final ClassLoader classLoader,
+                                            Map<String, Object> call)
+    {
+        final String className = (String)call.get("className");
+        String methodName = (String)call.get("methodName");
+        long wallTimeout = ((Number)call.get("wallTimeout")).longValue();
+        long cpuTimeout = ((Number)call.get("cpuTimeout")).longValue();
+
+        String input = (String)call.get("input");
+
+        final Object[] arguments;
+        final Object expected;
+        final Map<String, Object> before;
+        final Map<String, Object> after;
+        try {
+            @SuppressWarnings("unchecked") List<Object> encoded = (List<Object>)call.get(
+                    "arguments"
+            );
+            arguments = new Object[encoded.size()];
+            for (int i = 0; i < arguments.length; i++)
+                arguments[i] = decode(encoded.get(i));
+
+            expected = decode(call.get("expected"));
+            before = decodeFields(call.get("before"));
+            after = decodeFields(call.get("after"));
+
+        } catch (RuntimeException x) {
+            return result("invalid", "could not decode arguments: " + x);
+        }
+
+        // compiling happens here, before the timed part of the call
+        Class<?> c;
+        try {
+            c = classLoader.loadClass(className);
+        } catch (ClassNotFoundException x) {
+            return result("invalid", "could not load class: " + x);
+        }
+
+        Method found = null;
+        for (Method m : c.getDeclaredMethods()) {
+            if (m.getName().equals(methodName)) {
+                found = m;
+                break;
+            }
+        }
+
+        if (found == null) return result("invalid", "could not locate method: " + methodName);
+
+        final boolean isStatic = Modifier.isStatic(found.getModifiers());
+        if (isStatic && (before != null || after != null))
+            return result("invalid", "method is static, but the call gives fields of an object");
+
+        final Class<?> klass = c;
+        final Method method = found;
+        final Map<String, Object> result = new HashMap<>();
+
+        final InputStream in = new ByteArrayInputStream(
+                input == null ? new byte[0] : input.getBytes(StandardCharsets.UTF_8)
+        );
+        final Capture out = new Capture();
+
+        Thread thread = new Thread("student-code") {
+            @Override
+            public void run() {
+                inputs.set(in);
+                outputs.set(out);
+
+                Object receiver = null;
+                Object returnValue;
+                try {
+                    // initialize the class here, so that its static initializer is timed too
+                    Class.forName(className, true, classLoader);
+
+                    if (!isStatic) receiver = construct(klass, before);
+                    returnValue = method.invoke(receiver, arguments);
+
+                } catch (InvalidCallException x) {
+                    result.put("status", "invalid");
+                    result.put("message", x.getMessage());
+                    return;
+
+                } catch (IllegalArgumentException | IllegalAccessException x) {
+                    result.put("status", "invalid");
+                    result.put("message", "could not invoke method: " + x);
+                    return;
+
+                } catch (InvocationTargetException x) {
+                    threw(x.getCause());
+                    return;
+
+                } catch (Throwable x) {
+                    threw(x instanceof ExceptionInInitializerError ? x.getCause() : x);
+                    return;
+                }
+
+                try {
+                    boolean passed = returnValue == null ? expected == null :
+                            returnValue.equals(expected);
+                    String value = String.valueOf(returnValue);
+
+                    if (after != null) {
+                        Map<String, Object> fields = new HashMap<>();
+                        boolean afterPassed = true;
+
+                        for (Map.Entry<String, Object> e : after.entrySet()) {
+                            Field f = findField(klass, e.getKey());
+                            if (f == null) {
+                                fields.put(e.getKey(), null);
+                                afterPassed = false;
+                                continue;
+                            }
+
+                            Object actual = f.get(receiver);
+                            fields.put(e.getKey(), String.valueOf(actual));
+
+                            if (actual == null ? e.getValue() != null :
+                                    !actual.equals(e.getValue()))
+                                afterPassed = false;
+                        }
+
+                        result.put("after", fields);
+                        result.put("afterPassed", afterPassed);
+                    }
+
+                    result.put("status", "returned");
+                    result.put("passed", passed);
+                    result.put("value", value);
+
+                } catch (Throwable x) {
+                    threw(x);
+                }
+            }
+
+            private void threw(Throwable x) {
+                result.put("status", "threw");
+                result.put("message", String.valueOf(x));
+
+                // the heap may be in a poor state, so start over with a new worker
+                if (x instanceof VirtualMachineError) result.put("retire", true);
+            }
+        };
+
+        thread.setDaemon(true);
+        thread.setContextClassLoader(classLoader);
+
+        long start = System.nanoTime();
+        thread.start();
+
+        String timedOut = null;
+
+        while (thread.isAlive()) {
+            try {
+                thread.join(10);
+            } catch (InterruptedException ignored) {}
+
+            if (!thread.isAlive()) break;
+
+            long wall = (System.nanoTime() - start) / 1000000;
+            long cpu = threads.isThreadCpuTimeEnabled() ?
+                    threads.getThreadCpuTime(thread.getId()) / 1000000 : -1;
+
+            if (wall > wallTimeout) {
+                timedOut = "call took longer than " + wallTimeout + " ms";
+            } else if (cpu > cpuTimeout) {
+                timedOut = "call used more than " + cpuTimeout + " ms of CPU time";
+            }
+
+            if (timedOut != null) break;
+        }
+
+        if (timedOut != null) {
+            stop(thread);
+
+            Map<String, Object> timeout = result("timeout", timedOut);
+            timeout.put("retire", true);
+            return timeout;
+        }
+
+        result.put("output", out.toString());
+
+        return result;
+    }
+
+    /**
+     * Tries to stop a thread running student code. On newer JVMs, where Thread.stop() is not
+     * supported, the thread keeps running until the worker exits.
+     */
+    @SuppressWarnings("deprecation")
+    private static void stop(Thread thread) {
+        try {
+            thread.stop();
+        } catch (Throwable ignored) {}
+    }
+
+    /**
+     * The output of one call, up to MAX_OUTPUT bytes.
+     */
+    private static class Capture {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        synchronized void write(int b) {
+            if (bytes.size() < MAX_OUTPUT) bytes.write(b);
+        }
+
+        synchronized void write(byte[] b, int off, int len) {
+            bytes.write(b, off, Math.min(len, MAX_OUTPUT - bytes.size()));
+        }
+
+        @Override
+        public synchronized String toString() {
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Thrown when a call cannot be made as requested.
+     */
+    private static class InvalidCallException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        InvalidCallException(String message) {
+            super(message);
+        }
+    }
+
+    private static class Loader {
+
+        final String fingerprint;
+        final ClassLoader classLoader;
+
+        Loader(String directory, String fingerprint) {
+            this.fingerprint = fingerprint;
+            this.classLoader = new JavaSourceClassLoader(
+                    JavaWorkerMain.class.getClassLoader(),
+                    new File[] {new File(directory)},
+                    null
+            );
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package io.breen.socrates.java;
+
+import io.breen.socrates.Globals;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.logging.Logger;
+
+/**
+ * Static singleton class managing a bounded pool of warm child JVMs in which student Java code is
+ * run. Instead of starting a new JVM for every test, callers lease a JavaWorker, send it one or
+ * more requests and then release it. A worker is retired (and replaced in the background) after it
+ * has been leased a certain number of times, as soon as it misbehaves, or when it asks to be.
+ *
+ * The size of the pool, the number of uses before a worker is retired and the maximum heap size of
+ * each worker (in megabytes) are read from the "java.pool.size", "java.pool.maxUses" and
+ * "java.worker.maxHeap" properties when the pool is first used.
+ *
+ * @see JavaWorker
+ */
+public final class JavaWorkerPool {
+
+    public static final int DEFAULT_POOL_SIZE = 2;
+    public static final int DEFAULT_MAX_USES = 100;
+    public static final int DEFAULT_MAX_HEAP = 256;
+
+    private static final Object lock = new Object();
+
+    /**
+     * Workers waiting to be leased. The most recently released worker is first.
+     */
+    private static final LinkedList<JavaWorker> idle = new LinkedList<>();
+
+    /**
+     * The number of workers that exist: idle, leased, or still starting.
+     */
+    private static int live;
+
+    private static int size;
+    private static int maxUses;
+    private static int maxHeap;
+    private static boolean configured;
+
+    private static Logger logger = Logger.getLogger(JavaWorkerPool.class.getName());
+
+    private JavaWorkerPool() {}
+
+    /**
+     * Reads the pool's properties and starts enough workers to fill the pool. Must be called while
+     * holding the lock.
+     */
+    private static void configure() {
+        if (configured) return;
+
+        size = Math.max(1, Globals.getIntProperty("java.pool.size", DEFAULT_POOL_SIZE));
+        maxUses = Math.max(1, Globals.getIntProperty("java.pool.maxUses", DEFAULT_MAX_USES));
+        maxHeap = Math.max(16, Globals.getIntProperty("java.worker.maxHeap", DEFAULT_MAX_HEAP));
+        configured = true;
+
+        logger.info("using pool of " + size + " Java workers, each used at most " + maxUses +
+                            " times, with at most " + maxHeap + " MB of heap");
+
+        while (live < size)
+            startInBackground();
+    }
+
+    /**
+     * Leases a worker from the pool, waiting for one to become available if every worker is in
+     * use. If an idle worker last served the same submission directory (as identified by the
+     * affinity key), it is preferred. The worker must be returned with release() or discard().
+     *
+     * @param affinity A key identifying the submission directory the worker will be asked about
+     *
+     * @throws IOException If a new worker could not be started
+     */
+    public static JavaWorker lease(String affinity) throws IOException {
+        synchronized (lock) {
+            configure();
+
+            while (true) {
+                JavaWorker worker = takeIdle(affinity);
+                if (worker != null) {
+                    worker.affinity = affinity;
+                    return worker;
+                }
+
+                if (live < size) {
+                    // reserve a place for a worker we will start ourselves
+                    live++;
+                    break;
+                }
+
+                try {
+                    lock.wait();
+                } catch (InterruptedException x) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted waiting for a Java worker");
+                }
+            }
+        }
+
+        try {
+            JavaWorker worker = new JavaWorker(maxHeap);
+            worker.affinity = affinity;
+            return worker;
+        } catch (IOException x) {
+            synchronized (lock) {
+                live--;
+                lock.notifyAll();
+            }
+            throw x;
+        }
+    }
+
+    /**
+     * Returns a leased worker to the pool. If the worker has exited, or has reached its maximum
+     * number of uses, it is retired instead.
+     */
+    public static void release(JavaWorker worker) {
+        synchronized (lock) {
+            worker.uses++;
+
+            if (!worker.isAlive() || worker.uses >= maxUses) {
+                retire(worker);
+            } else {
+                idle.addFirst(worker);
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Kills a leased worker that misbehaved (for example, it stopped responding, exited or asked to
+     * be retired) and replaces it.
+     */
+    public static void discard(JavaWorker worker) {
+        synchronized (lock) {
+            logger.info("discarding misbehaving Java worker");
+            retire(worker);
+        }
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private static JavaWorker takeIdle(String affinity) {
+        JavaWorker chosen = null;
+
+        Iterator<JavaWorker> it = idle.iterator();
+        while (it.hasNext()) {
+            JavaWorker w = it.next();
+
+            if (!w.isAlive()) {
+                it.remove();
+                retire(w);
+                continue;
+            }
+
+            if (affinity != null && affinity.equals(w.affinity)) {
+                chosen = w;
+                break;
+            }
+
+            if (chosen == null) chosen = w;
+        }
+
+        if (chosen != null) idle.remove(chosen);
+
+        return chosen;
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private static void retire(JavaWorker worker) {
+        worker.kill();
+        live--;
+        startInBackground();
+        lock.notifyAll();
+    }
+
+    /**
+     * Starts a new worker on another thread and adds it to the idle workers once it is running.
+     * Must be called while holding the lock.
+     */
+    private static void startInBackground() {
+        live++;
+
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                JavaWorker worker = null;
+                try {
+                    worker = new JavaWorker(maxHeap);
+                } catch (IOException x) {
+                    logger.warning("could not start Java worker: " + x);
+                }
+
+                synchronized (lock) {
+                    if (worker != null) idle.addLast(worker);
+                    else live--;
+
+                    lock.notifyAll();
+                }
+            }
+        };
+
+        t.setDaemon(true);
+        t.start();
+    }
+}
@@ -0,0 +1,15 @@
+package io.breen.socrates.java;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a Java worker does not respond to a request in time, and is killed.
+ */
+public class JavaWorkerTimeoutException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public JavaWorkerTimeoutException(String message) {
+        super(message);
+    }
+}
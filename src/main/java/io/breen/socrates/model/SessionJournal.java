@@ -0,0 +1,534 @@
+package io.breen.socrates.model;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.breen.socrates.model.event.*;
+import io.breen.socrates.model.wrapper.*;
+import io.breen.socrates.submission.Submission;
+import io.breen.socrates.submission.SubmittedFile;
+import io.breen.socrates.util.Digests;
+import io.breen.socrates.util.ObservableChangedEvent;
+import io.breen.socrates.util.Observer;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.tree.DefaultMutableTreeNode;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+
+/**
+ * An append-only log of the changes a grader (or the TestScheduler) makes to the TestWrapperNodes
+ * of a grading session, so that the session can be resumed after Socrates is closed or crashes.
+ * The journal is kept beside the criteria file, and is only used with the same criteria.
+ *
+ * Instances observe every TestWrapperNode of the session, and append a line to the journal for
+ * each change of a node's result, notes or (finished) automation stage. Each line is a JSON array
+ * naming the submission directory, the submitted file, the position of the node in the file's
+ * tree, the digest of the file's contents, and the new value. When a session starts, restore()
+ * replays the journal onto the new wrapper trees, and the journal is rewritten to hold only the
+ * saved state. Since submissions may be added to a session while it is running, restore() may be
+ * called again with more trees. The saved state of a node is only restored if its file still has
+ * the recorded digest, since a result or notes need not hold for a file that has changed.
+ *
+ * Lines are written on the journal's own thread, not on the thread that changed the node. Since a
+ * grader changes a node's notes with every key typed, the notes of a node are only written once
+ * they have gone unchanged for a short time; close() writes any notes still waiting.
+ */
+public class SessionJournal implements Observer<TestWrapperNode> {
+
+    public static final String SUFFIX = ".journal";
+
+    private static final String HEADER = "socrates-journal";
+    private static final String RESULT = "result";
+    private static final String STAGE = "stage";
+    private static final String NOTES = "notes";
+
+    private static final TypeReference<List<String>> RECORD_TYPE =
+            new TypeReference<List<String>>() {};
+
+    /**
+     * How long the notes of a node must go unchanged before they are written.
+     */
+    private static final long NOTES_DELAY_MILLIS = 500;
+
+    /**
+     * How long close() waits for the remaining lines to be written.
+     */
+    private static final long CLOSE_TIMEOUT_MILLIS = 10000;
+
+    private static Logger logger = Logger.getLogger(SessionJournal.class.getName());
+
+    private final Path path;
+    private final String criteriaDigest;
+    private final ObjectMapper mapper;
+
+    /**
+     * For each observed node, the submission directory, file and position that identify it.
+     */
+    private final Map<TestWrapperNode, List<String>> identities;
+
+    /**
+     * For each identity of an observed node, its submitted file, and for each submitted file, the
+     * digest of its contents. A digest is forgotten when its file changes.
+     */
+    private final Map<List<String>, SubmittedFile> submittedFiles;
+    private final Map<SubmittedFile, String> fileDigests;
+
+    /**
+     * The saved state of the nodes that have not yet been restored, or null if the journal has not
+     * yet been read. The state is the last recorded result, stage and notes, and the digest of the
+     * file they were recorded for.
+     */
+    private Map<List<String>, String[]> saved;
+
+    /**
+     * Writes lines to the journal, in the order they are given to it.
+     */
+    private final ScheduledThreadPoolExecutor executor;
+
+    /**
+     * For each node whose notes have changed but not yet been written, its latest notes, and the
+     * task that will write them.
+     */
+    private final Map<List<String>, String> pendingNotes;
+    private final Map<List<String>, ScheduledFuture<?>> notesWrites;
+
+    private boolean compacted;
+    private Writer writer;
+
+    /**
+     * @param criteriaPath The path to the criteria file (or package) of the session
+     * @param criteriaDigest The digest of the criteria, used to ignore a journal left by a session
+     * with different criteria
+     */
+    public SessionJournal(Path criteriaPath, String criteriaDigest) {
+        this.path = criteriaPath.resolveSibling(criteriaPath.getFileName() + SUFFIX);
+        this.criteriaDigest = criteriaDigest == null ? "" : criteriaDigest;
+
+        mapper = new ObjectMapper();
+        identities = new HashMap<>();
+        submittedFiles = new ConcurrentHashMap<>();
+        fileDigests = new HashMap<>();
+
+        executor = new ScheduledThreadPoolExecutor(
+                1, new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "session-journal");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                }
+        );
+
+        // notes that are written early must not hold up close()
+        executor.setRemoveOnCancelPolicy(true);
+
+        pendingNotes = new HashMap<>();
+        notesWrites = new HashMap<>();
+    }
+
+    /**
+     * Replays the journal onto the TestWrapperNodes of the specified submitted files, then starts
+     * observing the nodes. The first time this is called, the journal is rewritten to contain only
+     * the saved state, and any later change is appended to it.
+     *
+     * @return The number of nodes whose state was restored
+     */
+    public int restore(List<SubmittedFileWrapperNode> files) throws IOException {
+        if (saved == null) saved = read();
+
+        List<TestWrapperNode> nodes = new ArrayList<>();
+        int numRestored = 0;
+
+        for (SubmittedFileWrapperNode sfwn : files) {
+            SubmittedFile submittedFile = (SubmittedFile)sfwn.getUserObject();
+            Submission submission = (Submission)((DefaultMutableTreeNode)sfwn.getParent())
+                    .getUserObject();
+
+            String submissionDir = submission.submissionDir.toAbsolutePath().toString();
+            String localPath = submittedFile.localPath.toString();
+            String digest = digestOf(submittedFile);
+
+            DefaultMutableTreeNode root = (DefaultMutableTreeNode)sfwn.treeModel.getRoot();
+
+            @SuppressWarnings("unchecked") Enumeration<DefaultMutableTreeNode> dfs = root
+                    .preorderEnumeration();
+
+            while (dfs.hasMoreElements()) {
+                DefaultMutableTreeNode n = dfs.nextElement();
+                if (!(n instanceof TestWrapperNode)) continue;
+
+                TestWrapperNode node = (TestWrapperNode)n;
+                List<String> identity = Arrays.asList(
+                        submissionDir, localPath, node.getPosition()
+                );
+
+                identities.put(node, identity);
+                submittedFiles.put(identity, submittedFile);
+                nodes.add(node);
+
+                // the state saved for other contents of the file is dropped
+                String[] state = saved.remove(identity);
+                if (state != null && digest.equals(state[3]) && apply(node, state))
+                    numRestored++;
+            }
+        }
+
+        if (!compacted) compact();
+
+        for (TestWrapperNode node : nodes)
+            node.addObserver(this);
+
+        logger.info("restored " + numRestored + " tests from " + path);
+        return numRestored;
+    }
+
+    /**
+     * Reads the journal, returning the last recorded result, stage and notes of each node, along
+     * with the digest of the file they were recorded for. A record for a different digest than the
+     * ones before it replaces all of them. Lines that cannot be read (for example, a line cut
+     * short by a crash) are skipped.
+     */
+    private Map<List<String>, String[]> read() throws IOException {
+        Map<List<String>, String[]> saved = new HashMap<>();
+
+        if (!Files.exists(path)) return saved;
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+
+            if (line == null) return saved;
+
+            List<String> header = parse(line);
+            if (header == null || header.size() != 2 || !header.get(0).equals(HEADER) ||
+                    !header.get(1).equals(criteriaDigest))
+            {
+                logger.warning("ignoring journal for different criteria: " + path);
+                return saved;
+            }
+
+            while ((line = reader.readLine()) != null) {
+                List<String> record = parse(line);
+                if (record == null || record.size() != 6) continue;
+
+                List<String> identity = record.subList(0, 3);
+                String digest = record.get(3);
+
+                String[] state = saved.get(identity);
+                if (state == null) {
+                    state = new String[4];
+                    saved.put(new ArrayList<>(identity), state);
+                }
+
+                // the file changed since the state before this record was recorded
+                if (!digest.equals(state[3])) Arrays.fill(state, null);
+
+                state[3] = digest;
+
+                switch (record.get(4)) {
+                case RESULT:
+                    state[0] = record.get(5);
+                    break;
+                case STAGE:
+                    state[1] = record.get(5);
+                    break;
+                case NOTES:
+                    state[2] = record.get(5);
+                }
+            }
+        }
+
+        return saved;
+    }
+
+    private List<String> parse(String line) {
+        try {
+            return mapper.readValue(line, RECORD_TYPE);
+        } catch (IOException | RuntimeException x) {
+            return null;
+        }
+    }
+
+    /**
+     * Sets the result, stage and notes of a node from its saved state. Returns false if the saved
+     * state was not valid.
+     */
+    private static boolean apply(TestWrapperNode node, String[] state) {
+        try {
+            if (state[0] != null) node.setResult(TestResult.valueOf(state[0]));
+            if (state[1] != null) node.setAutomationStage(AutomationStage.valueOf(state[1]));
+
+            if (state[2] != null) {
+                node.notes.remove(0, node.notes.getLength());
+                node.notes.insertString(0, state[2], null);
+            }
+
+            return true;
+
+        } catch (IllegalArgumentException | BadLocationException x) {
+            return false;
+        }
+    }
+
+    /**
+     * Replaces the journal with one holding just the current state of the observed nodes, and the
+     * saved state of the nodes that have not been restored.
+     */
+    private synchronized void compact() throws IOException {
+        compacted = true;
+
+        Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), null, SUFFIX);
+
+        try (Writer w = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writeLine(w, Arrays.asList(HEADER, criteriaDigest));
+
+            for (Map.Entry<TestWrapperNode, List<String>> entry : identities.entrySet()) {
+                TestWrapperNode node = entry.getKey();
+
+                if (node.getResult() != TestResult.NONE)
+                    writeLine(w, record(entry.getValue(), RESULT, node.getResult().name()));
+
+                if (isFinished(node.getAutomationStage()))
+                    writeLine(w, record(entry.getValue(), STAGE, node.getAutomationStage().name()));
+
+                String notes = notesOf(node);
+                if (!notes.isEmpty()) writeLine(w, record(entry.getValue(), NOTES, notes));
+            }
+
+            for (Map.Entry<List<String>, String[]> entry : saved.entrySet()) {
+                String[] state = entry.getValue();
+
+                List<String> identity = entry.getKey();
+
+                if (state[0] != null) writeLine(w, record(identity, state[3], RESULT, state[0]));
+                if (state[1] != null) writeLine(w, record(identity, state[3], STAGE, state[1]));
+                if (state[2] != null) writeLine(w, record(identity, state[3], NOTES, state[2]));
+            }
+        }
+
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+
+        writer = Files.newBufferedWriter(
+                path, StandardCharsets.UTF_8, StandardOpenOption.APPEND
+        );
+    }
+
+    private static boolean isFinished(AutomationStage stage) {
+        return stage == AutomationStage.FINISHED_NORMAL || stage == AutomationStage.FINISHED_ERROR;
+    }
+
+    private static String notesOf(TestWrapperNode node) {
+        try {
+            return node.notes.getText(0, node.notes.getLength());
+        } catch (BadLocationException x) {
+            return "";
+        }
+    }
+
+    /**
+     * Returns the digest of the contents of a submitted file, or an empty string if the file
+     * cannot be read.
+     */
+    private String digestOf(SubmittedFile file) {
+        String digest;
+        synchronized (fileDigests) {
+            digest = fileDigests.get(file);
+        }
+
+        if (digest == null) {
+            try {
+                digest = Digests.of(file.fullPath);
+            } catch (IOException x) {
+                return "";
+            }
+
+            synchronized (fileDigests) {
+                fileDigests.put(file, digest);
+            }
+        }
+
+        return digest;
+    }
+
+    /**
+     * Forgets the digest of the contents of a submitted file, so that changes recorded after this
+     * are recorded for its new contents. This must be called if the file may have changed.
+     */
+    public void forget(SubmittedFile file) {
+        synchronized (fileDigests) {
+            fileDigests.remove(file);
+        }
+    }
+
+    /**
+     * Returns a record of a change of a node, for the current contents of the node's file.
+     */
+    private List<String> record(List<String> identity, String kind, String value) {
+        SubmittedFile file = submittedFiles.get(identity);
+        return record(identity, file == null ? "" : digestOf(file), kind, value);
+    }
+
+    private static List<String> record(List<String> identity, String digest, String kind,
+                                       String value)
+    {
+        List<String> record = new ArrayList<>(identity);
+        record.add(digest);
+        record.add(kind);
+        record.add(value);
+        return record;
+    }
+
+    private void writeLine(Writer w, List<String> record) throws IOException {
+        w.write(mapper.writeValueAsString(record));
+        w.write('\n');
+    }
+
+    @Override
+    public void objectChanged(ObservableChangedEvent<TestWrapperNode> event) {
+        final List<String> identity = identities.get(event.source);
+        if (identity == null) return;
+
+        final String kind;
+        final String value;
+
+        if (event instanceof ResultChangedEvent) {
+            kind = RESULT;
+            value = ((ResultChangedEvent)event).newResult.name();
+
+        } else if (event instanceof StageChangedEvent) {
+            AutomationStage stage = ((StageChangedEvent)event).newStage;
+
+            // tests that were queued or running when Socrates stopped must be run again
+            if (stage != AutomationStage.NONE && !isFinished(stage)) return;
+
+            kind = STAGE;
+            value = stage.name();
+
+        } else if (event instanceof NotesChangedEvent) {
+            delayNotes(identity, notesOf(event.source));
+            return;
+
+        } else {
+            return;
+        }
+
+        // the file is read on the journal's thread, if its digest is not known
+        execute(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        append(record(identity, kind, value));
+                    }
+                }
+        );
+    }
+
+    /**
+     * Remembers the latest notes of a node, and (re)starts the delay after which they are written.
+     */
+    private void delayNotes(final List<String> identity, String notes) {
+        synchronized (pendingNotes) {
+            pendingNotes.put(identity, notes);
+
+            ScheduledFuture<?> write = notesWrites.get(identity);
+            if (write != null) write.cancel(false);
+
+            try {
+                write = executor.schedule(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                writeNotes(identity);
+                            }
+                        }, NOTES_DELAY_MILLIS, TimeUnit.MILLISECONDS
+                );
+            } catch (RejectedExecutionException x) {
+                // the journal is closed
+                return;
+            }
+
+            notesWrites.put(identity, write);
+        }
+    }
+
+    /**
+     * Writes the notes of the specified node, if they have not been written yet.
+     */
+    private void writeNotes(List<String> identity) {
+        String notes;
+        synchronized (pendingNotes) {
+            notes = pendingNotes.remove(identity);
+
+            ScheduledFuture<?> write = notesWrites.remove(identity);
+            if (write != null) write.cancel(false);
+        }
+
+        if (notes != null) append(record(identity, NOTES, notes));
+    }
+
+    private void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ignored) {
+            // the journal is closed
+        }
+    }
+
+    private synchronized void append(List<String> record) {
+        if (writer == null) return;
+
+        try {
+            writeLine(writer, record);
+            writer.flush();
+        } catch (IOException x) {
+            logger.warning("could not write to journal, closing it: " + x);
+            closeWriter();
+        }
+    }
+
+    /**
+     * Writes the notes that are still waiting and any other lines not yet written, then closes the
+     * journal. Changes made after this are not recorded.
+     */
+    public void close() {
+        final List<List<String>> waiting;
+        synchronized (pendingNotes) {
+            waiting = new ArrayList<>(pendingNotes.keySet());
+        }
+
+        execute(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        for (List<String> identity : waiting)
+                            writeNotes(identity);
+                    }
+                }
+        );
+
+        executor.shutdown();
+
+        try {
+            if (!executor.awaitTermination(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+                logger.warning("gave up waiting to write the journal");
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+        }
+
+        closeWriter();
+    }
+
+    private synchronized void closeWriter() {
+        if (writer == null) return;
+
+        try {
+            writer.close();
+        } catch (IOException ignored) {}
+
+        writer = null;
+    }
+}
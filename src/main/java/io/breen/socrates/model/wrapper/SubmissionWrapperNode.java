@@ -38,19 +38,31 @@ public class SubmissionWrapperNode extends DefaultMutableTreeNode
         return unfinishedFiles.isEmpty();
     }
 
+    /**
+     * Children may be added after the submission is complete (e.g., when a file is added to the
+     * submission directory while grading). If an incomplete file is added to a complete
+     * submission, the submission becomes incomplete.
+     */
     @Override
-    public void add(MutableTreeNode newChild) {
+    public void insert(MutableTreeNode newChild, int childIndex) {
         if (newChild instanceof SubmittedFileWrapperNode) {
             SubmittedFileWrapperNode sfwn = (SubmittedFileWrapperNode)newChild;
 
-            super.add(newChild);
+            super.insert(newChild, childIndex);
 
+            boolean completeBefore = isComplete();
             if (!sfwn.isComplete()) unfinishedFiles.add(sfwn);
 
             sfwn.addObserver(this);
 
+            if (completeBefore && !isComplete()) {
+                SubmissionCompletedChangeEvent e = new SubmissionCompletedChangeEvent(this, false);
+                for (Observer<SubmissionWrapperNode> o : observers)
+                    o.objectChanged(e);
+            }
+
         } else if (newChild instanceof UnrecognizedFileWrapperNode) {
-            super.add(newChild);
+            super.insert(newChild, childIndex);
 
         } else {
             throw new IllegalArgumentException();
@@ -155,4 +155,29 @@ public class SubmittedFileWrapperNode extends DefaultMutableTreeNode
             }
         }
     }
+
+    /**
+     * Resets the automatable tests that have been run or queued, for example because the file
+     * changed after they ran. Tests that were never automated keep their results.
+     */
+    public void resetAutomatedTests() {
+        DefaultMutableTreeNode root = (DefaultMutableTreeNode)treeModel.getRoot();
+        @SuppressWarnings("unchecked") Enumeration<DefaultMutableTreeNode> dfs = root
+                .depthFirstEnumeration();
+        while (dfs.hasMoreElements()) {
+            DefaultMutableTreeNode n = dfs.nextElement();
+
+            if (n instanceof TestWrapperNode) {
+                TestWrapperNode node = (TestWrapperNode)n;
+                Test test = (Test)node.getUserObject();
+
+                if (test instanceof Automatable &&
+                        node.getAutomationStage() != AutomationStage.NONE)
+                {
+                    node.setResult(TestResult.NONE);
+                    node.setAutomationStage(AutomationStage.NONE);
+                }
+            }
+        }
+    }
 }
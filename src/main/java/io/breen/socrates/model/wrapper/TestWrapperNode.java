@@ -12,6 +12,7 @@ import javax.swing.event.DocumentListener;
 import javax.swing.text.Document;
 import javax.swing.text.PlainDocument;
 import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.TreeNode;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -75,6 +76,25 @@ public class TestWrapperNode extends DefaultMutableTreeNode
                 "stage=" + stage + ")";
     }
 
+    /**
+     * Returns the position of this node in its tree of tests, as the index of each node on the path
+     * from the root (for example, "/0/1/3"). Nodes for the same test in the trees of different
+     * submissions have the same position.
+     */
+    public String getPosition() {
+        StringBuilder builder = new StringBuilder();
+
+        TreeNode child = this;
+        TreeNode parent = child.getParent();
+        while (parent != null) {
+            builder.insert(0, "/" + parent.getIndex(child));
+            child = parent;
+            parent = child.getParent();
+        }
+
+        return builder.toString();
+    }
+
     public TestResult getResult() {
         return result;
     }
@@ -113,29 +113,19 @@ public final class PythonManager {
         return socratesTmpDir;
     }
 
+    /**
+     * Determines whether a path refers to a Python interpreter whose version is at least 3.2. Only
+     * one interpreter is started per candidate path.
+     */
     private static boolean isValidPython3InterpreterPath(Path path)
             throws IOException, InterruptedException
     {
-        String pathStr = path.toString();
-
         ProcessBuilder builder = new ProcessBuilder(
-                pathStr, "-c", "def f(): pass"
+                path.toString(),
+                "-c",
+                "import sys; sys.exit(0 if sys.version_info >= (3, 2) else 1)"
         );
 
-        if (builder.start().waitFor() == Globals.NORMAL_EXIT_CODE) {
-            // this path is probably valid for a Python interpreter
-
-            // but is it Python >= 3.2?
-            ProcessBuilder builder2 = new ProcessBuilder(
-                    pathStr,
-                    "-c",
-                    "import sys; v = sys.version_info; sys.exit(v.major * 10 + v.minor)"
-            );
-
-            int exitCode = builder2.start().waitFor();
-            return exitCode >= 32 && exitCode < 40;
-        } else {
-            return false;
-        }
+        return builder.start().waitFor() == Globals.NORMAL_EXIT_CODE;
     }
 }
@@ -0,0 +1,155 @@
+package io.breen.socrates.python;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * A single Python 3 interpreter running tester.py. A worker answers any number of newline-delimited
+ * JSON requests, one at a time. Workers are created and handed out by the PythonWorkerPool; a
+ * worker must only be used by the thread that leased it.
+ *
+ * @see PythonWorkerPool
+ */
+public final class PythonWorker {
+
+    /**
+     * The time, in seconds, that tester.py gives a request that does not specify its own timeout.
+     */
+    public static final int DEFAULT_TIMEOUT = 10;
+
+    /**
+     * Kills workers that do not respond in time.
+     */
+    private static final ScheduledExecutorService watchdog = Executors.newScheduledThreadPool(
+            1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "python-worker-watchdog");
+                    t.setDaemon(true);
+                    return t;
+                }
+            }
+    );
+
+    private static final TypeReference<Map<String, Object>> RESPONSE_TYPE =
+            new TypeReference<Map<String, Object>>() {};
+
+    private final Process process;
+    private final BufferedWriter toWorker;
+    private final BufferedReader fromWorker;
+    private final ObjectMapper mapper;
+
+    /**
+     * The number of times this worker has been leased and returned to the pool.
+     */
+    int uses;
+
+    /**
+     * A key identifying the student module this worker most recently imported, or null. The pool
+     * prefers to hand a worker back to requests for the same module, since the worker can then
+     * reuse its imported copy.
+     */
+    String affinity;
+
+    PythonWorker() throws IOException {
+        if (PythonManager.python3Command == null)
+            throw new IOException("cannot find the Python 3 interpreter");
+
+        ProcessBuilder builder = new ProcessBuilder(
+                PythonManager.python3Command.toString(), "-B",
+                // turns off writing bytecode files (.py[co])
+                PythonManager.getPathToSource("tester.py").toString()
+        );
+
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+
+        /*
+         * The worker puts the directory named by each request on its own import path, so only the
+         * temporary directory is needed here. It allows scripts to import the "socrates" module.
+         */
+        Map<String, String> env = builder.environment();
+        env.put("PYTHONPATH", PythonManager.getTempDirectory().toString());
+
+        builder.directory(PythonManager.getTempDirectory().toFile());
+
+        process = builder.start();
+        toWorker = new BufferedWriter(
+                new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8)
+        );
+        fromWorker = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8)
+        );
+        mapper = new ObjectMapper();
+    }
+
+    /**
+     * Sends one request to the worker and waits for its response. tester.py stops a request that
+     * runs past its own timeout, but it cannot interrupt a student module that is blocked outside
+     * of Python code, so the worker is killed if it does not respond within the specified time.
+     *
+     * @throws IOException If the worker did not respond in time, if it has exited, or if it sends
+     * an invalid response
+     */
+    public Map<String, Object> request(Map<String, Object> request, long timeoutMillis)
+            throws IOException
+    {
+        toWorker.write(mapper.writeValueAsString(request));
+        toWorker.write('\n');
+        toWorker.flush();
+
+        final boolean[] killed = new boolean[1];
+
+        ScheduledFuture<?> kill = watchdog.schedule(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (killed) {
+                            killed[0] = true;
+                        }
+                        process.destroy();
+                    }
+                }, timeoutMillis, TimeUnit.MILLISECONDS
+        );
+
+        String line;
+        try {
+            line = fromWorker.readLine();
+        } catch (IOException x) {
+            line = null;
+        } finally {
+            kill.cancel(false);
+        }
+
+        synchronized (killed) {
+            if (killed[0])
+                throw new IOException("Python worker did not respond in " + timeoutMillis + " ms");
+        }
+
+        if (line == null) throw new IOException("Python worker exited without responding");
+
+        return mapper.readValue(line, RESPONSE_TYPE);
+    }
+
+    boolean isAlive() {
+        try {
+            process.exitValue();
+            return false;
+        } catch (IllegalThreadStateException x) {
+            return true;
+        }
+    }
+
+    void kill() {
+        try {
+            // the worker exits normally when its standard in is closed
+            toWorker.close();
+        } catch (IOException ignored) {}
+
+        process.destroy();
+    }
+}
@@ -0,0 +1,210 @@
+package io.breen.socrates.python;
+
+import io.breen.socrates.Globals;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.logging.Logger;
+
+/**
+ * Static singleton class managing a bounded pool of warm Python 3 interpreters running tester.py.
+ * Instead of starting a new interpreter for every test, callers lease a PythonWorker, send it one
+ * or more requests and then release it. A worker is retired (and replaced in the background)
+ * after it has been leased a certain number of times, or as soon as it misbehaves.
+ *
+ * The size of the pool and the number of uses before a worker is retired are read from the
+ * "python.pool.size" and "python.pool.maxUses" properties when the pool is first used.
+ *
+ * @see PythonWorker
+ */
+public final class PythonWorkerPool {
+
+    public static final int DEFAULT_POOL_SIZE = 4;
+    public static final int DEFAULT_MAX_USES = 100;
+
+    private static final Object lock = new Object();
+
+    /**
+     * Workers waiting to be leased. The most recently released worker is first.
+     */
+    private static final LinkedList<PythonWorker> idle = new LinkedList<>();
+
+    /**
+     * The number of workers that exist: idle, leased, or still starting.
+     */
+    private static int live;
+
+    private static int size;
+    private static int maxUses;
+    private static boolean configured;
+
+    private static Logger logger = Logger.getLogger(PythonWorkerPool.class.getName());
+
+    private PythonWorkerPool() {}
+
+    /**
+     * Reads the pool's properties and starts enough workers to fill the pool. Must be called while
+     * holding the lock.
+     */
+    private static void configure() {
+        if (configured) return;
+
+        size = Math.max(1, Globals.getIntProperty("python.pool.size", DEFAULT_POOL_SIZE));
+        maxUses = Math.max(1, Globals.getIntProperty("python.pool.maxUses", DEFAULT_MAX_USES));
+        configured = true;
+
+        logger.info("using pool of " + size + " Python workers, each used at most " + maxUses +
+                            " times");
+
+        while (live < size)
+            startInBackground();
+    }
+
+    /**
+     * Leases a worker from the pool, waiting for one to become available if every worker is in
+     * use. If an idle worker last served the same student module (as identified by the affinity
+     * key), it is preferred. The worker must be returned with release() or discard().
+     *
+     * @param affinity A key identifying the student module the worker will be asked about, or
+     * null if the worker will not import a student module
+     *
+     * @throws IOException If a new worker could not be started
+     */
+    public static PythonWorker lease(String affinity) throws IOException {
+        synchronized (lock) {
+            configure();
+
+            while (true) {
+                PythonWorker worker = takeIdle(affinity);
+                if (worker != null) {
+                    worker.affinity = affinity;
+                    return worker;
+                }
+
+                if (live < size) {
+                    // reserve a place for a worker we will start ourselves
+                    live++;
+                    break;
+                }
+
+                try {
+                    lock.wait();
+                } catch (InterruptedException x) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted waiting for a Python worker");
+                }
+            }
+        }
+
+        try {
+            PythonWorker worker = new PythonWorker();
+            worker.affinity = affinity;
+            return worker;
+        } catch (IOException x) {
+            synchronized (lock) {
+                live--;
+                lock.notifyAll();
+            }
+            throw x;
+        }
+    }
+
+    /**
+     * Returns a leased worker to the pool. If the worker has exited, or has reached its maximum
+     * number of uses, it is retired instead.
+     */
+    public static void release(PythonWorker worker) {
+        synchronized (lock) {
+            worker.uses++;
+
+            if (!worker.isAlive() || worker.uses >= maxUses) {
+                retire(worker);
+            } else {
+                idle.addFirst(worker);
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Kills a leased worker that misbehaved (for example, it stopped responding or sent an invalid
+     * response) and replaces it.
+     */
+    public static void discard(PythonWorker worker) {
+        synchronized (lock) {
+            logger.info("discarding misbehaving Python worker");
+            retire(worker);
+        }
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private static PythonWorker takeIdle(String affinity) {
+        PythonWorker chosen = null;
+
+        Iterator<PythonWorker> it = idle.iterator();
+        while (it.hasNext()) {
+            PythonWorker w = it.next();
+
+            if (!w.isAlive()) {
+                it.remove();
+                retire(w);
+                continue;
+            }
+
+            if (affinity != null && affinity.equals(w.affinity)) {
+                chosen = w;
+                break;
+            }
+
+            if (chosen == null) chosen = w;
+        }
+
+        if (chosen != null) idle.remove(chosen);
+
+        return chosen;
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private static void retire(PythonWorker worker) {
+        worker.kill();
+        live--;
+        startInBackground();
+        lock.notifyAll();
+    }
+
+    /**
+     * Starts a new worker on another thread and adds it to the idle workers once it is running.
+     * Must be called while holding the lock.
+     */
+    private static void startInBackground() {
+        live++;
+
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                PythonWorker worker = null;
+                try {
+                    worker = new PythonWorker();
+                } catch (IOException x) {
+                    logger.warning("could not start Python worker: " + x);
+                }
+
+                synchronized (lock) {
+                    if (worker != null) idle.addLast(worker);
+                    else live--;
+
+                    lock.notifyAll();
+                }
+            }
+        };
+
+        t.setDaemon(true);
+        t.start();
+    }
+}
@@ -1,23 +1,66 @@
 """
+This module runs as a long-lived worker process leased from the PythonWorkerPool. It reads
+newline-delimited JSON requests from the standard in, and writes exactly one newline-delimited JSON
+response to the standard out for each request. The worker exits when the standard in is closed.
+
+Every request names the directory containing the student module; the worker changes to that
+directory before importing anything, so one worker can serve modules from many submissions.
+
 {
-'module': 'myprogram',
+'name': 'myprogram',
+'directory': '/path/to/submission',
 'target': {'type': 'function', 'name': 'foo'},
 'type': 'eval',
 'parameters': {'args': [1, 2], 'value': 10}
 }
 
 {
-'module': 'myprogram',
+'name': 'myprogram',
+'directory': '/path/to/submission',
 'target': {'type': 'variable', 'name': 'bar'},
 'type': 'exists'
 }
 
 {
-'module': 'myprogram',
+'name': 'myprogram',
+'directory': '/path/to/submission',
 'type': 'load'
 }
+
+{
+'name': 'myprogram',
+'directory': '/path/to/submission',
+'type': 'batch',
+'requests': [{'target': {'type': 'function', 'name': 'foo'}, 'parameters': {'args': [1]}},
+             {'target': {'type': 'function', 'name': 'foo'}, 'parameters': {'args': [2]}}],
+'timeout': 10
+}
+
+{
+'type': 'script',
+'directory': '/path/to/submission',
+'path': '/path/to/criteria/scripts/test.py',
+'input': '{"student_name": "..."}',
+'timeout': 60
+}
+
+The student module is imported at most once between evaluations, unless the source file of the
+module (or of any module it imported) has changed since it was imported. Any function or method
+evaluation may change the state of the module, so a module that has been used for an evaluation
+is discarded (along with any other modules it imported) and freshly imported for the next request.
+
+Requests and responses travel on private copies of the descriptors of the standard in and out;
+the descriptors 0, 1 and 2 themselves lead to the null device. Any process started by a student
+module or a script (with subprocess or os.system, say) inherits those descriptors, so it can
+neither read the next request nor write into a response.
+
+A batch request carries many evaluations of one module, each of which is answered as if it were its
+own 'eval' request (with the batch's name and directory), under its own timeout. The response
+contains the list of their responses, in order, as 'results'.
 """
 
+import os
+import runpy
 import sys
 import _thread
 
@@ -29,22 +72,100 @@ import inspect
 from io import StringIO
 
 LOGGING = False
-TIMEOUT = 10  # seconds
+TIMEOUT = 10  # seconds, per request (unless the request specifies its own; 0 means none)
+
+# modules loaded before any student code runs; anything else is discarded between evaluations
+initial_modules = set(sys.modules.keys())
+
+
+class Concluded(Exception):
+    """Raised to stop handling the current request once its response is known."""
+
+    def __init__(self, response):
+        super().__init__()
+        self.response = response
+
+
+class TimedOut(Exception):
+    pass
+
 
-globalz = {}  # globals() in the imported module
-objects = {}
+class Module:
+    """The state of the imported student module and its cataloged members."""
 
-classes = {}
-functions = {}
-variables = {}
+    def __init__(self, key, module, output):
+        self.key = key  # the (directory, name) pair identifying the module
+        self.module = module
+        self.output = output  # any characters sent to the standard out during import
+        self.sources = source_stamps()  # the stamp of each source file imported with the module
+
+        self.globalz = {}  # globals() in the imported module
+        self.classes = {}
+        self.functions = {}
+        self.variables = {}
+
+        # catalog the members of this module
+        for member_name, value in inspect.getmembers(module):
+            self.globalz[member_name] = value
+
+            if inspect.isbuiltin(value):
+                continue
+            elif inspect.isclass(value):
+                self.classes[member_name] = value
+            elif inspect.isfunction(value):
+                self.functions[member_name] = value
+            elif type(value) not in [types.FunctionType, types.LambdaType, types.MethodType,
+                                     types.ModuleType]:
+                self.variables[member_name] = value
+
+    def is_stale(self):
+        """Return whether any source file imported with this module has changed since."""
+        return any(stamp(path) != s for path, s in self.sources.items())
+
+
+requests = sys.__stdin__  # the stream from which requests are read
+responses = sys.__stdout__  # the stream to which responses are written
+
+current = None  # the Module for the current request, or None if it must be imported again
+current_directory = None  # the directory most recently named by a request
 
 
 def log(s):
     print(s, file=sys.stderr)
 
 
+def encode(response):
+    """Return the JSON encoding of a response. If the response holds a value that cannot be
+    encoded (such as a set, or an instance of a student's class), the encoding of an error response
+    is returned instead.
+    """
+    try:
+        return json.dumps(response)
+    except (TypeError, ValueError) as e:
+        try:
+            error(e)
+        except Concluded as c:
+            return json.dumps(c.response)
+
+
+def write_line(s):
+    if LOGGING:
+        print(s, file=sys.stderr)
+
+    responses.write(s + '\n')
+    responses.flush()
+
+
+def write_response(obj):
+    write_line(encode(obj))
+
+
+def respond(obj):
+    raise Concluded(obj)
+
+
 def conclude(val, output=None, after=None):
-    s = json.dumps({
+    respond({
         'error': False,  # no error occurred
         'value': val,  # the value of a variable/value returned by a function or method
         'type': type(val).__name__,  # the type of the value (the type name as a string)
@@ -52,27 +173,36 @@ def conclude(val, output=None, after=None):
         'after': after  # if a method is being tested on an instance, its state after a method call
     })
 
-    if LOGGING:
-        print(s, file=sys.stderr)
-
-    print(s)
-
-    sys.exit(0)
-
 
 def error(exc):
-    s = json.dumps({
+    respond({
         'error': True,
         'error_type': type(exc).__name__,
         'error_message': str(exc)
     })
 
-    if LOGGING:
-        print(s, file=sys.stderr)
 
-    print(s)
+def isolate_streams():
+    """Move the requests, the responses and the log onto descriptors of their own, and point the
+    standard in, out and error of the process at the null device. Only Python code sees sys.stdout,
+    which is replaced during each request; a child process writes to descriptor 1 directly.
+    """
+    global requests, responses
+
+    requests = os.fdopen(os.dup(0), 'r', encoding=sys.__stdin__.encoding)
+    responses = os.fdopen(os.dup(1), 'w', encoding=sys.__stdout__.encoding)
+    sys.stderr = os.fdopen(os.dup(2), 'w', encoding=sys.__stderr__.encoding, buffering=1)
+
+    null = os.open(os.devnull, os.O_RDWR)
+    for fd in (0, 1, 2):
+        os.dup2(null, fd)
+
+    os.close(null)
+
 
-    sys.exit(1)
+def restore_streams():
+    sys.stdin = sys.__stdin__
+    sys.stdout = sys.__stdout__
 
 
 def new(klass, fields):
@@ -86,7 +216,7 @@ def new(klass, fields):
     return obj
 
 
-def find_method(class_name, method_name):
+def find_method(classes, class_name, method_name):
     try:
         for name, value in inspect.getmembers(classes[class_name]):
             if inspect.isfunction(value) and name == method_name:
@@ -96,129 +226,353 @@ def find_method(class_name, method_name):
         # the class could not be found
         return None
 
-timer = threading.Timer(TIMEOUT, _thread.interrupt_main)
-timer.daemon = True  # so that the interrupt_main() call will terminate the whole process
-timer.start()
 
-# wait for a JSON message describing what we should do
-msg = json.loads(input())
+def stamp(path):
+    """Return the modification time and size of the specified file, or None if it is missing."""
+    try:
+        st = os.stat(path)
+        return st.st_mtime_ns, st.st_size
+    except OSError:
+        return None
+
+
+def source_stamps():
+    """Return the stamp of the source file of every module imported since the worker started."""
+    stamps = {}
+    for name, module in list(sys.modules.items()):
+        path = getattr(module, '__file__', None)
+        if name not in initial_modules and path is not None:
+            stamps[path] = stamp(path)
+
+    return stamps
+
+
+def discard_module():
+    """Forget the current student module and anything it imported, so that the next request
+    starts from a freshly imported module.
+    """
+    global current
+    current = None
+
+    for name in list(sys.modules.keys()):
+        if name not in initial_modules:
+            del sys.modules[name]
+
+    importlib.invalidate_caches()
+
+
+def enter_directory(directory):
+    """Make the specified directory the one in which student modules are found."""
+    global current_directory
+
+    if directory is None:
+        return
+
+    if directory != current_directory:
+        discard_module()
+
+        if current_directory in sys.path:
+            sys.path.remove(current_directory)
+
+        sys.path.insert(0, directory)
+
+        # the finders on sys.path may have cached the old directory's listing
+        sys.path_importer_cache.clear()
+
+        current_directory = directory
+
+    # the directory may have been replaced since we last entered it
+    os.chdir(directory)
+
+
+def load_module(msg):
+    global current
+
+    key = (msg.get('directory'), msg['name'])
+
+    if current is not None and current.key == key:
+        if not current.is_stale():
+            return current
+
+        # the student changed the module since it was imported
+        discard_module()
+
+    enter_directory(msg.get('directory'))
 
-module = None
-try:
     import_in_buf = StringIO()
     import_out_buf = StringIO()
 
-    sys.stdin = import_in_buf
-    sys.stdout = import_out_buf
-
-    module = importlib.import_module(msg['name'])
+    try:
+        sys.stdin = import_in_buf
+        sys.stdout = import_out_buf
 
-    sys.stdin = sys.__stdin__
-    sys.stdout = sys.__stdout__
+        module = importlib.import_module(msg['name'])
 
-except ImportError as e:
-    sys.stdin = sys.__stdin__
-    sys.stdout = sys.__stdout__
+        restore_streams()
 
-    # could not find module
-    error(e)
+    except ImportError as e:
+        restore_streams()
+        discard_module()
 
-except (SyntaxError, NameError) as e:
-    if msg['type'] == 'load':
-        conclude(False, type(e).__name__ + ': ' + str(e))
-    else:
+        # could not find module
         error(e)
 
-if msg['type'] == 'load':
-    conclude(True, output=import_out_buf.getvalue())
+    except (SyntaxError, NameError) as e:
+        restore_streams()
+        discard_module()
 
-# catalog the members of this module
-for member_name, value in inspect.getmembers(module):
-    globalz[member_name] = value
+        if msg['type'] == 'load':
+            conclude(False, type(e).__name__ + ': ' + str(e))
+        else:
+            error(e)
 
-    if inspect.isbuiltin(value):
-        continue
-    elif inspect.isclass(value):
-        classes[member_name] = value
-    elif inspect.isfunction(value):
-        functions[member_name] = value
-    elif type(value) not in [types.FunctionType, types.LambdaType, types.MethodType,
-                             types.ModuleType]:
-        variables[member_name] = value
+    current = Module(key, module, import_out_buf.getvalue())
+    return current
 
-if msg['type'] == 'exists':
-    target = msg['target']
 
-    if target['type'] == 'variable':
-        conclude(target['name'] in variables)
-    elif target['type'] == 'function':
-        conclude(target['name'] in functions)
-    elif target['type'] == 'class':
-        conclude(target['name'] in classes)
-    elif target['type'] == 'method':
-        method_name = target['name']
-        class_name = target['class_name']
+def run_script(msg):
+    """Run a criteria script (which imports the socrates module) as if it were its own process.
+    The script's standard in receives the request's input, and its standard out is returned.
+    """
+    enter_directory(msg.get('directory'))
 
-        method = find_method(class_name, method_name)
-        conclude(method is not None)
+    # scripts may import student modules, and must get a fresh socrates module
+    discard_module()
 
-elif msg['type'] == 'eval':
-    target = msg['target']
+    in_buf = StringIO(msg.get('input', ''))
+    out_buf = StringIO()
 
-    if target['type'] == 'variable':
-        conclude(variables[target['name']])
+    exit_code = 0
+    sys.argv = [msg['path']]
+    sys.stdin = in_buf
+    sys.stdout = out_buf
 
-    elif target['type'] in ['function', 'method']:
-        parameters = msg['parameters']
-        args = parameters.get('args', [])
-        object_indices = parameters.get('object_indices', [])
-        kwargs = parameters.get('kwargs', {})
-        in_str = parameters.get('input', '')
+    try:
+        runpy.run_path(msg['path'], run_name='__main__')
+    except SystemExit as e:
+        if e.code is None:
+            exit_code = 0
+        elif isinstance(e.code, int):
+            exit_code = e.code
+        else:
+            exit_code = 1
+    except Exception as e:
+        log('script raised ' + type(e).__name__ + ': ' + str(e))
+        exit_code = 1
+    finally:
+        restore_streams()
+        discard_module()
+
+    respond({
+        'error': False,
+        'exit_code': exit_code,
+        'output': out_buf.getvalue()
+    })
 
-        before = parameters.get('before', None)
-        after = parameters.get('after', None)
 
-        if target['type'] == 'method':
-            before_class = classes[before['class_name']]
-            before_fields = before['fields']
+def start_timer(timeout):
+    """Interrupt the main thread once the timeout (in seconds) has passed, unless the returned
+    timer is cancelled first.
+    """
+    if timeout <= 0:
+        return None
+
+    timer = threading.Timer(timeout, _thread.interrupt_main)
+    timer.daemon = True
+    timer.start()
+    return timer
 
-            before_obj = new(before_class, before_fields)
 
-        for i in object_indices:
-            args[i] = new(classes[args[i]['class_name']], args[i]['fields'])
+def timed_out_response(timeout):
+    try:
+        error(TimedOut('evaluation took longer than ' + str(timeout) + ' seconds'))
+    except Concluded as c:
+        return c.response
 
-        in_buf = StringIO(in_str)
-        out_buf = StringIO()
 
-        sys.stdin = in_buf
-        sys.stdout = out_buf
+def run_batch(msg):
+    """Answer each evaluation of a batch request as if it were its own request, and respond with
+    the list of their responses. Each response is encoded as soon as it is known, so that a value
+    that cannot be encoded only affects its own evaluation. Returns whether any evaluation timed
+    out.
+    """
+    timeout = msg.get('timeout', TIMEOUT)
+    results = []
+    timed_out = False
 
+    for part in msg['requests']:
+        sub = dict(part)
+        sub['name'] = msg['name']
+        sub['directory'] = msg.get('directory')
+        sub['type'] = 'eval'
+
+        timer = start_timer(timeout)
         try:
-            if target['type'] == 'function':
-                f = functions[target['name']]
-                rv = f(*args, **kwargs)
+            try:
+                handle(sub)
+            finally:
+                if timer is not None:
+                    timer.cancel()
+
+        except Concluded as c:
+            results.append(encode(c.response))
 
-            elif target['type'] == 'method':
-                m = find_method(before['class_name'], target['name'])
-                rv = m(before_obj, *args, **kwargs)
+        except KeyboardInterrupt:
+            restore_streams()
+            discard_module()
+            results.append(encode(timed_out_response(timeout)))
+            timed_out = True
 
         except Exception as e:
-            sys.stdin = sys.__stdin__
-            sys.stdout = sys.__stdout__
-            error(e)
+            restore_streams()
+            discard_module()
+            try:
+                error(e)
+            except Concluded as c:
+                results.append(encode(c.response))
+
+    write_line('{"error": false, "results": [' + ', '.join(results) + ']}')
+
+    return timed_out
+
+
+def handle(msg):
+    if msg['type'] == 'script':
+        run_script(msg)
+
+    mod = load_module(msg)
 
-        sys.stdin = sys.__stdin__
-        sys.stdout = sys.__stdout__
+    if msg['type'] == 'load':
+        conclude(True, output=mod.output)
+
+    elif msg['type'] == 'exists':
+        target = msg['target']
+
+        if target['type'] == 'variable':
+            conclude(target['name'] in mod.variables)
+        elif target['type'] == 'function':
+            conclude(target['name'] in mod.functions)
+        elif target['type'] == 'class':
+            conclude(target['name'] in mod.classes)
+        elif target['type'] == 'method':
+            method_name = target['name']
+            class_name = target['class_name']
+
+            method = find_method(mod.classes, class_name, method_name)
+            conclude(method is not None)
+
+    elif msg['type'] == 'eval':
+        target = msg['target']
+
+        if target['type'] == 'variable':
+            conclude(mod.variables[target['name']])
+
+        elif target['type'] in ['function', 'method']:
+            # this evaluation may change the module's state, so no later request may reuse it
+            discard_module()
+
+            parameters = msg['parameters']
+            args = parameters.get('args', [])
+            object_indices = parameters.get('object_indices', [])
+            kwargs = parameters.get('kwargs', {})
+            in_str = parameters.get('input', '')
+
+            before = parameters.get('before', None)
+            after = parameters.get('after', None)
+
+            if target['type'] == 'method':
+                before_class = mod.classes[before['class_name']]
+                before_fields = before['fields']
+
+                before_obj = new(before_class, before_fields)
+
+            for i in object_indices:
+                args[i] = new(mod.classes[args[i]['class_name']], args[i]['fields'])
+
+            in_buf = StringIO(in_str)
+            out_buf = StringIO()
+
+            sys.stdin = in_buf
+            sys.stdout = out_buf
+
+            try:
+                if target['type'] == 'function':
+                    f = mod.functions[target['name']]
+                    rv = f(*args, **kwargs)
+
+                elif target['type'] == 'method':
+                    m = find_method(mod.classes, before['class_name'], target['name'])
+                    rv = m(before_obj, *args, **kwargs)
+
+            except (Exception, SystemExit) as e:
+                restore_streams()
+                error(e)
 
-        output_str = out_buf.getvalue()
+            restore_streams()
 
-        after_fields = None
-        if target['type'] == 'method':
-            after_fields = {}
-            for name, value in inspect.getmembers(before_obj):
-                if inspect.isbuiltin(value) or name[0] == '_' or callable(value):
-                    continue
+            output_str = out_buf.getvalue()
+
+            after_fields = None
+            if target['type'] == 'method':
+                after_fields = {}
+                for name, value in inspect.getmembers(before_obj):
+                    if inspect.isbuiltin(value) or name[0] == '_' or callable(value):
+                        continue
+
+                    after_fields[name] = value
+
+            conclude(rv, output=output_str, after=after_fields)
+
+    error(ValueError('unknown request type: ' + str(msg['type'])))
+
+
+def main():
+    isolate_streams()
+
+    while True:
+        line = requests.readline()
+        if not line:
+            # Socrates closed our standard in; no more requests will arrive
+            break
+
+        if not line.strip():
+            continue
+
+        msg = json.loads(line)
+
+        if msg['type'] == 'batch':
+            if run_batch(msg):
+                # an evaluation was interrupted; the interpreter's state can no longer be trusted
+                sys.exit(1)
+            continue
+
+        timeout = msg.get('timeout', TIMEOUT)
+        timer = start_timer(timeout)
+
+        try:
+            try:
+                handle(msg)
+            finally:
+                if timer is not None:
+                    timer.cancel()
+
+        except Concluded as c:
+            write_response(c.response)
+
+        except KeyboardInterrupt:
+            # the request ran for too long; the module's state can no longer be trusted
+            restore_streams()
+            write_response(timed_out_response(timeout))
+            sys.exit(1)
+
+        except Exception as e:
+            restore_streams()
+            discard_module()
+            try:
+                error(e)
+            except Concluded as c:
+                write_response(c.response)
 
-                after_fields[name] = value
 
-        conclude(rv, output=output_str, after=after_fields)
+if __name__ == '__main__':
+    main()
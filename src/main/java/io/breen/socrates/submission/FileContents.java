@@ -0,0 +1,127 @@
+package io.breen.socrates.submission;
+
+import io.breen.socrates.Globals;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Reads and caches the decoded contents of one submitted file. Files at least as large as the
+ * "contents.mapThreshold" property (in bytes) are memory-mapped and decoded straight from the
+ * mapping; smaller files are read into an array.
+ *
+ * The decoded contents are held through a soft reference, so they stay cached until the memory is
+ * needed. They are decoded again if the garbage collector cleared them, or if the file's
+ * modification time or size has changed since they were decoded.
+ *
+ * @see SubmittedFile#getContents()
+ */
+final class FileContents {
+
+    private final Path path;
+
+    private SoftReference<String> cached;
+    private long modified;
+    private long size;
+
+    FileContents(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Reads the bytes of the file, mapping them into memory if the file is large.
+     */
+    static ByteBuffer read(Path path) throws IOException {
+        long threshold = Globals.getIntProperty(
+                "contents.mapThreshold", SubmittedFile.DEFAULT_MAP_THRESHOLD
+        );
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            // a mapping stays valid after its channel is closed
+            if (size >= threshold) return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        return ByteBuffer.wrap(Files.readAllBytes(path));
+    }
+
+    /**
+     * Decodes the specified bytes as UTF-8. Malformed input either causes a
+     * CharacterCodingException to be thrown, or is replaced with U+FFFD. The buffer's position is
+     * not changed.
+     */
+    static String decodeUTF8(ByteBuffer bytes, CodingErrorAction onError)
+            throws CharacterCodingException
+    {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                                                        .onMalformedInput(onError)
+                                                        .onUnmappableCharacter(onError);
+
+        return decoder.decode(bytes.duplicate()).toString();
+    }
+
+    /**
+     * Ends every line with '\n', whether the line ended with "\r\n", '\r' or nothing, as reading
+     * the string with BufferedReader.readLine() and joining the lines would.
+     */
+    static String normalizeLineEndings(String s) {
+        StringBuilder builder = new StringBuilder(s.length() + 1);
+
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c == '\r') {
+                builder.append('\n');
+                if (i + 1 < n && s.charAt(i + 1) == '\n') i++;
+            } else {
+                builder.append(c);
+            }
+        }
+
+        if (n > 0 && builder.charAt(builder.length() - 1) != '\n') builder.append('\n');
+
+        return builder.toString();
+    }
+
+    /**
+     * Returns the contents of the file, decoded as described by SubmittedFile.getContents(),
+     * decoding them only if the cached contents are missing or out of date.
+     */
+    synchronized String get() throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        long modified = attrs.lastModifiedTime().toMillis();
+        long size = attrs.size();
+
+        String contents = cached == null ? null : cached.get();
+        if (contents != null && modified == this.modified && size == this.size) return contents;
+
+        ByteBuffer bytes = read(path);
+
+        try {
+            contents = normalizeLineEndings(decodeUTF8(bytes, CodingErrorAction.REPORT));
+        } catch (CharacterCodingException x) {
+            contents = decodeUTF8(bytes, CodingErrorAction.REPLACE);
+        }
+
+        cached = new SoftReference<>(contents);
+        this.modified = modified;
+        this.size = size;
+
+        return contents;
+    }
+
+    /**
+     * Returns the contents of the file as a CharSequence backed by the cached string, which is
+     * not copied.
+     */
+    CharSequence view() throws IOException {
+        return CharBuffer.wrap(get());
+    }
+}
@@ -0,0 +1,232 @@
+package io.breen.socrates.submission;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.*;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An index of the lines of a file, used to show any part of a very large file without decoding the
+ * rest of it. The file is memory-mapped, and its bytes are only read when they are needed. Lines
+ * end with "\r\n", '\r' or '\n', as they do for BufferedReader.readLine(), and are decoded as UTF-8
+ * with each malformed sequence of bytes replaced by U+FFFD.
+ *
+ * Only the offset of every 64th line is stored. The offset of any other line is found by scanning
+ * forward from the nearest stored offset, so the index takes a small fraction of the memory that
+ * the file's contents would, and finding a line costs no more than scanning 64 lines.
+ *
+ * Offsets are byte offsets into the file, and lines are numbered from zero.
+ */
+public final class LineIndex {
+
+    private static final int LINES_PER_CHECKPOINT = 64;
+
+    private final ByteBuffer bytes;
+    private final int size;
+
+    /**
+     * The offset of every LINES_PER_CHECKPOINT-th line, starting with the first.
+     */
+    private final int[] checkpoints;
+
+    private final int lineCount;
+    private final int longestLine;
+
+    LineIndex(ByteBuffer bytes) {
+        this.bytes = bytes.duplicate();
+        this.size = this.bytes.limit();
+
+        int[] checkpoints = new int[16];
+        int lines = 0;
+        int longest = 0;
+
+        int start = 0;
+        while (start < size) {
+            if (lines % LINES_PER_CHECKPOINT == 0) {
+                int i = lines / LINES_PER_CHECKPOINT;
+                if (i == checkpoints.length) {
+                    int[] grown = new int[checkpoints.length * 2];
+                    System.arraycopy(checkpoints, 0, grown, 0, checkpoints.length);
+                    checkpoints = grown;
+                }
+
+                checkpoints[i] = start;
+            }
+
+            int end = lineEnd(start);
+            longest = Math.max(longest, end - start);
+            lines++;
+
+            start = nextLineStart(end);
+        }
+
+        int used = (lines + LINES_PER_CHECKPOINT - 1) / LINES_PER_CHECKPOINT;
+        this.checkpoints = new int[used];
+        System.arraycopy(checkpoints, 0, this.checkpoints, 0, used);
+
+        this.lineCount = lines;
+        this.longestLine = longest;
+    }
+
+    /**
+     * Maps the specified file into memory and indexes its lines.
+     *
+     * @throws IOException If the file could not be read, or it is larger than 2 GiB
+     */
+    public static LineIndex of(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("file is too large to index: " + path);
+
+            // a mapping stays valid after its channel is closed
+            return new LineIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Returns the length, in bytes, of the longest line, not counting its line ending.
+     */
+    public int getLongestLine() {
+        return longestLine;
+    }
+
+    /**
+     * Returns the offset of the first byte of the specified line.
+     */
+    public int getLineStart(int line) {
+        if (line < 0 || line >= lineCount) throw new IndexOutOfBoundsException("line " + line);
+
+        int start = checkpoints[line / LINES_PER_CHECKPOINT];
+        for (int i = line % LINES_PER_CHECKPOINT; i > 0; i--)
+            start = nextLineStart(lineEnd(start));
+
+        return start;
+    }
+
+    /**
+     * Returns the number of the line containing the byte at the specified offset.
+     */
+    public int getLineOf(int offset) {
+        if (offset < 0 || offset >= size) throw new IndexOutOfBoundsException("offset " + offset);
+
+        int low = 0;
+        int high = checkpoints.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (checkpoints[mid] <= offset) low = mid;
+            else high = mid - 1;
+        }
+
+        int line = low * LINES_PER_CHECKPOINT;
+        int next = nextLineStart(lineEnd(checkpoints[low]));
+        while (next <= offset) {
+            next = nextLineStart(lineEnd(next));
+            line++;
+        }
+
+        return line;
+    }
+
+    /**
+     * Returns the specified line, without its line ending.
+     */
+    public String getLine(int line) {
+        return getLine(line, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the specified line without its line ending, cut short after at most maxBytes bytes.
+     * A line is only cut between characters.
+     */
+    public String getLine(int line, int maxBytes) {
+        int start = getLineStart(line);
+        int end = lineEnd(start);
+
+        if (end - start > maxBytes) {
+            end = start + maxBytes;
+
+            // do not cut a multi-byte character in two
+            while (end > start && (bytes.get(end) & 0xc0) == 0x80)
+                end--;
+        }
+
+        return decode(start, end);
+    }
+
+    /**
+     * Returns the bytes from offset start (inclusive) to offset end (exclusive), decoded.
+     */
+    public String decode(int start, int end) {
+        ByteBuffer slice = bytes.duplicate();
+        slice.limit(end);
+        slice.position(start);
+
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+        decoder.onMalformedInput(CodingErrorAction.REPLACE);
+        decoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        try {
+            return decoder.decode(slice).toString();
+        } catch (CharacterCodingException x) {
+            // cannot happen, since malformed input is replaced
+            throw new IllegalStateException(x);
+        }
+    }
+
+    /**
+     * Returns the offset of the first occurrence of the specified text, encoded as UTF-8, at or
+     * after the specified offset, or -1 if there is none.
+     */
+    public int find(String text, int from) {
+        byte[] needle = text.getBytes(StandardCharsets.UTF_8);
+        if (needle.length == 0) return -1;
+
+        byte first = needle[0];
+        int last = size - needle.length;
+
+        outer:
+        for (int i = Math.max(from, 0); i <= last; i++) {
+            if (bytes.get(i) != first) continue;
+
+            for (int j = 1; j < needle.length; j++)
+                if (bytes.get(i + j) != needle[j]) continue outer;
+
+            return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the offset of the line ending of the line starting at the specified offset, or the
+     * size of the file if the line has no line ending.
+     */
+    private int lineEnd(int start) {
+        int i = start;
+        while (i < size) {
+            byte b = bytes.get(i);
+            if (b == '\n' || b == '\r') break;
+            i++;
+        }
+
+        return i;
+    }
+
+    /**
+     * Returns the offset just past the line ending at the specified offset.
+     */
+    private int nextLineStart(int end) {
+        if (end >= size) return size;
+
+        if (bytes.get(end) == '\r' && end + 1 < size && bytes.get(end + 1) == '\n') return end + 2;
+
+        return end + 1;
+    }
+}
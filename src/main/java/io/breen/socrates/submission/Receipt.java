@@ -37,7 +37,10 @@ public final class Receipt {
         while ((line = reader.readLine()) != null) {
             Date ldt;
             try {
-                ldt = Globals.ISO8601.parse(line);
+                // the shared SimpleDateFormat is not thread-safe, and receipts are read in parallel
+                synchronized (Globals.ISO8601) {
+                    ldt = Globals.ISO8601.parse(line);
+                }
             } catch (ParseException e) {
                 throw new ReceiptFormatException(
                         "receipt has invalid timestamp: " + line
@@ -83,10 +83,7 @@ public class Submission implements Comparable<Submission> {
                                 // found a submitted file that is not a receipt
                                 SubmittedFile submittedFile;
 
-                                // TODO does this work on Windows?
-                                Path receiptPath = Paths.get(
-                                        path.toString() + ".receipt"
-                                );
+                                Path receiptPath = SubmittedFile.getReceiptPath(path);
 
                                 if (Files.exists(receiptPath)) {
                                     try {
@@ -0,0 +1,107 @@
+package io.breen.socrates.submission;
+
+import io.breen.socrates.Globals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Creates Submission objects from many submission directories at once. Since most of the time
+ * spent in Submission.fromDirectory() is spent waiting for the file system (especially when the
+ * submissions are on a network share), the directories are read on a pool of threads, and each
+ * submission is given to a listener as soon as it has been read.
+ *
+ * The number of threads is set by the "loader.threads" property.
+ *
+ * @see Submission#fromDirectory(Path)
+ */
+public class SubmissionLoader {
+
+    public static final int DEFAULT_NUM_THREADS = 8;
+
+    private static Logger logger = Logger.getLogger(SubmissionLoader.class.getName());
+
+    private final int numThreads;
+
+    public SubmissionLoader() {
+        this(Globals.getIntProperty("loader.threads", DEFAULT_NUM_THREADS));
+    }
+
+    public SubmissionLoader(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * Reads each of the specified directories, and blocks until all of them have been read. The
+     * listener is called once for each directory, from one of the loader's threads, in the order
+     * in which the directories finish.
+     */
+    public void loadAll(List<Path> directories, final Listener listener)
+            throws InterruptedException
+    {
+        final AtomicInteger threadNum = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.min(numThreads, Math.max(1, directories.size())), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "submission-loader-" + threadNum.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                }
+        );
+
+        for (final Path p : directories) {
+            pool.execute(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            load(p, listener);
+                        }
+                    }
+            );
+        }
+
+        pool.shutdown();
+
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void load(Path directory, Listener listener) {
+        Submission submission;
+
+        try {
+            submission = Submission.fromDirectory(directory);
+        } catch (IOException | ReceiptFormatException | AlreadyGradedException |
+                IllegalArgumentException x) {
+            logger.info("could not add submission " + directory + ": " + x);
+            listener.failed(directory, x);
+            return;
+        }
+
+        listener.loaded(directory, submission);
+    }
+
+    /**
+     * Receives the outcome of reading each submission directory.
+     */
+    public interface Listener {
+
+        void loaded(Path directory, Submission submission);
+
+        /**
+         * Called if the directory is not a valid submission. The exception is an IOException,
+         * ReceiptFormatException, AlreadyGradedException, or an IllegalArgumentException if the
+         * path is not a directory.
+         */
+        void failed(Path directory, Exception x);
+    }
+}
@@ -0,0 +1,356 @@
+package io.breen.socrates.submission;
+
+import io.breen.socrates.Globals;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches the directories of submissions that have already been loaded, so that files added or
+ * changed afterwards are noticed without loading the submissions again. Every directory of a
+ * submission is registered with a WatchService, since a WatchService does not watch
+ * subdirectories.
+ *
+ * When a submitted file or its receipt changes, only that SubmittedFile is refreshed. When a file
+ * is added, a new SubmittedFile is created for it; the listener is responsible for adding it to its
+ * Submission. Files that are deleted are left in their submissions. Events that arrive within a
+ * short time of each other are handled together, so that a file written in several steps is only
+ * reported once, and a file whose modification time and size have not changed is not reported. If
+ * the WatchService loses events for a directory, the files in that directory (and only those) are
+ * looked at again.
+ *
+ * The listener is called on the watcher's own thread.
+ */
+public class SubmissionWatcher {
+
+    /**
+     * How long to wait for more events before handling the events received so far, and how long
+     * to keep waiting if events keep arriving.
+     */
+    private static final long SETTLE_MILLIS = 250;
+    private static final long MAX_SETTLE_MILLIS = 2000;
+
+    /**
+     * How often the watcher thread looks for new submissions to watch.
+     */
+    private static final long POLL_MILLIS = 500;
+
+    private static final String RECEIPT_SUFFIX = ".receipt";
+
+    private static Logger logger = Logger.getLogger(SubmissionWatcher.class.getName());
+
+    private final WatchService service;
+    private final Listener listener;
+    private final Thread thread;
+
+    /**
+     * Submissions waiting to be watched.
+     */
+    private final List<Submission> queued = new LinkedList<>();
+
+    /**
+     * The number of submissions given to watch(), and the number of those whose directories have
+     * been registered. Guarded by the queued list.
+     */
+    private int numWatched;
+    private int numRegistered;
+
+    /*
+     * The following are only used on the watcher thread.
+     */
+    private final Map<WatchKey, Directory> directories = new HashMap<>();
+    private final Map<Path, SubmittedFile> files = new HashMap<>();
+
+    /**
+     * The modification time and size of each submitted file and receipt, when it was last looked
+     * at.
+     */
+    private final Map<Path, String> stamps = new HashMap<>();
+
+    private volatile boolean closed;
+
+    public SubmissionWatcher(Listener listener) throws IOException {
+        this.listener = listener;
+        this.service = FileSystems.getDefault().newWatchService();
+
+        thread = new Thread("submission-watcher") {
+            @Override
+            public void run() {
+                try {
+                    watchLoop();
+                } catch (InterruptedException | ClosedWatchServiceException ignored) {}
+            }
+        };
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Starts watching the directories of the specified submissions. The directories are walked on
+     * the watcher thread, so this returns immediately.
+     */
+    public void watch(Collection<Submission> submissions) {
+        synchronized (queued) {
+            queued.addAll(submissions);
+            numWatched += submissions.size();
+        }
+    }
+
+    /**
+     * Waits until the directories of every submission given to watch() so far have been
+     * registered, so that changes made to them from now on are noticed. Returns false if this did
+     * not happen within the specified time.
+     */
+    boolean awaitRegistered(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+
+        synchronized (queued) {
+            while (numRegistered < numWatched) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) return false;
+
+                queued.wait(remaining);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Stops watching. The listener is not called again.
+     */
+    public void close() {
+        closed = true;
+
+        try {
+            service.close();
+        } catch (IOException ignored) {}
+    }
+
+    private void watchLoop() throws InterruptedException {
+        while (!closed) {
+            registerQueued();
+
+            WatchKey key = service.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (key == null) continue;
+
+            Map<Path, Submission> changed = new LinkedHashMap<>();
+            long deadline = System.currentTimeMillis() + MAX_SETTLE_MILLIS;
+
+            do {
+                collect(key, changed);
+                if (System.currentTimeMillis() > deadline) break;
+
+                key = service.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+            } while (key != null);
+
+            for (Map.Entry<Path, Submission> entry : changed.entrySet()) {
+                if (closed) return;
+                update(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void registerQueued() {
+        List<Submission> submissions;
+        synchronized (queued) {
+            if (queued.isEmpty()) return;
+
+            submissions = new ArrayList<>(queued);
+            queued.clear();
+        }
+
+        for (Submission s : submissions) {
+            for (SubmittedFile f : s.files)
+                files.put(f.fullPath, f);
+
+            try {
+                register(s, s.submissionDir, null);
+            } catch (IOException x) {
+                logger.warning("cannot watch " + s.submissionDir + ": " + x);
+            }
+        }
+
+        synchronized (queued) {
+            numRegistered += submissions.size();
+            queued.notifyAll();
+        }
+    }
+
+    /**
+     * Registers the specified directory and its subdirectories, and remembers the modification
+     * time and size of every file in them. If found is non-null, the files are added to it.
+     */
+    private void register(final Submission submission, Path directory, final List<Path> found)
+            throws IOException
+    {
+        Files.walkFileTree(
+                directory, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+                            throws IOException
+                    {
+                        WatchKey key = dir.register(
+                                service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE
+                        );
+                        directories.put(key, new Directory(submission, dir));
+
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (found == null) stamps.put(file, stampOf(attrs));
+                        else found.add(file);
+
+                        return FileVisitResult.CONTINUE;
+                    }
+                }
+        );
+    }
+
+    /**
+     * Adds the paths named by the events of the specified key to the map of changed paths.
+     */
+    private void collect(WatchKey key, Map<Path, Submission> changed) {
+        Directory d = directories.get(key);
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (d == null) continue;
+
+            if (event.kind() == OVERFLOW) {
+                // events were lost, so look at every file in this directory
+                logger.info("rescanning " + d.path + " after missed events");
+
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(d.path)) {
+                    for (Path p : stream)
+                        changed.put(p, d.submission);
+                } catch (IOException x) {
+                    logger.warning("cannot rescan " + d.path + ": " + x);
+                }
+
+            } else {
+                changed.put(d.path.resolve((Path)event.context()), d.submission);
+            }
+        }
+
+        // the key is no longer valid if its directory was deleted
+        if (!key.reset()) directories.remove(key);
+    }
+
+    /**
+     * Looks at a path that may have changed, and reports the submitted file it affects, if any.
+     */
+    private void update(Path path, Submission submission) {
+        String name = path.getFileName().toString();
+
+        // grade reports are written by Socrates itself
+        if (name.equals(Globals.DEFAULT_GRADE_FILE_NAME)) return;
+
+        try {
+            if (Files.isDirectory(path)) {
+                if (isRegistered(path)) return;
+
+                List<Path> found = new ArrayList<>();
+                register(submission, path, found);
+
+                for (Path p : found)
+                    update(p, submission);
+
+            } else if (name.endsWith(RECEIPT_SUFFIX)) {
+                SubmittedFile f = files.get(
+                        path.resolveSibling(
+                                name.substring(0, name.length() - RECEIPT_SUFFIX.length())
+                        )
+                );
+
+                if (f != null && updateStamp(path)) {
+                    f.refresh();
+                    listener.fileChanged(submission, f);
+                }
+
+            } else if (updateStamp(path) && Files.isRegularFile(path) && !Files.isHidden(path)) {
+                SubmittedFile f = files.get(path);
+
+                if (f != null) {
+                    f.refresh();
+                    listener.fileChanged(submission, f);
+
+                } else {
+                    Path receipt = SubmittedFile.getReceiptPath(path);
+                    if (Files.exists(receipt)) updateStamp(receipt);
+                    else receipt = null;
+
+                    f = new SubmittedFile(path, submission.submissionDir.relativize(path), receipt);
+                    files.put(path, f);
+                    listener.fileAdded(submission, f);
+                }
+            }
+
+        } catch (IOException | ReceiptFormatException x) {
+            logger.warning("cannot update " + path + ": " + x);
+        }
+    }
+
+    private boolean isRegistered(Path directory) {
+        for (Directory d : directories.values())
+            if (d.path.equals(directory)) return true;
+
+        return false;
+    }
+
+    /**
+     * Records the current modification time and size of the specified file. Returns true if they
+     * differ from the ones recorded before, or if the file was deleted since then.
+     */
+    private boolean updateStamp(Path path) throws IOException {
+        String stamp;
+        try {
+            stamp = stampOf(Files.readAttributes(path, BasicFileAttributes.class));
+        } catch (NoSuchFileException x) {
+            return stamps.remove(path) != null;
+        }
+
+        return !stamp.equals(stamps.put(path, stamp));
+    }
+
+    private static String stampOf(BasicFileAttributes attrs) {
+        return attrs.lastModifiedTime().toMillis() + ":" + attrs.size();
+    }
+
+    /**
+     * Receives the files that the SubmissionWatcher finds were added or changed.
+     */
+    public interface Listener {
+
+        /**
+         * Called when a file is added to a submission's directory. The file has not been added to
+         * the Submission's list of files.
+         */
+        void fileAdded(Submission submission, SubmittedFile file);
+
+        /**
+         * Called when a submitted file or its receipt changes. The SubmittedFile has been
+         * refreshed.
+         */
+        void fileChanged(Submission submission, SubmittedFile file);
+    }
+
+    private static class Directory {
+
+        final Submission submission;
+        final Path path;
+
+        Directory(Submission submission, Path path) {
+            this.submission = submission;
+            this.path = path;
+        }
+    }
+}
@@ -1,19 +1,26 @@
 package io.breen.socrates.submission;
 
 import java.io.*;
-import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
-import java.nio.charset.*;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.logging.Logger;
 
 /**
- * Class representing immutable objects storing information about a single file found on the file
- * system that represents one part of a student's submission.
+ * Class representing objects storing information about a single file found on the file system that
+ * represents one part of a student's submission. The size and receipt of a file only change when
+ * refresh() is called, after the SubmissionWatcher notices that the file or its receipt changed.
+ *
+ * @see SubmissionWatcher
  */
 public class SubmittedFile {
 
+    /**
+     * The default size, in bytes, from which files are memory-mapped when their contents are read.
+     */
+    public static final int DEFAULT_MAP_THRESHOLD = 1 << 20;
+
     private static Logger logger = Logger.getLogger(SubmittedFile.class.getName());
 
     /**
@@ -30,19 +37,22 @@ public class SubmittedFile {
     /**
      * This file's size in bytes.
      */
-    public final long size;
+    public volatile long size;
 
     /**
      * This file's receipt, storing the submission timestamps. If there was no receipt for this
      * file, this is null.
      */
-    public final Receipt receipt;
+    public volatile Receipt receipt;
+
+    private final FileContents contents;
 
     public SubmittedFile(Path fullPath, Path localPath) throws IOException {
         this.fullPath = fullPath;
         this.localPath = localPath;
         this.size = Files.size(fullPath);
         this.receipt = null;
+        this.contents = new FileContents(fullPath);
     }
 
     public SubmittedFile(Path fullPath, Path localPath, Path receipt)
@@ -58,6 +68,29 @@ public class SubmittedFile {
         }
 
         this.receipt = r;
+        this.contents = new FileContents(fullPath);
+    }
+
+    /**
+     * Returns the path of the receipt for the file at the specified path. The receipt may not
+     * exist.
+     */
+    public static Path getReceiptPath(Path path) {
+        return path.resolveSibling(path.getFileName() + ".receipt");
+    }
+
+    /**
+     * Reads this file's size and receipt again, in case the file or its receipt has changed. The
+     * contents are read again the next time they are needed.
+     *
+     * @throws IOException If the file could not be read
+     * @throws ReceiptFormatException If the receipt has an invalid format
+     */
+    public void refresh() throws IOException, ReceiptFormatException {
+        size = Files.size(fullPath);
+
+        Path receiptPath = getReceiptPath(fullPath);
+        receipt = Files.exists(receiptPath) ? Receipt.fromReceiptFile(receiptPath) : null;
     }
 
     public String toString() {
@@ -67,47 +100,38 @@ public class SubmittedFile {
                 ")";
     }
 
+    /**
+     * Returns the contents of this file, decoded as UTF-8, with each malformed sequence of bytes
+     * replaced by U+FFFD. Line endings are left as they are.
+     */
     public String getContentsMixedUTF8() throws IOException {
-        FileInputStream inStream = new FileInputStream(fullPath.toFile());
-        StringBuilder builder = new StringBuilder();
-
-        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
-        byte[] buffer = new byte[1];
-        ByteBuffer wrapped = ByteBuffer.wrap(buffer);
-
-        while (true) {
-            if (inStream.read(buffer) == -1) break;
-            wrapped.rewind();
-
-            try {
-                CharBuffer cbuf = decoder.decode(wrapped);
-                builder.append(cbuf.charAt(0));
-            } catch (MalformedInputException | UnmappableCharacterException x) {
-                builder.append("�");
-            }
-        }
-
-        return builder.toString();
+        return FileContents.decodeUTF8(FileContents.read(fullPath), CodingErrorAction.REPLACE);
     }
 
+    /**
+     * Returns the contents of this file, decoded as UTF-8, with every line ending in '\n'.
+     *
+     * @throws CharacterCodingException If the file is not valid UTF-8
+     */
     public String getContentsUTF8() throws IOException {
-        StringBuilder builder = new StringBuilder();
-        BufferedReader reader = Files.newBufferedReader(fullPath, StandardCharsets.UTF_8);
-
-        String line;
-        while ((line = reader.readLine()) != null) {
-            builder.append(line);
-            builder.append('\n');
-        }
-
-        return builder.toString();
+        return FileContents.normalizeLineEndings(
+                FileContents.decodeUTF8(FileContents.read(fullPath), CodingErrorAction.REPORT)
+        );
     }
 
+    /**
+     * Returns the contents of this file as getContentsUTF8() does, or if the file is not valid
+     * UTF-8, as getContentsMixedUTF8() does. The contents are cached, and only read again when the
+     * file changes or memory is low.
+     */
     public String getContents() throws IOException {
-        try {
-            return getContentsUTF8();
-        } catch (IOException ignored) {}
+        return contents.get();
+    }
 
-        return getContentsMixedUTF8();
+    /**
+     * Returns the same characters as getContents(), without copying the cached contents.
+     */
+    public CharSequence getContentsView() throws IOException {
+        return contents.view();
     }
 }
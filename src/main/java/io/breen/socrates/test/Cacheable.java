@@ -0,0 +1,10 @@
+package io.breen.socrates.test;
+
+/**
+ * An interface implemented by automatable tests whose outcome depends only on the criteria and on
+ * the paths and contents of the files in the submission. The results of these tests may be reused
+ * for any submission whose files are the same, without running the test again.
+ *
+ * @see io.breen.socrates.cache.ResultCache
+ */
+public interface Cacheable {}
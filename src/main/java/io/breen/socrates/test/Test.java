@@ -1,8 +1,11 @@
 package io.breen.socrates.test;
 
+import io.breen.socrates.Globals;
+
 import javax.swing.*;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Document;
+import java.io.Serializable;
 
 /**
  * Class representing a single test specified by the criteria. Instances of non-abstract subclasses
@@ -21,7 +24,9 @@ import javax.swing.text.Document;
  * @see io.breen.socrates.criteria.Criteria
  * @see io.breen.socrates.test.Automatable
  */
-public abstract class Test {
+public abstract class Test implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     public double deduction;
     public String description;
@@ -39,8 +44,18 @@ public abstract class Test {
     /**
      * A utility function for appending a string to a Document object. Useful for appending strings
      * to the notes of a test, or the transcript document.
+     *
+     * The string is appended on the event dispatch thread, unless Socrates is running headless, in
+     * which case it is appended immediately.
      */
     public static void appendToDocument(final Document doc, final String s) {
+        if (Globals.headless) {
+            try {
+                doc.insertString(doc.getLength(), s, null);
+            } catch (BadLocationException ignored) {}
+            return;
+        }
+
         SwingUtilities.invokeLater(
                 new Runnable() {
                     @Override
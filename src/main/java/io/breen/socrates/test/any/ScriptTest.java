@@ -4,7 +4,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import io.breen.socrates.Globals;
 import io.breen.socrates.criteria.Criteria;
 import io.breen.socrates.file.File;
-import io.breen.socrates.python.PythonManager;
+import io.breen.socrates.python.PythonWorker;
+import io.breen.socrates.python.PythonWorkerPool;
 import io.breen.socrates.submission.Submission;
 import io.breen.socrates.submission.SubmittedFile;
 import io.breen.socrates.test.*;
@@ -16,6 +17,20 @@ import java.util.*;
 
 public class ScriptTest extends Test implements Automatable {
 
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The time, in seconds, that a script may run before it is stopped. This may be changed with
+     * the "python.timeout.script" property.
+     */
+    public static final int DEFAULT_TIMEOUT = 60;
+
+    /**
+     * The time a worker is given to respond beyond the script's timeout. A worker that takes
+     * longer than this is killed.
+     */
+    private static final long GRACE_MILLIS = 10000;
+
     /**
      * The string specifying the path to this script, relative to the "scripts" directory in a
      * criteria package. (This comes directly from the criteria file.)
@@ -54,35 +69,24 @@ public class ScriptTest extends Test implements Automatable {
         if (scriptPath == null)
             throw new AutomationFailureException("could not find script: " + path);
 
-        ProcessBuilder builder = new ProcessBuilder(
-                PythonManager.python3Command.toString(), "-B",
-                // turns off writing bytecode files (.py[co])
-                scriptPath.toString()
-        );
-
-        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        ObjectMapper mapper = new ObjectMapper();
 
         /*
-         * This allows scripts to import modules directly from student code. It adds the
-         * current working directory of the Python interpreter to the import search path list.
-         * Note that we also add the temporary directory containing the "socrates.py" file.
+         * The script runs in a pooled Python worker, as if it were its own process. Its working
+         * directory is the student's directory, so that scripts can import modules directly from
+         * student code. The worker's import path also includes the temporary directory containing
+         * the "socrates.py" file.
          */
-        Map<String, String> env = builder.environment();
-        env.put(
-                "PYTHONPATH",
-                System.getProperty("path.separator") + PythonManager.getTempDirectory().toString()
-        );
-
-        Path parentDir = target.fullPath.getParent();
-        builder.directory(parentDir.toFile());
+        Map<String, Object> request = new HashMap<>();
+        request.put("type", "script");
+        request.put("path", scriptPath.toString());
+        request.put("directory", target.fullPath.toAbsolutePath().getParent().toString());
 
-        ObjectMapper mapper = new ObjectMapper();
-        Process process;
+        int timeout = Globals.getIntProperty("python.timeout.script", DEFAULT_TIMEOUT);
+        request.put("timeout", timeout);
 
-        int exitCode;
+        Map<String, Object> scriptResponse;
         try {
-            process = builder.start();
-
             Map<String, Object> params = new HashMap<>(parameters);
             params.put("target_full_path", target.fullPath.toString());
             params.put("target_local_path", target.localPath.toString());
@@ -90,20 +94,36 @@ public class ScriptTest extends Test implements Automatable {
 
             params.put("static_path", criteria.getStaticDir().toString());
 
-            mapper.writeValue(process.getOutputStream(), params);
+            request.put("input", mapper.writeValueAsString(params) + "\n");
 
-            exitCode = process.waitFor();
+            PythonWorker worker = PythonWorkerPool.lease(null);
+            try {
+                scriptResponse = worker.request(request, GRACE_MILLIS + 1000L * timeout);
+            } catch (IOException x) {
+                PythonWorkerPool.discard(worker);
+                throw x;
+            }
+            PythonWorkerPool.release(worker);
 
-        } catch (IOException | InterruptedException x) {
+        } catch (IOException x) {
             throw new AutomationFailureException(x);
         }
 
+        // the worker could not run the script, or the script ran past its timeout
+        if (isErrorResponse(scriptResponse)) {
+            throw new AutomationFailureException(
+                    "could not run script: " + scriptResponse.get("error_type") + ": " +
+                            scriptResponse.get("error_message")
+            );
+        }
+
+        int exitCode = (int)scriptResponse.get("exit_code");
         if (exitCode != Globals.NORMAL_EXIT_CODE)
             throw new AutomationFailureException("script exited abnormally");
 
         Map<String, Object> response;
         try {
-            response = mapper.readValue(process.getInputStream(), Map.class);
+            response = mapper.readValue((String)scriptResponse.get("output"), Map.class);
         } catch (IOException x) {
             throw new AutomationFailureException(x);
         }
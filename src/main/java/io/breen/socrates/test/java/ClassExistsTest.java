@@ -6,12 +6,14 @@ import io.breen.socrates.file.java.JavaFile;
 import io.breen.socrates.submission.Submission;
 import io.breen.socrates.submission.SubmittedFile;
 import io.breen.socrates.test.*;
-import org.codehaus.janino.JavaSourceClassLoader;
 
 import javax.swing.text.Document;
+import java.io.IOException;
 
 
-public class ClassExistsTest extends Test implements Automatable<JavaFile> {
+public class ClassExistsTest extends Test implements Automatable<JavaFile>, Cacheable {
+
+    private static final long serialVersionUID = 1L;
 
     private final Class klass;
 
@@ -25,16 +27,12 @@ public class ClassExistsTest extends Test implements Automatable<JavaFile> {
                               Criteria criteria, Document transcript, Document notes)
             throws CannotBeAutomatedException, AutomationFailureException
     {
-        ClassLoader cl = new JavaSourceClassLoader(
-                this.getClass().getClassLoader(),
-                new java.io.File[] {submission.submissionDir.toFile()},
-                null
-        );
-
         try {
-            cl.loadClass(klass.name);
+            CompiledClasses.loadClass(submission, klass.name);
         } catch (ClassNotFoundException x) {
             return false;
+        } catch (IOException x) {
+            throw new AutomationFailureException(x);
         }
 
         return true;
@@ -0,0 +1,118 @@
+package io.breen.socrates.test.java;
+
+import io.breen.socrates.submission.Submission;
+import io.breen.socrates.util.Digests;
+import org.codehaus.janino.JavaSourceClassLoader;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * A cache of the classes compiled from the Java sources of each submission. Every Java test on a
+ * submission loads its classes through this cache, so the sources are compiled once and the same
+ * Class objects are shared by all of those tests, instead of each test compiling the sources again
+ * with a class loader of its own. A class that could not be compiled is remembered too, so that a
+ * compilation error is not found again by every test.
+ *
+ * Before a class is returned, the names, sizes and modification times of the Java sources in the
+ * submission directory are checked. If any source was added, removed or changed, the classes
+ * compiled so far are discarded and the sources are compiled again by a new class loader. Entries
+ * are dropped once their Submission is no longer used.
+ */
+final class CompiledClasses {
+
+    private static final Map<Submission, CompiledClasses> cache = new WeakHashMap<>();
+
+    private final String fingerprint;
+    private final ClassLoader loader;
+
+    /**
+     * For each class name, the loaded Class or the ClassNotFoundException thrown for it.
+     */
+    private final Map<String, Object> classes = new HashMap<>();
+
+    private CompiledClasses(Path directory, String fingerprint) {
+        this.fingerprint = fingerprint;
+        this.loader = new JavaSourceClassLoader(
+                CompiledClasses.class.getClassLoader(),
+                new java.io.File[] {directory.toFile()},
+                null
+        );
+    }
+
+    /**
+     * Returns the class with the specified name, compiled from the sources of the specified
+     * submission.
+     *
+     * @throws ClassNotFoundException If there is no such class, or its sources do not compile
+     * @throws IOException If the submission directory could not be read
+     */
+    static Class<?> loadClass(Submission submission, String name)
+            throws ClassNotFoundException, IOException
+    {
+        String fingerprint = fingerprint(submission.submissionDir);
+
+        CompiledClasses compiled;
+        synchronized (cache) {
+            compiled = cache.get(submission);
+            if (compiled == null || !compiled.fingerprint.equals(fingerprint)) {
+                compiled = new CompiledClasses(submission.submissionDir, fingerprint);
+                cache.put(submission, compiled);
+            }
+        }
+
+        return compiled.load(name);
+    }
+
+    /**
+     * Returns a digest of the relative paths, sizes and modification times of the Java sources in
+     * the specified directory and its subdirectories.
+     */
+    static String fingerprint(final Path directory) throws IOException {
+        final List<String> parts = new ArrayList<>();
+
+        Files.walkFileTree(
+                directory, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (file.getFileName().toString().endsWith(".java")) {
+                            parts.add(
+                                    directory.relativize(file) + ":" + attrs.size() + ":" +
+                                            attrs.lastModifiedTime().toMillis()
+                            );
+                        }
+
+                        return FileVisitResult.CONTINUE;
+                    }
+                }
+        );
+
+        Collections.sort(parts);
+        return Digests.of(parts.toArray(new String[parts.size()]));
+    }
+
+    /**
+     * Loads a class, compiling its sources if this is the first time it is loaded. Tests on the
+     * same submission that load classes at the same time wait for each other, since the class
+     * loader compiles one class at a time anyway.
+     */
+    private synchronized Class<?> load(String name) throws ClassNotFoundException {
+        Object loaded = classes.get(name);
+
+        if (loaded == null) {
+            try {
+                loaded = loader.loadClass(name);
+            } catch (ClassNotFoundException x) {
+                loaded = x;
+            }
+
+            classes.put(name, loaded);
+        }
+
+        if (loaded instanceof ClassNotFoundException) throw (ClassNotFoundException)loaded;
+
+        return (Class<?>)loaded;
+    }
+}
@@ -0,0 +1,273 @@
+package io.breen.socrates.test.java;
+
+import io.breen.socrates.Globals;
+import io.breen.socrates.java.JavaWorker;
+import io.breen.socrates.java.JavaWorkerExitedException;
+import io.breen.socrates.java.JavaWorkerPool;
+import io.breen.socrates.java.JavaWorkerTimeoutException;
+import io.breen.socrates.submission.Submission;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Runs methods of a student's Java classes in a child JVM leased from the JavaWorkerPool, instead
+ * of in the Socrates JVM. Student code that never returns is stopped once it exceeds its timeouts,
+ * and student code that exhausts the heap or calls System.exit() only ends the worker.
+ *
+ * Each call has a wall-clock timeout and a CPU timeout, read (in seconds) from the
+ * "java.timeout.wall" and "java.timeout.cpu" properties.
+ *
+ * @see JavaWorkerPool
+ */
+public class JavaEvaluator {
+
+    public static final int DEFAULT_WALL_TIMEOUT = 10;
+    public static final int DEFAULT_CPU_TIMEOUT = 10;
+
+    /**
+     * The time a worker is given to compile the sources and respond, beyond the timeouts of the
+     * calls themselves. A worker that takes longer than this is killed.
+     */
+    private static final long GRACE_MILLIS = 60000;
+
+    private final Submission submission;
+    private final String directory;
+
+    public JavaEvaluator(Submission submission) {
+        this.submission = submission;
+        this.directory = submission.submissionDir.toAbsolutePath().toString();
+    }
+
+    /**
+     * Returns the JSON encoding of an argument or expected value, which keeps the value's class.
+     */
+    private static Object encode(Object o) {
+        if (o == null) return null;
+
+        Map<String, Object> encoded = new HashMap<>();
+        encoded.put("class", o.getClass().getName());
+        encoded.put("value", o instanceof Character ? o.toString() : o);
+        return encoded;
+    }
+
+    private static Map<String, Object> encodeFields(Map<String, Object> fields) {
+        if (fields == null) return null;
+
+        Map<String, Object> encoded = new HashMap<>();
+        for (Map.Entry<String, Object> e : fields.entrySet())
+            encoded.put(e.getKey(), encode(e.getValue()));
+
+        return encoded;
+    }
+
+    private static Result uniformResult(Status status, String message) {
+        return new Result(status, false, null, message, null, null, false);
+    }
+
+    /**
+     * Runs the specified calls, in order, in a single round trip to one worker.
+     *
+     * @return The results of the calls, in the same order
+     *
+     * @throws IOException If the sources could not be read, or a low-level error occurs
+     * communicating with the worker
+     */
+    public List<Result> evaluateAll(List<Call> calls) throws IOException {
+        long wallTimeout = 1000L * Globals.getIntProperty(
+                "java.timeout.wall", DEFAULT_WALL_TIMEOUT
+        );
+        long cpuTimeout = 1000L * Globals.getIntProperty("java.timeout.cpu", DEFAULT_CPU_TIMEOUT);
+
+        List<Map<String, Object>> parts = new ArrayList<>(calls.size());
+        for (Call c : calls) {
+            List<Object> arguments = new ArrayList<>(c.arguments.length);
+            for (Object o : c.arguments)
+                arguments.add(encode(o));
+
+            Map<String, Object> part = new HashMap<>();
+            part.put("className", c.className);
+            part.put("methodName", c.methodName);
+            part.put("arguments", arguments);
+            part.put("expected", encode(c.expected));
+            part.put("input", c.input);
+            part.put("before", encodeFields(c.before));
+            part.put("after", encodeFields(c.after));
+            part.put("wallTimeout", wallTimeout);
+            part.put("cpuTimeout", cpuTimeout);
+            parts.add(part);
+        }
+
+        Map<String, Object> request = new HashMap<>();
+        request.put("directory", directory);
+        request.put("fingerprint", CompiledClasses.fingerprint(submission.submissionDir));
+        request.put("calls", parts);
+
+        JavaWorker worker = JavaWorkerPool.lease(directory);
+
+        Map<String, Object> response;
+        try {
+            response = worker.request(request, GRACE_MILLIS + calls.size() * wallTimeout);
+
+        } catch (JavaWorkerTimeoutException x) {
+            JavaWorkerPool.discard(worker);
+            return Collections.nCopies(calls.size(), uniformResult(Status.TIMEOUT, x.getMessage()));
+
+        } catch (JavaWorkerExitedException x) {
+            JavaWorkerPool.discard(worker);
+            return Collections.nCopies(calls.size(), uniformResult(Status.EXITED, x.getMessage()));
+
+        } catch (IOException x) {
+            JavaWorkerPool.discard(worker);
+            throw x;
+        }
+
+        if (response.containsKey("retire")) JavaWorkerPool.discard(worker);
+        else JavaWorkerPool.release(worker);
+
+        @SuppressWarnings("unchecked") List<Map<String, Object>> responses =
+                (List<Map<String, Object>>)response.get("results");
+        if (responses == null || responses.size() != calls.size())
+            throw new IOException("Java worker sent wrong number of results");
+
+        List<Result> results = new ArrayList<>(calls.size());
+        for (Map<String, Object> r : responses) {
+            @SuppressWarnings("unchecked") Map<String, String> after = (Map<String, String>)r.get(
+                    "after"
+            );
+
+            results.add(
+                    new Result(
+                            Status.valueOf(((String)r.get("status")).toUpperCase()),
+                            Boolean.TRUE.equals(r.get("passed")),
+                            (String)r.get("value"),
+                            (String)r.get("message"),
+                            (String)r.get("output"),
+                            after,
+                            Boolean.TRUE.equals(r.get("afterPassed"))
+                    )
+            );
+        }
+
+        return results;
+    }
+
+    public enum Status {
+        /**
+         * The method returned.
+         */
+        RETURNED,
+
+        /**
+         * Student code threw an exception or error.
+         */
+        THREW,
+
+        /**
+         * The call exceeded its wall-clock or CPU timeout.
+         */
+        TIMEOUT,
+
+        /**
+         * The call could not be made: the class, method, constructor or a field could not be
+         * found, or the arguments or field values did not match their types.
+         */
+        INVALID,
+
+        /**
+         * The worker exited without responding.
+         */
+        EXITED
+    }
+
+    /**
+     * A call of a method of a student's class, with arguments, the value it is expected to return,
+     * and the characters it can read from System.in. If the method is not static, it is called on
+     * a new object of the class, created with the constructor that has no parameters.
+     */
+    public static class Call {
+
+        public final String className;
+        public final String methodName;
+        public final Object[] arguments;
+        public final Object expected;
+
+        /**
+         * What the method reads from System.in, or null if the method should read nothing.
+         */
+        public final String input;
+
+        /**
+         * The values of the fields of the object before the method is called, or null if the
+         * fields should keep the values the constructor gave them.
+         */
+        public final Map<String, Object> before;
+
+        /**
+         * The values that fields of the object should have after the method is called, or null
+         * if the object should not be checked.
+         */
+        public final Map<String, Object> after;
+
+        public Call(String className, String methodName, Object[] arguments, Object expected,
+                    String input, Map<String, Object> before, Map<String, Object> after)
+        {
+            this.className = className;
+            this.methodName = methodName;
+            this.arguments = arguments;
+            this.expected = expected;
+            this.input = input;
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    public static class Result {
+
+        public final Status status;
+
+        /**
+         * If the method returned, whether its return value equals the expected value.
+         */
+        public final boolean passed;
+
+        /**
+         * If the method returned, the string form of its return value.
+         */
+        public final String value;
+
+        /**
+         * For any status other than RETURNED, a description of what happened.
+         */
+        public final String message;
+
+        /**
+         * What the method (and any threads it started) wrote to System.out, or null if the method
+         * did not run to completion.
+         */
+        public final String output;
+
+        /**
+         * If the method returned and the call gave the expected state of the object, the string
+         * form of each checked field after the call (null for a field that does not exist).
+         */
+        public final Map<String, String> after;
+
+        /**
+         * Whether each checked field has its expected value after the call.
+         */
+        public final boolean afterPassed;
+
+        public Result(Status status, boolean passed, String value, String message, String output,
+                      Map<String, String> after, boolean afterPassed)
+        {
+            this.status = status;
+            this.passed = passed;
+            this.value = value;
+            this.message = message;
+            this.output = output;
+            this.after = after;
+            this.afterPassed = afterPassed;
+        }
+    }
+}
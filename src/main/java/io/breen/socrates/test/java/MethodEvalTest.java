@@ -7,15 +7,17 @@ import io.breen.socrates.file.java.Object;
 import io.breen.socrates.submission.Submission;
 import io.breen.socrates.submission.SubmittedFile;
 import io.breen.socrates.test.*;
-import org.codehaus.janino.JavaSourceClassLoader;
 
 import javax.swing.text.Document;
-import java.lang.reflect.InvocationTargetException;
+import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 
-public class MethodEvalTest extends Test implements Automatable<JavaFile> {
+public class MethodEvalTest extends Test implements Automatable<JavaFile>, Cacheable {
+
+    private static final long serialVersionUID = 1L;
 
     /**
      * The expected return value of the method.
@@ -41,6 +43,19 @@ public class MethodEvalTest extends Test implements Automatable<JavaFile> {
      */
     public Map<String, Object> arguments;
 
+    /**
+     * An Object storing the fields that the called object should have before the method is called.
+     * If this is null, the fields keep the values given to them by the constructor.
+     */
+    public Object before;
+
+    /**
+     * An Object storing the fields that the called object should have after the method is called.
+     * Only fields specified here are checked. If this is null, the called object is not checked at
+     * all (useful if only the method's return value should be checked).
+     */
+    public Object after;
+
     /**
      * This empty constructor is used by SnakeYAML.
      */
@@ -63,7 +78,9 @@ public class MethodEvalTest extends Test implements Automatable<JavaFile> {
                 "value=" + value + ", " +
                 "output=" + output + ", " +
                 "input=" + input + ", " +
-                "arguments=" + arguments +
+                "arguments=" + arguments + ", " +
+                "before=" + before + ", " +
+                "after=" + after +
                 ")";
     }
 
@@ -78,56 +95,70 @@ public class MethodEvalTest extends Test implements Automatable<JavaFile> {
         Class klass = parent.getClassForMethod(method);
         if (klass == null) throw new IllegalArgumentException();
 
-        ClassLoader cl = new JavaSourceClassLoader(
-                this.getClass().getClassLoader(),
-                new java.io.File[] {submission.submissionDir.toFile()},
-                null
+        java.lang.Object[] args = buildArguments(method.parameters, arguments);
+
+        JavaEvaluator.Call call = new JavaEvaluator.Call(
+                klass.name,
+                method.name,
+                args,
+                value == null ? null : value.toJavaObject(),
+                input,
+                before == null ? null : before.toJavaFields(),
+                after == null ? null : after.toJavaFields()
         );
 
-        java.lang.Class c;
+        JavaEvaluator.Result result;
         try {
-            c = cl.loadClass(klass.name);
-        } catch (ClassNotFoundException x) {
+            result = new JavaEvaluator(submission).evaluateAll(Collections.singletonList(call))
+                                                  .get(0);
+        } catch (IOException x) {
             throw new AutomationFailureException(x);
         }
 
-        java.lang.reflect.Method[] methods = c.getDeclaredMethods();
-        java.lang.reflect.Method studentMethod = null;
+        switch (result.status) {
+        case RETURNED:
+            if (!result.output.isEmpty()) {
+                String outputStr = result.output;
+                if (!outputStr.endsWith("\n")) outputStr += "\n";
 
-        for (java.lang.reflect.Method m : methods) {
-            if (m.getName().equals(method.name)) {
-                studentMethod = m;
-                break;
+                appendToDocument(transcript, outputStr);
             }
-        }
 
-        if (studentMethod == null) {
-            appendToDocument(transcript, "could not locate method: is it named incorrectly?");
-            throw new CannotBeAutomatedException("could not locate method");
-        }
-
-        // TODO use before/after to create an instance
+            if (output != null && !output.equals(result.output)) {
+                appendToDocument(transcript, "output does not match expected output\n");
+                return false;
+            }
 
-        java.lang.Object[] args = buildArguments(method.parameters, arguments);
+            if (after != null && !result.afterPassed) {
+                appendToDocument(
+                        transcript,
+                        "fields after method call do not match expected fields: " + result.after +
+                                "\n"
+                );
+                return false;
+            }
 
-        // TODO buffer & send input to the method
+            // a test may only check the method's output or the object's fields
+            return value == null || result.passed;
 
-        java.lang.Object returnValue;
-        try {
-            returnValue = studentMethod.invoke(null, args);
-        } catch (IllegalArgumentException x) {
-            appendToDocument(transcript, "could not invoke method: " + x.getLocalizedMessage());
-            throw new CannotBeAutomatedException("got exception invoking method: " + x);
-        } catch (IllegalAccessException x) {
-            throw new AutomationFailureException(x);
-        } catch (InvocationTargetException x) {
-            appendToDocument(transcript, "exception was thrown in student code: " + x.getCause());
+        case THREW:
+            appendToDocument(
+                    transcript, "exception was thrown in student code: " + result.message + "\n"
+            );
             return false;
-        }
 
-        // TODO capture and check output
+        case TIMEOUT:
+            appendToDocument(transcript, "method did not return: " + result.message + "\n");
+            throw new CannotBeAutomatedException("timed out evaluating method");
 
-        return returnValue.equals(value.toJavaObject());
+        case EXITED:
+            appendToDocument(transcript, "student code exited the JVM: is System.exit() called?\n");
+            throw new CannotBeAutomatedException("Java worker exited");
+
+        default:
+            appendToDocument(transcript, result.message + "\n");
+            throw new CannotBeAutomatedException(result.message);
+        }
     }
 
     @Override
@@ -6,12 +6,14 @@ import io.breen.socrates.file.java.*;
 import io.breen.socrates.submission.Submission;
 import io.breen.socrates.submission.SubmittedFile;
 import io.breen.socrates.test.*;
-import org.codehaus.janino.JavaSourceClassLoader;
 
 import javax.swing.text.Document;
+import java.io.IOException;
 
 
-public class MethodExistsTest extends Test implements Automatable<JavaFile> {
+public class MethodExistsTest extends Test implements Automatable<JavaFile>, Cacheable {
+
+    private static final long serialVersionUID = 1L;
 
     private final Method method;
 
@@ -28,16 +30,10 @@ public class MethodExistsTest extends Test implements Automatable<JavaFile> {
         Class klass = parent.getClassForMethod(method);
         if (klass == null) throw new IllegalArgumentException();
 
-        ClassLoader cl = new JavaSourceClassLoader(
-                this.getClass().getClassLoader(),
-                new java.io.File[] {submission.submissionDir.toFile()},
-                null
-        );
-
         java.lang.Class c;
         try {
-            c = cl.loadClass(klass.name);
-        } catch (ClassNotFoundException x) {
+            c = CompiledClasses.loadClass(submission, klass.name);
+        } catch (ClassNotFoundException | IOException x) {
             throw new AutomationFailureException(x);
         }
 
@@ -0,0 +1,230 @@
+package io.breen.socrates.test.logicly;
+
+import java.util.*;
+
+/**
+ * A Boolean expression over the switches of a circuit, used by TruthTableTest to specify the
+ * expected value of a light bulb. An expression is evaluated bit-parallel: each variable is a word
+ * of 64 bits, one for each of 64 settings of the switches.
+ *
+ * An expression is made of variables (names made of letters, digits and underscores, not starting
+ * with a digit), the constants 0 and 1, parentheses and these operators, from the highest to the
+ * lowest precedence:
+ *
+ *     NOT:  !a, ~a, not a, or a' (postfix)
+ *     AND:  a & b, a * b, a and b
+ *     XOR:  a ^ b, a xor b
+ *     OR:   a | b, a + b, a or b
+ *
+ * A parsed expression is compiled into a postfix program. Instances are not thread-safe, since
+ * evaluation uses a stack owned by the instance.
+ */
+final class BooleanExpression {
+
+    private static final int NOT = -1;
+    private static final int AND = -2;
+    private static final int XOR = -3;
+    private static final int OR = -4;
+    private static final int ZERO = -5;
+    private static final int ONE = -6;
+
+    /**
+     * The postfix program. Each non-negative element pushes the variable with that index.
+     */
+    private final int[] program;
+    private final long[] stack;
+
+    private BooleanExpression(int[] program) {
+        this.program = program;
+        this.stack = new long[program.length];
+    }
+
+    /**
+     * Parses an expression whose variables are the specified names. The index of a name in the
+     * list is the index of its word in the array given to evaluate().
+     *
+     * @throws IllegalArgumentException If the expression is malformed or uses an unknown name
+     */
+    static BooleanExpression parse(String expression, List<String> names) {
+        Parser parser = new Parser(expression, names);
+        parser.parseOr();
+
+        if (parser.token != null)
+            throw parser.error("unexpected '" + parser.token + "'");
+
+        int[] program = new int[parser.program.size()];
+        for (int i = 0; i < program.length; i++)
+            program[i] = parser.program.get(i);
+
+        return new BooleanExpression(program);
+    }
+
+    /**
+     * Evaluates the expression for 64 settings of the variables at once.
+     */
+    long evaluate(long[] variables) {
+        int top = -1;
+
+        for (int op : program) {
+            switch (op) {
+            case NOT:
+                stack[top] = ~stack[top];
+                break;
+            case AND:
+                top--;
+                stack[top] &= stack[top + 1];
+                break;
+            case XOR:
+                top--;
+                stack[top] ^= stack[top + 1];
+                break;
+            case OR:
+                top--;
+                stack[top] |= stack[top + 1];
+                break;
+            case ZERO:
+                stack[++top] = 0;
+                break;
+            case ONE:
+                stack[++top] = -1L;
+                break;
+            default:
+                stack[++top] = variables[op];
+            }
+        }
+
+        return stack[0];
+    }
+
+    /**
+     * A recursive-descent parser that emits the postfix program as it goes.
+     */
+    private static class Parser {
+
+        final String expression;
+        final List<String> names;
+        final List<Integer> program = new ArrayList<>();
+
+        int pos;
+
+        /**
+         * The current token, or null at the end of the expression.
+         */
+        String token;
+
+        Parser(String expression, List<String> names) {
+            this.expression = expression;
+            this.names = names;
+            advance();
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(
+                    message + " in expression '" + expression + "'"
+            );
+        }
+
+        void advance() {
+            while (pos < expression.length() && Character.isWhitespace(expression.charAt(pos)))
+                pos++;
+
+            if (pos == expression.length()) {
+                token = null;
+                return;
+            }
+
+            int start = pos;
+            char c = expression.charAt(pos);
+
+            if (Character.isLetterOrDigit(c) || c == '_') {
+                while (pos < expression.length()) {
+                    c = expression.charAt(pos);
+                    if (!Character.isLetterOrDigit(c) && c != '_') break;
+                    pos++;
+                }
+            } else {
+                pos++;
+            }
+
+            token = expression.substring(start, pos);
+        }
+
+        boolean accept(String... alternatives) {
+            if (token == null) return false;
+
+            for (String s : alternatives) {
+                if (token.equals(s)) {
+                    advance();
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        void parseOr() {
+            parseXor();
+            while (accept("|", "+", "or")) {
+                parseXor();
+                program.add(OR);
+            }
+        }
+
+        void parseXor() {
+            parseAnd();
+            while (accept("^", "xor")) {
+                parseAnd();
+                program.add(XOR);
+            }
+        }
+
+        void parseAnd() {
+            parseNot();
+            while (accept("&", "*", "and")) {
+                parseNot();
+                program.add(AND);
+            }
+        }
+
+        void parseNot() {
+            if (accept("!", "~", "not")) {
+                parseNot();
+                program.add(NOT);
+                return;
+            }
+
+            parsePrimary();
+            while (accept("'"))
+                program.add(NOT);
+        }
+
+        void parsePrimary() {
+            if (token == null) throw error("unexpected end");
+
+            if (accept("(")) {
+                parseOr();
+                if (!accept(")")) throw error("missing ')'");
+                return;
+            }
+
+            if (accept("0")) {
+                program.add(ZERO);
+                return;
+            }
+
+            if (accept("1")) {
+                program.add(ONE);
+                return;
+            }
+
+            char c = token.charAt(0);
+            if (!Character.isLetter(c) && c != '_') throw error("unexpected '" + token + "'");
+
+            int index = names.indexOf(token);
+            if (index < 0) throw error("unknown switch '" + token + "'");
+
+            program.add(index);
+            advance();
+        }
+    }
+}
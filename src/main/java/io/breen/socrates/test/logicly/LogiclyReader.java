@@ -0,0 +1,331 @@
+package io.breen.socrates.test.logicly;
+
+import io.breen.socrates.util.Pair;
+
+import javax.xml.stream.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads the circuit of a Logicly file. A Logicly file is a raw DEFLATE stream of an XML document.
+ * The document's <logicly> element holds <object> elements for the gates, <connection> elements for
+ * the wires between them, and a <custom> element for each custom circuit, holding the <logicly>
+ * element that defines it. An <object> whose type is the UUID of a <custom> element is an instance
+ * of that custom circuit.
+ *
+ * The file is inflated and parsed as a stream, in one pass, keeping only the attributes of the
+ * objects and connections of each circuit. No limit is placed on the size of the file.
+ */
+final class LogiclyReader {
+
+    private static Logger logger = Logger.getLogger(LogiclyReader.class.getName());
+
+    private static final XMLInputFactory factory;
+
+    static {
+        factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private LogiclyReader() {}
+
+    /**
+     * Reads the compressed Logicly file at the specified path and compiles its circuit. Tests
+     * should use NetlistCache.get() instead, so that a file is only parsed once.
+     *
+     * @throws IOException If the file cannot be read or inflated
+     * @throws XMLStreamException If the file is not well-formed XML
+     * @throws UnsupportedGateException If the circuit contains an unrecognized gate, or an
+     * instance of a custom circuit that is not defined
+     */
+    static Netlist read(Path path)
+            throws IOException, XMLStreamException, UnsupportedGateException
+    {
+        Definition top;
+        Map<String, Definition> customs = new HashMap<>();
+
+        Inflater inflater = new Inflater(true);
+        try (InputStream in = new InflaterInputStream(Files.newInputStream(path), inflater)) {
+            top = parse(in, customs);
+        } finally {
+            inflater.end();
+        }
+
+        Pair<List<Switch>, List<LightBulb>> p = build(top, customs, new HashSet<String>());
+        return Netlist.compile(p.first, p.second);
+    }
+
+    /**
+     * Returns the value of an attribute, or the empty string if the element has no such attribute.
+     */
+    private static String attribute(XMLStreamReader reader, String name) {
+        String value = reader.getAttributeValue(null, name);
+        return value == null ? "" : value;
+    }
+
+    /**
+     * Parses the document, returning the definition of the top-level circuit and adding the
+     * definition of each custom circuit to the specified map.
+     */
+    private static Definition parse(InputStream in, Map<String, Definition> customs)
+            throws XMLStreamException
+    {
+        XMLStreamReader reader;
+
+        // the factory is not guaranteed to be thread-safe, but the readers it creates are separate
+        synchronized (factory) {
+            reader = factory.createXMLStreamReader(in);
+        }
+
+        Definition top = new Definition();
+
+        // the circuit whose <logicly> element is open, and the depth of that element
+        Definition current = null;
+        int currentDepth = 0;
+
+        // the custom circuit whose <custom> element is open, and the depth of that element
+        Definition custom = null;
+        int customDepth = 0;
+
+        int depth = 0;
+
+        try {
+            while (reader.hasNext()) {
+                int event = reader.next();
+
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    String name = reader.getLocalName();
+
+                    if (depth == 1) {
+                        if (name.equals("logicly")) {
+                            current = top;
+                            currentDepth = depth;
+                        }
+
+                    } else if (current != null && depth == currentDepth + 1) {
+                        switch (name) {
+                        case "object":
+                            current.objects.add(
+                                    new ObjectElement(
+                                            attribute(reader, "uid"),
+                                            attribute(reader, "type"),
+                                            attribute(reader, "exportName"),
+                                            attribute(reader, "name"),
+                                            attribute(reader, "inputs")
+                                    )
+                            );
+                            break;
+
+                        case "connection":
+                            current.connections.add(
+                                    new ConnectionElement(
+                                            attribute(reader, "inputUID"),
+                                            Integer.parseInt(attribute(reader, "inputIndex")),
+                                            attribute(reader, "outputUID"),
+                                            Integer.parseInt(attribute(reader, "outputIndex"))
+                                    )
+                            );
+                            break;
+
+                        case "custom":
+                            // custom circuits are only defined at the top level
+                            if (current != top) break;
+
+                            custom = new Definition();
+                            customDepth = depth;
+
+                            String type = attribute(reader, "type");
+                            if (customs.containsKey(type)) {
+                                logger.warning("ignoring repeated definition of " + type);
+                            } else {
+                                customs.put(type, custom);
+                            }
+                        }
+
+                    } else if (custom != null && depth == customDepth + 1 &&
+                            name.equals("logicly")) {
+                        current = custom;
+                        currentDepth = depth;
+                    }
+
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (current != null && depth == currentDepth) {
+                        if (current == top) {
+                            current = null;
+                        } else {
+                            current = top;
+                            currentDepth = 1;
+                        }
+                    }
+
+                    if (custom != null && depth == customDepth) custom = null;
+
+                    depth--;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        return top;
+    }
+
+    /**
+     * Creates the objects of a circuit and connects them, returning its switches and light bulbs.
+     *
+     * @param building The types of the custom circuits being built, to detect a custom circuit
+     * that contains itself
+     */
+    private static Pair<List<Switch>, List<LightBulb>> build(Definition def,
+                                                             Map<String, Definition> customs,
+                                                             Set<String> building)
+            throws UnsupportedGateException
+    {
+        HashMap<String, Evaluatable> objects = new HashMap<>();
+
+        List<Switch> switches = new LinkedList<>();
+        List<LightBulb> lightBulbs = new LinkedList<>();
+
+        /*
+         * Add the objects from this circuit to the object set. If an object's type is not a
+         * built-in Logicly type, then it refers to a custom definition. A new CustomCircuit
+         * object is created in this case.
+         */
+        for (ObjectElement el : def.objects) {
+            Evaluatable obj = null;
+            String uid = el.uid;
+            String type = el.type;
+
+            if (type.startsWith("switch")) {
+                obj = new Switch(UUID.fromString(uid), el.exportName);
+                switches.add((Switch)obj);
+
+            } else if (type.startsWith("light_bulb")) {
+                obj = new LightBulb(UUID.fromString(uid), el.exportName);
+                lightBulbs.add((LightBulb)obj);
+
+            } else if (type.startsWith("not")) {
+                obj = new NotGate(UUID.fromString(uid));
+
+            } else if (type.startsWith("and")) {
+                obj = new AndGate(UUID.fromString(uid), Integer.parseInt(el.inputs));
+
+            } else if (type.startsWith("or")) {
+                obj = new OrGate(UUID.fromString(uid), Integer.parseInt(el.inputs));
+
+            } else if (type.startsWith("constant_low")) {
+                obj = new LowConstant(UUID.fromString(uid));
+
+            } else if (type.startsWith("label")) {
+                // do nothing
+
+            } else {
+                /*
+                 * If the type is referring to a custom circuit, the type is a UUID and there
+                 * should be a <custom> element in the top-level of the document that defines the
+                 * circuit. Each instance of the custom circuit gets its own copy of the objects.
+                 */
+                try {
+                    UUID.fromString(type);
+                } catch (IllegalArgumentException x) {
+                    throw new UnsupportedGateException();
+                }
+
+                Definition customDef = customs.get(type);
+                if (customDef == null || !building.add(type))
+                    throw new UnsupportedGateException();
+
+                Pair<List<Switch>, List<LightBulb>> circuit = build(customDef, customs, building);
+                building.remove(type);
+
+                obj = new CustomCircuit(
+                        UUID.fromString(uid),
+                        el.name,
+                        circuit.first.toArray(new Switch[circuit.first.size()]),
+                        circuit.second.toArray(new LightBulb[circuit.second.size()])
+                );
+            }
+
+            if (obj != null) objects.put(uid, obj);
+        }
+
+        /*
+         * For each connection, identify the endpoints of the connection using the UUID
+         * and update the input list of the object whose input pin is being used.
+         */
+        for (ConnectionElement el : def.connections) {
+            int inputIndex = el.inputIndex;
+            int outputIndex = el.outputIndex;
+
+            Evaluatable from = objects.get(el.outputUID);
+            Evaluatable to = objects.get(el.inputUID);
+
+            if (from instanceof CustomCircuit) {
+                // use the underlying LightBulb as the source of the connection
+                CustomCircuit cc = (CustomCircuit)from;
+                from = cc.outputs[outputIndex];
+                outputIndex = 0;
+            }
+
+            if (to instanceof CustomCircuit) {
+                // use the underlying Switch as the destination of the connection
+                CustomCircuit cc = (CustomCircuit)to;
+                to = cc.inputs[inputIndex];
+                inputIndex = 0;
+            }
+
+            to.inputs[inputIndex] = from.outputs[outputIndex];
+        }
+
+        return new Pair<>(switches, lightBulbs);
+    }
+
+    /**
+     * The objects and connections of one circuit, either the top-level circuit or a custom one.
+     */
+    private static class Definition {
+
+        final List<ObjectElement> objects = new ArrayList<>();
+        final List<ConnectionElement> connections = new ArrayList<>();
+    }
+
+    private static class ObjectElement {
+
+        final String uid;
+        final String type;
+        final String exportName;
+        final String name;
+        final String inputs;
+
+        ObjectElement(String uid, String type, String exportName, String name, String inputs) {
+            this.uid = uid;
+            this.type = type;
+            this.exportName = exportName;
+            this.name = name;
+            this.inputs = inputs;
+        }
+    }
+
+    private static class ConnectionElement {
+
+        final String inputUID;
+        final int inputIndex;
+        final String outputUID;
+        final int outputIndex;
+
+        ConnectionElement(String inputUID, int inputIndex, String outputUID, int outputIndex) {
+            this.inputUID = inputUID;
+            this.inputIndex = inputIndex;
+            this.outputUID = outputUID;
+            this.outputIndex = outputIndex;
+        }
+    }
+}
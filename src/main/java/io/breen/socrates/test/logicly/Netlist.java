@@ -0,0 +1,603 @@
+package io.breen.socrates.test.logicly;
+
+import java.util.*;
+
+/**
+ * A compiled form of a Logicly circuit. The graph of Evaluatable objects built from a Logicly file
+ * is flattened into arrays indexed by integers, so that evaluating the circuit for a setting of its
+ * switches allocates nothing and visits each gate at most once.
+ *
+ * Each gate takes one of three values: FALSE, TRUE or UNDETERMINED. The values match those of
+ * Evaluatable.evaluate(), where UNDETERMINED stands for an UndeterminedStateException: an AND gate
+ * takes its inputs in order and stops at the first input that is FALSE or UNDETERMINED, and an OR
+ * gate is TRUE if any input is TRUE, even if other inputs are UNDETERMINED.
+ *
+ * If the circuit has no feedback loops, its gates are evaluated in one pass, in topological order.
+ * Otherwise, gates are evaluated on demand in the same order as Evaluatable.evaluate() would
+ * evaluate them, and a gate whose value depends on itself is UNDETERMINED (where evaluate() would
+ * recurse until the stack overflows).
+ *
+ * A circuit without feedback may also be evaluated for 64 settings of its switches at once, using
+ * a WordState.
+ *
+ * A Netlist is immutable and may be shared between threads; each thread evaluates it using its
+ * own State or WordState.
+ */
+public final class Netlist {
+
+    public static final byte FALSE = 0;
+    public static final byte TRUE = 1;
+    public static final byte UNDETERMINED = 2;
+
+    static final byte SWITCH = 0;
+    static final byte BUFFER = 1;
+    static final byte LIGHT_BULB = 2;
+    static final byte NOT = 3;
+    static final byte AND = 4;
+    static final byte OR = 5;
+    static final byte LOW = 6;
+
+    /**
+     * Stands for an unconnected input.
+     */
+    private static final int NONE = -1;
+
+    /**
+     * The kind of each gate.
+     */
+    final byte[] kinds;
+
+    /**
+     * The inputs of gate i are inputs[inputStart[i]] through inputs[inputStart[i + 1] - 1], in
+     * order. Each is the index of the gate connected to that input, or NONE.
+     */
+    final int[] inputStart;
+    final int[] inputs;
+
+    /**
+     * For each SWITCH gate, the index of its entry in the array of switch states; otherwise -1.
+     */
+    final int[] switchSlots;
+
+    /**
+     * The gates in topological order, or null if the circuit has a feedback loop.
+     */
+    final int[] order;
+
+    private final int numSwitches;
+    private final Map<String, Integer> switchNames;
+    private final Map<String, Integer> lightBulbs;
+
+    private Netlist(byte[] kinds, int[] inputStart, int[] inputs, int[] switchSlots,
+                    int numSwitches, Map<String, Integer> switchNames,
+                    Map<String, Integer> lightBulbs)
+    {
+        this.kinds = kinds;
+        this.inputStart = inputStart;
+        this.inputs = inputs;
+        this.switchSlots = switchSlots;
+        this.numSwitches = numSwitches;
+        this.switchNames = switchNames;
+        this.lightBulbs = lightBulbs;
+        this.order = sort();
+    }
+
+    /**
+     * Compiles the circuit whose top-level switches and light bulbs are specified. Gates that are
+     * not connected (directly or not) to one of the switches or light bulbs are left out.
+     *
+     * @throws UnsupportedGateException If the circuit contains an Evaluatable that cannot be
+     * compiled
+     */
+    public static Netlist compile(List<Switch> switches, List<LightBulb> lightBulbs)
+            throws UnsupportedGateException
+    {
+        Map<Evaluatable, Integer> ids = new IdentityHashMap<>();
+        List<Evaluatable> gates = new ArrayList<>();
+
+        // number the gates reachable from the light bulbs, without recursion
+        Deque<Evaluatable> stack = new ArrayDeque<>();
+
+        for (LightBulb b : lightBulbs)
+            stack.push(b);
+
+        for (Switch s : switches)
+            stack.push(s);
+
+        while (!stack.isEmpty()) {
+            Evaluatable e = stack.pop();
+            if (ids.containsKey(e)) continue;
+
+            ids.put(e, gates.size());
+            gates.add(e);
+
+            for (Evaluatable in : e.inputs)
+                if (in != null && !ids.containsKey(in)) stack.push(in);
+        }
+
+        int n = gates.size();
+        byte[] kinds = new byte[n];
+        int[] inputStart = new int[n + 1];
+        int[] switchSlots = new int[n];
+        Arrays.fill(switchSlots, -1);
+
+        int numInputs = 0;
+        for (Evaluatable e : gates)
+            numInputs += e.inputs.length;
+
+        int[] inputs = new int[numInputs];
+        int numSwitches = 0;
+        int pos = 0;
+
+        for (int i = 0; i < n; i++) {
+            Evaluatable e = gates.get(i);
+            inputStart[i] = pos;
+
+            if (e instanceof Switch) {
+                if (e.inputs[0] == null) {
+                    kinds[i] = SWITCH;
+                    switchSlots[i] = numSwitches++;
+                } else {
+                    // the switch of a subcircuit takes its value from its connection
+                    kinds[i] = BUFFER;
+                }
+            } else if (e instanceof LightBulb) {
+                kinds[i] = LIGHT_BULB;
+            } else if (e instanceof NotGate) {
+                kinds[i] = NOT;
+            } else if (e instanceof AndGate) {
+                kinds[i] = AND;
+            } else if (e instanceof OrGate) {
+                kinds[i] = OR;
+            } else if (e instanceof LowConstant) {
+                kinds[i] = LOW;
+            } else {
+                throw new UnsupportedGateException();
+            }
+
+            for (Evaluatable in : e.inputs)
+                inputs[pos++] = in == null ? NONE : ids.get(in);
+        }
+
+        inputStart[n] = pos;
+
+        // if two switches share an export name, the last one is used, as before
+        Map<String, Integer> switchNames = new HashMap<>();
+        for (Switch s : switches)
+            switchNames.put(s.exportName, ids.get(s));
+
+        Map<String, Integer> lightBulbNames = new HashMap<>();
+        for (LightBulb b : lightBulbs)
+            lightBulbNames.put(b.exportName, ids.get(b));
+
+        return new Netlist(
+                kinds, inputStart, inputs, switchSlots, numSwitches, switchNames, lightBulbNames
+        );
+    }
+
+    /**
+     * Returns the gates in topological order (each after all of its inputs), or null if there is
+     * a feedback loop.
+     */
+    private int[] sort() {
+        int n = kinds.length;
+
+        // the number of connected inputs of each gate that are not yet sorted
+        int[] numUnsorted = new int[n];
+
+        // readers[readerStart[g]] through readers[readerStart[g + 1] - 1] have g as an input
+        int[] readerStart = new int[n + 1];
+
+        for (int i = 0; i < n; i++) {
+            for (int j = inputStart[i]; j < inputStart[i + 1]; j++) {
+                if (inputs[j] == NONE) continue;
+                numUnsorted[i]++;
+                readerStart[inputs[j] + 1]++;
+            }
+        }
+
+        for (int i = 0; i < n; i++)
+            readerStart[i + 1] += readerStart[i];
+
+        int[] readers = new int[readerStart[n]];
+        int[] next = Arrays.copyOf(readerStart, n);
+
+        for (int i = 0; i < n; i++)
+            for (int j = inputStart[i]; j < inputStart[i + 1]; j++)
+                if (inputs[j] != NONE) readers[next[inputs[j]]++] = i;
+
+        int[] sorted = new int[n];
+        int head = 0;
+        int tail = 0;
+
+        for (int i = 0; i < n; i++)
+            if (numUnsorted[i] == 0) sorted[tail++] = i;
+
+        while (head < tail) {
+            int g = sorted[head++];
+            for (int j = readerStart[g]; j < readerStart[g + 1]; j++)
+                if (--numUnsorted[readers[j]] == 0) sorted[tail++] = readers[j];
+        }
+
+        return tail == n ? sorted : null;
+    }
+
+    public boolean hasFeedback() {
+        return order == null;
+    }
+
+    public int getNumGates() {
+        return kinds.length;
+    }
+
+    /**
+     * Returns the index of the state of the switch with the specified export name, or -1 if there
+     * is no such switch.
+     */
+    public int getSwitch(String exportName) {
+        Integer gate = switchNames.get(exportName);
+        return gate == null ? -1 : switchSlots[gate];
+    }
+
+    /**
+     * Returns the gate of the light bulb with the specified export name, or -1 if there is no such
+     * light bulb.
+     */
+    public int getLightBulb(String exportName) {
+        Integer gate = lightBulbs.get(exportName);
+        return gate == null ? -1 : gate;
+    }
+
+    public State newState() {
+        return new State();
+    }
+
+    /**
+     * Returns a new WordState for evaluating this circuit for 64 settings of its switches at once.
+     *
+     * @throws IllegalStateException If the circuit has a feedback loop
+     */
+    public WordState newWordState() {
+        if (order == null)
+            throw new IllegalStateException("circuit with feedback cannot be evaluated by words");
+
+        return new WordState();
+    }
+
+    /**
+     * The state of one evaluation of the circuit: the setting of each switch, and the value of
+     * each gate after evaluate() is called. A State may be reused for any number of evaluations,
+     * but must not be shared between threads.
+     */
+    public final class State {
+
+        public final boolean[] switches;
+
+        private final byte[] values;
+
+        /**
+         * For evaluation on demand: whether each gate is unvisited, in progress or done, and the
+         * stack of gates in progress with the position of the next input each will read.
+         */
+        private final byte[] marks;
+        private final int[] stackGates;
+        private final int[] stackInputs;
+
+        private static final byte UNVISITED = 0;
+        private static final byte IN_PROGRESS = 1;
+        private static final byte DONE = 2;
+
+        private State() {
+            switches = new boolean[numSwitches];
+            values = new byte[kinds.length];
+
+            if (order == null) {
+                marks = new byte[kinds.length];
+                stackGates = new int[kinds.length];
+                stackInputs = new int[kinds.length];
+            } else {
+                marks = null;
+                stackGates = null;
+                stackInputs = null;
+            }
+        }
+
+        /**
+         * Evaluates the circuit for the current setting of the switches.
+         */
+        public void evaluate() {
+            if (order != null) {
+                for (int g : order)
+                    values[g] = evaluateGate(g);
+            } else {
+                Arrays.fill(marks, UNVISITED);
+            }
+        }
+
+        /**
+         * Returns the value of the specified gate (such as a light bulb) after the last call to
+         * evaluate().
+         */
+        public byte getValue(int gate) {
+            if (order == null && marks[gate] != DONE) evaluateOnDemand(gate);
+            return values[gate];
+        }
+
+        /**
+         * Computes the value of a gate from the values of its inputs, which must be known.
+         */
+        private byte evaluateGate(int g) {
+            int start = inputStart[g];
+            int end = inputStart[g + 1];
+
+            switch (kinds[g]) {
+            case SWITCH:
+                return switches[switchSlots[g]] ? TRUE : FALSE;
+
+            case BUFFER:
+            case LIGHT_BULB:
+                return inputs[start] == NONE ? UNDETERMINED : values[inputs[start]];
+
+            case NOT:
+                if (inputs[start] == NONE) return UNDETERMINED;
+                return not(values[inputs[start]]);
+
+            case AND: {
+                boolean found = false;
+                for (int j = start; j < end; j++) {
+                    if (inputs[j] == NONE) continue;
+                    found = true;
+
+                    byte v = values[inputs[j]];
+                    if (v != TRUE) return v;
+                }
+                return found ? TRUE : UNDETERMINED;
+            }
+
+            case OR: {
+                boolean found = false;
+                boolean undetermined = false;
+                for (int j = start; j < end; j++) {
+                    if (inputs[j] == NONE) continue;
+                    found = true;
+
+                    byte v = values[inputs[j]];
+                    if (v == TRUE) return TRUE;
+                    if (v == UNDETERMINED) undetermined = true;
+                }
+                return found && !undetermined ? FALSE : UNDETERMINED;
+            }
+
+            case LOW:
+            default:
+                return FALSE;
+            }
+        }
+
+        /**
+         * Evaluates a gate of a circuit with feedback, reading the inputs of each gate in order
+         * and only as far as Evaluatable.evaluate() would. A gate reached again while its own
+         * value is being found is UNDETERMINED.
+         */
+        private void evaluateOnDemand(int gate) {
+            int top = 0;
+            stackGates[0] = gate;
+            stackInputs[0] = inputStart[gate];
+            marks[gate] = IN_PROGRESS;
+
+            // for OR gates, values[g] holds whether an undetermined input was seen so far
+            values[gate] = FALSE;
+
+            while (top >= 0) {
+                int g = stackGates[top];
+                int j = stackInputs[top];
+                int end = inputStart[g + 1];
+                byte kind = kinds[g];
+
+                byte result = -1;
+
+                if (kind == SWITCH || kind == LOW) {
+                    result = evaluateGate(g);
+                } else {
+                    // skip unconnected inputs, and apply the inputs whose values are known
+                    while (j < end && result < 0) {
+                        int in = inputs[j];
+
+                        if (in == NONE) {
+                            if (kind != AND && kind != OR) result = UNDETERMINED;
+                            j++;
+                            continue;
+                        }
+
+                        if (marks[in] == UNVISITED) break;
+
+                        byte v = marks[in] == IN_PROGRESS ? UNDETERMINED : values[in];
+                        j++;
+
+                        switch (kind) {
+                        case BUFFER:
+                        case LIGHT_BULB:
+                            result = v;
+                            break;
+                        case NOT:
+                            result = not(v);
+                            break;
+                        case AND:
+                            if (v != TRUE) result = v;
+                            else values[g] = TRUE;
+                            break;
+                        case OR:
+                            if (v == TRUE) result = TRUE;
+                            else if (v == UNDETERMINED) values[g] = UNDETERMINED;
+                            else if (values[g] != UNDETERMINED) values[g] = TRUE;
+                        }
+                    }
+
+                    if (result < 0 && j < end) {
+                        // visit the next input before continuing with this gate
+                        int in = inputs[j];
+                        stackInputs[top] = j;
+
+                        top++;
+                        stackGates[top] = in;
+                        stackInputs[top] = inputStart[in];
+                        marks[in] = IN_PROGRESS;
+                        values[in] = FALSE;
+                        continue;
+                    }
+
+                    if (result < 0) {
+                        /*
+                         * All of the inputs were read. For AND, values[g] is TRUE if a connected
+                         * input was found. For OR, it is TRUE if only FALSE inputs were found, and
+                         * UNDETERMINED if an undetermined input was found.
+                         */
+                        switch (kind) {
+                        case AND:
+                            result = values[g] == TRUE ? TRUE : UNDETERMINED;
+                            break;
+                        case OR:
+                            result = values[g] == TRUE ? FALSE : UNDETERMINED;
+                            break;
+                        default:
+                            result = UNDETERMINED;
+                        }
+                    }
+                }
+
+                values[g] = result;
+                marks[g] = DONE;
+                top--;
+            }
+        }
+    }
+
+    /**
+     * The state of a bit-parallel evaluation of a circuit without feedback. Each wire carries a
+     * word of 64 bits, one for each of 64 settings of the switches, so that one pass over the
+     * gates evaluates the circuit for all of them. Bit i of a gate's value is the value of the gate
+     * for the setting given by bit i of each switch.
+     *
+     * A value is kept as two words: the bits that are TRUE, and the bits that are UNDETERMINED.
+     * Bits set in neither are FALSE. The values match those of State for each bit.
+     */
+    public final class WordState {
+
+        public final long[] switches;
+
+        private final long[] trues;
+        private final long[] undetermined;
+
+        private WordState() {
+            switches = new long[numSwitches];
+            trues = new long[kinds.length];
+            undetermined = new long[kinds.length];
+        }
+
+        /**
+         * Evaluates the circuit for the current setting of the switches.
+         */
+        public void evaluate() {
+            for (int g : order) {
+                int start = inputStart[g];
+                int end = inputStart[g + 1];
+
+                long t = 0;
+                long u = 0;
+
+                switch (kinds[g]) {
+                case SWITCH:
+                    t = switches[switchSlots[g]];
+                    break;
+
+                case BUFFER:
+                case LIGHT_BULB:
+                    if (inputs[start] == NONE) {
+                        u = -1L;
+                    } else {
+                        t = trues[inputs[start]];
+                        u = undetermined[inputs[start]];
+                    }
+                    break;
+
+                case NOT:
+                    if (inputs[start] == NONE) {
+                        u = -1L;
+                    } else {
+                        u = undetermined[inputs[start]];
+                        t = ~trues[inputs[start]] & ~u;
+                    }
+                    break;
+
+                case AND: {
+                    // the bits already decided by an input that is not TRUE
+                    long decided = 0;
+                    boolean found = false;
+
+                    for (int j = start; j < end; j++) {
+                        if (inputs[j] == NONE) continue;
+                        found = true;
+
+                        long deciding = ~decided & ~trues[inputs[j]];
+                        u |= deciding & undetermined[inputs[j]];
+                        decided |= deciding;
+                    }
+
+                    if (found) t = ~decided;
+                    else u = -1L;
+                    break;
+                }
+
+                case OR: {
+                    boolean found = false;
+
+                    for (int j = start; j < end; j++) {
+                        if (inputs[j] == NONE) continue;
+                        found = true;
+
+                        t |= trues[inputs[j]];
+                        u |= undetermined[inputs[j]];
+                    }
+
+                    u = found ? u & ~t : -1L;
+                    break;
+                }
+
+                case LOW:
+                default:
+                    break;
+                }
+
+                trues[g] = t;
+                undetermined[g] = u;
+            }
+        }
+
+        /**
+         * Returns the bits for which the specified gate was TRUE after the last call to
+         * evaluate().
+         */
+        public long getTrue(int gate) {
+            return trues[gate];
+        }
+
+        /**
+         * Returns the bits for which the specified gate was UNDETERMINED after the last call to
+         * evaluate().
+         */
+        public long getUndetermined(int gate) {
+            return undetermined[gate];
+        }
+    }
+
+    private static byte not(byte v) {
+        switch (v) {
+        case TRUE:
+            return FALSE;
+        case FALSE:
+            return TRUE;
+        default:
+            return UNDETERMINED;
+        }
+    }
+}
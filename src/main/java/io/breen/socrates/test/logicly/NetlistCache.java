@@ -0,0 +1,64 @@
+package io.breen.socrates.test.logicly;
+
+import io.breen.socrates.submission.SubmittedFile;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A cache of the compiled circuits of submitted Logicly files, so that the circuit tests of a file
+ * parse it once instead of once per test. Since a Netlist is immutable, the tests may share it
+ * between threads.
+ *
+ * A cached circuit is used only while the file's modification time and size are unchanged, so a
+ * file that changes on disk is parsed again. Entries are dropped once their SubmittedFile is no
+ * longer used.
+ */
+final class NetlistCache {
+
+    private static final Map<SubmittedFile, Entry> entries = new WeakHashMap<>();
+
+    private NetlistCache() {}
+
+    /**
+     * Returns the compiled circuit of the specified file, parsing it if it is not in the cache.
+     * If several threads ask for the same file at once, one of them parses it and the others wait
+     * for its result.
+     */
+    static Netlist get(SubmittedFile target)
+            throws IOException, XMLStreamException, UnsupportedGateException
+    {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(target);
+            if (entry == null) {
+                entry = new Entry();
+                entries.put(target, entry);
+            }
+        }
+
+        synchronized (entry) {
+            FileTime modified = Files.getLastModifiedTime(target.fullPath);
+            long size = Files.size(target.fullPath);
+
+            if (entry.netlist == null || !modified.equals(entry.modified) || size != entry.size) {
+                entry.netlist = LogiclyReader.read(target.fullPath);
+                entry.modified = modified;
+                entry.size = size;
+            }
+
+            return entry.netlist;
+        }
+    }
+
+    private static class Entry {
+
+        Netlist netlist;
+        FileTime modified;
+        long size;
+    }
+}
@@ -0,0 +1,376 @@
+package io.breen.socrates.test.logicly;
+
+
+import io.breen.socrates.criteria.Criteria;
+import io.breen.socrates.file.logicly.LogiclyFile;
+import io.breen.socrates.submission.Submission;
+import io.breen.socrates.submission.SubmittedFile;
+import io.breen.socrates.test.*;
+
+import javax.swing.text.Document;
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * A test that checks the light bulbs of a circuit for every setting of its switches, instead of
+ * the single setting checked by a CircuitEvalTest. The circuit is parsed once, and evaluated for
+ * 64 settings at a time by a Netlist.WordState (or one setting at a time, if it has feedback).
+ *
+ * The rows of the truth table are numbered in binary over the inputs, with the first input as the
+ * most significant bit: for inputs a and b, the rows are a=0 b=0, a=0 b=1, a=1 b=0 and a=1 b=1.
+ * Switches that are not inputs are off.
+ */
+public class TruthTableTest extends Test implements Automatable<LogiclyFile>, Cacheable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The largest number of inputs of a truth table.
+     */
+    private static final int MAX_INPUTS = 20;
+
+    /**
+     * The number of mismatching rows described in the transcript.
+     */
+    private static final int MAX_REPORTED_ROWS = 8;
+
+    private static final long[] PATTERNS = {
+            0xAAAAAAAAAAAAAAAAL,
+            0xCCCCCCCCCCCCCCCCL,
+            0xF0F0F0F0F0F0F0F0L,
+            0xFF00FF00FF00FF00L,
+            0xFFFF0000FFFF0000L,
+            0xFFFFFFFF00000000L
+    };
+
+    /**
+     * The export names of the switches that are the inputs of the truth table, in order. If this
+     * is null, the switches of the LogiclyFile are used.
+     */
+    public List<String> inputs;
+
+    /**
+     * For each light bulb that should be checked, its column of the truth table: a string with a
+     * character for each row, either 0, 1, or - (for rows whose value does not matter). Whitespace
+     * is ignored. Since YAML would read a column like 0001 as a number, the string should be
+     * quoted; a list of 0 and 1 is also accepted.
+     */
+    public Map<String, Object> table;
+
+    /**
+     * For each light bulb that should be checked, a Boolean expression over the inputs, such as
+     * "a & !b | c". The syntax is described by BooleanExpression.
+     */
+    public Map<String, String> expressions;
+
+    /**
+     * This empty constructor is used by SnakeYAML.
+     */
+    public TruthTableTest() {}
+
+    public TruthTableTest(double deduction, String description) {
+        super(deduction, description);
+    }
+
+    /**
+     * Returns the word of settings of the input with the specified bit, among the rows in the
+     * specified word. Row r of the table has input k on if bit (n - k - 1) of r is set.
+     */
+    private static long pattern(int bit, int word) {
+        if (bit < PATTERNS.length) return PATTERNS[bit];
+        return ((word >>> (bit - PATTERNS.length)) & 1) != 0 ? -1L : 0L;
+    }
+
+    private static String valueToString(boolean isTrue, boolean isUndetermined) {
+        if (isUndetermined) return "undetermined";
+        return isTrue ? "1" : "0";
+    }
+
+    @Override
+    public String toString() {
+        return "TruthTableTest(" +
+                "inputs=" + inputs + ", " +
+                "table=" + table + ", " +
+                "expressions=" + expressions + ")";
+    }
+
+    @Override
+    public String getTestTypeName() {
+        return "truth table";
+    }
+
+    @Override
+    public boolean shouldPass(LogiclyFile parent, SubmittedFile target, Submission submission,
+                              Criteria criteria, Document transcript, Document notes)
+            throws CannotBeAutomatedException, AutomationFailureException
+    {
+        Netlist netlist;
+        try {
+            netlist = NetlistCache.get(target);
+        } catch (IOException | XMLStreamException x) {
+            throw new AutomationFailureException(x);
+        } catch (UnsupportedGateException x) {
+            throw new CannotBeAutomatedException("encountered unrecognized gate");
+        }
+
+        List<String> names = inputs != null ? inputs : parent.switches;
+        if (names == null || names.isEmpty())
+            throw new CannotBeAutomatedException("no inputs specified for truth table");
+
+        if (names.size() > MAX_INPUTS) {
+            throw new CannotBeAutomatedException(
+                    "truth table has more than " + MAX_INPUTS + " inputs"
+            );
+        }
+
+        int numInputs = names.size();
+        int numRows = 1 << numInputs;
+        int numWords = (numRows + 63) / 64;
+
+        int[] slots = new int[numInputs];
+        for (int k = 0; k < numInputs; k++) {
+            slots[k] = netlist.getSwitch(names.get(k));
+
+            if (slots[k] < 0) {
+                // there is no switch with the proper export name
+                throw new CannotBeAutomatedException(
+                        "could not find switch with export name '" + names.get(k) + "'"
+                );
+            }
+        }
+
+        List<Column> columns = new ArrayList<>();
+
+        if (table != null)
+            for (Map.Entry<String, Object> entry : table.entrySet())
+                columns.add(Column.fromTable(netlist, entry.getKey(), entry.getValue(), numRows));
+
+        if (expressions != null) {
+            for (Map.Entry<String, String> entry : expressions.entrySet()) {
+                columns.add(
+                        Column.fromExpression(netlist, entry.getKey(), entry.getValue(), names)
+                );
+            }
+        }
+
+        if (columns.isEmpty())
+            throw new CannotBeAutomatedException("no outputs specified for truth table");
+
+        StringBuilder header = new StringBuilder("checking " + numRows + " rows over");
+        for (String name : names)
+            header.append(" ").append(name);
+
+        appendToDocument(transcript, header.append("\n").toString());
+
+        Netlist.WordState wordState = netlist.hasFeedback() ? null : netlist.newWordState();
+        Netlist.State state = netlist.hasFeedback() ? netlist.newState() : null;
+
+        long[] inputWords = new long[numInputs];
+        long[] actualTrues = new long[columns.size()];
+        long[] actualUndetermined = new long[columns.size()];
+        int numMismatches = 0;
+        int numReported = 0;
+
+        for (int w = 0; w < numWords; w++) {
+            long valid = numRows >= 64 ? -1L : (1L << numRows) - 1;
+
+            for (int k = 0; k < numInputs; k++)
+                inputWords[k] = pattern(numInputs - k - 1, w);
+
+            if (wordState != null) {
+                for (int k = 0; k < numInputs; k++)
+                    wordState.switches[slots[k]] = inputWords[k];
+
+                wordState.evaluate();
+
+                for (int c = 0; c < columns.size(); c++) {
+                    actualTrues[c] = wordState.getTrue(columns.get(c).gate);
+                    actualUndetermined[c] = wordState.getUndetermined(columns.get(c).gate);
+                }
+
+            } else {
+                // a circuit with feedback is evaluated for one row at a time
+                Arrays.fill(actualTrues, 0);
+                Arrays.fill(actualUndetermined, 0);
+
+                for (int i = 0; i < 64 && (valid >>> i) != 0; i++) {
+                    for (int k = 0; k < numInputs; k++)
+                        state.switches[slots[k]] = ((inputWords[k] >>> i) & 1) != 0;
+
+                    state.evaluate();
+
+                    for (int c = 0; c < columns.size(); c++) {
+                        byte v = state.getValue(columns.get(c).gate);
+
+                        if (v == Netlist.TRUE) actualTrues[c] |= 1L << i;
+                        else if (v == Netlist.UNDETERMINED) actualUndetermined[c] |= 1L << i;
+                    }
+                }
+            }
+
+            for (int c = 0; c < columns.size(); c++) {
+                Column column = columns.get(c);
+                long actualTrue = actualTrues[c];
+
+                long expectedTrue = column.expectedTrue(w, inputWords);
+                long mismatches = valid & column.care(w) &
+                        (actualUndetermined[c] | (actualTrue ^ expectedTrue));
+
+                numMismatches += Long.bitCount(mismatches);
+
+                while (mismatches != 0 && numReported < MAX_REPORTED_ROWS) {
+                    int i = Long.numberOfTrailingZeros(mismatches);
+                    mismatches &= mismatches - 1;
+                    numReported++;
+
+                    int row = w * 64 + i;
+                    StringBuilder sb = new StringBuilder("row");
+                    for (int k = 0; k < numInputs; k++)
+                        sb.append(" ").append(names.get(k)).append("=")
+                          .append((row >>> (numInputs - k - 1)) & 1);
+
+                    sb.append(": ").append(column.lightBulb).append(" should be ")
+                      .append(valueToString(((expectedTrue >>> i) & 1) != 0, false))
+                      .append(", but was ")
+                      .append(
+                              valueToString(
+                                      ((actualTrue >>> i) & 1) != 0,
+                                      ((actualUndetermined[c] >>> i) & 1) != 0
+                              )
+                      )
+                      .append("\n");
+
+                    appendToDocument(transcript, sb.toString());
+                }
+            }
+        }
+
+        if (numMismatches == 0) {
+            appendToDocument(transcript, "all rows matched\n");
+            return true;
+        }
+
+        appendToDocument(
+                transcript,
+                numMismatches + " mismatched " + (numMismatches == 1 ? "value" : "values") +
+                        " in " + numRows + " rows\n"
+        );
+
+        return false;
+    }
+
+    /**
+     * The expected values of one light bulb, given either by a column of the table or by an
+     * expression.
+     */
+    private static class Column {
+
+        final String lightBulb;
+        final int gate;
+
+        /**
+         * For a column of the table, the rows that are 1 and the rows that matter, by word.
+         */
+        final long[] trues;
+        final long[] cares;
+
+        final BooleanExpression expression;
+
+        private Column(String lightBulb, int gate, long[] trues, long[] cares,
+                       BooleanExpression expression)
+        {
+            this.lightBulb = lightBulb;
+            this.gate = gate;
+            this.trues = trues;
+            this.cares = cares;
+            this.expression = expression;
+        }
+
+        private static int findLightBulb(Netlist netlist, String exportName)
+                throws CannotBeAutomatedException
+        {
+            int gate = netlist.getLightBulb(exportName);
+
+            if (gate < 0) {
+                // there is no light bulb with the proper export name
+                throw new CannotBeAutomatedException(
+                        "could not find light bulb with export name '" + exportName + "'"
+                );
+            }
+
+            return gate;
+        }
+
+        static Column fromTable(Netlist netlist, String lightBulb, Object column, int numRows)
+                throws CannotBeAutomatedException
+        {
+            StringBuilder sb = new StringBuilder();
+
+            if (column instanceof String) {
+                sb.append((String)column);
+            } else if (column instanceof List) {
+                for (Object o : (List<?>)column)
+                    sb.append(o);
+            } else {
+                throw new CannotBeAutomatedException(
+                        "column for '" + lightBulb + "' must be a quoted string or a list"
+                );
+            }
+
+            int numWords = (numRows + 63) / 64;
+            long[] trues = new long[numWords];
+            long[] cares = new long[numWords];
+            int row = 0;
+
+            for (int i = 0; i < sb.length(); i++) {
+                char c = sb.charAt(i);
+                if (Character.isWhitespace(c)) continue;
+
+                if (c != '0' && c != '1' && c != '-') {
+                    throw new CannotBeAutomatedException(
+                            "column for '" + lightBulb + "' has invalid value '" + c + "'"
+                    );
+                }
+
+                if (row < numRows) {
+                    long bit = 1L << (row % 64);
+                    if (c == '1') trues[row / 64] |= bit;
+                    if (c != '-') cares[row / 64] |= bit;
+                }
+
+                row++;
+            }
+
+            if (row != numRows) {
+                throw new CannotBeAutomatedException(
+                        "column for '" + lightBulb + "' has " + row + " rows, but should have " +
+                                numRows
+                );
+            }
+
+            return new Column(lightBulb, findLightBulb(netlist, lightBulb), trues, cares, null);
+        }
+
+        static Column fromExpression(Netlist netlist, String lightBulb, String expression,
+                                     List<String> names) throws CannotBeAutomatedException
+        {
+            BooleanExpression e;
+            try {
+                e = BooleanExpression.parse(expression, names);
+            } catch (IllegalArgumentException x) {
+                throw new CannotBeAutomatedException(x.getMessage());
+            }
+
+            return new Column(lightBulb, findLightBulb(netlist, lightBulb), null, null, e);
+        }
+
+        long expectedTrue(int word, long[] inputWords) {
+            return expression != null ? expression.evaluate(inputWords) : trues[word];
+        }
+
+        long care(int word) {
+            return expression != null ? -1L : cares[word];
+        }
+    }
+}
@@ -11,6 +11,8 @@ import javax.swing.text.Document;
 
 public class AlwaysPassingTest extends Test implements Automatable<PlainFile> {
 
+    private static final long serialVersionUID = 1L;
+
     /**
      * This empty constructor is used by SnakeYAML.
      */
@@ -12,7 +12,9 @@ import javax.swing.text.Document;
 import java.io.IOException;
 import java.util.*;
 
-public class FunctionEvalTest extends FunctionTest implements Automatable<PythonFile> {
+public class FunctionEvalTest extends FunctionTest implements PythonEvalTest, Cacheable {
+
+    private static final long serialVersionUID = 1L;
 
     /**
      * The expected return value of the function (could be a standard Java object as instantiated by
@@ -64,6 +66,28 @@ public class FunctionEvalTest extends FunctionTest implements Automatable<Python
                               Criteria criteria, Document transcript, Document notes)
             throws CannotBeAutomatedException, AutomationFailureException
     {
+        PythonInspector.Evaluation evaluation = getEvaluation(parent);
+
+        try {
+            PythonInspector inspector = new PythonInspector(target.fullPath);
+
+            List<PythonInspector.EvalResult> results = inspector.evaluateAll(
+                    Collections.singletonList(evaluation)
+            );
+
+            return passes(evaluation, results.get(0), transcript);
+
+        } catch (IOException x) {
+            throw new AutomationFailureException(x);
+        } catch (PythonError x) {
+            String reason = "Python error occurred evaluating function: " + x;
+            appendToDocument(transcript, reason + "\n");
+            throw new CannotBeAutomatedException(reason);
+        }
+    }
+
+    @Override
+    public PythonInspector.Evaluation getEvaluation(PythonFile parent) {
         Function func = parent.getFunctionForTest(this);
         if (func == null) throw new IllegalArgumentException();
 
@@ -73,24 +97,26 @@ public class FunctionEvalTest extends FunctionTest implements Automatable<Python
 
         // TODO kwargs, if any
 
-        try {
-            PythonInspector inspector = new PythonInspector(target.fullPath);
-
-            appendToDocument(
-                    transcript,
-                    ">>> " + PythonInspector.callToString(func.name, args) + "\n"
-            );
-
-            Pair<Boolean, String> result = inspector.functionProduces(
-                    func.name, args, null, input, value, output
-            );
+        return new PythonInspector.Evaluation(
+                func.name, null, args, null, input, null, value, output
+        );
+    }
 
-            appendToDocument(transcript, result.second + "\n");
+    @Override
+    public boolean passes(PythonInspector.Evaluation evaluation, PythonInspector.EvalResult result,
+                          Document transcript) throws CannotBeAutomatedException
+    {
+        appendToDocument(
+                transcript,
+                ">>> " + PythonInspector.callToString(evaluation.methodName, evaluation.args) +
+                        "\n"
+        );
 
-            return result.first;
+        try {
+            Pair<Boolean, String> pair = result.get();
+            appendToDocument(transcript, pair.second + "\n");
+            return pair.first;
 
-        } catch (IOException x) {
-            throw new AutomationFailureException(x);
         } catch (PythonError x) {
             String reason = "Python error occurred evaluating function: " + x;
             appendToDocument(transcript, reason + "\n");
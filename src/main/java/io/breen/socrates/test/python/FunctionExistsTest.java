@@ -10,7 +10,9 @@ import io.breen.socrates.test.*;
 import javax.swing.text.Document;
 import java.io.IOException;
 
-public class FunctionExistsTest extends FunctionTest implements Automatable<PythonFile> {
+public class FunctionExistsTest extends FunctionTest implements Automatable<PythonFile>, Cacheable {
+
+    private static final long serialVersionUID = 1L;
 
     private final Function function;
 
@@ -10,7 +10,9 @@ import io.breen.socrates.util.Pair;
 import javax.swing.text.Document;
 import java.io.IOException;
 
-public class ImportTest extends Test implements Automatable<PythonFile> {
+public class ImportTest extends Test implements Automatable<PythonFile>, Cacheable {
+
+    private static final long serialVersionUID = 1L;
 
     public ImportTest(PythonFile file) {
         super(file.importFailureDeduction, "could not load '" + file.path + "'");
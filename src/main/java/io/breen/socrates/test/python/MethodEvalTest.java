@@ -13,7 +13,9 @@ import javax.swing.text.Document;
 import java.io.IOException;
 import java.util.*;
 
-public class MethodEvalTest extends MethodTest implements Automatable<PythonFile> {
+public class MethodEvalTest extends MethodTest implements PythonEvalTest, Cacheable {
+
+    private static final long serialVersionUID = 1L;
 
     /**
      * The expected return value of the method (could be a standard Java object as instantiated by
@@ -55,6 +57,28 @@ public class MethodEvalTest extends MethodTest implements Automatable<PythonFile
                               Criteria criteria, Document transcript, Document notes)
             throws CannotBeAutomatedException, AutomationFailureException
     {
+        PythonInspector.Evaluation evaluation = getEvaluation(parent);
+
+        try {
+            PythonInspector inspector = new PythonInspector(target.fullPath);
+
+            List<PythonInspector.EvalResult> results = inspector.evaluateAll(
+                    Collections.singletonList(evaluation)
+            );
+
+            return passes(evaluation, results.get(0), transcript);
+
+        } catch (IOException x) {
+            throw new AutomationFailureException(x);
+        } catch (PythonError x) {
+            String reason = "Python error occurred evaluating function: " + x;
+            appendToDocument(transcript, reason + "\n");
+            throw new CannotBeAutomatedException(reason);
+        }
+    }
+
+    @Override
+    public PythonInspector.Evaluation getEvaluation(PythonFile parent) {
         Method m = parent.getMethodForTest(this);
         if (m == null) throw new IllegalArgumentException();
 
@@ -66,30 +90,32 @@ public class MethodEvalTest extends MethodTest implements Automatable<PythonFile
 
         // TODO kwargs, if any
 
-        try {
-            PythonInspector inspector = new PythonInspector(target.fullPath);
-
-            if (before != null) {
-                appendToDocument(
-                        transcript, ">>> obj = " + PythonInspector.toPythonString(before) + "\n"
-                );
-            }
+        return new PythonInspector.Evaluation(
+                m.name, before, args, null, input, after, value, output
+        );
+    }
 
+    @Override
+    public boolean passes(PythonInspector.Evaluation evaluation, PythonInspector.EvalResult result,
+                          Document transcript) throws CannotBeAutomatedException
+    {
+        if (before != null) {
             appendToDocument(
-                    transcript,
-                    ">>> obj." + PythonInspector.callToString(m.name, args) + "\n"
-            );
-
-            Pair<Boolean, String> result = inspector.methodProduces(
-                    m.name, before, args, null, input, after, value, output
+                    transcript, ">>> obj = " + PythonInspector.toPythonString(before) + "\n"
             );
+        }
 
-            if (!result.second.isEmpty()) appendToDocument(transcript, result.second + "\n");
+        appendToDocument(
+                transcript,
+                ">>> obj." + PythonInspector.callToString(evaluation.methodName, evaluation.args) +
+                        "\n"
+        );
 
-            return result.first;
+        try {
+            Pair<Boolean, String> pair = result.get();
+            if (!pair.second.isEmpty()) appendToDocument(transcript, pair.second + "\n");
+            return pair.first;
 
-        } catch (IOException x) {
-            throw new AutomationFailureException(x);
         } catch (PythonError x) {
             String reason = "Python error occurred evaluating function: " + x;
             appendToDocument(transcript, reason + "\n");
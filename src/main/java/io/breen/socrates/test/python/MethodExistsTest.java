@@ -11,7 +11,9 @@ import javax.swing.text.Document;
 import java.io.IOException;
 
 
-public class MethodExistsTest extends MethodTest implements Automatable<PythonFile> {
+public class MethodExistsTest extends MethodTest implements Automatable<PythonFile>, Cacheable {
+
+    private static final long serialVersionUID = 1L;
 
     private final Method method;
 
@@ -3,6 +3,8 @@ package io.breen.socrates.test.python;
 
 public abstract class MethodTest extends FunctionTest {
 
+    private static final long serialVersionUID = 1L;
+
     /**
      * This empty constructor is used by SnakeYAML for the extenders of this class that are
      * instantiated from a criteria file.
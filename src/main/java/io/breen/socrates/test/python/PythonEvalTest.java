@@ -0,0 +1,31 @@
+package io.breen.socrates.test.python;
+
+import io.breen.socrates.file.python.PythonFile;
+import io.breen.socrates.test.Automatable;
+import io.breen.socrates.test.CannotBeAutomatedException;
+
+import javax.swing.text.Document;
+
+/**
+ * An automatable test that evaluates a function or method of a Python module. Since such a test
+ * only needs one evaluation of the module, many of these tests for the same module can be run
+ * together, using a single call to PythonInspector.evaluateAll().
+ *
+ * @see PythonInspector#evaluateAll(java.util.List)
+ */
+public interface PythonEvalTest extends Automatable<PythonFile> {
+
+    /**
+     * Returns the evaluation that this test asks of the student's module.
+     */
+    PythonInspector.Evaluation getEvaluation(PythonFile parent);
+
+    /**
+     * Decides whether this test passes, given the result of its evaluation. The evaluation and its
+     * result are added to the transcript, as they would be by shouldPass().
+     *
+     * @throws CannotBeAutomatedException If a Python error occurred during the evaluation
+     */
+    boolean passes(PythonInspector.Evaluation evaluation, PythonInspector.EvalResult result,
+                   Document transcript) throws CannotBeAutomatedException;
+}
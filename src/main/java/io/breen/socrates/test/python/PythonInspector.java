@@ -2,7 +2,8 @@ package io.breen.socrates.test.python;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.breen.socrates.file.python.Object;
-import io.breen.socrates.python.PythonManager;
+import io.breen.socrates.python.PythonWorker;
+import io.breen.socrates.python.PythonWorkerPool;
 import io.breen.socrates.util.Pair;
 
 import java.io.IOException;
@@ -10,13 +11,30 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 
+/**
+ * Inspects and evaluates a single student module by sending requests to Python workers leased from
+ * the PythonWorkerPool. Creating an inspector is cheap: no interpreter is started until a request
+ * is made, and workers are shared with every other inspector.
+ *
+ * @see PythonWorkerPool
+ */
 public class PythonInspector {
 
+    /**
+     * The time a worker is given to import the module and respond, beyond the timeouts of the
+     * evaluations themselves. A worker that takes longer than this is killed.
+     */
+    private static final long GRACE_MILLIS = 10000;
+
     private final String moduleName;
-    private final ProcessBuilder builder;
-    private final Process process;
+    private final String directory;
+
+    /**
+     * Identifies the module to the pool, so that a worker that already imported it can be reused.
+     */
+    private final String affinity;
 
-    public PythonInspector(Path targetModulePath) throws IOException {
+    public PythonInspector(Path targetModulePath) {
         if (!Files.isRegularFile(targetModulePath))
             throw new IllegalArgumentException("module path must be a path to a file");
 
@@ -24,30 +42,36 @@ public class PythonInspector {
         String[] parts = fileName.split("\\.");
         moduleName = parts[0];
 
-        builder = new ProcessBuilder(
-                PythonManager.python3Command.toString(), "-B",
-                // turns off writing bytecode files (.py[co])
-                PythonManager.getPathToSource("tester.py").toString()
-        );
-
-        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Path parentDir = targetModulePath.toAbsolutePath().getParent();
+        directory = parentDir.toString();
 
-        Map<String, String> env = builder.environment();
-        env.put(
-                "PYTHONPATH",
-
-                /*
-                 * Note: this leading path separator is very important! It ensures that PYTHONPATH
-                 * has the empty string as an entry, which tells the Python interpreter to look
-                 * in the current working directory of the Python process to find modules.
-                 */
-                System.getProperty("path.separator")
-        );
+        affinity = parentDir.resolve(moduleName).toString();
+    }
 
-        Path parentDir = targetModulePath.getParent();
-        builder.directory(parentDir.toFile());
+    /**
+     * Sends one request to a leased worker and waits for its response. If the worker misbehaves,
+     * or does not respond in time, it is discarded from the pool.
+     */
+    private Map<String, java.lang.Object> send(Map<String, java.lang.Object> request)
+            throws IOException
+    {
+        // each evaluation of a batch has its own timeout
+        java.lang.Object parts = request.get("requests");
+        int evaluations = parts instanceof List ? ((List<?>)parts).size() : 1;
+        long timeoutMillis = GRACE_MILLIS + evaluations * 1000L * PythonWorker.DEFAULT_TIMEOUT;
+
+        PythonWorker worker = PythonWorkerPool.lease(affinity);
+
+        Map<String, java.lang.Object> response;
+        try {
+            response = worker.request(request, timeoutMillis);
+        } catch (IOException x) {
+            PythonWorkerPool.discard(worker);
+            throw x;
+        }
 
-        process = builder.start();
+        PythonWorkerPool.release(worker);
+        return response;
     }
 
     private static boolean equals(java.lang.Object expected, ResultObject other) {
@@ -223,6 +247,7 @@ public class PythonInspector {
     private Map<String, java.lang.Object> newRequestMap() {
         Map<String, java.lang.Object> request = new HashMap<>();
         request.put("name", moduleName);
+        request.put("directory", directory);
         return request;
     }
 
@@ -241,7 +266,6 @@ public class PythonInspector {
     }
 
     public boolean variableExists(String variableName) throws IOException, PythonError {
-        ObjectMapper mapper = new ObjectMapper();
         Map<String, java.lang.Object> request = newRequestMap();
         request.put("type", "exists");
 
@@ -251,12 +275,7 @@ public class PythonInspector {
 
         request.put("target", targetMap);
 
-        mapper.writeValue(process.getOutputStream(), request);
-
-        Map<String, java.lang.Object> response = mapper.readValue(
-                process.getInputStream(),
-                Map.class
-        );
+        Map<String, java.lang.Object> response = send(request);
 
         if (isErrorResponse(response)) throw errorFromResponse(response);
 
@@ -266,7 +285,6 @@ public class PythonInspector {
     public boolean variableEquals(String variableName, java.lang.Object value)
             throws IOException, PythonError
     {
-        ObjectMapper mapper = new ObjectMapper();
         Map<String, java.lang.Object> request = newRequestMap();
         request.put("type", "eval");
 
@@ -276,12 +294,7 @@ public class PythonInspector {
 
         request.put("target", targetMap);
 
-        mapper.writeValue(process.getOutputStream(), request);
-
-        Map<String, java.lang.Object> response = mapper.readValue(
-                process.getInputStream(),
-                Map.class
-        );
+        Map<String, java.lang.Object> response = send(request);
 
         if (isErrorResponse(response)) throw errorFromResponse(response);
 
@@ -300,16 +313,10 @@ public class PythonInspector {
      * @throws PythonError If Python exits with an error (in our code, not the student's)
      */
     public Pair<Boolean, String> canImportModule() throws IOException, PythonError {
-        ObjectMapper mapper = new ObjectMapper();
         Map<String, java.lang.Object> request = newRequestMap();
         request.put("type", "load");
 
-        mapper.writeValue(process.getOutputStream(), request);
-
-        Map<String, java.lang.Object> response = mapper.readValue(
-                process.getInputStream(),
-                Map.class
-        );
+        Map<String, java.lang.Object> response = send(request);
 
         if (isErrorResponse(response)) {
             throw errorFromResponse(response);
@@ -334,7 +341,6 @@ public class PythonInspector {
      * @throws PythonError If Python exits with an error
      */
     public boolean functionExists(String functionName) throws IOException, PythonError {
-        ObjectMapper mapper = new ObjectMapper();
         Map<String, java.lang.Object> request = newRequestMap();
         request.put("type", "exists");
 
@@ -344,12 +350,7 @@ public class PythonInspector {
 
         request.put("target", targetMap);
 
-        mapper.writeValue(process.getOutputStream(), request);
-
-        Map<String, java.lang.Object> response = mapper.readValue(
-                process.getInputStream(),
-                Map.class
-        );
+        Map<String, java.lang.Object> response = send(request);
 
         if (isErrorResponse(response)) throw errorFromResponse(response);
 
@@ -365,7 +366,6 @@ public class PythonInspector {
      * @throws PythonError If Python exits with an error
      */
     public boolean classExists(String className) throws IOException, PythonError {
-        ObjectMapper mapper = new ObjectMapper();
         Map<String, java.lang.Object> request = newRequestMap();
         request.put("type", "exists");
 
@@ -375,12 +375,7 @@ public class PythonInspector {
 
         request.put("target", targetMap);
 
-        mapper.writeValue(process.getOutputStream(), request);
-
-        Map<String, java.lang.Object> response = mapper.readValue(
-                process.getInputStream(),
-                Map.class
-        );
+        Map<String, java.lang.Object> response = send(request);
 
         if (isErrorResponse(response)) throw errorFromResponse(response);
 
@@ -400,7 +395,6 @@ public class PythonInspector {
     public boolean methodExists(String className, String functionName)
             throws IOException, PythonError
     {
-        ObjectMapper mapper = new ObjectMapper();
         Map<String, java.lang.Object> request = newRequestMap();
         request.put("type", "exists");
 
@@ -411,12 +405,7 @@ public class PythonInspector {
 
         request.put("target", targetMap);
 
-        mapper.writeValue(process.getOutputStream(), request);
-
-        Map<String, java.lang.Object> response = mapper.readValue(
-                process.getInputStream(),
-                Map.class
-        );
+        Map<String, java.lang.Object> response = send(request);
 
         if (isErrorResponse(response)) throw errorFromResponse(response);
 
@@ -464,29 +453,85 @@ public class PythonInspector {
                                                 Object after, java.lang.Object returnValue,
                                                 String output) throws IOException, PythonError
     {
-        ObjectMapper mapper = new ObjectMapper();
+        Evaluation evaluation = new Evaluation(
+                methodName, before, args, kwargs, input, after, returnValue, output
+        );
+
         Map<String, java.lang.Object> request = newRequestMap();
         request.put("type", "eval");
+        request.putAll(toRequestParts(evaluation));
+
+        return interpret(evaluation, send(request));
+    }
+
+    /**
+     * Asks one Python interpreter to perform many function or method evaluations, in order, as if
+     * functionProduces() or methodProduces() were called for each. The module is evaluated in a
+     * single round trip to one worker, instead of one round trip per evaluation. Each evaluation
+     * has its own timeout, and is isolated from the changes to the module made by the others.
+     *
+     * @return The results of the evaluations, in the same order
+     *
+     * @throws IOException If a low-level error occurs communicating with the interpreter
+     * @throws PythonError If Python exits with an error (in our code, not the student's)
+     */
+    public List<EvalResult> evaluateAll(List<Evaluation> evaluations)
+            throws IOException, PythonError
+    {
+        List<Map<String, java.lang.Object>> parts = new ArrayList<>(evaluations.size());
+        for (Evaluation e : evaluations)
+            parts.add(toRequestParts(e));
+
+        Map<String, java.lang.Object> request = newRequestMap();
+        request.put("type", "batch");
+        request.put("requests", parts);
+
+        Map<String, java.lang.Object> response = send(request);
+
+        if (isErrorResponse(response)) throw errorFromResponse(response);
+
+        @SuppressWarnings("unchecked") List<Map<String, java.lang.Object>> responses =
+                (List<Map<String, java.lang.Object>>)response.get("results");
+        if (responses == null || responses.size() != evaluations.size())
+            throw new IOException("Python worker sent wrong number of results");
+
+        List<EvalResult> results = new ArrayList<>(evaluations.size());
+        for (int i = 0; i < evaluations.size(); i++) {
+            try {
+                results.add(new EvalResult(interpret(evaluations.get(i), responses.get(i)), null));
+            } catch (PythonError x) {
+                results.add(new EvalResult(null, x));
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Returns the target and parameters of the request for the specified evaluation.
+     */
+    private static Map<String, java.lang.Object> toRequestParts(Evaluation e) {
+        Map<String, java.lang.Object> parts = new HashMap<>();
 
         Map<String, String> targetMap = new HashMap<>();
 
-        if (before != null) targetMap.put("type", "method");
+        if (e.before != null) targetMap.put("type", "method");
         else targetMap.put("type", "function");
 
-        targetMap.put("name", methodName);
+        targetMap.put("name", e.methodName);
 
-        request.put("target", targetMap);
+        parts.put("target", targetMap);
 
         // parameters of the test, not to the function
         Map<String, java.lang.Object> parametersMap = new HashMap<>();
 
-        if (args != null && !args.isEmpty()) {
+        if (e.args != null && !e.args.isEmpty()) {
             // keep track of the indices of arguments that should be constructed in Python
-            List<Integer> indices = new ArrayList<>(args.size());
-            List<java.lang.Object> argsList = new ArrayList<>(args.size());
+            List<Integer> indices = new ArrayList<>(e.args.size());
+            List<java.lang.Object> argsList = new ArrayList<>(e.args.size());
 
-            for (int i = 0; i < args.size(); i++) {
-                java.lang.Object o = args.get(i);
+            for (int i = 0; i < e.args.size(); i++) {
+                java.lang.Object o = e.args.get(i);
 
                 if (o instanceof Object) {
                     Object obj = (Object)o;
@@ -512,25 +557,28 @@ public class PythonInspector {
             parametersMap.put("object_indices", indices);
         }
 
-        if (kwargs != null && !kwargs.isEmpty()) parametersMap.put("kwargs", kwargs);
-        if (input != null) parametersMap.put("input", input);
+        if (e.kwargs != null && !e.kwargs.isEmpty()) parametersMap.put("kwargs", e.kwargs);
+        if (e.input != null) parametersMap.put("input", e.input);
 
-        if (before != null) {
+        if (e.before != null) {
             Map<String, java.lang.Object> beforeMap = new HashMap<>();
-            beforeMap.put("class_name", before.type.typeName);
-            beforeMap.put("fields", before.fields);
+            beforeMap.put("class_name", e.before.type.typeName);
+            beforeMap.put("fields", e.before.fields);
             parametersMap.put("before", beforeMap);
         }
 
-        request.put("parameters", parametersMap);
+        parts.put("parameters", parametersMap);
 
-        mapper.writeValue(process.getOutputStream(), request);
-
-        Map<String, java.lang.Object> response = mapper.readValue(
-                process.getInputStream(),
-                Map.class
-        );
+        return parts;
+    }
 
+    /**
+     * Decides whether the response to an evaluation request shows the expected value, output and
+     * state of the called object.
+     */
+    private Pair<Boolean, String> interpret(Evaluation e, Map<String, java.lang.Object> response)
+            throws PythonError
+    {
         if (isErrorResponse(response)) throw errorFromResponse(response);
 
         String str = "";
@@ -539,14 +587,14 @@ public class PythonInspector {
 
         if (!response.get("type").equals("NoneType")) str += toPythonString(response.get("value"));
 
-        if (output != null)
-            if (!response.containsKey("output") || !output.equals(response.get("output")))
+        if (e.output != null)
+            if (!response.containsKey("output") || !e.output.equals(response.get("output")))
                 // we expect output, but this function produces no output/incorrect output
                 return new Pair<>(false, str);
 
-        if (after != null) {
+        if (e.after != null) {
             Map<String, java.lang.Object> fields = (Map)response.get("after");
-            for (Map.Entry<String, java.lang.Object> field : after.fields.entrySet()) {
+            for (Map.Entry<String, java.lang.Object> field : e.after.fields.entrySet()) {
                 java.lang.Object afterValue = fields.get(field.getKey());
                 if (!afterValue.equals(field.getValue())) {
                     // TODO should not compare with object equals
@@ -556,7 +604,60 @@ public class PythonInspector {
             }
         }
 
-        return new Pair<>(equals(returnValue, toPythonObject(response)), str);
+        return new Pair<>(equals(e.returnValue, toPythonObject(response)), str);
+    }
+
+    /**
+     * A single function or method evaluation, as specified by the arguments to methodProduces().
+     * If the "before" object is null, the evaluation is of a function.
+     */
+    public static class Evaluation {
+
+        public final String methodName;
+        public final Object before;
+        public final List<java.lang.Object> args;
+        public final Map<String, java.lang.Object> kwargs;
+        public final String input;
+        public final Object after;
+        public final java.lang.Object returnValue;
+        public final String output;
+
+        public Evaluation(String methodName, Object before, List<java.lang.Object> args,
+                          Map<String, java.lang.Object> kwargs, String input, Object after,
+                          java.lang.Object returnValue, String output)
+        {
+            this.methodName = methodName;
+            this.before = before;
+            this.args = args;
+            this.kwargs = kwargs;
+            this.input = input;
+            this.after = after;
+            this.returnValue = returnValue;
+            this.output = output;
+        }
+    }
+
+    /**
+     * The result of one evaluation of a batch: either the pair methodProduces() would have
+     * returned, or the PythonError it would have thrown.
+     */
+    public static class EvalResult {
+
+        public final Pair<Boolean, String> result;
+        public final PythonError error;
+
+        public EvalResult(Pair<Boolean, String> result, PythonError error) {
+            this.result = result;
+            this.error = error;
+        }
+
+        /**
+         * Returns the pair methodProduces() would have returned, or throws its PythonError.
+         */
+        public Pair<Boolean, String> get() throws PythonError {
+            if (error != null) throw error;
+            return result;
+        }
     }
 
     public class ResultObject {
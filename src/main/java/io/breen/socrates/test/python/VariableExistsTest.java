@@ -10,7 +10,9 @@ import io.breen.socrates.test.*;
 import javax.swing.text.Document;
 import java.io.IOException;
 
-public class VariableExistsTest extends VariableTest implements Automatable<PythonFile> {
+public class VariableExistsTest extends VariableTest implements Automatable<PythonFile>, Cacheable {
+
+    private static final long serialVersionUID = 1L;
 
     private final Variable variable;
 
@@ -0,0 +1,65 @@
+package io.breen.socrates.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Static utility methods computing SHA-256 digests, returned as lowercase hexadecimal strings.
+ */
+public final class Digests {
+
+    private Digests() {}
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException x) {
+            // every Java platform is required to support SHA-256
+            throw new AssertionError(x);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes)
+            builder.append(String.format("%02x", b & 0xff));
+
+        return builder.toString();
+    }
+
+    /**
+     * Returns the digest of the contents of a file.
+     */
+    public static String of(Path path) throws IOException {
+        MessageDigest digest = newDigest();
+
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] buffer = new byte[1 << 16];
+            int n;
+            while ((n = in.read(buffer)) != -1)
+                digest.update(buffer, 0, n);
+        }
+
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Returns the digest of a sequence of strings. Each string is followed by a zero byte, so that
+     * different sequences of strings with the same concatenation have different digests.
+     */
+    public static String of(String... parts) {
+        MessageDigest digest = newDigest();
+
+        for (String part : parts) {
+            digest.update(part.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte)0);
+        }
+
+        return toHex(digest.digest());
+    }
+}
@@ -1,12 +1,10 @@
 package io.breen.socrates.view.main;
 
-import com.threecrickets.jygments.ResolutionException;
-import com.threecrickets.jygments.format.Formatter;
-import com.threecrickets.jygments.grammar.Lexer;
 import io.breen.socrates.Globals;
 import io.breen.socrates.file.File;
 import io.breen.socrates.model.wrapper.SubmittedFileWrapperNode;
 import io.breen.socrates.model.wrapper.UnrecognizedFileWrapperNode;
+import io.breen.socrates.submission.LineIndex;
 import io.breen.socrates.submission.SubmittedFile;
 
 import javax.swing.*;
@@ -17,19 +15,37 @@ import javax.swing.event.TreeSelectionListener;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.TreePath;
 import java.awt.*;
-import java.io.CharArrayWriter;
+import java.awt.event.*;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Logger;
 
 public class FileView {
 
+    /**
+     * The default size, in bytes, from which files are shown by the LargeFileView rather than by
+     * the text components, which hold the whole file.
+     */
+    public static final int DEFAULT_LARGE_FILE_THRESHOLD = 1 << 21;
+
     private final static String CURTAIN_CARD_NAME = "curtainCard";
     private final static String TEXT_PANE_CARD_NAME = "textPaneCard";
     private final static String PLAIN_TEXT_PANE_CARD_NAME = "plainTextPaneCard";
+    private final static String LARGE_FILE_CARD_NAME = "largeFileCard";
 
     private final static String NO_SELECTION = "(no file selected)";
     private final static String UNKNOWN_FILE_TYPE = "(unknown file type)";
     private final static String NOT_DISPLAYABLE = "(not displayable)";
+    private final static String INDEXING = "(reading file)";
+
+    /**
+     * The number of files after the selected file, in the order of the SubmissionTree, that are
+     * highlighted before they are selected, and the number of tree nodes searched for them.
+     */
+    private final static int NUM_PREFETCHED = 3;
+    private final static int MAX_PREFETCH_SEARCH = 200;
 
     private final static String OPEN_SUBTITLE;
     private static Logger logger = Logger.getLogger(FileView.class.getName());
@@ -51,7 +67,7 @@ public class FileView {
     }
 
     private SubmittedFile currentFile;
-    private Formatter htmlFormatter;
+    private final SyntaxHighlighter highlighter = new SyntaxHighlighter();
     private JTextPane textPane;
     private JPanel rootPanel;
     private JScrollPane scrollPane;
@@ -60,6 +76,18 @@ public class FileView {
     private JPanel curtainPanel;
     private JTextArea textArea;
     private JScrollPane plainScrollPane;
+    private LargeFileView largeFileView;
+    private JScrollPane largeScrollPane;
+    private String lastSearch;
+
+    /**
+     * Indexes the lines of the large file being shown, or null.
+     */
+    private SwingWorker<LineIndex, Void> indexer;
+
+    private final Action goToLine;
+    private final Action find;
+    private final Action findNext;
 
     public FileView(MenuBarManager menuBar, SubmissionTree submissionTree) {
         curtainLabel = new JLabel(NO_SELECTION);
@@ -84,11 +112,68 @@ public class FileView {
 
         scrollPane.setViewportView(textPane);
 
-        try {
-            htmlFormatter = Formatter.getByName("html");
-        } catch (ResolutionException x) {
-            logger.severe("cannot get HTML formatter");
-        }
+        largeFileView.setFont(textArea.getFont());
+        largeScrollPane.setViewportView(largeFileView);
+        rootPanel.add(largeScrollPane, LARGE_FILE_CARD_NAME);
+
+        int ctrl = Toolkit.getDefaultToolkit().getMenuShortcutKeyMask();
+        int shift = InputEvent.SHIFT_DOWN_MASK;
+
+        goToLine = new AbstractAction(menuBar.goToLine.getText()) {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                String s = JOptionPane.showInputDialog(
+                        rootPanel,
+                        "Line number (1 to " + largeFileView.getLineCount() + "):",
+                        "Go to Line",
+                        JOptionPane.QUESTION_MESSAGE
+                );
+                if (s == null) return;
+
+                try {
+                    largeFileView.goToLine(Integer.parseInt(s.trim()) - 1);
+                } catch (NumberFormatException x) {
+                    Toolkit.getDefaultToolkit().beep();
+                }
+            }
+        };
+        goToLine.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke(KeyEvent.VK_L, ctrl));
+        menuBar.goToLine.setAction(goToLine);
+
+        find = new AbstractAction(menuBar.find.getText()) {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                Object s = JOptionPane.showInputDialog(
+                        rootPanel,
+                        "Find:",
+                        "Find",
+                        JOptionPane.QUESTION_MESSAGE,
+                        null,
+                        null,
+                        lastSearch
+                );
+                if (s == null || s.toString().isEmpty()) return;
+
+                lastSearch = s.toString();
+                findNext.setEnabled(true);
+                largeFileView.find(lastSearch);
+            }
+        };
+        find.putValue(
+                Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke(KeyEvent.VK_F, ctrl | shift)
+        );
+        menuBar.find.setAction(find);
+
+        findNext = new AbstractAction(menuBar.findNext.getText()) {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                largeFileView.find(lastSearch);
+            }
+        };
+        findNext.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke(KeyEvent.VK_G, ctrl));
+        menuBar.findNext.setAction(findNext);
+
+        setLargeFileActionsEnabled(false);
 
         submissionTree.addTreeSelectionListener(
                 new TreeSelectionListener() {
@@ -113,6 +198,8 @@ public class FileView {
                                 reset();
                                 logger.warning("encountered I/O exception updating view: " + x);
                             }
+
+                            prefetchAfter(node);
                         } else {
                             reset();
                         }
@@ -131,13 +218,128 @@ public class FileView {
 
         scrollPane = new JScrollPane();
         plainScrollPane = new JScrollPane();
+        largeFileView = new LargeFileView();
+        largeScrollPane = new JScrollPane();
         if (Globals.operatingSystem == Globals.OS.OSX) {
             Border border = new LineBorder(new Color(197, 197, 197));
             scrollPane.setBorder(border);
             plainScrollPane.setBorder(border);
+            largeScrollPane.setBorder(border);
+        }
+    }
+
+    /**
+     * Starts highlighting the next few files after the specified node, in the order of the
+     * SubmissionTree, so that they can be shown highlighted as soon as they are selected.
+     */
+    private void prefetchAfter(DefaultMutableTreeNode node) {
+        List<SubmittedFileWrapperNode> upcoming = new ArrayList<>(NUM_PREFETCHED);
+
+        DefaultMutableTreeNode n = node.getNextNode();
+        for (int i = 0; n != null && i < MAX_PREFETCH_SEARCH; i++, n = n.getNextNode()) {
+            if (!(n instanceof SubmittedFileWrapperNode)) continue;
+
+            File f = ((SubmittedFileWrapperNode)n).matchingFile;
+            SubmittedFile sf = (SubmittedFile)n.getUserObject();
+            if (f.contentsArePlainText && f.language != null && !isLarge(sf)) {
+                upcoming.add((SubmittedFileWrapperNode)n);
+                if (upcoming.size() == NUM_PREFETCHED) break;
+            }
+        }
+
+        for (SubmittedFileWrapperNode upcomingNode : upcoming) {
+            highlighter.prefetch(
+                    (SubmittedFile)upcomingNode.getUserObject(), upcomingNode.matchingFile.language
+            );
         }
     }
 
+    private static boolean isLarge(SubmittedFile file) {
+        return file.size >= Globals.getIntProperty(
+                "view.largeFileThreshold", DEFAULT_LARGE_FILE_THRESHOLD
+        );
+    }
+
+    /**
+     * The actions for going to a line and searching only apply to the LargeFileView, since the
+     * text components can be searched by the platform's usual means.
+     */
+    private void setLargeFileActionsEnabled(boolean enabled) {
+        goToLine.setEnabled(enabled);
+        find.setEnabled(enabled);
+        findNext.setEnabled(enabled && lastSearch != null);
+    }
+
+    /**
+     * Indexes the lines of a large file on a background thread, which may take a while since the
+     * whole file is read, then shows the file in the LargeFileView.
+     */
+    private void showLarge(final SubmittedFile file, final String language) {
+        // drop the contents of the previous file, which may be large too
+        textPane.setText(null);
+        textArea.setText(null);
+
+        curtainLabel.setText(INDEXING);
+        curtainSubtitle.setText("");
+        CardLayout layout = (CardLayout)rootPanel.getLayout();
+        layout.show(rootPanel, CURTAIN_CARD_NAME);
+
+        indexer = new SwingWorker<LineIndex, Void>() {
+            @Override
+            protected LineIndex doInBackground() throws IOException {
+                return LineIndex.of(file.fullPath);
+            }
+
+            @Override
+            protected void done() {
+                // the user may have moved on to another file
+                if (indexer != this) return;
+
+                indexer = null;
+
+                LineIndex index;
+                try {
+                    index = get();
+                } catch (InterruptedException | ExecutionException x) {
+                    logger.warning("could not index file to show it: " + x);
+                    curtainLabel.setText(NOT_DISPLAYABLE);
+                    curtainSubtitle.setText(OPEN_SUBTITLE);
+                    return;
+                }
+
+                CardLayout layout = (CardLayout)rootPanel.getLayout();
+                layout.show(rootPanel, LARGE_FILE_CARD_NAME);
+
+                largeFileView.setFile(index, language);
+                setLargeFileActionsEnabled(true);
+            }
+        };
+        indexer.execute();
+    }
+
+    private void cancelIndexer() {
+        if (indexer == null) return;
+
+        indexer.cancel(false);
+        indexer = null;
+    }
+
+    private void showHighlighted(String html) {
+        CardLayout layout = (CardLayout)rootPanel.getLayout();
+        layout.show(rootPanel, TEXT_PANE_CARD_NAME);
+
+        textPane.setText(html);
+        textPane.setCaretPosition(0);
+    }
+
+    private void showPlain(String contents) {
+        CardLayout layout = (CardLayout)rootPanel.getLayout();
+        layout.show(rootPanel, PLAIN_TEXT_PANE_CARD_NAME);
+
+        textArea.setText(contents);
+        textArea.setCaretPosition(0);
+    }
+
     /**
      * Update the FileView and show the contents of the current file to the user. If the File
      * object represents a file whose contents can be displayed in the JTextPane (i.e., if the
@@ -145,9 +347,18 @@ public class FileView {
      * non-null, the contents are syntax highlighted. Otherwise, the contents are not syntax
      * highlighted, and they are not shown using the JTextPane --- instead, we use a JTextArea
      * so that we can do word wrapping.
+     *
+     * Highlighting happens in the background: until it is done, the contents are shown as plain
+     * text. Files larger than the "view.largeFileThreshold" property (in bytes) are shown by the
+     * LargeFileView instead, which only reads the part of the file in view, once the lines of the
+     * file have been indexed in the background.
      */
     public void update(SubmittedFile submittedFile, File matchingFile) throws IOException {
         currentFile = submittedFile;
+        highlighter.cancelPending();
+        cancelIndexer();
+        largeFileView.clear();
+        setLargeFileActionsEnabled(false);
 
         CardLayout layout = (CardLayout)rootPanel.getLayout();
 
@@ -167,32 +378,35 @@ public class FileView {
             return;
         }
 
+        if (isLarge(submittedFile)) {
+            showLarge(submittedFile, matchingFile.language);
+            return;
+        }
+
         String contents = submittedFile.getContents();
-        String text;
 
         if (matchingFile.language != null) {
-            layout.show(rootPanel, TEXT_PANE_CARD_NAME);
-
-            try {
-                Lexer lexer = Lexer.getByName(matchingFile.language);
-                CharArrayWriter w = new CharArrayWriter();
-                htmlFormatter.format(lexer.getTokens(contents), w);
-                text = w.toString();
-
-            } catch (ResolutionException x) {
-                logger.severe("cannot syntax highlight: " + x);
-                text = contents;
+            String html = highlighter.getCached(submittedFile, matchingFile.language, contents);
+            if (html != null) {
+                showHighlighted(html);
+                return;
             }
 
-            textPane.setText(text);
-            textPane.setCaretPosition(0);
+            showPlain(contents);
 
-        } else {
-            layout.show(rootPanel, PLAIN_TEXT_PANE_CARD_NAME);
-            text = contents;
+            highlighter.highlight(
+                    submittedFile, matchingFile.language, contents,
+                    new SyntaxHighlighter.Listener() {
+                        @Override
+                        public void highlighted(SubmittedFile file, String html) {
+                            // the user may have moved on to another file
+                            if (file == currentFile) showHighlighted(html);
+                        }
+                    }
+            );
 
-            textArea.setText(text);
-            textArea.setCaretPosition(0);
+        } else {
+            showPlain(contents);
         }
     }
 
@@ -203,5 +417,13 @@ public class FileView {
     public void reset() {
         currentFile = null;
         textPane.setText(null);
+
+        if (indexer != null) {
+            curtainLabel.setText(NO_SELECTION);
+            cancelIndexer();
+        }
+
+        largeFileView.clear();
+        setLargeFileActionsEnabled(false);
     }
 }
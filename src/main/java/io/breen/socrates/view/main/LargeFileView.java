@@ -0,0 +1,518 @@
+package io.breen.socrates.view.main;
+
+import com.threecrickets.jygments.ResolutionException;
+import com.threecrickets.jygments.grammar.Lexer;
+import com.threecrickets.jygments.grammar.Token;
+import com.threecrickets.jygments.grammar.TokenType;
+import io.breen.socrates.submission.LineIndex;
+
+import javax.swing.*;
+import java.awt.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Logger;
+
+/**
+ * Shows a file too large for the FileView's text components. Only the lines in view are painted.
+ * They are read from a LineIndex, along with a margin of lines above and below them, and syntax
+ * highlighted on their own; the rest of the file is never decoded. The lines read are replaced when
+ * the view is scrolled past them, so the memory used does not depend on the size of the file.
+ *
+ * A line can be marked, for example to show where the viewer jumped to or what was found. Searches
+ * run on a background thread, since they may have to read the whole file.
+ *
+ * @see LineIndex
+ */
+class LargeFileView extends JComponent implements Scrollable {
+
+    /**
+     * The number of lines read above and below the lines in view.
+     */
+    private static final int MARGIN_LINES = 100;
+
+    /**
+     * The number of bytes of each line that are shown. The rest of a longer line is cut off.
+     */
+    private static final int MAX_LINE_BYTES = 4096;
+
+    private static final int TAB_SIZE = 8;
+
+    private static final Color MARKED_LINE_COLOR = new Color(255, 250, 205);
+    private static final Color MARKED_TEXT_COLOR = new Color(255, 215, 0);
+
+    private static final Map<TokenType, Color> tokenColors = new HashMap<>();
+    private static Logger logger = Logger.getLogger(LargeFileView.class.getName());
+
+    static {
+        tokenColors.put(TokenType.Keyword, new Color(0, 128, 0));
+        tokenColors.put(TokenType.Name_Builtin, new Color(0, 128, 0));
+        tokenColors.put(TokenType.Name_Function, new Color(0, 0, 255));
+        tokenColors.put(TokenType.Name_Class, new Color(0, 0, 255));
+        tokenColors.put(TokenType.Name_Decorator, new Color(170, 34, 255));
+        tokenColors.put(TokenType.String, new Color(186, 33, 33));
+        tokenColors.put(TokenType.Number, new Color(102, 102, 102));
+        tokenColors.put(TokenType.Operator, new Color(102, 102, 102));
+        tokenColors.put(TokenType.Comment, new Color(64, 128, 128));
+    }
+
+    private LineIndex index;
+    private Lexer lexer;
+
+    /**
+     * Lexers are only used on the event dispatch thread, so these are not shared with the
+     * SyntaxHighlighter.
+     */
+    private final Map<String, Lexer> lexers = new HashMap<>();
+
+    /**
+     * The lines that have been read, starting with line number windowStart.
+     */
+    private int windowStart;
+    private List<Line> window = Collections.emptyList();
+
+    /**
+     * The length of the longest line read so far, once its tabs are expanded. The LineIndex only
+     * knows the length of the longest line in bytes, which is too short if the line has tabs.
+     */
+    private int widestLine;
+
+    private int markedLine = -1;
+    private int markStart;
+    private int markEnd;
+
+    /**
+     * The offset of the text marked by find(), from which the next search starts, or -1.
+     */
+    private int markedOffset = -1;
+
+    /**
+     * The search started by find() that has not finished, or null.
+     */
+    private SwingWorker<int[], Void> search;
+
+    LargeFileView() {
+        setOpaque(true);
+        setBackground(Color.WHITE);
+        setBorder(BorderFactory.createEmptyBorder(2, 5, 2, 5));
+    }
+
+    /**
+     * Shows the file indexed by the specified LineIndex, highlighted as the specified language, or
+     * as plain text if the language is null. The view is scrolled back to the start of the file.
+     */
+    void setFile(LineIndex index, String language) {
+        cancelSearch();
+        this.index = index;
+        this.lexer = language == null ? null : getLexer(language);
+        this.window = Collections.emptyList();
+        this.widestLine = 0;
+        this.markedLine = -1;
+        this.markedOffset = -1;
+
+        revalidate();
+        repaint();
+        scrollRectToVisible(new Rectangle(0, 0, 1, 1));
+    }
+
+    void clear() {
+        cancelSearch();
+        index = null;
+        lexer = null;
+        window = Collections.emptyList();
+        widestLine = 0;
+        markedLine = -1;
+        markedOffset = -1;
+
+        revalidate();
+        repaint();
+    }
+
+    int getLineCount() {
+        return index == null ? 0 : index.getLineCount();
+    }
+
+    /**
+     * Scrolls so that the specified line is in the middle of the view, and marks it.
+     */
+    void goToLine(int line) {
+        if (index == null || line < 0 || line >= index.getLineCount()) return;
+
+        mark(line, 0, 0);
+    }
+
+    /**
+     * Finds the next occurrence of the specified text after the marked text, or from the start of
+     * the file if nothing is marked, wrapping around to the start of the file. The file is searched
+     * on a background thread; when the text is found, the line it is on is scrolled into view and
+     * the text is marked. If the text does not occur in the file, the view beeps. A search that has
+     * not finished is abandoned.
+     */
+    void find(final String text) {
+        cancelSearch();
+
+        if (index == null || text.isEmpty()) {
+            Toolkit.getDefaultToolkit().beep();
+            return;
+        }
+
+        final LineIndex searched = index;
+
+        int start = 0;
+        if (markedOffset >= 0) start = markedOffset + 1;
+        else if (markedLine >= 0) start = index.getLineStart(markedLine);
+
+        final int from = start;
+
+        search = new SwingWorker<int[], Void>() {
+            /**
+             * Returns the offset of the text, its line, and the columns it starts and ends at, or
+             * null if it was not found.
+             */
+            @Override
+            protected int[] doInBackground() {
+                int found = searched.find(text, from);
+                if (found < 0 && from > 0) found = searched.find(text, 0);
+                if (found < 0) return null;
+
+                int line = searched.getLineOf(found);
+                int lineStart = searched.getLineStart(line);
+                int end = found + text.getBytes(StandardCharsets.UTF_8).length;
+
+                return new int[] {
+                        found,
+                        line,
+                        expandTabs(searched.decode(lineStart, found)).length(),
+                        expandTabs(searched.decode(lineStart, end)).length()
+                };
+            }
+
+            @Override
+            protected void done() {
+                // another search was started, or another file is shown
+                if (search != this) return;
+
+                search = null;
+                setCursor(null);
+
+                int[] result;
+                try {
+                    result = get();
+                } catch (InterruptedException | ExecutionException x) {
+                    logger.warning("could not search file: " + x);
+                    result = null;
+                }
+
+                if (result == null) {
+                    Toolkit.getDefaultToolkit().beep();
+                    return;
+                }
+
+                mark(result[1], result[2], result[3]);
+                markedOffset = result[0];
+            }
+        };
+
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        search.execute();
+    }
+
+    private void cancelSearch() {
+        if (search == null) return;
+
+        search.cancel(false);
+        search = null;
+        setCursor(null);
+    }
+
+    private void mark(int line, int start, int end) {
+        markedLine = line;
+        markStart = start;
+        markEnd = end;
+        markedOffset = -1;
+
+        Rectangle visible = getVisibleRect();
+        FontMetrics metrics = getFontMetrics(getFont());
+        int lineHeight = metrics.getHeight();
+        int top = getInsets().top + line * lineHeight;
+
+        int x = getInsets().left + start * metrics.charWidth('m');
+        int y = Math.max(0, top - (visible.height - lineHeight) / 2);
+
+        scrollRectToVisible(new Rectangle(x, y, 1, visible.height));
+        repaint();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        if (index == null || index.getLineCount() == 0) return;
+
+        g.setFont(getFont());
+        FontMetrics metrics = g.getFontMetrics();
+        int lineHeight = metrics.getHeight();
+        int charWidth = metrics.charWidth('m');
+        Insets insets = getInsets();
+
+        int first = Math.max(0, (clip.y - insets.top) / lineHeight);
+        int last = Math.min(
+                index.getLineCount() - 1, (clip.y + clip.height - insets.top) / lineHeight
+        );
+        if (first > last) return;
+
+        readWindow(first, last);
+
+        for (int i = first; i <= last; i++) {
+            Line line = window.get(i - windowStart);
+            int y = insets.top + i * lineHeight;
+
+            if (i == markedLine) {
+                g.setColor(MARKED_LINE_COLOR);
+                g.fillRect(clip.x, y, clip.width, lineHeight);
+
+                if (markEnd > markStart) {
+                    g.setColor(MARKED_TEXT_COLOR);
+                    g.fillRect(
+                            insets.left + markStart * charWidth,
+                            y,
+                            (markEnd - markStart) * charWidth,
+                            lineHeight
+                    );
+                }
+            }
+
+            for (int r = 0; r < line.runStarts.length; r++) {
+                int start = line.runStarts[r];
+                int end = r + 1 < line.runStarts.length ? line.runStarts[r + 1] :
+                        line.text.length();
+
+                g.setColor(line.runColors[r] == null ? getForeground() : line.runColors[r]);
+                g.drawString(
+                        line.text.substring(start, end),
+                        insets.left + start * charWidth,
+                        y + metrics.getAscent()
+                );
+            }
+        }
+    }
+
+    /**
+     * Reads the specified lines and the margin around them, unless they have been read already.
+     */
+    private void readWindow(int first, int last) {
+        if (first >= windowStart && last < windowStart + window.size()) return;
+
+        int start = Math.max(0, first - MARGIN_LINES);
+        int end = Math.min(index.getLineCount(), last + MARGIN_LINES + 1);
+
+        List<String> lines = new ArrayList<>(end - start);
+        int widest = widestLine;
+        for (int i = start; i < end; i++) {
+            String line = expandTabs(index.getLine(i, MAX_LINE_BYTES));
+            lines.add(line);
+            widest = Math.max(widest, line.length());
+        }
+
+        windowStart = start;
+        window = highlight(lines);
+
+        if (widest > widestLine) {
+            widestLine = widest;
+            revalidate();
+        }
+    }
+
+    /**
+     * Splits each line into runs of characters of one color. The lines are highlighted together,
+     * so tokens spanning lines inside the window are colored correctly; a token that started
+     * before the window (e.g., a long comment) is not.
+     */
+    private List<Line> highlight(List<String> lines) {
+        List<Line> highlighted = new ArrayList<>(lines.size());
+
+        List<List<Integer>> starts = new ArrayList<>(lines.size());
+        List<List<Color>> colors = new ArrayList<>(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            starts.add(new ArrayList<Integer>());
+            colors.add(new ArrayList<Color>());
+        }
+
+        if (lexer != null) {
+            StringBuilder text = new StringBuilder();
+            int[] lineOffsets = new int[lines.size() + 1];
+            for (int i = 0; i < lines.size(); i++) {
+                lineOffsets[i] = text.length();
+                text.append(lines.get(i)).append('\n');
+            }
+            lineOffsets[lines.size()] = text.length();
+
+            try {
+                int line = 0;
+                for (Token token : lexer.getTokens(text.toString())) {
+                    int pos = token.getPos();
+                    int end = pos + token.getValue().length();
+                    Color color = colorOf(token.getType());
+
+                    while (pos < end && line < lines.size()) {
+                        if (pos >= lineOffsets[line + 1]) {
+                            line++;
+                            continue;
+                        }
+
+                        int column = pos - lineOffsets[line];
+                        if (column < lines.get(line).length()) addRun(
+                                starts.get(line), colors.get(line), column, color
+                        );
+
+                        pos = Math.min(end, lineOffsets[line + 1]);
+                    }
+                }
+            } catch (RuntimeException x) {
+                logger.warning("cannot syntax highlight lines: " + x);
+                for (int i = 0; i < lines.size(); i++) {
+                    starts.get(i).clear();
+                    colors.get(i).clear();
+                }
+            }
+        }
+
+        for (int i = 0; i < lines.size(); i++) {
+            List<Integer> s = starts.get(i);
+            if (s.isEmpty() || s.get(0) != 0) {
+                s.add(0, 0);
+                colors.get(i).add(0, null);
+            }
+
+            highlighted.add(new Line(lines.get(i), s, colors.get(i)));
+        }
+
+        return highlighted;
+    }
+
+    /**
+     * Adds a run, merging it into the previous run if they have the same color.
+     */
+    private static void addRun(List<Integer> starts, List<Color> colors, int start, Color color) {
+        if (!colors.isEmpty() && colors.get(colors.size() - 1) == color) return;
+
+        starts.add(start);
+        colors.add(color);
+    }
+
+    private static Color colorOf(TokenType type) {
+        for (TokenType t = type; t != null; t = t.getParent()) {
+            Color c = tokenColors.get(t);
+            if (c != null) return c;
+        }
+
+        return null;
+    }
+
+    private static String expandTabs(String s) {
+        if (s.indexOf('\t') < 0) return s;
+
+        StringBuilder builder = new StringBuilder(s.length() + TAB_SIZE);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\t') {
+                do {
+                    builder.append(' ');
+                } while (builder.length() % TAB_SIZE != 0);
+            } else {
+                builder.append(c);
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private Lexer getLexer(String language) {
+        Lexer l = lexers.get(language);
+        if (l == null) {
+            try {
+                l = Lexer.getByName(language);
+            } catch (ResolutionException x) {
+                logger.severe("cannot syntax highlight: " + x);
+                return null;
+            }
+
+            lexers.put(language, l);
+        }
+
+        return l;
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        Insets insets = getInsets();
+        int width = insets.left + insets.right;
+        int height = insets.top + insets.bottom;
+
+        if (index != null) {
+            FontMetrics metrics = getFontMetrics(getFont());
+            int longest = Math.max(widestLine, Math.min(index.getLongestLine(), MAX_LINE_BYTES));
+            width += longest * metrics.charWidth('m');
+
+            // a component cannot be taller than this, so the end of a huge file may be cut off
+            long lines = (long)index.getLineCount() * metrics.getHeight();
+            height = (int)Math.min(Integer.MAX_VALUE, height + lines);
+        }
+
+        return new Dimension(width, height);
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        FontMetrics metrics = getFontMetrics(getFont());
+        if (orientation == SwingConstants.VERTICAL) return metrics.getHeight();
+        else return metrics.charWidth('m');
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        int lineHeight = getFontMetrics(getFont()).getHeight();
+        if (orientation == SwingConstants.VERTICAL)
+            return Math.max(lineHeight, visibleRect.height - lineHeight);
+        else return visibleRect.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return getParent() instanceof JViewport &&
+                getParent().getWidth() > getPreferredSize().width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return getParent() instanceof JViewport &&
+                getParent().getHeight() > getPreferredSize().height;
+    }
+
+    /**
+     * A line of text, split into runs of characters of one color. A null color is the
+     * foreground color.
+     */
+    private static class Line {
+
+        final String text;
+        final int[] runStarts;
+        final Color[] runColors;
+
+        Line(String text, List<Integer> runStarts, List<Color> runColors) {
+            this.text = text;
+            this.runStarts = new int[runStarts.size()];
+            for (int i = 0; i < this.runStarts.length; i++)
+                this.runStarts[i] = runStarts.get(i);
+            this.runColors = runColors.toArray(new Color[runColors.size()]);
+        }
+    }
+}
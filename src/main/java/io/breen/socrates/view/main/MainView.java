@@ -55,6 +55,7 @@ public class MainView extends JFrame {
                             if (rv != JOptionPane.YES_OPTION) return;
                         }
 
+                        controller.close();
                         controller.transcriptWindow.dispose();
                         dispose();
                         System.exit(0);
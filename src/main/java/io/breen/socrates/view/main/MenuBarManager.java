@@ -23,6 +23,9 @@ public class MenuBarManager {
     public final JMenuItem previousFile;
     //    public final JMenuItem renameFile;          // TODO
     public final JMenuItem openFile;
+    public final JMenuItem goToLine;
+    public final JMenuItem find;
+    public final JMenuItem findNext;
 
     public final JMenuItem passTest;
     public final JMenuItem passAllNonAutomated;
@@ -94,12 +97,20 @@ public class MenuBarManager {
             openFile.setText("Open with Default Program");
         }
 
+        goToLine = new JMenuItem("Go to Line...");
+        find = new JMenuItem("Find...");
+        findNext = new JMenuItem("Find Next");
+
         fileMenu.add(nextFile);
         fileMenu.add(previousFile);
         fileMenu.addSeparator();
         //        fileMenu.add(renameFile);
         //        fileMenu.addSeparator();
         fileMenu.add(openFile);
+        fileMenu.addSeparator();
+        fileMenu.add(goToLine);
+        fileMenu.add(find);
+        fileMenu.add(findNext);
 
 
         /*
@@ -565,7 +565,15 @@ public class SubmissionTree implements Observer {
         else return null;
     }
 
-    public void addUngraded(Map<Submission, List<Pair<SubmittedFile, File>>> map) {
+    /**
+     * Adds the specified submissions to the tree, in order among any submissions already in the
+     * tree. Returns the nodes of the recognized submitted files that were added.
+     */
+    public List<SubmittedFileWrapperNode> addUngraded(
+            Map<Submission, List<Pair<SubmittedFile, File>>> map)
+    {
+        List<SubmittedFileWrapperNode> added = new LinkedList<>();
+
         for (Map.Entry<Submission, List<Pair<SubmittedFile, File>>> entry : map.entrySet()) {
             Submission s = entry.getKey();
 
@@ -583,8 +591,9 @@ public class SubmissionTree implements Observer {
                     unrecognized.add(new UnrecognizedFileWrapperNode(sf));
                 } else {
                     SubmittedFileWrapperNode newSFWN = new SubmittedFileWrapperNode(sf, f);
-                    newSFWN.addObserver(this);
+                    observe(newSFWN);
                     recognized.add(newSFWN);
+                    added.add(newSFWN);
                 }
             }
 
@@ -605,8 +614,81 @@ public class SubmissionTree implements Observer {
 
             parent.addObserver(this);
 
-            root.add(parent);
+            int index = 0;
+            while (index < root.getChildCount()) {
+                DefaultMutableTreeNode n = (DefaultMutableTreeNode)root.getChildAt(index);
+                if (((Submission)n.getUserObject()).compareTo(s) > 0) break;
+                index++;
+            }
+
+            getModel().insertNodeInto(parent, root, index);
+        }
+
+        return added;
+    }
+
+    /**
+     * Starts observing a file node. The tree observes submission nodes too, so it is a raw
+     * Observer, and the observer cannot be checked against the node's type.
+     */
+    @SuppressWarnings("unchecked")
+    private void observe(SubmittedFileWrapperNode node) {
+        node.addObserver(this);
+    }
+
+    /**
+     * Adds a file found in a submission directory after the submission was added to the tree. A
+     * recognized file is added after the other recognized files of its submission, and an
+     * unrecognized file is added at the end. Returns the new node if the file is recognized, or
+     * null.
+     */
+    public SubmittedFileWrapperNode addFile(Submission submission, SubmittedFile file,
+                                            File matchingFile)
+    {
+        SubmissionWrapperNode parent = null;
+        for (int i = 0; i < root.getChildCount(); i++) {
+            DefaultMutableTreeNode n = (DefaultMutableTreeNode)root.getChildAt(i);
+            if (n.getUserObject() == submission) {
+                parent = (SubmissionWrapperNode)n;
+                break;
+            }
+        }
+
+        if (parent == null) return null;
+
+        if (matchingFile == null) {
+            getModel().insertNodeInto(
+                    new UnrecognizedFileWrapperNode(file), parent, parent.getChildCount()
+            );
+            return null;
+        }
+
+        int index = 0;
+        while (index < parent.getChildCount() &&
+                parent.getChildAt(index) instanceof SubmittedFileWrapperNode)
+            index++;
+
+        SubmittedFileWrapperNode node = new SubmittedFileWrapperNode(file, matchingFile);
+        observe(node);
+        getModel().insertNodeInto(node, parent, index);
+
+        return node;
+    }
+
+    /**
+     * Returns the node of the specified submitted file, or null if it is not in the tree.
+     */
+    public DefaultMutableTreeNode getFileNode(SubmittedFile file) {
+        for (int i = 0; i < root.getChildCount(); i++) {
+            DefaultMutableTreeNode submissionNode = (DefaultMutableTreeNode)root.getChildAt(i);
+
+            for (int j = 0; j < submissionNode.getChildCount(); j++) {
+                DefaultMutableTreeNode n = (DefaultMutableTreeNode)submissionNode.getChildAt(j);
+                if (n.getUserObject() == file) return n;
+            }
         }
+
+        return null;
     }
 
     public void expandFirstSubmission() {
@@ -0,0 +1,192 @@
+package io.breen.socrates.view.main;
+
+import com.threecrickets.jygments.ResolutionException;
+import com.threecrickets.jygments.format.Formatter;
+import com.threecrickets.jygments.grammar.Lexer;
+import io.breen.socrates.submission.SubmittedFile;
+
+import javax.swing.*;
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+
+/**
+ * Renders the syntax-highlighted HTML shown by the FileView on a background thread, so that large
+ * files do not block the event dispatch thread. One lexer is kept for each language. The HTML
+ * rendered for each submitted file is cached through a soft reference, along with the hash code
+ * and length of the contents it was rendered from, so that it is rendered again if the file
+ * changes.
+ *
+ * Requests are served one at a time, in the order they were made. Requests that have not started
+ * can be cancelled, for example when the user selects another file.
+ */
+class SyntaxHighlighter {
+
+    private static Logger logger = Logger.getLogger(SyntaxHighlighter.class.getName());
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "syntax-highlighter");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                }
+            }
+    );
+
+    /**
+     * Only used on the background thread.
+     */
+    private Formatter formatter;
+    private final Map<String, Lexer> lexers = new HashMap<>();
+
+    private final Map<SubmittedFile, Rendered> cache = new WeakHashMap<>();
+
+    /**
+     * Requests that may not have started yet. Only used on the event dispatch thread.
+     */
+    private final List<Future<?>> pending = new LinkedList<>();
+
+    /**
+     * Returns the HTML rendered for the specified contents of a file, or null if it is not cached.
+     */
+    String getCached(SubmittedFile file, String language, String contents) {
+        Rendered r;
+        synchronized (cache) {
+            r = cache.get(file);
+        }
+
+        return r == null ? null : r.get(language, contents);
+    }
+
+    /**
+     * Renders the specified contents of a file on the background thread, and then gives the HTML
+     * to the listener on the event dispatch thread. If the contents cannot be highlighted, the
+     * listener is not called.
+     */
+    void highlight(final SubmittedFile file, final String language, final String contents,
+                   final Listener listener)
+    {
+        submit(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        final String html = render(file, language, contents);
+                        if (html == null) return;
+
+                        SwingUtilities.invokeLater(
+                                new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        listener.highlighted(file, html);
+                                    }
+                                }
+                        );
+                    }
+                }
+        );
+    }
+
+    /**
+     * Reads and renders a file on the background thread, so that its HTML is cached before the
+     * user selects it.
+     */
+    void prefetch(final SubmittedFile file, final String language) {
+        submit(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            render(file, language, file.getContents());
+                        } catch (IOException x) {
+                            logger.fine("could not read file to highlight: " + x);
+                        }
+                    }
+                }
+        );
+    }
+
+    /**
+     * Cancels the requests that have not started.
+     */
+    void cancelPending() {
+        for (Future<?> f : pending)
+            f.cancel(false);
+
+        pending.clear();
+    }
+
+    private void submit(Runnable task) {
+        Iterator<Future<?>> it = pending.iterator();
+        while (it.hasNext())
+            if (it.next().isDone()) it.remove();
+
+        pending.add(executor.submit(task));
+    }
+
+    /**
+     * Returns the HTML for the specified contents of a file, rendering it if it is not cached, or
+     * null if it could not be rendered.
+     */
+    private String render(SubmittedFile file, String language, String contents) {
+        String html = getCached(file, language, contents);
+        if (html != null) return html;
+
+        try {
+            if (formatter == null) formatter = Formatter.getByName("html");
+
+            Lexer lexer = lexers.get(language);
+            if (lexer == null) {
+                lexer = Lexer.getByName(language);
+                lexers.put(language, lexer);
+            }
+
+            CharArrayWriter w = new CharArrayWriter(contents.length() * 2);
+            formatter.format(lexer.getTokens(contents), w);
+            html = w.toString();
+
+        } catch (ResolutionException | IOException x) {
+            logger.severe("cannot syntax highlight: " + x);
+            return null;
+        }
+
+        synchronized (cache) {
+            cache.put(file, new Rendered(language, contents, html));
+        }
+
+        return html;
+    }
+
+    interface Listener {
+
+        void highlighted(SubmittedFile file, String html);
+    }
+
+    private static class Rendered {
+
+        final String language;
+        final int hash;
+        final int length;
+        final SoftReference<String> html;
+
+        Rendered(String language, String contents, String html) {
+            this.language = language;
+            this.hash = contents.hashCode();
+            this.length = contents.length();
+            this.html = new SoftReference<>(html);
+        }
+
+        String get(String language, String contents) {
+            if (!this.language.equals(language) || length != contents.length() ||
+                    hash != contents.hashCode())
+                return null;
+
+            return html.get();
+        }
+    }
+}
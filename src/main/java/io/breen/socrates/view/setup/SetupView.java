@@ -20,6 +20,10 @@ public class SetupView extends JFrame {
 
     private JPanel openCriteriaPanel;
     private JPanel selectSubmissionsPanel;
+    private JPanel progressPanel;
+
+    private JLabel progressLabel;
+    private JProgressBar progressBar;
 
     public SetupView() {
         super("Socrates");
@@ -128,6 +132,22 @@ public class SetupView extends JFrame {
         cardLayout.show(rootPanel, "SubmissionsCard");
     }
 
+    /**
+     * Shows a progress bar for the opening of the specified number of submissions.
+     */
+    public void showProgressCard(int total) {
+        setProgress(0, total);
+
+        CardLayout cardLayout = (CardLayout)rootPanel.getLayout();
+        cardLayout.show(rootPanel, "ProgressCard");
+    }
+
+    public void setProgress(int done, int total) {
+        progressBar.setMaximum(total);
+        progressBar.setValue(done);
+        progressLabel.setText("Opened " + done + " of " + total + " submissions");
+    }
+
     public void addOpenCriteriaButtonActionListener(ActionListener l) {
         openButton.addActionListener(l);
     }
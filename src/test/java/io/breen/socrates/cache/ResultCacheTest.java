@@ -0,0 +1,120 @@
+package io.breen.socrates.cache;
+
+import io.breen.socrates.submission.Submission;
+import io.breen.socrates.submission.SubmittedFile;
+import org.junit.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ResultCacheTest {
+
+    private Path cacheDir;
+    private Path filesDir;
+    private SubmittedFile first;
+    private SubmittedFile same;
+    private SubmittedFile different;
+
+    @Before
+    public void setUp() throws Exception {
+        cacheDir = Files.createTempDirectory("cache");
+        filesDir = Files.createTempDirectory("files");
+
+        first = newFile("first.py", "foo = 3\n");
+        same = newFile("same.py", "foo = 3\n");
+        different = newFile("different.py", "foo = 4\n");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        delete(cacheDir);
+        delete(filesDir);
+    }
+
+    private SubmittedFile newFile(String name, String contents) throws Exception {
+        Path p = filesDir.resolve(name);
+        Files.write(p, contents.getBytes(StandardCharsets.UTF_8));
+        return new SubmittedFile(p, Paths.get(name));
+    }
+
+    private static void delete(Path dir) throws Exception {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path p : stream)
+                Files.delete(p);
+        }
+
+        Files.delete(dir);
+    }
+
+    @Test
+    public void shouldShareKeysForIdenticalContents() throws Exception {
+        ResultCache cache = new ResultCache(cacheDir, 10);
+
+        String key = cache.keyFor("criteria", "test", first);
+        assertEquals(key, cache.keyFor("criteria", "test", same));
+        assertNotEquals(key, cache.keyFor("criteria", "test", different));
+        assertNotEquals(key, cache.keyFor("criteria", "other test", first));
+        assertNotEquals(key, cache.keyFor("other criteria", "test", first));
+    }
+
+    @Test
+    public void shouldDependOnEveryFileOfSubmission() throws Exception {
+        ResultCache cache = new ResultCache(cacheDir, 10);
+
+        SubmittedFile helper = newFile("helper.py", "bar = 1\n");
+        SubmittedFile otherHelper = newFile("other.py", "bar = 2\n");
+
+        Submission withHelper = new Submission("a", filesDir, Arrays.asList(first, helper));
+        Submission withSameHelper = new Submission("b", filesDir, Arrays.asList(helper, first));
+        Submission withOtherHelper = new Submission(
+                "c", filesDir, Arrays.asList(first, otherHelper)
+        );
+
+        String key = cache.keyFor("criteria", "test", first, withHelper);
+        assertEquals(key, cache.keyFor("criteria", "test", first, withSameHelper));
+        assertNotEquals(key, cache.keyFor("criteria", "test", first, withOtherHelper));
+        assertNotEquals(key, cache.keyFor("criteria", "test", first));
+    }
+
+    @Test
+    public void shouldReturnStoredResultsAfterReopening() throws Exception {
+        ResultCache cache = new ResultCache(cacheDir, 10);
+
+        String key = cache.keyFor("criteria", "test", first);
+        assertNull(cache.get(key));
+
+        cache.put(key, new ResultCache.Entry(true, ">>> foo\n3\n", "note"));
+        cache.flush();
+
+        ResultCache reopened = new ResultCache(cacheDir, 10);
+        ResultCache.Entry entry = reopened.get(key);
+
+        assertNotNull(entry);
+        assertTrue(entry.passed);
+        assertEquals(">>> foo\n3\n", entry.transcript);
+        assertEquals("note", entry.notes);
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedEntries() throws Exception {
+        ResultCache cache = new ResultCache(cacheDir, 2);
+
+        cache.put("a", new ResultCache.Entry(true, "", ""));
+        cache.put("b", new ResultCache.Entry(false, "", ""));
+        cache.flush();
+
+        assertNotNull(cache.get("a"));
+
+        cache.put("c", new ResultCache.Entry(true, "", ""));
+        cache.flush();
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertFalse(Files.exists(cacheDir.resolve("b.json")));
+    }
+}
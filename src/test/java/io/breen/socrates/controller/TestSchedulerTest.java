@@ -0,0 +1,257 @@
+package io.breen.socrates.controller;
+
+import io.breen.socrates.cache.ResultCache;
+import io.breen.socrates.criteria.Criteria;
+import io.breen.socrates.file.File;
+import io.breen.socrates.file.plain.PlainFile;
+import io.breen.socrates.model.AutomationStage;
+import io.breen.socrates.model.TestResult;
+import io.breen.socrates.model.wrapper.TestWrapperNode;
+import io.breen.socrates.submission.Submission;
+import io.breen.socrates.submission.SubmittedFile;
+import io.breen.socrates.test.Automatable;
+import io.breen.socrates.test.Cacheable;
+import org.junit.*;
+
+import javax.swing.text.Document;
+import javax.swing.text.PlainDocument;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class TestSchedulerTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private TestScheduler scheduler;
+    private List<String> ran;
+    private CountDownLatch gate;
+    private Submission alpha;
+    private Submission beta;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = new TestScheduler(null, new PlainDocument(), 1, DIRECT);
+        ran = Collections.synchronizedList(new ArrayList<String>());
+        gate = new CountDownLatch(1);
+        alpha = new Submission("alpha", Paths.get("alpha"));
+        beta = new Submission("beta", Paths.get("beta"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        gate.countDown();
+        scheduler.shutdown();
+    }
+
+    private TestWrapperNode schedule(String name, Submission submission, boolean waits) {
+        RecordingTest test = new RecordingTest(name, waits);
+        TestWrapperNode node = new TestWrapperNode(test);
+        scheduler.schedule(node, test, null, null, submission);
+        return node;
+    }
+
+    private TestWrapperNode prefetch(String name, Submission submission) {
+        RecordingTest test = new RecordingTest(name, false);
+        TestWrapperNode node = new TestWrapperNode(test);
+        scheduler.prefetch(node, test, null, null, submission);
+        return node;
+    }
+
+    private static void awaitStage(TestWrapperNode node, AutomationStage stage) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (node.getAutomationStage() != stage) {
+            if (System.currentTimeMillis() > deadline) fail("timed out waiting for " + stage);
+            Thread.sleep(10);
+        }
+    }
+
+    @org.junit.Test
+    public void shouldTakeTurnsBetweenSubmissions() throws Exception {
+        TestWrapperNode blocker = schedule("blocker", alpha, true);
+        awaitStage(blocker, AutomationStage.STARTED);
+
+        schedule("a1", alpha, false);
+        TestWrapperNode last = schedule("a2", alpha, false);
+        schedule("b1", beta, false);
+
+        gate.countDown();
+        awaitStage(last, AutomationStage.FINISHED_NORMAL);
+
+        assertEquals(Arrays.asList("blocker", "a1", "b1", "a2"), ran);
+    }
+
+    @org.junit.Test
+    public void shouldNotRunResetNodes() throws Exception {
+        TestWrapperNode blocker = schedule("blocker", alpha, true);
+        awaitStage(blocker, AutomationStage.STARTED);
+
+        TestWrapperNode reset = schedule("reset", beta, false);
+        TestWrapperNode kept = schedule("kept", beta, false);
+        reset.setAutomationStage(AutomationStage.NONE);
+
+        gate.countDown();
+        awaitStage(kept, AutomationStage.FINISHED_NORMAL);
+
+        assertEquals(Arrays.asList("blocker", "kept"), ran);
+        assertEquals(AutomationStage.NONE, reset.getAutomationStage());
+        assertEquals(TestResult.NONE, reset.getResult());
+        assertEquals(TestResult.PASSED, kept.getResult());
+    }
+
+    @org.junit.Test
+    public void shouldPrefetchNearestToFocusAfterScheduledTests() throws Exception {
+        Submission gamma = new Submission("gamma", Paths.get("gamma"));
+
+        TestWrapperNode blocker = schedule("blocker", alpha, true);
+        awaitStage(blocker, AutomationStage.STARTED);
+
+        prefetch("a1", alpha);
+        prefetch("b1", beta);
+        TestWrapperNode last = prefetch("c1", gamma);
+        TestWrapperNode a2 = prefetch("a2", alpha);
+        TestWrapperNode b2 = prefetch("b2", beta);
+        schedule("selected", alpha, false);
+
+        assertEquals(AutomationStage.NONE, a2.getAutomationStage());
+
+        scheduler.focus(beta);
+        gate.countDown();
+        awaitStage(last, AutomationStage.FINISHED_NORMAL);
+
+        assertEquals(Arrays.asList("blocker", "selected", "b1", "b2", "c1"), ran.subList(0, 5));
+        assertEquals(TestResult.PASSED, b2.getResult());
+    }
+
+    @org.junit.Test
+    public void shouldSkipPrefetchedNodesThatBecomeConstrained() throws Exception {
+        TestWrapperNode blocker = schedule("blocker", alpha, true);
+        awaitStage(blocker, AutomationStage.STARTED);
+
+        TestWrapperNode constrained = prefetch("constrained", beta);
+        TestWrapperNode graded = prefetch("graded", beta);
+        TestWrapperNode kept = prefetch("kept", beta);
+
+        constrained.setConstrained(true);
+        graded.setResult(TestResult.FAILED);
+
+        gate.countDown();
+        awaitStage(kept, AutomationStage.FINISHED_NORMAL);
+
+        assertEquals(Arrays.asList("blocker", "kept"), ran);
+        assertEquals(AutomationStage.NONE, constrained.getAutomationStage());
+        assertEquals(AutomationStage.NONE, graded.getAutomationStage());
+        assertEquals(TestResult.FAILED, graded.getResult());
+    }
+
+    @org.junit.Test
+    public void shouldReuseCachedResultsForIdenticalFiles() throws Exception {
+        Path dir = Files.createTempDirectory("files");
+        Path cacheDir = Files.createTempDirectory("cache");
+
+        try {
+            Path a = Files.write(dir.resolve("a.txt"), "same".getBytes(StandardCharsets.UTF_8));
+            Path b = Files.write(dir.resolve("b.txt"), "same".getBytes(StandardCharsets.UTF_8));
+
+            Criteria criteria = new Criteria("Problem Set 0", new ArrayList<File>());
+            criteria.digest = "criteria";
+
+            ResultCache cache = new ResultCache(cacheDir, 10);
+
+            scheduler.shutdown();
+            scheduler = new TestScheduler(criteria, new PlainDocument(), 1, DIRECT, cache);
+
+            File file = new PlainFile("a.txt", 1.0, null, null);
+
+            CachedTest test = new CachedTest();
+            TestWrapperNode first = new TestWrapperNode(test);
+            TestWrapperNode second = new TestWrapperNode(test);
+
+            scheduler.schedule(first, test, file, new SubmittedFile(a, Paths.get("a.txt")), alpha);
+            awaitStage(first, AutomationStage.FINISHED_NORMAL);
+            cache.flush();
+
+            scheduler.schedule(second, test, file, new SubmittedFile(b, Paths.get("a.txt")), beta);
+            awaitStage(second, AutomationStage.FINISHED_NORMAL);
+
+            assertEquals(Collections.singletonList("cached"), ran);
+            assertEquals(TestResult.FAILED, second.getResult());
+            assertEquals("the note", second.notes.getText(0, second.notes.getLength()));
+
+        } finally {
+            for (Path root : Arrays.asList(dir, cacheDir)) {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(root)) {
+                    for (Path p : stream)
+                        Files.delete(p);
+                }
+                Files.delete(root);
+            }
+        }
+    }
+
+    private class CachedTest extends io.breen.socrates.test.Test
+            implements Automatable<File>, Cacheable
+    {
+
+        CachedTest() {
+            super(1.0, "cached");
+        }
+
+        @Override
+        public boolean shouldPass(File parent, SubmittedFile target, Submission submission,
+                                  Criteria criteria, Document transcript, Document notes)
+        {
+            ran.add("cached");
+
+            try {
+                notes.insertString(0, "the note", null);
+            } catch (javax.swing.text.BadLocationException ignored) {}
+
+            return false;
+        }
+
+        @Override
+        public String getTestTypeName() {
+            return "cached test";
+        }
+    }
+
+    private class RecordingTest extends io.breen.socrates.test.Test implements Automatable<File> {
+
+        private final String name;
+        private final boolean waits;
+
+        RecordingTest(String name, boolean waits) {
+            super(1.0, name);
+            this.name = name;
+            this.waits = waits;
+        }
+
+        @Override
+        public boolean shouldPass(File parent, SubmittedFile target, Submission submission,
+                                  Criteria criteria, Document transcript, Document notes)
+        {
+            if (waits) {
+                try {
+                    gate.await();
+                } catch (InterruptedException ignored) {}
+            }
+
+            ran.add(name);
+            return true;
+        }
+
+        @Override
+        public String getTestTypeName() {
+            return "recording test";
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package io.breen.socrates.criteria;
+
+import io.breen.socrates.file.File;
+import io.breen.socrates.file.java.JavaFile;
+import io.breen.socrates.test.TestGroup;
+import io.breen.socrates.test.java.MethodEvalTest;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+import static org.junit.Assert.*;
+
+public class CompiledCriteriaTest {
+
+    private static final String CRITERIA = "assignmentName: Problem Set 1\n" +
+            "files:\n" +
+            "  - !file:python\n" +
+            "    path: ps1pr1.py\n" +
+            "    pointValue: 20\n" +
+            "    dueDates:\n" +
+            "      2016-01-01 00:00:00: 10\n" +
+            "    functions:\n" +
+            "      - name: twice\n" +
+            "        parameters: [n]\n" +
+            "        pointValue: 10\n" +
+            "        tests:\n" +
+            "          - !test:python:eval:function\n" +
+            "            description: twice(2) should be 4\n" +
+            "            deduction: 5\n" +
+            "            arguments: {n: 2}\n" +
+            "            value: 4\n" +
+            "  - !file:java\n" +
+            "    path: Foo.java\n" +
+            "    pointValue: 10\n" +
+            "    classes:\n" +
+            "      - name: Foo\n" +
+            "        pointValue: 10\n" +
+            "        methods:\n" +
+            "          - name: add\n" +
+            "            pointValue: 10\n" +
+            "            parameters:\n" +
+            "              - !java:parameter {name: n, type: !java:type Integer}\n" +
+            "            tests:\n" +
+            "              - !test:java:eval:method\n" +
+            "                description: add(5) should be 15\n" +
+            "                deduction: 5\n" +
+            "                arguments:\n" +
+            "                  n: !java:object {value: 5, type: !java:type Integer}\n" +
+            "                value: !java:object {value: 15, type: !java:type Integer}\n" +
+            "                before: !java:object\n" +
+            "                  fields:\n" +
+            "                    count: !java:object {value: 10, type: !java:type Integer}\n" +
+            "  - !file:logicly\n" +
+            "    path: circuit.logicly\n" +
+            "    pointValue: 10\n" +
+            "    tests:\n" +
+            "      - !test:logicly:table\n" +
+            "        description: circuit should be an AND gate\n" +
+            "        deduction: 10\n" +
+            "        inputs: [A, B]\n" +
+            "        expressions: {X: A & B}\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path criteriaPath;
+
+    @Before
+    public void setUp() throws Exception {
+        criteriaPath = folder.getRoot().toPath().resolve("criteria.yml");
+        Files.write(criteriaPath, CRITERIA.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void compiledCriteriaShouldMatchSource() throws Exception {
+        Path compiled = Criteria.compile(criteriaPath);
+        assertEquals(CompiledCriteria.pathFor(criteriaPath), compiled);
+        assertTrue(Files.exists(compiled));
+
+        Criteria source = Criteria.loadFromPath(criteriaPath);
+        Criteria c = CompiledCriteria.read(compiled, source.digest);
+
+        assertNotNull(c);
+        assertEquals(source.assignmentName, c.assignmentName);
+        assertEquals(source.files.size(), c.files.size());
+
+        for (int i = 0; i < source.files.size(); i++) {
+            File expected = source.files.get(i);
+            File actual = c.files.get(i);
+
+            assertSame(expected.getClass(), actual.getClass());
+            assertEquals(expected.path, actual.path);
+            assertEquals(shape(expected.testRoot), shape(actual.testRoot));
+        }
+
+        // tests in the test tree are the same objects the file refers to
+        JavaFile javaFile = (JavaFile)c.files.get(1);
+        MethodEvalTest test = (MethodEvalTest)javaFile.classes.get(0).methods.get(0).tests.get(0);
+        assertNotNull(javaFile.getMethodForTest(test));
+        assertTrue(contains(javaFile.testRoot, test));
+    }
+
+    /**
+     * Returns a string showing the classes of the members of a test tree and how they are nested.
+     */
+    private static String shape(Object member) {
+        if (!(member instanceof TestGroup)) return member.getClass().getSimpleName();
+
+        TestGroup group = (TestGroup)member;
+        StringBuilder builder = new StringBuilder("(" + group.maxNum + " " + group.maxValue);
+        for (Object m : group.members)
+            builder.append(" ").append(shape(m));
+
+        return builder.append(")").toString();
+    }
+
+    private static boolean contains(TestGroup group, Object test) {
+        for (Object member : group.members) {
+            if (member == test) return true;
+            if (member instanceof TestGroup && contains((TestGroup)member, test)) return true;
+        }
+
+        return false;
+    }
+
+    @Test
+    public void shouldLoadFreshCompiledCriteria() throws Exception {
+        Criteria c = Criteria.loadFromPath(criteriaPath);
+        c.assignmentName = "Compiled";
+        CompiledCriteria.write(c, c.digest, CompiledCriteria.pathFor(criteriaPath));
+
+        assertEquals("Compiled", Criteria.loadFromPath(criteriaPath).assignmentName);
+    }
+
+    @Test
+    public void shouldIgnoreStaleCompiledCriteria() throws Exception {
+        Criteria.compile(criteriaPath);
+
+        Files.write(
+                criteriaPath,
+                CRITERIA.replace("Problem Set 1", "Problem Set 2").getBytes(StandardCharsets.UTF_8)
+        );
+
+        assertEquals("Problem Set 2", Criteria.loadFromPath(criteriaPath).assignmentName);
+    }
+
+    @Test
+    public void shouldIgnoreCompiledCriteriaFromOtherBuild() throws Exception {
+        Criteria c = Criteria.loadFromPath(criteriaPath);
+        c.assignmentName = "Compiled";
+        CompiledCriteria.write(c, c.digest, CompiledCriteria.pathFor(criteriaPath), "other");
+
+        assertEquals("Problem Set 1", Criteria.loadFromPath(criteriaPath).assignmentName);
+    }
+
+    @Test
+    public void shouldIgnoreUnreadableCompiledCriteria() throws Exception {
+        Files.write(CompiledCriteria.pathFor(criteriaPath), new byte[] {1, 2, 3});
+
+        assertEquals("Problem Set 1", Criteria.loadFromPath(criteriaPath).assignmentName);
+    }
+}
@@ -0,0 +1,112 @@
+package io.breen.socrates.criteria;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class CriteriaPackageTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path zipPath;
+    private Path destDir;
+
+    @Before
+    public void setUp() throws Exception {
+        zipPath = folder.getRoot().toPath().resolve("package.zip");
+        destDir = folder.newFolder("dest").toPath();
+    }
+
+    /**
+     * Writes a ZIP archive with the specified entries, alternating names and contents. No
+     * directory entries are written.
+     */
+    private void writeZip(String... namesAndContents) throws Exception {
+        try (OutputStream out = Files.newOutputStream(zipPath);
+             ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                zip.putNextEntry(new ZipEntry(namesAndContents[i]));
+                zip.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+    }
+
+    private static String read(Path path) throws Exception {
+        return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void shouldExtractAndClassifyEntries() throws Exception {
+        writeZip(
+                "criteria.yml", "assignmentName: x\n",
+                "static/data.txt", "data",
+                "scripts/check.py", "print(1)",
+                "static/nested/more.txt", "more",
+                "README", "readme"
+        );
+
+        CriteriaPackage pkg = CriteriaPackage.extract(zipPath, destDir, true);
+
+        assertEquals(destDir.resolve("criteria.yml"), pkg.criteriaFile);
+        assertEquals("data", read(pkg.staticResources.get("data.txt")));
+        assertEquals("print(1)", read(pkg.scripts.get("check.py")));
+        assertFalse(pkg.staticResources.containsKey("more.txt"));
+        assertEquals("more", read(destDir.resolve("static/nested/more.txt")));
+        assertEquals("readme", read(destDir.resolve("README")));
+        assertEquals(destDir.resolve("static"), pkg.getStaticDir());
+    }
+
+    @Test
+    public void shouldExtractManyEntries() throws Exception {
+        String[] entries = new String[200];
+        for (int i = 0; i < entries.length; i += 2) {
+            entries[i] = "static/dir" + (i % 7) + "/file" + i + ".txt";
+            entries[i + 1] = "contents " + i;
+        }
+
+        writeZip(entries);
+        CriteriaPackage.extract(zipPath, destDir, true);
+
+        for (int i = 0; i < entries.length; i += 2)
+            assertEquals(entries[i + 1], read(destDir.resolve(entries[i])));
+    }
+
+    @Test
+    public void shouldRejectEntriesOutsideOfPackage() throws Exception {
+        writeZip("criteria.yml", "", "static/../../evil.txt", "evil");
+
+        try {
+            CriteriaPackage.extract(zipPath, destDir, true);
+            fail();
+        } catch (InvalidCriteriaException ignored) {}
+
+        assertFalse(Files.exists(folder.getRoot().toPath().resolve("evil.txt")));
+    }
+
+    @Test
+    public void shouldReadStaticResourcesFromArchive() throws Exception {
+        writeZip("criteria.yml", "", "static/data.txt", "data");
+
+        CriteriaPackage pkg = CriteriaPackage.extract(zipPath, destDir, false);
+
+        Path inArchive = pkg.staticResources.get("data.txt");
+        assertEquals("data", read(inArchive));
+        assertFalse(Files.exists(destDir.resolve("static")));
+
+        Path staticDir = pkg.getStaticDir();
+        assertEquals("data", read(staticDir.resolve("data.txt")));
+
+        // the resources now refer to the extracted files, and the archive is closed
+        assertEquals(staticDir.resolve("data.txt"), pkg.staticResources.get("data.txt"));
+        assertFalse(inArchive.getFileSystem().isOpen());
+    }
+}
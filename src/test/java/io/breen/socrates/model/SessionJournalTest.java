@@ -0,0 +1,248 @@
+package io.breen.socrates.model;
+
+import io.breen.socrates.file.File;
+import io.breen.socrates.file.plain.PlainFile;
+import io.breen.socrates.model.wrapper.SubmissionWrapperNode;
+import io.breen.socrates.model.wrapper.SubmittedFileWrapperNode;
+import io.breen.socrates.model.wrapper.TestWrapperNode;
+import io.breen.socrates.submission.Submission;
+import io.breen.socrates.submission.SubmittedFile;
+import io.breen.socrates.test.any.ReviewTest;
+import org.junit.*;
+
+import javax.swing.tree.DefaultMutableTreeNode;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class SessionJournalTest {
+
+    private Path dir;
+    private Path criteriaPath;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("journal");
+        criteriaPath = dir.resolve("criteria.yml");
+
+        for (String name : Arrays.asList("alpha", "beta")) {
+            Files.createDirectories(dir.resolve(name));
+            Files.write(dir.resolve(name).resolve("a.txt"), "a".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.walkFileTree(
+                dir, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                            throws IOException
+                    {
+                        Files.delete(file);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult postVisitDirectory(Path d, IOException x)
+                            throws IOException
+                    {
+                        Files.delete(d);
+                        return FileVisitResult.CONTINUE;
+                    }
+                }
+        );
+    }
+
+    /**
+     * Builds the wrapper tree of a submission with one file holding two review tests, as a new
+     * session would.
+     */
+    private List<SubmittedFileWrapperNode> newSession() throws IOException {
+        return newSession("alpha");
+    }
+
+    private List<SubmittedFileWrapperNode> newSession(String name) throws IOException {
+        List<Object> tests = new ArrayList<>();
+        tests.add(new ReviewTest(1.0, "first"));
+        tests.add(new ReviewTest(2.0, "second"));
+        File file = new PlainFile("a.txt", 3.0, null, tests);
+
+        Path submissionDir = dir.resolve(name);
+        Submission submission = new Submission(name, submissionDir);
+        SubmittedFile sf = new SubmittedFile(submissionDir.resolve("a.txt"), Paths.get("a.txt"));
+
+        SubmissionWrapperNode swn = new SubmissionWrapperNode(submission);
+        SubmittedFileWrapperNode sfwn = new SubmittedFileWrapperNode(sf, file);
+        swn.add(sfwn);
+
+        return Collections.singletonList(sfwn);
+    }
+
+    private static TestWrapperNode testNode(List<SubmittedFileWrapperNode> files, int i) {
+        DefaultMutableTreeNode root = (DefaultMutableTreeNode)files.get(0).treeModel.getRoot();
+        return (TestWrapperNode)root.getChildAt(i);
+    }
+
+    @Test
+    public void shouldRestoreResultsAndNotes() throws Exception {
+        List<SubmittedFileWrapperNode> first = newSession();
+        SessionJournal journal = new SessionJournal(criteriaPath, "digest");
+        assertEquals(0, journal.restore(first));
+
+        testNode(first, 0).setResult(TestResult.PASSED);
+        testNode(first, 1).setResult(TestResult.FAILED);
+        testNode(first, 1).notes.insertString(0, "off by one", null);
+        testNode(first, 0).setAutomationStage(AutomationStage.FINISHED_NORMAL);
+        journal.close();
+
+        List<SubmittedFileWrapperNode> second = newSession();
+        journal = new SessionJournal(criteriaPath, "digest");
+        assertEquals(2, journal.restore(second));
+        journal.close();
+
+        TestWrapperNode a = testNode(second, 0);
+        TestWrapperNode b = testNode(second, 1);
+
+        assertEquals(TestResult.PASSED, a.getResult());
+        assertEquals(AutomationStage.FINISHED_NORMAL, a.getAutomationStage());
+        assertEquals(TestResult.FAILED, b.getResult());
+        assertEquals("off by one", b.notes.getText(0, b.notes.getLength()));
+    }
+
+    @Test
+    public void shouldWriteNotesOnceTheyStopChanging() throws Exception {
+        List<SubmittedFileWrapperNode> first = newSession();
+        SessionJournal journal = new SessionJournal(criteriaPath, "digest");
+        journal.restore(first);
+
+        TestWrapperNode node = testNode(first, 0);
+        for (char c : "typed one key at a time".toCharArray())
+            node.notes.insertString(node.notes.getLength(), Character.toString(c), null);
+
+        journal.close();
+
+        Path path = dir.resolve("criteria.yml" + SessionJournal.SUFFIX);
+        int numNotes = 0;
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8))
+            if (line.contains("\"notes\"")) numNotes++;
+
+        assertEquals(1, numNotes);
+
+        List<SubmittedFileWrapperNode> second = newSession();
+        journal = new SessionJournal(criteriaPath, "digest");
+        assertEquals(1, journal.restore(second));
+        journal.close();
+
+        TestWrapperNode restored = testNode(second, 0);
+        assertEquals(
+                "typed one key at a time", restored.notes.getText(0, restored.notes.getLength())
+        );
+    }
+
+    @Test
+    public void shouldIgnoreTruncatedRecord() throws Exception {
+        List<SubmittedFileWrapperNode> first = newSession();
+        SessionJournal journal = new SessionJournal(criteriaPath, "digest");
+        journal.restore(first);
+        testNode(first, 0).setResult(TestResult.PASSED);
+        journal.close();
+
+        Path path = dir.resolve("criteria.yml" + SessionJournal.SUFFIX);
+        Files.write(
+                path, "[\"half a rec".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND
+        );
+
+        List<SubmittedFileWrapperNode> second = newSession();
+        journal = new SessionJournal(criteriaPath, "digest");
+        assertEquals(1, journal.restore(second));
+        journal.close();
+
+        assertEquals(TestResult.PASSED, testNode(second, 0).getResult());
+    }
+
+    @Test
+    public void shouldDiscardJournalForOtherCriteria() throws Exception {
+        List<SubmittedFileWrapperNode> first = newSession();
+        SessionJournal journal = new SessionJournal(criteriaPath, "digest");
+        journal.restore(first);
+        testNode(first, 0).setResult(TestResult.PASSED);
+        journal.close();
+
+        List<SubmittedFileWrapperNode> second = newSession();
+        journal = new SessionJournal(criteriaPath, "changed");
+        assertEquals(0, journal.restore(second));
+        journal.close();
+
+        assertEquals(TestResult.NONE, testNode(second, 0).getResult());
+    }
+
+    @Test
+    public void shouldNotRestoreStateOfChangedFile() throws Exception {
+        List<SubmittedFileWrapperNode> first = newSession();
+        SessionJournal journal = new SessionJournal(criteriaPath, "digest");
+        journal.restore(first);
+        testNode(first, 0).setResult(TestResult.PASSED);
+        testNode(first, 0).notes.insertString(0, "looks fine", null);
+        journal.close();
+
+        Files.write(dir.resolve("alpha").resolve("a.txt"), "b".getBytes(StandardCharsets.UTF_8));
+
+        List<SubmittedFileWrapperNode> second = newSession();
+        journal = new SessionJournal(criteriaPath, "digest");
+        assertEquals(0, journal.restore(second));
+        journal.close();
+
+        TestWrapperNode node = testNode(second, 0);
+        assertEquals(TestResult.NONE, node.getResult());
+        assertEquals(0, node.notes.getLength());
+    }
+
+    @Test
+    public void shouldRestoreStateRecordedAfterFileChanged() throws Exception {
+        List<SubmittedFileWrapperNode> first = newSession();
+        SessionJournal journal = new SessionJournal(criteriaPath, "digest");
+        journal.restore(first);
+        testNode(first, 0).setResult(TestResult.PASSED);
+
+        Files.write(dir.resolve("alpha").resolve("a.txt"), "b".getBytes(StandardCharsets.UTF_8));
+        journal.forget((SubmittedFile)first.get(0).getUserObject());
+
+        testNode(first, 1).setResult(TestResult.FAILED);
+        journal.close();
+
+        List<SubmittedFileWrapperNode> second = newSession();
+        journal = new SessionJournal(criteriaPath, "digest");
+        assertEquals(1, journal.restore(second));
+        journal.close();
+
+        assertEquals(TestResult.NONE, testNode(second, 0).getResult());
+        assertEquals(TestResult.FAILED, testNode(second, 1).getResult());
+    }
+
+    @Test
+    public void shouldKeepStateOfSubmissionsAddedLater() throws Exception {
+        List<SubmittedFileWrapperNode> beta = newSession("beta");
+        SessionJournal journal = new SessionJournal(criteriaPath, "digest");
+        journal.restore(newSession("alpha"));
+        journal.restore(beta);
+        testNode(beta, 1).setResult(TestResult.FAILED);
+        journal.close();
+
+        // this session is closed before beta is added, but must not forget beta's result
+        journal = new SessionJournal(criteriaPath, "digest");
+        assertEquals(0, journal.restore(newSession("alpha")));
+        journal.close();
+
+        beta = newSession("beta");
+        journal = new SessionJournal(criteriaPath, "digest");
+        assertEquals(1, journal.restore(beta));
+        journal.close();
+
+        assertEquals(TestResult.FAILED, testNode(beta, 1).getResult());
+    }
+}
@@ -0,0 +1,94 @@
+package io.breen.socrates.submission;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+import static org.junit.Assert.*;
+
+public class LineIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static LineIndex index(String s) {
+        return new LineIndex(ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void shouldSplitLinesAsReadLineDoes() {
+        LineIndex index = index("a\r\nb\rc\n\nd");
+
+        assertEquals(5, index.getLineCount());
+        assertEquals("a", index.getLine(0));
+        assertEquals("b", index.getLine(1));
+        assertEquals("c", index.getLine(2));
+        assertEquals("", index.getLine(3));
+        assertEquals("d", index.getLine(4));
+
+        assertEquals(1, index("x\n").getLineCount());
+        assertEquals(0, index("").getLineCount());
+    }
+
+    @Test
+    public void shouldFindLinesFarFromCheckpoints() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+            builder.append("line ").append(i).append(i % 3 == 0 ? "\r\n" : "\n");
+
+        String s = builder.toString();
+        LineIndex index = index(s);
+
+        assertEquals(1000, index.getLineCount());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("line " + i, index.getLine(i));
+
+            int start = index.getLineStart(i);
+            assertEquals(i, index.getLineOf(start));
+            assertEquals(i, index.getLineOf(start + 4));
+        }
+
+        assertEquals(s.indexOf("line 999"), index.getLineStart(999));
+        assertEquals("line 999".length(), index.getLongestLine());
+    }
+
+    @Test
+    public void shouldNotCutMultiByteCharacters() {
+        LineIndex index = index("aé✓b\n");
+
+        assertEquals("aé✓b", index.getLine(0));
+        assertEquals("aé", index.getLine(0, 4));
+        assertEquals("a", index.getLine(0, 2));
+    }
+
+    @Test
+    public void shouldFindTextFromOffset() {
+        String s = "foo\nbar café\nbar\n";
+        LineIndex index = index(s);
+
+        int first = index.find("bar", 0);
+        assertEquals(4, first);
+        assertEquals(1, index.getLineOf(first));
+
+        int second = index.find("bar", first + 1);
+        assertEquals(2, index.getLineOf(second));
+
+        assertEquals(-1, index.find("bar", second + 1));
+        assertEquals(-1, index.find("baz", 0));
+        assertEquals("café", index.decode(index.find("café", 0), index.find("\nbar\n", 0)));
+    }
+
+    @Test
+    public void shouldIndexMappedFile() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("large.txt");
+        Files.write(path, "first\nsecond\n".getBytes(StandardCharsets.UTF_8));
+
+        LineIndex index = LineIndex.of(path);
+
+        assertEquals(2, index.getLineCount());
+        assertEquals("second", index.getLine(1));
+    }
+}
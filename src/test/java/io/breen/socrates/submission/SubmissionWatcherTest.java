@@ -0,0 +1,117 @@
+package io.breen.socrates.submission;
+
+import io.breen.socrates.Globals;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class SubmissionWatcherTest {
+
+    private static final long TIMEOUT_SECONDS = 20;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    private Submission submission;
+    private SubmissionWatcher watcher;
+
+    @Before
+    public void setUp() throws Exception {
+        Path dir = folder.newFolder("student").toPath();
+        Files.write(dir.resolve("a.txt"), bytes("first"));
+        Files.createDirectory(dir.resolve("sub"));
+
+        submission = Submission.fromDirectory(dir);
+
+        watcher = new SubmissionWatcher(
+                new SubmissionWatcher.Listener() {
+                    @Override
+                    public void fileAdded(Submission s, SubmittedFile file) {
+                        events.add("added " + file.localPath + " " + file.size);
+                    }
+
+                    @Override
+                    public void fileChanged(Submission s, SubmittedFile file) {
+                        events.add(
+                                "changed " + file.localPath + " " + file.size + " " +
+                                        (file.receipt != null)
+                        );
+                    }
+                }
+        );
+        watcher.watch(Collections.singletonList(submission));
+
+        // the directories are registered on the watcher thread
+        assertTrue(watcher.awaitRegistered(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS)));
+    }
+
+    @After
+    public void tearDown() {
+        watcher.close();
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String nextEvent() throws InterruptedException {
+        return events.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void shouldRefreshChangedFile() throws Exception {
+        SubmittedFile original = submission.files.get(0);
+        Files.write(original.fullPath, bytes("changed!"));
+
+        assertEquals("changed a.txt 8 false", nextEvent());
+        assertEquals(8, original.size);
+        assertEquals("changed!", original.getContents().trim());
+    }
+
+    @Test
+    public void shouldReportNewFilesInNewDirectories() throws Exception {
+        Path dir = submission.submissionDir;
+        Files.write(dir.resolve("sub").resolve("b.txt"), bytes("bb"));
+
+        assertEquals("added " + Paths.get("sub", "b.txt") + " 2", nextEvent());
+
+        Path deeper = Files.createDirectories(dir.resolve("new").resolve("deeper"));
+        Files.write(deeper.resolve("c.txt"), bytes("ccc"));
+
+        assertEquals("added " + Paths.get("new", "deeper", "c.txt") + " 3", nextEvent());
+    }
+
+    @Test
+    public void shouldRefreshFileWhenReceiptChanges() throws Exception {
+        Path receipt = SubmittedFile.getReceiptPath(submission.files.get(0).fullPath);
+        Files.write(receipt, bytes("2015-08-14T22:46:00Z"));
+
+        assertEquals("changed a.txt 5 true", nextEvent());
+        assertNotNull(submission.files.get(0).receipt);
+    }
+
+    @Test
+    public void shouldIgnoreGradeReportsAndUnchangedFiles() throws Exception {
+        Path dir = submission.submissionDir;
+        Files.write(dir.resolve(Globals.DEFAULT_GRADE_FILE_NAME), bytes("10/10"));
+
+        // touching a file without changing its modification time or size is not a change
+        Path a = dir.resolve("a.txt");
+        FileTime modified = Files.getLastModifiedTime(a);
+        Files.write(a, bytes("first"));
+        Files.setLastModifiedTime(a, modified);
+
+        Files.write(dir.resolve("d.txt"), bytes("d"));
+
+        assertEquals("added d.txt 1", nextEvent());
+        assertNull(events.poll(1, TimeUnit.SECONDS));
+    }
+}
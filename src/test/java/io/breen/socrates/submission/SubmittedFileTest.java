@@ -0,0 +1,89 @@
+package io.breen.socrates.submission;
+
+import io.breen.socrates.Globals;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class SubmittedFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        Globals.properties = null;
+    }
+
+    private SubmittedFile file(byte[] contents) throws Exception {
+        Path path = folder.getRoot().toPath().resolve("file.txt");
+        Files.write(path, contents);
+        return new SubmittedFile(path, Paths.get("file.txt"));
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void shouldNormalizeLineEndingsOfValidUTF8() throws Exception {
+        assertEquals("a\nb\nc\n", file(utf8("a\r\nb\rc")).getContents());
+        assertEquals("\n\n", file(utf8("\n\r\n")).getContents());
+        assertEquals("", file(new byte[0]).getContents());
+    }
+
+    @Test
+    public void shouldKeepMultiByteCharactersInMixedFiles() throws Exception {
+        byte[] valid = utf8("café ✓ ");
+        byte[] bytes = new byte[valid.length + 2];
+        System.arraycopy(valid, 0, bytes, 0, valid.length);
+        bytes[valid.length] = (byte)0xff;
+        bytes[valid.length + 1] = 'x';
+
+        SubmittedFile f = file(bytes);
+
+        assertEquals("café ✓ �x", f.getContentsMixedUTF8());
+        assertEquals("café ✓ �x", f.getContents());
+    }
+
+    @Test(expected = CharacterCodingException.class)
+    public void strictDecodingShouldRejectMalformedInput() throws Exception {
+        file(new byte[] {'a', (byte)0xc3}).getContentsUTF8();
+    }
+
+    @Test
+    public void shouldCacheContentsUntilFileChanges() throws Exception {
+        SubmittedFile f = file(utf8("one"));
+        Path path = f.fullPath;
+
+        String first = f.getContents();
+        assertEquals("one\n", first);
+        assertSame(first, f.getContents());
+
+        Files.write(path, utf8("two"));
+        Files.setLastModifiedTime(
+                path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 10000)
+        );
+
+        assertEquals("two\n", f.getContents());
+        assertEquals("two\n", f.getContentsView().toString());
+    }
+
+    @Test
+    public void shouldDecodeMappedFiles() throws Exception {
+        Globals.properties = new Properties();
+        Globals.properties.setProperty("contents.mapThreshold", "0");
+
+        SubmittedFile f = file(utf8("café\r\n"));
+
+        assertEquals("café\n", f.getContents());
+        assertEquals("café\r\n", f.getContentsMixedUTF8());
+    }
+}
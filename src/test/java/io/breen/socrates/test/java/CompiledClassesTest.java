@@ -0,0 +1,83 @@
+package io.breen.socrates.test.java;
+
+import io.breen.socrates.submission.Submission;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.Assert.*;
+
+public class CompiledClassesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path dir;
+    private Submission submission;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = folder.getRoot().toPath();
+        submission = new Submission("student", dir);
+    }
+
+    private void writeSource(String name, String source) throws Exception {
+        Path path = dir.resolve(name + ".java");
+        FileTime previous = Files.exists(path) ? Files.getLastModifiedTime(path) : null;
+
+        Files.write(path, source.getBytes(StandardCharsets.UTF_8));
+
+        // make sure the change is seen, even if the clock has not moved
+        if (previous != null) {
+            Files.setLastModifiedTime(
+                    path, FileTime.fromMillis(previous.toMillis() + 10000)
+            );
+        }
+    }
+
+    @Test
+    public void shouldShareClassesBetweenLoads() throws Exception {
+        writeSource("Foo", "public class Foo { public static int f() { return 1; } }");
+
+        Class<?> first = CompiledClasses.loadClass(submission, "Foo");
+        Class<?> second = CompiledClasses.loadClass(submission, "Foo");
+
+        assertSame(first, second);
+        assertEquals(1, first.getMethod("f").invoke(null));
+    }
+
+    @Test
+    public void shouldCompileAgainWhenSourcesChange() throws Exception {
+        writeSource("Foo", "public class Foo { public static int f() { return 1; } }");
+        Class<?> first = CompiledClasses.loadClass(submission, "Foo");
+
+        writeSource("Foo", "public class Foo { public static int f() { return 2; } }");
+        Class<?> second = CompiledClasses.loadClass(submission, "Foo");
+
+        assertNotSame(first, second);
+        assertEquals(2, second.getMethod("f").invoke(null));
+    }
+
+    @Test
+    public void shouldRememberClassesThatDoNotCompile() throws Exception {
+        writeSource("Broken", "public class Broken { int f() { return } }");
+
+        ClassNotFoundException first = null;
+        try {
+            CompiledClasses.loadClass(submission, "Broken");
+            fail();
+        } catch (ClassNotFoundException x) {
+            first = x;
+        }
+
+        try {
+            CompiledClasses.loadClass(submission, "Broken");
+            fail();
+        } catch (ClassNotFoundException x) {
+            assertSame(first, x);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package io.breen.socrates.test.java;
+
+import io.breen.socrates.Globals;
+import io.breen.socrates.submission.Submission;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class JavaEvaluatorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path dir;
+    private JavaEvaluator evaluator;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = folder.getRoot().toPath();
+        evaluator = new JavaEvaluator(new Submission("student", dir));
+
+        Globals.properties = new Properties();
+        Globals.properties.setProperty("java.timeout.wall", "1");
+        Globals.properties.setProperty("java.timeout.cpu", "1");
+
+        Files.write(
+                dir.resolve("Foo.java"),
+                ("public class Foo {\n" +
+                        "    public static int twice(int n) { return 2 * n; }\n" +
+                        "    public static String shout(String s) {\n" +
+                        "        System.out.print(s);\n" +
+                        "        return s.toUpperCase();\n" +
+                        "    }\n" +
+                        "    public static int fail() { throw new IllegalStateException(); }\n" +
+                        "    public static int spin() { while (true); }\n" +
+                        "    public static int exit() { System.exit(1); return 0; }\n" +
+                        "    public static String echo() {\n" +
+                        "        String line = new java.util.Scanner(System.in).nextLine();\n" +
+                        "        System.out.println(line);\n" +
+                        "        return line;\n" +
+                        "    }\n" +
+                        "    private int count;\n" +
+                        "    public int add(int n) { count += n; return count; }\n" +
+                        "    public static int background() throws Exception {\n" +
+                        "        Thread t = new Thread() {\n" +
+                        "            public void run() { System.out.print(\"child\"); }\n" +
+                        "        };\n" +
+                        "        t.start();\n" +
+                        "        t.join();\n" +
+                        "        return 0;\n" +
+                        "    }\n" +
+                        "}\n").getBytes(StandardCharsets.UTF_8)
+        );
+    }
+
+    @After
+    public void tearDown() {
+        Globals.properties = null;
+    }
+
+    private static JavaEvaluator.Call call(String method, Object expected, Object... arguments) {
+        return new JavaEvaluator.Call("Foo", method, arguments, expected, null, null, null);
+    }
+
+    private static JavaEvaluator.Call inputCall(String method, Object expected, String input) {
+        return new JavaEvaluator.Call("Foo", method, new Object[0], expected, input, null, null);
+    }
+
+    private static JavaEvaluator.Call addCall(int n, int expected, Map<String, Object> before,
+                                              Map<String, Object> after)
+    {
+        return new JavaEvaluator.Call(
+                "Foo", "add", new Object[] {n}, expected, null, before, after
+        );
+    }
+
+    private JavaEvaluator.Result evaluate(JavaEvaluator.Call call) throws Exception {
+        return evaluator.evaluateAll(Collections.singletonList(call)).get(0);
+    }
+
+    private JavaEvaluator.Result evaluate(String method, Object expected, Object... arguments)
+            throws Exception
+    {
+        return evaluate(call(method, expected, arguments));
+    }
+
+    @Test
+    public void shouldEvaluateCallsInOneRequest() throws Exception {
+        List<JavaEvaluator.Result> results = evaluator.evaluateAll(
+                Arrays.asList(
+                        call("twice", 42, 21),
+                        call("twice", 41, 21),
+                        call("shout", "HI", "hi")
+                )
+        );
+
+        assertEquals(JavaEvaluator.Status.RETURNED, results.get(0).status);
+        assertTrue(results.get(0).passed);
+        assertEquals("42", results.get(0).value);
+
+        assertEquals(JavaEvaluator.Status.RETURNED, results.get(1).status);
+        assertFalse(results.get(1).passed);
+
+        assertTrue(results.get(2).passed);
+        assertEquals("hi", results.get(2).output);
+    }
+
+    @Test
+    public void shouldGiveEachCallItsOwnInputAndOutput() throws Exception {
+        List<JavaEvaluator.Result> results = evaluator.evaluateAll(
+                Arrays.asList(
+                        inputCall("echo", "one", "one\n"),
+                        inputCall("echo", "two", "two\n"),
+                        call("background", 0)
+                )
+        );
+
+        assertTrue(results.get(0).passed);
+        assertEquals("one" + System.lineSeparator(), results.get(0).output);
+
+        assertTrue(results.get(1).passed);
+        assertEquals("two" + System.lineSeparator(), results.get(1).output);
+
+        // output of threads started by student code belongs to the call that started them
+        assertEquals("child", results.get(2).output);
+    }
+
+    @Test
+    public void shouldCallInstanceMethods() throws Exception {
+        Map<String, Object> before = new HashMap<>();
+        before.put("count", 10);
+
+        Map<String, Object> after = new HashMap<>();
+        after.put("count", 15);
+
+        JavaEvaluator.Result result = evaluate(addCall(5, 15, before, after));
+
+        assertTrue(result.passed);
+        assertTrue(result.afterPassed);
+        assertEquals("15", result.after.get("count"));
+
+        // without a before state, the object keeps the state its constructor gave it
+        result = evaluate(addCall(5, 5, null, after));
+
+        assertTrue(result.passed);
+        assertFalse(result.afterPassed);
+        assertEquals("5", result.after.get("count"));
+    }
+
+    @Test
+    public void shouldRejectFieldsThatDoNotExist() throws Exception {
+        Map<String, Object> before = new HashMap<>();
+        before.put("missing", 10);
+
+        assertEquals(JavaEvaluator.Status.INVALID, evaluate(addCall(5, 15, before, null)).status);
+    }
+
+    @Test
+    public void shouldReportExceptions() throws Exception {
+        JavaEvaluator.Result result = evaluate("fail", 0);
+
+        assertEquals(JavaEvaluator.Status.THREW, result.status);
+        assertTrue(result.message.contains("IllegalStateException"));
+    }
+
+    @Test
+    public void shouldReportMissingMethods() throws Exception {
+        assertEquals(JavaEvaluator.Status.INVALID, evaluate("missing", 0).status);
+    }
+
+    @Test
+    public void shouldStopCodeThatDoesNotReturn() throws Exception {
+        assertEquals(JavaEvaluator.Status.TIMEOUT, evaluate("spin", 0).status);
+
+        // a new worker takes the place of the one that timed out
+        assertTrue(evaluate("twice", 4, 2).passed);
+    }
+
+    @Test
+    public void shouldSurviveSystemExit() throws Exception {
+        assertEquals(JavaEvaluator.Status.EXITED, evaluate("exit", 0).status);
+        assertTrue(evaluate("twice", 4, 2).passed);
+    }
+}
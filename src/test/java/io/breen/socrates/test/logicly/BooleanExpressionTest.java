@@ -0,0 +1,58 @@
+package io.breen.socrates.test.logicly;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class BooleanExpressionTest {
+
+    private static final List<String> NAMES = Arrays.asList("a", "b", "c");
+
+    /**
+     * Bit i of each word is bit i of a, b and c, for the eight settings of the variables.
+     */
+    private static final long[] WORDS = {0xF0L, 0xCCL, 0xAAL};
+
+    private static long evaluate(String expression) {
+        return BooleanExpression.parse(expression, NAMES).evaluate(WORDS) & 0xFFL;
+    }
+
+    @Test
+    public void shouldEvaluateOperators() {
+        assertEquals(0xF0L & 0xCCL, evaluate("a & b"));
+        assertEquals(0xF0L & 0xCCL, evaluate("a and b"));
+        assertEquals(0xF0L | 0xCCL, evaluate("a + b"));
+        assertEquals(0xF0L ^ 0xCCL, evaluate("a xor b"));
+        assertEquals(~0xAAL & 0xFFL, evaluate("!c"));
+        assertEquals(~0xAAL & 0xFFL, evaluate("c'"));
+        assertEquals(0xFFL, evaluate("1"));
+        assertEquals(0L, evaluate("a & 0"));
+    }
+
+    @Test
+    public void shouldFollowPrecedence() {
+        assertEquals(0xF0L | (0xCCL & 0xAAL), evaluate("a | b & c"));
+        assertEquals((0xF0L | 0xCCL) & 0xAAL, evaluate("(a | b) & c"));
+        assertEquals(0xF0L | (0xCCL ^ 0xAAL), evaluate("a | b ^ c"));
+        assertEquals(~(0xF0L & 0xCCL) & 0xFFL, evaluate("(a & b)'"));
+        assertEquals((~0xF0L & 0xCCL) & 0xFFL, evaluate("!a & b"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownNames() {
+        evaluate("a & d");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMissingParenthesis() {
+        evaluate("(a | b");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectTrailingTokens() {
+        evaluate("a b");
+    }
+}
@@ -0,0 +1,146 @@
+package io.breen.socrates.test.logicly;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+public class LogiclyReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Writes the specified XML document to a file, compressed like a Logicly file.
+     */
+    static void writeLogicly(Path path, String xml) throws Exception {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(xml.getBytes(StandardCharsets.UTF_8));
+        deflater.finish();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished())
+            out.write(buffer, 0, deflater.deflate(buffer));
+        deflater.end();
+
+        Files.write(path, out.toByteArray());
+    }
+
+    private static String uid(int n) {
+        return String.format("00000000-0000-0000-0000-%012d", n);
+    }
+
+    static String object(String type, int uid, String extra) {
+        return "<object type=\"" + type + "\" uid=\"" + uid(uid) + "\" " + extra + "/>";
+    }
+
+    static String connection(int from, int fromIndex, int to, int toIndex) {
+        return "<connection outputUID=\"" + uid(from) + "\" outputIndex=\"" + fromIndex + "\" " +
+                "inputUID=\"" + uid(to) + "\" inputIndex=\"" + toIndex + "\"/>";
+    }
+
+    private static byte evaluate(Netlist netlist, String lightBulb, String... switchesOn) {
+        Netlist.State state = netlist.newState();
+        for (String s : switchesOn)
+            state.switches[netlist.getSwitch(s)] = true;
+
+        state.evaluate();
+        return state.getValue(netlist.getLightBulb(lightBulb));
+    }
+
+    @Test
+    public void shouldReadFilesLargerThan64KiB() throws Exception {
+        int numSwitches = 2001;
+        StringBuilder sb = new StringBuilder("<logicly>");
+
+        for (int i = 0; i < numSwitches; i++)
+            sb.append(object("switch", i, "exportName=\"in" + i + "\""));
+
+        // a chain of alternating OR and AND gates, ending with an AND gate
+        int previous = 0;
+        for (int i = 1; i < numSwitches; i++) {
+            int gate = numSwitches + i;
+            sb.append(object(i % 2 == 0 ? "and" : "or", gate, "inputs=\"2\""));
+            sb.append(connection(previous, 0, gate, 0));
+            sb.append(connection(i, 0, gate, 1));
+            previous = gate;
+        }
+
+        sb.append(object("light_bulb", 2 * numSwitches, "exportName=\"out\""));
+        sb.append(connection(previous, 0, 2 * numSwitches, 0));
+        sb.append("</logicly>");
+
+        assertTrue(sb.length() > 1 << 17);
+
+        Path path = folder.getRoot().toPath().resolve("large.logicly");
+        writeLogicly(path, sb.toString());
+
+        Netlist netlist = LogiclyReader.read(path);
+
+        String[] all = new String[numSwitches];
+        for (int i = 0; i < numSwitches; i++)
+            all[i] = "in" + i;
+
+        assertEquals(Netlist.TRUE, evaluate(netlist, "out", all));
+
+        String[] allButLast = new String[numSwitches - 1];
+        System.arraycopy(all, 0, allButLast, 0, allButLast.length);
+        assertEquals(Netlist.FALSE, evaluate(netlist, "out", allButLast));
+    }
+
+    @Test
+    public void shouldCopyCustomCircuitForEachInstance() throws Exception {
+        String type = uid(100);
+
+        // an inverter, instantiated twice in series
+        String xml = "<logicly>" +
+                object("switch", 1, "exportName=\"in\"") +
+                object(type, 2, "name=\"inverter\"") +
+                object(type, 3, "name=\"inverter\"") +
+                object("light_bulb", 4, "exportName=\"out\"") +
+                object("label", 5, "") +
+                connection(1, 0, 2, 0) +
+                connection(2, 0, 3, 0) +
+                connection(3, 0, 4, 0) +
+                "<custom type=\"" + type + "\"><logicly>" +
+                object("switch", 11, "exportName=\"a\"") +
+                object("not", 12, "") +
+                object("light_bulb", 13, "exportName=\"b\"") +
+                connection(11, 0, 12, 0) +
+                connection(12, 0, 13, 0) +
+                "</logicly></custom>" +
+                "</logicly>";
+
+        Path path = folder.getRoot().toPath().resolve("custom.logicly");
+        writeLogicly(path, xml);
+
+        Netlist netlist = LogiclyReader.read(path);
+
+        assertEquals(-1, netlist.getSwitch("a"));
+        assertEquals(Netlist.TRUE, evaluate(netlist, "out", "in"));
+        assertEquals(Netlist.FALSE, evaluate(netlist, "out"));
+    }
+
+    @Test(expected = UnsupportedGateException.class)
+    public void shouldRejectCustomCircuitContainingItself() throws Exception {
+        String type = uid(100);
+
+        String xml = "<logicly>" +
+                object(type, 1, "name=\"loop\"") +
+                "<custom type=\"" + type + "\"><logicly>" +
+                object(type, 11, "name=\"loop\"") +
+                "</logicly></custom>" +
+                "</logicly>";
+
+        Path path = folder.getRoot().toPath().resolve("loop.logicly");
+        writeLogicly(path, xml);
+
+        LogiclyReader.read(path);
+    }
+}
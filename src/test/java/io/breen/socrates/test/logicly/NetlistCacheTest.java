@@ -0,0 +1,102 @@
+package io.breen.socrates.test.logicly;
+
+import io.breen.socrates.submission.SubmittedFile;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class NetlistCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Writes a compressed Logicly file with one switch connected to one light bulb.
+     */
+    private static void writeCircuit(Path path, String switchName) throws Exception {
+        String xml = "<logicly>" +
+                "<object type=\"switch\" uid=\"00000000-0000-0000-0000-000000000001\" " +
+                "exportName=\"" + switchName + "\"/>" +
+                "<object type=\"light_bulb\" uid=\"00000000-0000-0000-0000-000000000002\" " +
+                "exportName=\"out\"/>" +
+                "<connection outputUID=\"00000000-0000-0000-0000-000000000001\" " +
+                "outputIndex=\"0\" inputUID=\"00000000-0000-0000-0000-000000000002\" " +
+                "inputIndex=\"0\"/>" +
+                "</logicly>";
+
+        LogiclyReaderTest.writeLogicly(path, xml);
+    }
+
+    @Test
+    public void shouldParseFileOnce() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("circuit.logicly");
+        writeCircuit(path, "in");
+        SubmittedFile target = new SubmittedFile(path, path.getFileName());
+
+        Netlist netlist = NetlistCache.get(target);
+        assertTrue(netlist.getSwitch("in") >= 0);
+        assertSame(netlist, NetlistCache.get(target));
+    }
+
+    @Test
+    public void shouldParseFileAgainWhenModified() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("circuit.logicly");
+        writeCircuit(path, "in");
+        SubmittedFile target = new SubmittedFile(path, path.getFileName());
+
+        Netlist first = NetlistCache.get(target);
+
+        writeCircuit(path, "renamed");
+        FileTime later = FileTime.fromMillis(
+                Files.getLastModifiedTime(path).toMillis() + 10000
+        );
+        Files.setLastModifiedTime(path, later);
+
+        Netlist second = NetlistCache.get(target);
+        assertNotSame(first, second);
+        assertEquals(-1, second.getSwitch("in"));
+        assertTrue(second.getSwitch("renamed") >= 0);
+    }
+
+    @Test
+    public void shouldShareOneParseBetweenThreads() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("circuit.logicly");
+        writeCircuit(path, "in");
+        final SubmittedFile target = new SubmittedFile(path, path.getFileName());
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<Netlist>> futures = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < 32; i++) {
+                futures.add(
+                        pool.submit(
+                                new Callable<Netlist>() {
+                                    @Override
+                                    public Netlist call() throws Exception {
+                                        return NetlistCache.get(target);
+                                    }
+                                }
+                        )
+                );
+            }
+
+            Set<Netlist> distinct = Collections.newSetFromMap(
+                    new IdentityHashMap<Netlist, Boolean>()
+            );
+            for (Future<Netlist> f : futures)
+                distinct.add(f.get());
+
+            assertEquals(1, distinct.size());
+
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
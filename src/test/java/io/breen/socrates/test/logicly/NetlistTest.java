@@ -0,0 +1,229 @@
+package io.breen.socrates.test.logicly;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class NetlistTest {
+
+    private static UUID uuid() {
+        return UUID.randomUUID();
+    }
+
+    private static void connect(Evaluatable from, Evaluatable to, int index) {
+        to.inputs[index] = from.outputs[0];
+    }
+
+    /**
+     * Returns the value of a light bulb as Evaluatable.evaluate() finds it.
+     */
+    private static byte recursiveValue(LightBulb b) {
+        try {
+            return b.evaluate()[0] ? Netlist.TRUE : Netlist.FALSE;
+        } catch (UndeterminedStateException x) {
+            return Netlist.UNDETERMINED;
+        }
+    }
+
+    private static byte compiledValue(Netlist netlist, Netlist.State state, LightBulb b) {
+        return state.getValue(netlist.getLightBulb(b.exportName));
+    }
+
+    /**
+     * Builds a random circuit without feedback over four switches named "in0" through "in3", with
+     * three light bulbs named "out0" through "out2". Some inputs are left unconnected, so that
+     * some values are undetermined.
+     */
+    private static Netlist randomCircuit(Random random, List<Switch> switches,
+                                         List<LightBulb> bulbs) throws Exception
+    {
+        List<Evaluatable> gates = new ArrayList<>();
+
+        for (int i = 0; i < 4; i++) {
+            Switch s = new Switch(uuid(), "in" + i);
+            switches.add(s);
+            gates.add(s);
+        }
+
+        // each new gate reads only from earlier gates, so there are no feedback loops
+        for (int i = 0; i < 20; i++) {
+            Evaluatable g;
+            switch (random.nextInt(4)) {
+            case 0:
+                g = new NotGate(uuid());
+                break;
+            case 1:
+                g = new AndGate(uuid(), 2 + random.nextInt(2));
+                break;
+            case 2:
+                g = new OrGate(uuid(), 2 + random.nextInt(2));
+                break;
+            default:
+                g = new LowConstant(uuid());
+            }
+
+            for (int j = 0; j < g.inputs.length; j++) {
+                if (random.nextInt(8) != 0)
+                    connect(gates.get(random.nextInt(gates.size())), g, j);
+            }
+
+            gates.add(g);
+        }
+
+        for (int i = 0; i < 3; i++) {
+            LightBulb b = new LightBulb(uuid(), "out" + i);
+            connect(gates.get(gates.size() - 1 - i), b, 0);
+            bulbs.add(b);
+        }
+
+        Netlist netlist = Netlist.compile(switches, bulbs);
+        assertFalse(netlist.hasFeedback());
+        return netlist;
+    }
+
+    @Test
+    public void shouldMatchRecursiveEvaluationOnRandomCircuits() throws Exception {
+        Random random = new Random(11);
+
+        for (int trial = 0; trial < 200; trial++) {
+            List<Switch> switches = new ArrayList<>();
+            List<LightBulb> bulbs = new ArrayList<>();
+            Netlist netlist = randomCircuit(random, switches, bulbs);
+
+            Netlist.State state = netlist.newState();
+
+            for (int bits = 0; bits < 16; bits++) {
+                for (int i = 0; i < 4; i++) {
+                    boolean on = (bits & 1 << i) != 0;
+                    switches.get(i).state = on;
+                    state.switches[netlist.getSwitch("in" + i)] = on;
+                }
+
+                state.evaluate();
+
+                for (LightBulb b : bulbs)
+                    assertEquals(recursiveValue(b), compiledValue(netlist, state, b));
+            }
+        }
+    }
+
+    @Test
+    public void shouldMatchScalarEvaluationWhenEvaluatingByWords() throws Exception {
+        Random random = new Random(12);
+
+        for (int trial = 0; trial < 200; trial++) {
+            List<Switch> switches = new ArrayList<>();
+            List<LightBulb> bulbs = new ArrayList<>();
+            Netlist netlist = randomCircuit(random, switches, bulbs);
+
+            Netlist.State state = netlist.newState();
+            Netlist.WordState wordState = netlist.newWordState();
+
+            // bit i of the words is the setting of the switches given by the bits of i
+            for (int i = 0; i < 4; i++)
+                for (int bits = 0; bits < 64; bits++)
+                    if ((bits & 1 << i) != 0)
+                        wordState.switches[netlist.getSwitch("in" + i)] |= 1L << bits;
+
+            wordState.evaluate();
+
+            for (int bits = 0; bits < 16; bits++) {
+                for (int i = 0; i < 4; i++)
+                    state.switches[netlist.getSwitch("in" + i)] = (bits & 1 << i) != 0;
+
+                state.evaluate();
+
+                for (LightBulb b : bulbs) {
+                    int gate = netlist.getLightBulb(b.exportName);
+                    boolean isTrue = (wordState.getTrue(gate) >>> bits & 1) != 0;
+                    boolean isUndetermined = (wordState.getUndetermined(gate) >>> bits & 1) != 0;
+
+                    byte expected = state.getValue(gate);
+                    assertEquals(expected == Netlist.TRUE, isTrue);
+                    assertEquals(expected == Netlist.UNDETERMINED, isUndetermined);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldEvaluateReconvergentCircuitsInLinearTime() throws Exception {
+        Switch s = new Switch(uuid(), "in");
+        Evaluatable previous = s;
+
+        // each gate reads the previous gate twice, so recursive evaluation takes 2^200 steps
+        for (int i = 0; i < 200; i++) {
+            AndGate g = new AndGate(uuid(), 2);
+            connect(previous, g, 0);
+            connect(previous, g, 1);
+            previous = g;
+        }
+
+        LightBulb b = new LightBulb(uuid(), "out");
+        connect(previous, b, 0);
+
+        Netlist netlist = Netlist.compile(Collections.singletonList(s), Collections.singletonList(b));
+        Netlist.State state = netlist.newState();
+
+        state.switches[netlist.getSwitch("in")] = true;
+        state.evaluate();
+        assertEquals(Netlist.TRUE, compiledValue(netlist, state, b));
+
+        state.switches[netlist.getSwitch("in")] = false;
+        state.evaluate();
+        assertEquals(Netlist.FALSE, compiledValue(netlist, state, b));
+    }
+
+    @Test
+    public void shouldShortCircuitFeedbackLikeRecursiveEvaluation() throws Exception {
+        // a latch: out = OR(set, AND(out, NOT(reset)))
+        Switch set = new Switch(uuid(), "set");
+        Switch reset = new Switch(uuid(), "reset");
+        OrGate or = new OrGate(uuid(), 2);
+        AndGate and = new AndGate(uuid(), 2);
+        NotGate not = new NotGate(uuid());
+        LightBulb b = new LightBulb(uuid(), "out");
+
+        connect(set, or, 0);
+        connect(and, or, 1);
+        connect(or, and, 0);
+        connect(not, and, 1);
+        connect(reset, not, 0);
+        connect(or, b, 0);
+
+        Netlist netlist = Netlist.compile(Arrays.asList(set, reset), Collections.singletonList(b));
+        assertTrue(netlist.hasFeedback());
+
+        Netlist.State state = netlist.newState();
+
+        // when set is on, the OR gate does not read the loop
+        state.switches[netlist.getSwitch("set")] = true;
+        state.evaluate();
+        assertEquals(Netlist.TRUE, compiledValue(netlist, state, b));
+
+        // otherwise, the value of the OR gate depends on itself
+        state.switches[netlist.getSwitch("set")] = false;
+        state.evaluate();
+        assertEquals(Netlist.UNDETERMINED, compiledValue(netlist, state, b));
+    }
+
+    @Test
+    public void shouldFindSwitchesAndLightBulbsByExportName() throws Exception {
+        Switch s = new Switch(uuid(), "in");
+        LightBulb b = new LightBulb(uuid(), "out");
+
+        Netlist netlist = Netlist.compile(Collections.singletonList(s), Collections.singletonList(b));
+
+        assertTrue(netlist.getSwitch("in") >= 0);
+        assertTrue(netlist.getLightBulb("out") >= 0);
+        assertEquals(-1, netlist.getSwitch("out"));
+        assertEquals(-1, netlist.getLightBulb("missing"));
+
+        // the light bulb is not connected to anything
+        Netlist.State state = netlist.newState();
+        state.evaluate();
+        assertEquals(Netlist.UNDETERMINED, compiledValue(netlist, state, b));
+    }
+}
@@ -0,0 +1,296 @@
+package io.breen.socrates.test.logicly;
+
+import io.breen.socrates.Globals;
+import io.breen.socrates.file.logicly.LogiclyFile;
+import io.breen.socrates.submission.SubmittedFile;
+import io.breen.socrates.test.CannotBeAutomatedException;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import javax.swing.text.*;
+import java.nio.file.Path;
+import java.util.*;
+
+import static io.breen.socrates.test.logicly.LogiclyReaderTest.connection;
+import static io.breen.socrates.test.logicly.LogiclyReaderTest.object;
+import static org.junit.Assert.*;
+
+public class TruthTableTestTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private boolean wasHeadless;
+    private LogiclyFile parent;
+    private Document transcript;
+
+    @Before
+    public void setUp() {
+        // transcripts are only written synchronously without a GUI
+        wasHeadless = Globals.headless;
+        Globals.headless = true;
+
+        parent = new LogiclyFile();
+        transcript = new PlainDocument();
+    }
+
+    @After
+    public void tearDown() {
+        Globals.headless = wasHeadless;
+    }
+
+    /**
+     * Returns a circuit with switches a and b and a light bulb "out" showing a & !b. If feedback
+     * is true, the circuit also has a loop of two OR gates, shown by a light bulb "loop".
+     */
+    private static String andNotCircuit(boolean feedback) {
+        StringBuilder sb = new StringBuilder("<logicly>");
+        sb.append(object("switch", 1, "exportName=\"a\""));
+        sb.append(object("switch", 2, "exportName=\"b\""));
+        sb.append(object("not", 3, ""));
+        sb.append(object("and", 4, "inputs=\"2\""));
+        sb.append(object("light_bulb", 5, "exportName=\"out\""));
+        sb.append(connection(2, 0, 3, 0));
+        sb.append(connection(1, 0, 4, 0));
+        sb.append(connection(3, 0, 4, 1));
+        sb.append(connection(4, 0, 5, 0));
+
+        if (feedback) {
+            sb.append(object("or", 6, "inputs=\"2\""));
+            sb.append(object("or", 7, "inputs=\"2\""));
+            sb.append(object("light_bulb", 8, "exportName=\"loop\""));
+            sb.append(connection(7, 0, 6, 0));
+            sb.append(connection(1, 0, 6, 1));
+            sb.append(connection(6, 0, 7, 0));
+            sb.append(connection(2, 0, 7, 1));
+            sb.append(connection(7, 0, 8, 0));
+        }
+
+        return sb.append("</logicly>").toString();
+    }
+
+    /**
+     * Returns a circuit with the specified number of switches, named "in0" and so on, with a
+     * light bulb "all" showing their AND and a light bulb "first" showing the first switch.
+     */
+    private static String andCircuit(int numInputs) {
+        StringBuilder sb = new StringBuilder("<logicly>");
+        int gate = numInputs;
+        sb.append(object("and", gate, "inputs=\"" + numInputs + "\""));
+        sb.append(object("light_bulb", gate + 1, "exportName=\"all\""));
+        sb.append(object("light_bulb", gate + 2, "exportName=\"first\""));
+
+        for (int i = 0; i < numInputs; i++) {
+            sb.append(object("switch", i, "exportName=\"in" + i + "\""));
+            sb.append(connection(i, 0, gate, i));
+        }
+
+        sb.append(connection(gate, 0, gate + 1, 0));
+        sb.append(connection(0, 0, gate + 2, 0));
+        return sb.append("</logicly>").toString();
+    }
+
+    private static List<String> inputNames(int numInputs) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < numInputs; i++)
+            names.add("in" + i);
+
+        return names;
+    }
+
+    private static String repeat(char c, int n) {
+        char[] chars = new char[n];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private SubmittedFile writeCircuit(String name, String xml) throws Exception {
+        Path path = folder.getRoot().toPath().resolve(name);
+        LogiclyReaderTest.writeLogicly(path, xml);
+        return new SubmittedFile(path, path.getFileName());
+    }
+
+    private static TruthTableTest tableTest(List<String> inputs, String lightBulb,
+                                            Object column)
+    {
+        TruthTableTest test = new TruthTableTest(1.0, "truth table");
+        test.inputs = inputs;
+        test.table = new LinkedHashMap<>();
+        test.table.put(lightBulb, column);
+        return test;
+    }
+
+    private boolean shouldPass(TruthTableTest test, SubmittedFile target) throws Exception {
+        return test.shouldPass(parent, target, null, null, transcript, null);
+    }
+
+    private String transcriptText() throws BadLocationException {
+        return transcript.getText(0, transcript.getLength());
+    }
+
+    private int countRowLines() throws BadLocationException {
+        int n = 0;
+        for (String line : transcriptText().split("\n"))
+            if (line.startsWith("row ")) n++;
+
+        return n;
+    }
+
+    private void assertCannotBeAutomated(TruthTableTest test, SubmittedFile target,
+                                         String message) throws Exception
+    {
+        try {
+            shouldPass(test, target);
+            fail("expected CannotBeAutomatedException");
+        } catch (CannotBeAutomatedException x) {
+            assertEquals(message, x.getMessage());
+        }
+    }
+
+    @Test
+    public void shouldPassWithQuotedStringColumn() throws Exception {
+        SubmittedFile target = writeCircuit("and_not.logicly", andNotCircuit(false));
+
+        assertTrue(shouldPass(tableTest(Arrays.asList("a", "b"), "out", "0010"), target));
+        assertEquals("checking 4 rows over a b\nall rows matched\n", transcriptText());
+    }
+
+    @Test
+    public void shouldPassWithListColumn() throws Exception {
+        SubmittedFile target = writeCircuit("and_not.logicly", andNotCircuit(false));
+        List<Integer> column = Arrays.asList(0, 0, 1, 0);
+
+        assertTrue(shouldPass(tableTest(Arrays.asList("a", "b"), "out", column), target));
+    }
+
+    @Test
+    public void shouldIgnoreWhitespaceAndRowsThatDoNotMatter() throws Exception {
+        SubmittedFile target = writeCircuit("and_not.logicly", andNotCircuit(false));
+        List<String> inputs = Arrays.asList("a", "b");
+
+        assertTrue(shouldPass(tableTest(inputs, "out", " 0 -\n1\t0 "), target));
+        assertTrue(shouldPass(tableTest(inputs, "out", "----"), target));
+        assertFalse(shouldPass(tableTest(inputs, "out", "--0-"), target));
+    }
+
+    @Test
+    public void shouldRejectColumnWithWrongNumberOfRows() throws Exception {
+        SubmittedFile target = writeCircuit("and_not.logicly", andNotCircuit(false));
+        List<String> inputs = Arrays.asList("a", "b");
+
+        assertCannotBeAutomated(
+                tableTest(inputs, "out", "001"), target,
+                "column for 'out' has 3 rows, but should have 4"
+        );
+        assertCannotBeAutomated(
+                tableTest(inputs, "out", "00100"), target,
+                "column for 'out' has 5 rows, but should have 4"
+        );
+    }
+
+    @Test
+    public void shouldRejectColumnWithInvalidValues() throws Exception {
+        SubmittedFile target = writeCircuit("and_not.logicly", andNotCircuit(false));
+        List<String> inputs = Arrays.asList("a", "b");
+
+        assertCannotBeAutomated(
+                tableTest(inputs, "out", "0020"), target,
+                "column for 'out' has invalid value '2'"
+        );
+        assertCannotBeAutomated(
+                tableTest(inputs, "out", Arrays.asList(0, 0, true, 0)), target,
+                "column for 'out' has invalid value 't'"
+        );
+        assertCannotBeAutomated(
+                tableTest(inputs, "out", 10), target,
+                "column for 'out' must be a quoted string or a list"
+        );
+    }
+
+    @Test
+    public void shouldOrderRowsByInputs() throws Exception {
+        SubmittedFile target = writeCircuit("and_not.logicly", andNotCircuit(false));
+
+        // the first input is the most significant bit of the row number
+        assertTrue(shouldPass(tableTest(Arrays.asList("a", "b"), "out", "0010"), target));
+        assertTrue(shouldPass(tableTest(Arrays.asList("b", "a"), "out", "0100"), target));
+        assertFalse(shouldPass(tableTest(Arrays.asList("b", "a"), "out", "0010"), target));
+    }
+
+    @Test
+    public void shouldUseSwitchesOfFileWithoutInputs() throws Exception {
+        SubmittedFile target = writeCircuit("and_not.logicly", andNotCircuit(false));
+        parent.switches = Arrays.asList("b", "a");
+
+        assertTrue(shouldPass(tableTest(null, "out", "0100"), target));
+        assertTrue(transcriptText().startsWith("checking 4 rows over b a\n"));
+
+        // the inputs of the test take precedence over the switches of the file
+        assertTrue(shouldPass(tableTest(Arrays.asList("a", "b"), "out", "0010"), target));
+    }
+
+    @Test
+    public void shouldEvaluateCircuitWithFeedbackOneRowAtATime() throws Exception {
+        SubmittedFile target = writeCircuit("feedback.logicly", andNotCircuit(true));
+        assertTrue(NetlistCache.get(target).hasFeedback());
+
+        List<String> inputs = Arrays.asList("a", "b");
+        assertTrue(shouldPass(tableTest(inputs, "out", "0010"), target));
+
+        transcript = new PlainDocument();
+        assertFalse(shouldPass(tableTest(inputs, "out", "0011"), target));
+        assertEquals(
+                "checking 4 rows over a b\n" +
+                        "row a=1 b=1: out should be 1, but was 0\n" +
+                        "1 mismatched value in 4 rows\n",
+                transcriptText()
+        );
+
+        transcript = new PlainDocument();
+        assertFalse(shouldPass(tableTest(inputs, "loop", "0000"), target));
+        assertTrue(
+                transcriptText().contains("row a=0 b=0: loop should be 0, but was undetermined\n")
+        );
+    }
+
+    @Test
+    public void shouldReportAtMostEightMismatchedRows() throws Exception {
+        SubmittedFile target = writeCircuit("and4.logicly", andCircuit(4));
+
+        assertFalse(shouldPass(tableTest(inputNames(4), "all", repeat('1', 16)), target));
+        assertEquals(8, countRowLines());
+
+        String text = transcriptText();
+        assertTrue(text.startsWith("checking 16 rows over in0 in1 in2 in3\n"));
+        assertTrue(
+                text.contains("row in0=0 in1=0 in2=0 in3=0: all should be 1, but was 0\n")
+        );
+        assertTrue(
+                text.contains("row in0=0 in1=1 in2=1 in3=1: all should be 1, but was 0\n")
+        );
+        assertFalse(text.contains("in0=1 in1=0 in2=0 in3=0"));
+        assertTrue(text.endsWith("15 mismatched values in 16 rows\n"));
+    }
+
+    @Test
+    public void shouldCheckRowsBeyondFirstWord() throws Exception {
+        int numInputs = 7;
+        SubmittedFile target = writeCircuit("and7.logicly", andCircuit(numInputs));
+        List<String> inputs = inputNames(numInputs);
+
+        assertTrue(shouldPass(tableTest(inputs, "all", repeat('0', 127) + "1"), target));
+        assertTrue(
+                shouldPass(tableTest(inputs, "first", repeat('0', 64) + repeat('1', 64)), target)
+        );
+
+        transcript = new PlainDocument();
+        assertFalse(shouldPass(tableTest(inputs, "all", repeat('0', 128)), target));
+        assertEquals(
+                "checking 128 rows over in0 in1 in2 in3 in4 in5 in6\n" +
+                        "row in0=1 in1=1 in2=1 in3=1 in4=1 in5=1 in6=1: " +
+                        "all should be 0, but was 1\n" +
+                        "1 mismatched value in 128 rows\n",
+                transcriptText()
+        );
+    }
+}
@@ -6,8 +6,7 @@ import java.nio.charset.Charset;
 import java.nio.file.*;
 import java.util.*;
 
-import static org.junit.Assert.assertFalse;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 
 public class PythonInspectorTest {
 
@@ -22,7 +21,10 @@ public class PythonInspectorTest {
                 Paths.get(parentDir.toString(), "zero.py"),
                 Paths.get(parentDir.toString(), "one.py"),
                 Paths.get(parentDir.toString(), "two.py"),
-                Paths.get(parentDir.toString(), "three.py")
+                Paths.get(parentDir.toString(), "three.py"),
+                Paths.get(parentDir.toString(), "four.py"),
+                Paths.get(parentDir.toString(), "five.py"),
+                Paths.get(parentDir.toString(), "six.py")
         );
 
         Files.createDirectory(parentDir);
@@ -64,6 +66,44 @@ public class PythonInspectorTest {
                  .append("\n")
                  .close();
         }
+
+        {
+            // four.py: a valid Python file with a function that changes module state
+            Files.newBufferedWriter(paths.get(4), Charset.defaultCharset())
+                 .append("count = 0\n")
+                 .append("\n")
+                 .append("def bump():\n")
+                 .append("    global count\n")
+                 .append("    count += 1\n")
+                 .append("    return count\n")
+                 .append("\n")
+                 .close();
+        }
+
+        {
+            // five.py: a valid Python file with a function returning a value JSON cannot encode
+            Files.newBufferedWriter(paths.get(5), Charset.defaultCharset())
+                 .append("def one():\n")
+                 .append("    return 1\n")
+                 .append("\n")
+                 .append("def pair():\n")
+                 .append("    return {1, 2}\n")
+                 .append("\n")
+                 .close();
+        }
+
+        {
+            // six.py: a valid Python file with a function that starts a process printing a line
+            Files.newBufferedWriter(paths.get(6), Charset.defaultCharset())
+                 .append("import subprocess\n")
+                 .append("import sys\n")
+                 .append("\n")
+                 .append("def spawn():\n")
+                 .append("    subprocess.call([sys.executable, '-c', 'print(\"spawned\")'])\n")
+                 .append("    return 1\n")
+                 .append("\n")
+                 .close();
+        }
     }
 
     @After
@@ -190,4 +230,119 @@ public class PythonInspectorTest {
                 ).first
         );
     }
+
+    @Test
+    public void shouldAnswerManyRequestsForOneModule() throws Exception {
+        PythonInspector inspector = new PythonInspector(paths.get(3));
+        assertTrue(inspector.canImportModule().first);
+        assertTrue(inspector.functionExists("ten"));
+        assertFalse(inspector.functionExists("zzz"));
+        assertTrue(inspector.functionProduces("ten", null, null, null, 10, null).first);
+        assertTrue(
+                inspector.functionProduces(
+                        "twice", Collections.singletonList((Object)4), null, null, 8, null
+                ).first
+        );
+    }
+
+    @Test
+    public void shouldIsolateModuleStateBetweenEvaluations() throws Exception {
+        PythonInspector inspector = new PythonInspector(paths.get(4));
+        assertTrue(inspector.functionProduces("bump", null, null, null, 1, null).first);
+        assertTrue(inspector.functionProduces("bump", null, null, null, 1, null).first);
+        assertTrue(inspector.variableEquals("count", 0));
+    }
+
+    @Test
+    public void shouldSwitchModulesBetweenRequests() throws Exception {
+        PythonInspector two = new PythonInspector(paths.get(2));
+        PythonInspector three = new PythonInspector(paths.get(3));
+        assertTrue(two.variableExists("foo"));
+        assertFalse(three.variableExists("foo"));
+        assertTrue(three.functionExists("ten"));
+        assertFalse(two.functionExists("ten"));
+    }
+
+    @Test
+    public void shouldReimportChangedModule() throws Exception {
+        PythonInspector inspector = new PythonInspector(paths.get(2));
+        assertTrue(inspector.variableExists("foo"));
+
+        Files.newBufferedWriter(paths.get(2), Charset.defaultCharset())
+             .append("qux = 4\n")
+             .close();
+
+        assertFalse(inspector.variableExists("foo"));
+        assertTrue(inspector.variableExists("qux"));
+    }
+
+    @Test
+    public void shouldEvaluateBatchInOrder() throws Exception {
+        List<PythonInspector.Evaluation> evaluations = Arrays.asList(
+                new PythonInspector.Evaluation("ten", null, null, null, null, null, 10, null),
+                new PythonInspector.Evaluation(
+                        "twice", null, Collections.singletonList((Object)4), null, null, null, 99,
+                        null
+                ),
+                new PythonInspector.Evaluation("zzz", null, null, null, null, null, 0, null),
+                new PythonInspector.Evaluation(
+                        "odds", null, Collections.singletonList((Object)2), null, null, null,
+                        Arrays.asList(1, 3), null
+                )
+        );
+
+        List<PythonInspector.EvalResult> results = new PythonInspector(paths.get(3))
+                .evaluateAll(evaluations);
+
+        assertEquals(4, results.size());
+        assertTrue(results.get(0).get().first);
+        assertFalse(results.get(1).get().first);
+        assertNotNull(results.get(2).error);
+        assertTrue(results.get(3).get().first);
+    }
+
+    @Test
+    public void shouldOnlyFailBatchEvaluationWithUnencodableValue() throws Exception {
+        PythonInspector.Evaluation one = new PythonInspector.Evaluation(
+                "one", null, null, null, null, null, 1, null
+        );
+        PythonInspector.Evaluation pair = new PythonInspector.Evaluation(
+                "pair", null, null, null, null, null, Arrays.asList(1, 2), null
+        );
+
+        PythonInspector inspector = new PythonInspector(paths.get(5));
+        List<PythonInspector.EvalResult> results = inspector.evaluateAll(
+                Arrays.asList(one, pair, one)
+        );
+
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).get().first);
+        assertNotNull(results.get(1).error);
+        assertTrue(results.get(2).get().first);
+
+        // the worker is still answering requests
+        assertTrue(inspector.functionExists("pair"));
+    }
+
+    @Test
+    public void shouldKeepOutputOfChildProcessesOutOfResponses() throws Exception {
+        PythonInspector inspector = new PythonInspector(paths.get(6));
+        assertTrue(inspector.functionProduces("spawn", null, null, null, 1, null).first);
+
+        // the worker is still answering requests
+        assertTrue(inspector.functionExists("spawn"));
+    }
+
+    @Test
+    public void shouldIsolateModuleStateBetweenBatchEvaluations() throws Exception {
+        PythonInspector.Evaluation bump = new PythonInspector.Evaluation(
+                "bump", null, null, null, null, null, 1, null
+        );
+
+        List<PythonInspector.EvalResult> results = new PythonInspector(paths.get(4))
+                .evaluateAll(Arrays.asList(bump, bump, bump));
+
+        for (PythonInspector.EvalResult r : results)
+            assertTrue(r.get().first);
+    }
 }